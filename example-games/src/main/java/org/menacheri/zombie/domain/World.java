@@ -1,10 +1,13 @@
 package org.menacheri.zombie.domain;
 
+import java.nio.ByteBuffer;
+
+import org.menacheri.jetserver.app.Checkpointable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
-public class World
+public class World implements Checkpointable
 {
 	private static final Logger LOG = LoggerFactory.getLogger(World.class);
 	private volatile int alive;
@@ -58,5 +61,20 @@ public class World
 		undead += 2	;
 		LOG.trace("New Alive: {} Undead: {}",alive,undead);
 	}
+
+	@Override
+	public byte[] checkpoint() throws Exception
+	{
+		return ByteBuffer.allocate(8).putInt(alive).putInt(undead).array();
+	}
+
+	@Override
+	public void restore(byte[] state) throws Exception
+	{
+		ByteBuffer buffer = ByteBuffer.wrap(state);
+		alive = buffer.getInt();
+		undead = buffer.getInt();
+		LOG.info("Restored world with alive= {} undead= {}", alive, undead);
+	}
 	
 }
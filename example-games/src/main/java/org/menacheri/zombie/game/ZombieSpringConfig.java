@@ -8,6 +8,7 @@ import org.menacheri.jetserver.app.GameRoom;
 import org.menacheri.jetserver.app.impl.SimpleGame;
 import org.menacheri.jetserver.app.impl.GameRoomSession.GameRoomSessionBuilder;
 import org.menacheri.jetserver.protocols.Protocol;
+import org.menacheri.jetserver.service.CheckpointService;
 import org.menacheri.jetserver.service.LookupService;
 import org.menacheri.jetserver.service.impl.SimpleLookupService;
 import org.menacheri.zombie.domain.Defender;
@@ -41,6 +42,14 @@ public class ZombieSpringConfig
 	@Qualifier("webSocketProtocol")
 	private Protocol webSocketProtocol;
 	
+	@Autowired
+	@Qualifier("binaryWebSocketProtocol")
+	private Protocol binaryWebSocketProtocol;
+	
+	@Autowired
+	@Qualifier("checkpointService")
+	private CheckpointService checkpointService;
+	
 	public @Bean Game zombieGame()
 	{
 		Game game = new SimpleGame(1,"Zombie");
@@ -51,9 +60,12 @@ public class ZombieSpringConfig
 	{
 		GameRoomSessionBuilder sessionBuilder = new GameRoomSessionBuilder();
 		sessionBuilder.parentGame(zombieGame()).gameRoomName("Zombie_ROOM_1").protocol(messageBufferProtocol);
+		// The world is shared by all zombie rooms, checkpointing it once is enough.
+		sessionBuilder.checkpointable(checkpointService, world());
 		ZombieRoom room = new ZombieRoom(sessionBuilder);
 		room.setDefender(defender());
 		room.setZombie(zombie());
+		room.initialize();
 		
 		return room;
 	}
@@ -65,6 +77,19 @@ public class ZombieSpringConfig
 		ZombieRoom room = new ZombieRoom(sessionBuilder);
 		room.setDefender(defender());
 		room.setZombie(zombie());
+		room.initialize();
+		
+		return room;
+	}
+	
+	public @Bean(name="Zombie_ROOM_3") GameRoom zombieRoom3()
+	{
+		GameRoomSessionBuilder sessionBuilder = new GameRoomSessionBuilder();
+		sessionBuilder.parentGame(zombieGame()).gameRoomName("Zombie_ROOM_3").protocol(binaryWebSocketProtocol);
+		ZombieRoom room = new ZombieRoom(sessionBuilder);
+		room.setDefender(defender());
+		room.setZombie(zombie());
+		room.initialize();
 		
 		return room;
 	}
@@ -97,6 +122,7 @@ public class ZombieSpringConfig
 		Map<String,GameRoom> refKeyGameRoomMap = new HashMap<String, GameRoom>();
 		refKeyGameRoomMap.put("Zombie_ROOM_1_REF_KEY_1", zombieRoom1());
 		refKeyGameRoomMap.put("Zombie_ROOM_1_REF_KEY_2", zombieRoom2());
+		refKeyGameRoomMap.put("Zombie_ROOM_1_REF_KEY_3", zombieRoom3());
 		LookupService service = new SimpleLookupService(refKeyGameRoomMap);
 		return service;
 	}
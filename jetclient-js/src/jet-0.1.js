@@ -30,9 +30,14 @@
     jet.SESSION_MESSAGE = 0x1c;
     // This event is used to send data from the current machine to remote server
     jet.NETWORK_MESSAGE = 0x1d;
+    // Sequence number of the last client input processed by the server.
+    jet.INPUT_ACK = 0x1e;
     jet.CHANGE_ATTRIBUTE = 0x20;
     jet.DISCONNECT = 0x22;// Use this one for handling close event of ws.
     jet.EXCEPTION = 0x24;
+    jet.TIME_SYNC_REQUEST = 0x26;
+    jet.TIME_SYNC_RESPONSE = 0x27;
+    jet.BUNDLE = 0x28;
 
     // Functions
     // Creates a new event object
@@ -89,6 +94,168 @@
                   }
     };
 
+    // Growable big endian buffer over an ArrayBuffer, the browser side of the MessageBuffer of jetserver.
+    // Strings are written as a 2 byte length followed by UTF-8 bytes, same as the server.
+    jet.MessageBuffer = function (buffer, readerIndex) {
+        this.buffer = (typeof buffer === 'undefined') ? new ArrayBuffer(64) : buffer;
+        this.view = new DataView(this.buffer);
+        this.readerIndex = (typeof readerIndex === 'undefined') ? 0 : readerIndex;
+        this.writerIndex = (typeof buffer === 'undefined') ? 0 : buffer.byteLength;
+    };
+
+    jet.MessageBuffer.prototype.readableBytes = function () {
+        return this.writerIndex - this.readerIndex;
+    };
+
+    jet.MessageBuffer.prototype.isReadable = function () {
+        return this.readableBytes() > 0;
+    };
+
+    jet.MessageBuffer.prototype.read = function (getter, length) {
+        if (this.readableBytes() < length) {
+            throw new Error("Cannot read " + length + " bytes, only " + this.readableBytes() + " readable.");
+        }
+        var value = this.view[getter](this.readerIndex);
+        this.readerIndex += length;
+        return value;
+    };
+
+    jet.MessageBuffer.prototype.readByte = function () { return this.read('getInt8', 1); };
+    jet.MessageBuffer.prototype.readUnsignedByte = function () { return this.read('getUint8', 1); };
+    jet.MessageBuffer.prototype.readShort = function () { return this.read('getInt16', 2); };
+    jet.MessageBuffer.prototype.readUnsignedShort = function () { return this.read('getUint16', 2); };
+    jet.MessageBuffer.prototype.readInt = function () { return this.read('getInt32', 4); };
+    jet.MessageBuffer.prototype.readUnsignedInt = function () { return this.read('getUint32', 4); };
+    jet.MessageBuffer.prototype.readFloat = function () { return this.read('getFloat32', 4); };
+    jet.MessageBuffer.prototype.readDouble = function () { return this.read('getFloat64', 8); };
+
+    // Javascript numbers only hold 53 bits exactly, so larger longs lose precision.
+    jet.MessageBuffer.prototype.readLong = function () {
+        var high = this.readInt();
+        return high * 4294967296 + this.readUnsignedInt();
+    };
+
+    jet.MessageBuffer.prototype.readBytes = function (length) {
+        if (this.readableBytes() < length) {
+            throw new Error("Cannot read " + length + " bytes, only " + this.readableBytes() + " readable.");
+        }
+        var bytes = new Uint8Array(this.buffer.slice(this.readerIndex, this.readerIndex + length));
+        this.readerIndex += length;
+        return bytes;
+    };
+
+    jet.MessageBuffer.prototype.readString = function () {
+        if (this.readableBytes() <= 2) {
+            return null;
+        }
+        var bytes = this.readBytes(this.readUnsignedShort());
+        var encoded = "";
+        for (var i = 0; i < bytes.length; i++) {
+            encoded += String.fromCharCode(bytes[i]);
+        }
+        return decodeURIComponent(escape(encoded));
+    };
+
+    jet.MessageBuffer.prototype.readStrings = function (numOfStrings) {
+        var strings = [];
+        for (var i = 0; i < numOfStrings; i++) {
+            var string = this.readString();
+            if (string === null) {
+                break;
+            }
+            strings.push(string);
+        }
+        return strings;
+    };
+
+    jet.MessageBuffer.prototype.ensureWritable = function (length) {
+        var required = this.writerIndex + length;
+        if (required <= this.buffer.byteLength) {
+            return;
+        }
+        var capacity = Math.max(this.buffer.byteLength * 2, 64);
+        while (capacity < required) {
+            capacity *= 2;
+        }
+        var buffer = new ArrayBuffer(capacity);
+        new Uint8Array(buffer).set(new Uint8Array(this.buffer, 0, this.writerIndex));
+        this.buffer = buffer;
+        this.view = new DataView(buffer);
+    };
+
+    jet.MessageBuffer.prototype.write = function (setter, length, value) {
+        this.ensureWritable(length);
+        this.view[setter](this.writerIndex, value);
+        this.writerIndex += length;
+        return this;// chainable
+    };
+
+    jet.MessageBuffer.prototype.writeByte = function (value) { return this.write('setInt8', 1, value); };
+    jet.MessageBuffer.prototype.writeShort = function (value) { return this.write('setInt16', 2, value); };
+    jet.MessageBuffer.prototype.writeInt = function (value) { return this.write('setInt32', 4, value); };
+    jet.MessageBuffer.prototype.writeFloat = function (value) { return this.write('setFloat32', 4, value); };
+    jet.MessageBuffer.prototype.writeDouble = function (value) { return this.write('setFloat64', 8, value); };
+
+    jet.MessageBuffer.prototype.writeLong = function (value) {
+        var high = Math.floor(value / 4294967296);
+        this.writeInt(high);
+        return this.write('setUint32', 4, value - high * 4294967296);
+    };
+
+    // Accepts an array of byte values, a typed array or an ArrayBuffer.
+    jet.MessageBuffer.prototype.writeBytes = function (bytes) {
+        var src = (bytes instanceof ArrayBuffer) ? new Uint8Array(bytes) : bytes;
+        this.ensureWritable(src.length);
+        new Uint8Array(this.buffer).set(src, this.writerIndex);
+        this.writerIndex += src.length;
+        return this;
+    };
+
+    jet.MessageBuffer.prototype.writeString = function (string) {
+        var encoded = unescape(encodeURIComponent(string));
+        var bytes = new Uint8Array(encoded.length);
+        for (var i = 0; i < encoded.length; i++) {
+            bytes[i] = encoded.charCodeAt(i);
+        }
+        this.writeShort(bytes.length);
+        return this.writeBytes(bytes);
+    };
+
+    jet.MessageBuffer.prototype.writeStrings = function () {
+        for (var i = 0; i < arguments.length; i++) {
+            this.writeString(arguments[i]);
+        }
+        return this;
+    };
+
+    // Copy of the unread bytes.
+    jet.MessageBuffer.prototype.toArrayBuffer = function () {
+        return this.buffer.slice(this.readerIndex, this.writerIndex);
+    };
+
+    // Codecs for game rooms using the BinaryWebSocketProtocol of jetserver. Each binary frame is the event type
+    // in one byte followed by the payload. The decoded event has a jet.MessageBuffer as its source and the event to
+    // encode should have a jet.MessageBuffer, or nothing, as its source. Login still uses the JSON codecs.
+    jet.BinaryCodecs = {
+        encoder : {transform: function (e){
+                        var buffer = new jet.MessageBuffer().writeByte(e.type);
+                        if ((typeof e.source !== 'undefined') && (e.source !== null)) {
+                            buffer.writeBytes(new Uint8Array(e.source.toArrayBuffer()));
+                        }
+                        return buffer.toArrayBuffer();
+                    }
+                  },
+        decoder : {transform: function (data){
+                        var source = new jet.MessageBuffer(data);
+                        var type = source.readUnsignedByte();
+                        if(type === jet.NETWORK_MESSAGE){
+                            type = jet.SESSION_MESSAGE;
+                        }
+                        return jet.NEvent(type, source);
+                    }
+                  }
+    };
+
     // Generally a client needs only one session to the server. But this function can be used to create more.
     jet.sessionFactory = function (url, config, callback) {
         new Session(url,config,callback);
@@ -112,6 +279,7 @@
 
         function connectWebSocket(url) {
             ws = new WebSocket(url);            
+            ws.binaryType = "arraybuffer";
             ws.onopen = function() {
                 if (state === 0) {
                     ws.send(message);
@@ -127,7 +295,8 @@
             // Login to jetserver when the start event is received the callback will return the session.
             ws.onmessage = function (e) {
                 var loginDecoder = (typeof config.loginDecoder === 'undefined') ? jet.Codecs.decoder : config.loginDecoder;
-                var evt = loginDecoder.transform(e.data);
+                // In a binary game room the START event already arrives as a binary frame.
+                var evt = (typeof e.data === 'string') ? loginDecoder.transform(e.data) : me.inCodecChain.transform(e.data);
                 if(!evt.type){
                     throw new Error("Event object missing 'type' property.");
                 }
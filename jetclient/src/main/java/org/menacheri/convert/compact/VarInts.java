@@ -0,0 +1,156 @@
+package org.menacheri.convert.compact;
+
+import org.jboss.netty.util.CharsetUtil;
+import org.menacheri.jetclient.communication.MessageBuffer;
+
+/**
+ * Reads and writes the variable length encodings used by the client codecs
+ * generated by the SchemaCompiler of jetserver. Unsigned values are written 7
+ * bits per byte, least significant group first, with the high bit set on
+ * every byte except the last, so values below 128 take a single byte. Signed
+ * values are first zig-zag encoded, mapping 0, -1, 1, -2 ... to 0, 1, 2, 3 ...
+ * so that small negative numbers stay small on the wire. Strings and byte
+ * arrays are written as a varint length followed by the bytes, strings in
+ * UTF-8. It should be kept in sync with the server side copy.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+public final class VarInts
+{
+	private VarInts()
+	{
+	}
+
+	public static int zigZag(int value)
+	{
+		return (value << 1) ^ (value >> 31);
+	}
+
+	public static int unZigZag(int value)
+	{
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	public static long zigZag(long value)
+	{
+		return (value << 1) ^ (value >> 63);
+	}
+
+	public static long unZigZag(long value)
+	{
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	public static void writeVarInt(MessageBuffer<?> buffer, int value)
+	{
+		while ((value & ~0x7F) != 0)
+		{
+			buffer.writeByte((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.writeByte((byte) value);
+	}
+
+	public static int readVarInt(MessageBuffer<?> buffer)
+	{
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7)
+		{
+			int b = buffer.readByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+			{
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Varint is longer than 5 bytes");
+	}
+
+	public static void writeVarLong(MessageBuffer<?> buffer, long value)
+	{
+		while ((value & ~0x7FL) != 0)
+		{
+			buffer.writeByte((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.writeByte((byte) value);
+	}
+
+	public static long readVarLong(MessageBuffer<?> buffer)
+	{
+		long value = 0;
+		for (int shift = 0; shift < 70; shift += 7)
+		{
+			int b = buffer.readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+			{
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Varlong is longer than 10 bytes");
+	}
+
+	public static void writeSignedVarInt(MessageBuffer<?> buffer, int value)
+	{
+		writeVarInt(buffer, zigZag(value));
+	}
+
+	public static int readSignedVarInt(MessageBuffer<?> buffer)
+	{
+		return unZigZag(readVarInt(buffer));
+	}
+
+	public static void writeSignedVarLong(MessageBuffer<?> buffer, long value)
+	{
+		writeVarLong(buffer, zigZag(value));
+	}
+
+	public static long readSignedVarLong(MessageBuffer<?> buffer)
+	{
+		return unZigZag(readVarLong(buffer));
+	}
+
+	public static void writeBytes(MessageBuffer<?> buffer, byte[] bytes)
+	{
+		writeVarInt(buffer, bytes.length);
+		buffer.writeBytes(bytes);
+	}
+
+	public static byte[] readBytes(MessageBuffer<?> buffer)
+	{
+		int length = readVarInt(buffer);
+		if (length < 0 || length > buffer.readableBytes())
+		{
+			throw new IllegalArgumentException("Invalid length " + length
+					+ ", readable bytes " + buffer.readableBytes());
+		}
+		return buffer.readBytes(length);
+	}
+
+	public static void writeString(MessageBuffer<?> buffer, String value)
+	{
+		writeBytes(buffer, value.getBytes(CharsetUtil.UTF_8));
+	}
+
+	public static String readString(MessageBuffer<?> buffer)
+	{
+		return new String(readBytes(buffer), CharsetUtil.UTF_8);
+	}
+
+	/**
+	 * @return The number of bytes taken by the value when written using
+	 *         {@link #writeVarInt(MessageBuffer, int)}.
+	 */
+	public static int sizeOfVarInt(int value)
+	{
+		int size = 1;
+		while ((value & ~0x7F) != 0)
+		{
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+}
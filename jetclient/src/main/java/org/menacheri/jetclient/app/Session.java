@@ -2,6 +2,7 @@ package org.menacheri.jetclient.app;
 
 import java.util.List;
 
+import org.menacheri.jetclient.communication.ClockSync;
 import org.menacheri.jetclient.communication.MessageSender;
 import org.menacheri.jetclient.communication.ReconnectPolicy;
 import org.menacheri.jetclient.communication.MessageSender.Fast;
@@ -103,4 +104,12 @@ public interface Session
 	void setReconnectPolicy(ReconnectPolicy reconnectPolicy);
 	
 	ReconnectPolicy getReconnectPolicy();
+	
+	/**
+	 * @return The estimate of the offset between the client clock and the
+	 *         server clock and of the round trip time, updated by the time
+	 *         sync exchange, see
+	 *         {@link org.menacheri.jetclient.handlers.netty.TimeSyncHandler}.
+	 */
+	ClockSync getClockSync();
 }
@@ -5,6 +5,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.menacheri.jetclient.app.Session;
+import org.menacheri.jetclient.communication.ClockSync;
 import org.menacheri.jetclient.communication.ReconnectPolicy;
 import org.menacheri.jetclient.communication.MessageSender.Fast;
 import org.menacheri.jetclient.communication.MessageSender.Reliable;
@@ -60,6 +61,8 @@ public class DefaultSession implements Session
 	
 	protected Reliable tcpMessageSender;
 	protected Fast udpMessageSender;
+	
+	protected final ClockSync clockSync = new ClockSync();
 
 	
 	protected DefaultSession(SessionBuilder sessionBuilder)
@@ -407,6 +410,12 @@ public class DefaultSession implements Session
 		return reconnectPolicy;
 	}
 
+	@Override
+	public ClockSync getClockSync()
+	{
+		return clockSync;
+	}
+
 	public void setReconnectPolicy(ReconnectPolicy reconnectPolicy)
 	{
 		this.reconnectPolicy = reconnectPolicy;
@@ -0,0 +1,446 @@
+package org.menacheri.jetclient.communication;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.util.CharsetUtil;
+import org.menacheri.convert.Transform;
+import org.menacheri.jetclient.util.NettyUtils;
+
+/**
+ * A {@link MessageBuffer} which writes and reads at bit level over a Netty
+ * {@link ChannelBuffer}, so that values can take exactly the number of bits
+ * they need using {@link #writeBits(int, int)} and {@link #readBits(int)}.
+ * Along with the {@link Quantizer} this lets a position update go out in a few
+ * bytes instead of three floats. The usual byte level methods write their
+ * values as 8, 16, 24, 32 or 64 bits at the current bit position, most
+ * significant bit first, and strings keep the 2 byte length format of
+ * {@link NettyMessageBuffer}.
+ * <p>
+ * Bits are only written to the underlying buffer in whole bytes. Calling
+ * {@link #getNativeBuffer()}, {@link #array()} or
+ * {@link #writeObject(Transform, Object)} pads the last byte with zero bits,
+ * so the next value starts on a byte boundary. In the same way
+ * {@link #readObject(Transform)} skips the rest of a partly read byte. The
+ * reader should expect the padding at the same points as the writer.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+public class BitPackedMessageBuffer implements MessageBuffer<ChannelBuffer>
+{
+	private final ChannelBuffer buffer;
+	private long writeBits;
+	private int writeBitCount;
+	private long readBits;
+	private int readBitCount;
+
+	public BitPackedMessageBuffer()
+	{
+		this(ChannelBuffers.dynamicBuffer());
+	}
+
+	/**
+	 * This constructor can be used when trying to read bit packed information
+	 * from a {@link ChannelBuffer}, for e.g. the native buffer of the
+	 * {@link NettyMessageBuffer} of an incoming event.
+	 *
+	 * @param buffer
+	 */
+	public BitPackedMessageBuffer(ChannelBuffer buffer)
+	{
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Writes the lowest bits of the value, most significant first.
+	 *
+	 * @param value
+	 *            The value, bits above the count are ignored.
+	 * @param count
+	 *            The number of bits to write, from 0 to 32.
+	 * @return Instance of this class itself.
+	 */
+	public BitPackedMessageBuffer writeBits(int value, int count)
+	{
+		checkCount(count);
+		writeBits = (writeBits << count) | (value & mask(count));
+		writeBitCount += count;
+		while (writeBitCount >= 8)
+		{
+			writeBitCount -= 8;
+			buffer.writeByte((int) (writeBits >>> writeBitCount));
+		}
+		writeBits &= mask(writeBitCount);
+		return this;
+	}
+
+	/**
+	 * Reads bits written by {@link #writeBits(int, int)}.
+	 *
+	 * @param count
+	 *            The number of bits to read, from 0 to 32.
+	 * @return The bits as an unsigned value, except for a count of 32.
+	 */
+	public int readBits(int count)
+	{
+		checkCount(count);
+		while (readBitCount < count)
+		{
+			readBits = (readBits << 8) | buffer.readUnsignedByte();
+			readBitCount += 8;
+		}
+		readBitCount -= count;
+		int value = (int) ((readBits >>> readBitCount) & mask(count));
+		readBits &= mask(readBitCount);
+		return value;
+	}
+
+	/**
+	 * Reads bits written as a signed value, extending the sign from the
+	 * highest of them.
+	 */
+	public int readSignedBits(int count)
+	{
+		int value = readBits(count);
+		if (count > 0 && count < 32)
+		{
+			int shift = 32 - count;
+			value = (value << shift) >> shift;
+		}
+		return value;
+	}
+
+	public BitPackedMessageBuffer writeBoolean(boolean value)
+	{
+		return writeBits(value ? 1 : 0, 1);
+	}
+
+	public boolean readBoolean()
+	{
+		return 1 == readBits(1);
+	}
+
+	/**
+	 * @return The number of bits which can still be read, including the
+	 *         padding of the last byte.
+	 */
+	public int readableBits()
+	{
+		return buffer.readableBytes() * 8 + readBitCount;
+	}
+
+	private static void checkCount(int count)
+	{
+		if (count < 0 || count > 32)
+		{
+			throw new IllegalArgumentException("Bit count " + count
+					+ " is not between 0 and 32");
+		}
+	}
+
+	private static long mask(int count)
+	{
+		return (1L << count) - 1;
+	}
+
+	private void padWrite()
+	{
+		if (writeBitCount > 0)
+		{
+			writeBits(0, 8 - writeBitCount);
+		}
+	}
+
+	private void alignRead()
+	{
+		readBits = 0;
+		readBitCount = 0;
+	}
+
+	@Override
+	public boolean isReadable()
+	{
+		return readableBits() > 0;
+	}
+
+	@Override
+	public int readableBytes()
+	{
+		return readableBits() / 8;
+	}
+
+	@Override
+	public byte[] array()
+	{
+		padWrite();
+		return buffer.array();
+	}
+
+	@Override
+	public void clear()
+	{
+		buffer.clear();
+		writeBits = 0;
+		writeBitCount = 0;
+		alignRead();
+	}
+
+	/**
+	 * @return The underlying buffer, after padding the bits written so far to
+	 *         a whole byte.
+	 */
+	@Override
+	public ChannelBuffer getNativeBuffer()
+	{
+		padWrite();
+		return buffer;
+	}
+
+	@Override
+	public int readByte()
+	{
+		return (byte) readBits(8);
+	}
+
+	@Override
+	public int readUnsignedByte()
+	{
+		return readBits(8);
+	}
+
+	@Override
+	public byte[] readBytes(int length)
+	{
+		byte[] bytes = new byte[length];
+		readBytes(bytes);
+		return bytes;
+	}
+
+	@Override
+	public void readBytes(byte[] dst)
+	{
+		readBytes(dst, 0, dst.length);
+	}
+
+	@Override
+	public void readBytes(byte[] dst, int dstIndex, int length)
+	{
+		if (0 == readBitCount)
+		{
+			buffer.readBytes(dst, dstIndex, length);
+			return;
+		}
+		for (int i = dstIndex; i < dstIndex + length; i++)
+		{
+			dst[i] = (byte) readBits(8);
+		}
+	}
+
+	@Override
+	public int readShort()
+	{
+		return (short) readBits(16);
+	}
+
+	@Override
+	public int readUnsignedShort()
+	{
+		return readBits(16);
+	}
+
+	@Override
+	public int readMedium()
+	{
+		return readSignedBits(24);
+	}
+
+	@Override
+	public int readUnsignedMedium()
+	{
+		return readBits(24);
+	}
+
+	@Override
+	public int readInt()
+	{
+		return readBits(32);
+	}
+
+	@Override
+	public long readUnsignedInt()
+	{
+		return readBits(32) & 0xFFFFFFFFL;
+	}
+
+	@Override
+	public long readLong()
+	{
+		long high = readBits(32) & 0xFFFFFFFFL;
+		return (high << 32) | (readBits(32) & 0xFFFFFFFFL);
+	}
+
+	@Override
+	public char readChar()
+	{
+		return (char) readBits(16);
+	}
+
+	@Override
+	public float readFloat()
+	{
+		return Float.intBitsToFloat(readBits(32));
+	}
+
+	@Override
+	public double readDouble()
+	{
+		return Double.longBitsToDouble(readLong());
+	}
+
+	@Override
+	public String readString()
+	{
+		if (readableBytes() <= 2)
+		{
+			return null;
+		}
+		int length = readUnsignedShort();
+		return new String(readBytes(length), CharsetUtil.UTF_8);
+	}
+
+	@Override
+	public String[] readStrings(int numOfStrings)
+	{
+		String[] strings = new String[numOfStrings];
+		for (int i = 0; i < numOfStrings; i++)
+		{
+			String string = readString();
+			if (null == string)
+			{
+				break;
+			}
+			strings[i] = string;
+		}
+		return strings;
+	}
+
+	/**
+	 * Skips the rest of a partly read byte and lets the converter read from
+	 * the underlying buffer.
+	 */
+	@Override
+	public <V> V readObject(Transform<ChannelBuffer, V> converter)
+	{
+		alignRead();
+		return NettyUtils.readObject(buffer, converter);
+	}
+
+	@Override
+	public MessageBuffer<ChannelBuffer> writeByte(byte b)
+	{
+		return writeBits(b, 8);
+	}
+
+	@Override
+	public MessageBuffer<ChannelBuffer> writeBytes(byte[] src)
+	{
+		if (0 == writeBitCount)
+		{
+			buffer.writeBytes(src);
+			return this;
+		}
+		for (byte b : src)
+		{
+			writeBits(b, 8);
+		}
+		return this;
+	}
+
+	@Override
+	public MessageBuffer<ChannelBuffer> writeChar(int value)
+	{
+		return writeBits(value, 16);
+	}
+
+	@Override
+	public MessageBuffer<ChannelBuffer> writeShort(int value)
+	{
+		return writeBits(value, 16);
+	}
+
+	@Override
+	public MessageBuffer<ChannelBuffer> writeMedium(int value)
+	{
+		return writeBits(value, 24);
+	}
+
+	@Override
+	public MessageBuffer<ChannelBuffer> writeInt(int value)
+	{
+		return writeBits(value, 32);
+	}
+
+	@Override
+	public MessageBuffer<ChannelBuffer> writeLong(long value)
+	{
+		writeBits((int) (value >>> 32), 32);
+		return writeBits((int) value, 32);
+	}
+
+	@Override
+	public MessageBuffer<ChannelBuffer> writeFloat(float value)
+	{
+		return writeBits(Float.floatToIntBits(value), 32);
+	}
+
+	@Override
+	public MessageBuffer<ChannelBuffer> writeDouble(double value)
+	{
+		return writeLong(Double.doubleToLongBits(value));
+	}
+
+	@Override
+	public MessageBuffer<ChannelBuffer> writeString(String message)
+	{
+		writeBuffer(NettyUtils.writeString(message));
+		return this;
+	}
+
+	@Override
+	public MessageBuffer<ChannelBuffer> writeStrings(String... messages)
+	{
+		writeBuffer(NettyUtils.writeStrings(messages));
+		return this;
+	}
+
+	/**
+	 * Pads the bits written so far to a whole byte and writes the converted
+	 * object after them.
+	 */
+	@Override
+	public <V> MessageBuffer<ChannelBuffer> writeObject(
+			Transform<V, ChannelBuffer> converter, V object)
+	{
+		padWrite();
+		ChannelBuffer objBuf = NettyUtils.writeObject(converter, object);
+		buffer.writeBytes(objBuf);
+		return this;
+	}
+
+	private void writeBuffer(ChannelBuffer source)
+	{
+		if (null == source)
+		{
+			return;
+		}
+		if (0 == writeBitCount)
+		{
+			buffer.writeBytes(source);
+			return;
+		}
+		while (source.readable())
+		{
+			writeBits(source.readByte(), 8);
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package org.menacheri.jetclient.communication;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.menacheri.jetclient.event.Event;
+import org.menacheri.jetclient.event.Events;
+
+/**
+ * Client side counterpart of the server's sequenced input queue. Each input
+ * sent to the server is given an increasing sequence number and kept until the
+ * server acknowledges it with an {@link Events#INPUT_ACK} event. On an ack the
+ * client can reset its state to the authoritative state from the server and
+ * re-apply the inputs returned by {@link #getPending()} to reconcile its
+ * prediction. Sequence numbers start at 1 and are compared using serial number
+ * arithmetic so they can wrap around.
+ *
+ * @author Abraham Menacherry
+ *
+ * @param <T>
+ *            The type of input stored for replay.
+ */
+public class SequencedInputHistory<T>
+{
+	private final LinkedList<Entry<T>> pending;
+	private int nextSequence;
+	private int lastAcknowledged;
+
+	public SequencedInputHistory()
+	{
+		this.pending = new LinkedList<Entry<T>>();
+		this.nextSequence = 1;
+	}
+
+	/**
+	 * Stores the input and returns the sequence number to be sent along with
+	 * it to the server.
+	 *
+	 * @param input
+	 *            The input applied locally by the client.
+	 * @return The sequence number for the input.
+	 */
+	public synchronized int add(T input)
+	{
+		int sequence = nextSequence++;
+		pending.add(new Entry<T>(sequence, input));
+		return sequence;
+	}
+
+	/**
+	 * Removes all inputs up to and including the sequence number.
+	 *
+	 * @param sequence
+	 *            The last sequence processed by the server.
+	 * @return The number of inputs removed.
+	 */
+	public synchronized int acknowledge(int sequence)
+	{
+		if (sequence - lastAcknowledged <= 0)
+		{
+			return 0;
+		}
+		lastAcknowledged = sequence;
+		int removed = 0;
+		while (!pending.isEmpty()
+				&& pending.getFirst().sequence - sequence <= 0)
+		{
+			pending.removeFirst();
+			removed++;
+		}
+		return removed;
+	}
+
+	/**
+	 * Reads the sequence number from an {@link Events#INPUT_ACK} event and
+	 * acknowledges it.
+	 *
+	 * @param event
+	 *            The incoming ack event.
+	 * @return The number of inputs removed.
+	 */
+	@SuppressWarnings("unchecked")
+	public int acknowledge(Event event)
+	{
+		if (event.getType() != Events.INPUT_ACK
+				|| !(event.getSource() instanceof MessageBuffer))
+		{
+			throw new IllegalArgumentException("Event " + event
+					+ " is not an input ack");
+		}
+		int sequence = ((MessageBuffer<ChannelBuffer>) event.getSource())
+				.readInt();
+		return acknowledge(sequence);
+	}
+
+	/**
+	 * @return The inputs not yet acknowledged by the server, in the order in
+	 *         which they were added.
+	 */
+	public synchronized List<T> getPending()
+	{
+		List<T> inputs = new ArrayList<T>(pending.size());
+		for (Entry<T> entry : pending)
+		{
+			inputs.add(entry.input);
+		}
+		return inputs;
+	}
+
+	public synchronized int getLastAcknowledged()
+	{
+		return lastAcknowledged;
+	}
+
+	private static class Entry<T>
+	{
+		final int sequence;
+		final T input;
+
+		Entry(int sequence, T input)
+		{
+			this.sequence = sequence;
+			this.input = input;
+		}
+	}
+}
@@ -73,6 +73,13 @@ public class Events
 	 */
 	public static final byte NETWORK_MESSAGE = 0x1d;
 	
+	/**
+	 * Sent from server to client with the sequence number of the last client
+	 * input processed by the game room. Used by clients to reconcile
+	 * predicted state.
+	 */
+	public final static byte INPUT_ACK = 0x1e;
+	
 	public final static byte CHANGE_ATTRIBUTE = 0x20;
 
 	/**
@@ -80,6 +87,25 @@ public class Events
 	 */
 	public final static byte DISCONNECT = 0x22;
 	public final static byte EXCEPTION = 0x24;
+	
+	/**
+	 * Sent from client to server to measure the clock offset and round trip
+	 * time. The payload is <b>client transmit time (long) - echoed server
+	 * transmit time (long) - client receive time of that reply (long)</b>.
+	 */
+	public final static byte TIME_SYNC_REQUEST = 0x26;
+	
+	/**
+	 * Reply of the server to {@link #TIME_SYNC_REQUEST}. The payload is
+	 * <b>client transmit time (long) - server receive time (long) - server
+	 * transmit time (long)</b>.
+	 */
+	public final static byte TIME_SYNC_RESPONSE = 0x27;
+	/**
+	 * Several events received in one datagram. The payload is a sequence of
+	 * <b>length (unsigned short) - opcode - payload</b> frames, one per event.
+	 */
+	public final static byte BUNDLE = 0x28;
 
 	/**
 	 * Creates a network event with the source set to the object passed in as
@@ -5,6 +5,7 @@ import org.menacheri.jetclient.app.Session;
 import org.menacheri.jetclient.communication.DeliveryGuaranty.DeliveryGuarantyOptions;
 import org.menacheri.jetclient.communication.MessageBuffer;
 import org.menacheri.jetclient.communication.MessageSender;
+import org.menacheri.jetclient.communication.SequencedInputHistory;
 import org.menacheri.jetclient.event.Event;
 import org.menacheri.jetclient.event.Events;
 import org.menacheri.jetclient.event.NetworkEvent;
@@ -88,6 +89,9 @@ public abstract class AbstractSessionEventHandler implements
 		case Events.EXCEPTION:
 			onException(event);
 			break;
+		case Events.INPUT_ACK:
+			onInputAck(event);
+			break;
 		default:
 			onCustomEvent(event);
 			break;
@@ -200,6 +204,19 @@ public abstract class AbstractSessionEventHandler implements
 		getSession().close();
 	}
 
+	/**
+	 * Called when the server acknowledges the last input it processed. Games
+	 * using client side prediction should override this method and pass the
+	 * event to their {@link SequencedInputHistory}.
+	 * 
+	 * @param event
+	 *            The {@link Events#INPUT_ACK} event.
+	 */
+	public void onInputAck(Event event)
+	{
+
+	}
+
 	public void onCustomEvent(Event event)
 	{
 
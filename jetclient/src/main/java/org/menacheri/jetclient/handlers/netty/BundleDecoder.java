@@ -0,0 +1,54 @@
+package org.menacheri.jetclient.handlers.netty;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.menacheri.jetclient.event.Events;
+
+/**
+ * Splits an {@link Events#BUNDLE} datagram from jetserver into the frames of
+ * the events it carries and passes each one up the pipeline separately, so
+ * that the {@link MessageBufferEventDecoder} and the handlers after it see
+ * them as if they were sent in their own datagrams. Other datagrams are passed
+ * on unchanged. It should be the first handler of the pipeline.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+@Sharable
+public class BundleDecoder extends SimpleChannelUpstreamHandler
+{
+	@Override
+	public void messageReceived(ChannelHandlerContext ctx, MessageEvent e)
+			throws Exception
+	{
+		Object message = e.getMessage();
+		if (!(message instanceof ChannelBuffer))
+		{
+			super.messageReceived(ctx, e);
+			return;
+		}
+		ChannelBuffer buffer = (ChannelBuffer) message;
+		if (!buffer.readable()
+				|| buffer.getByte(buffer.readerIndex()) != Events.BUNDLE)
+		{
+			super.messageReceived(ctx, e);
+			return;
+		}
+		buffer.skipBytes(1);
+		while (buffer.readableBytes() >= 2)
+		{
+			int length = buffer.readUnsignedShort();
+			if (length > buffer.readableBytes())
+			{
+				// Truncated datagram, the rest cannot be framed.
+				break;
+			}
+			Channels.fireMessageReceived(ctx, buffer.readSlice(length),
+					e.getRemoteAddress());
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package org.menacheri.jetclient.handlers.netty;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelState;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.handler.codec.oneone.OneToOneDecoder;
+
+/**
+ * Inflates frames compressed by the PayloadCompressor of jetserver. A
+ * compressed frame has the {@link #COMPRESSED} bit set on its opcode followed
+ * by the uncompressed length as an int and the zlib data. The opcode is
+ * restored and the frame passed on as if it had been sent uncompressed, other
+ * frames are passed on unchanged. It should be placed right after the frame
+ * decoder. If the server uses a preset dictionary, the same one should be
+ * given to this decoder. An instance holds a native inflater so it is created
+ * per connection and released when the channel closes.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+public class PayloadDecompressor extends OneToOneDecoder
+{
+	public static final String NAME = "payloadDecompressor";
+
+	/**
+	 * The bit set on the opcode of a compressed frame.
+	 */
+	public static final int COMPRESSED = 0x80;
+
+	/**
+	 * The largest payload which will be inflated, protects against frames
+	 * which claim an absurd length.
+	 */
+	public static final int MAX_PAYLOAD_LENGTH = 16 * 1024 * 1024;
+
+	private final byte[] dictionary;
+	private final Inflater inflater = new Inflater();
+	private boolean closed;
+
+	/**
+	 * @param dictionary
+	 *            The preset dictionary used by the server, or null for none.
+	 */
+	public PayloadDecompressor(byte[] dictionary)
+	{
+		this.dictionary = dictionary;
+	}
+
+	@Override
+	protected Object decode(ChannelHandlerContext ctx, Channel channel,
+			Object msg) throws Exception
+	{
+		if (!(msg instanceof ChannelBuffer))
+		{
+			return msg;
+		}
+		ChannelBuffer frame = (ChannelBuffer) msg;
+		if (frame.readableBytes() < 5
+				|| 0 == (frame.getUnsignedByte(frame.readerIndex()) & COMPRESSED))
+		{
+			return msg;
+		}
+		int opcode = frame.readUnsignedByte() & ~COMPRESSED;
+		int length = frame.readInt();
+		if (length < 0 || length > MAX_PAYLOAD_LENGTH)
+		{
+			throw new DataFormatException("Invalid uncompressed length "
+					+ length);
+		}
+		byte[] deflated = new byte[frame.readableBytes()];
+		frame.readBytes(deflated);
+		ChannelBuffer inflated = ChannelBuffers.buffer(1 + length);
+		inflated.writeByte(opcode);
+		inflated.writeBytes(inflate(deflated, length));
+		return inflated;
+	}
+
+	private synchronized byte[] inflate(byte[] deflated, int length)
+			throws DataFormatException
+	{
+		if (closed)
+		{
+			throw new IllegalStateException("Decompressor is closed");
+		}
+		inflater.reset();
+		inflater.setInput(deflated);
+		byte[] payload = new byte[length];
+		int offset = 0;
+		while (offset < length)
+		{
+			int count = inflater.inflate(payload, offset, length - offset);
+			if (0 == count)
+			{
+				if (inflater.needsDictionary() && null != dictionary)
+				{
+					inflater.setDictionary(dictionary);
+				}
+				else if (inflater.finished() || inflater.needsInput()
+						|| inflater.needsDictionary())
+				{
+					throw new DataFormatException("Payload ended after "
+							+ offset + " of " + length + " bytes");
+				}
+			}
+			offset += count;
+		}
+		return payload;
+	}
+
+	@Override
+	public void handleUpstream(ChannelHandlerContext ctx, ChannelEvent evt)
+			throws Exception
+	{
+		if (evt instanceof ChannelStateEvent)
+		{
+			ChannelStateEvent e = (ChannelStateEvent) evt;
+			if (ChannelState.OPEN == e.getState()
+					&& Boolean.FALSE.equals(e.getValue()))
+			{
+				close();
+			}
+		}
+		super.handleUpstream(ctx, evt);
+	}
+
+	/**
+	 * Releases the inflater.
+	 */
+	public synchronized void close()
+	{
+		if (!closed)
+		{
+			closed = true;
+			inflater.end();
+		}
+	}
+}
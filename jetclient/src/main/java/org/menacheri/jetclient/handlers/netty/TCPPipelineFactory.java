@@ -42,10 +42,26 @@ public class TCPPipelineFactory implements ChannelPipelineFactory
 	 * Used to transmit the message to {@link Session}.
 	 */
 	private final DefaultToClientHandler defaultToClientHandler;
+	/**
+	 * Consumes time sync replies instead of passing them to the {@link Session}.
+	 */
+	private final TimeSyncHandler timeSyncHandler;
+	/**
+	 * The preset dictionary of compressed payloads, should match the one set
+	 * on the protocol of the server.
+	 */
+	private final byte[] compressionDictionary;
 
 	public TCPPipelineFactory(Session session)
+	{
+		this(session, null);
+	}
+
+	public TCPPipelineFactory(Session session, byte[] compressionDictionary)
 	{
 		this.defaultToClientHandler = new DefaultToClientHandler(session);
+		this.timeSyncHandler = new TimeSyncHandler(session);
+		this.compressionDictionary = compressionDictionary;
 	}
 
 	@Override
@@ -54,7 +70,10 @@ public class TCPPipelineFactory implements ChannelPipelineFactory
 		ChannelPipeline pipeline = Channels.pipeline();
 		pipeline.addLast("lengthDecoder", new LengthFieldBasedFrameDecoder(
 				Integer.MAX_VALUE, 0, 2, 0, 2));
+		pipeline.addLast(PayloadDecompressor.NAME, new PayloadDecompressor(
+				compressionDictionary));
 		pipeline.addLast("eventDecoder", EVENT_DECODER);
+		pipeline.addLast(TimeSyncHandler.getName(), timeSyncHandler);
 		pipeline.addLast(DefaultToClientHandler.getName(),
 				defaultToClientHandler);
 		
@@ -0,0 +1,79 @@
+package org.menacheri.jetclient.handlers.netty;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.menacheri.jetclient.app.Session;
+import org.menacheri.jetclient.communication.ClockSync;
+import org.menacheri.jetclient.communication.MessageBuffer;
+import org.menacheri.jetclient.communication.NettyMessageBuffer;
+import org.menacheri.jetclient.event.Event;
+import org.menacheri.jetclient.event.Events;
+
+/**
+ * Consumes the {@link Events#TIME_SYNC_RESPONSE}s from jetserver in the netty
+ * pipeline and adds a sample to the {@link ClockSync} of the session. Requests
+ * are created using {@link #createRequest(ClockSync)} and sent over tcp, for
+ * e.g. once per second, or a few times in a row right after login to converge
+ * quickly.
+ * 
+ * @author Abraham Menacherry
+ * 
+ */
+public class TimeSyncHandler extends SimpleChannelUpstreamHandler
+{
+	static final String NAME = "timeSyncHandler";
+	private final Session session;
+
+	public TimeSyncHandler(Session session)
+	{
+		this.session = session;
+	}
+
+	@Override
+	public void messageReceived(ChannelHandlerContext ctx, MessageEvent e)
+			throws Exception
+	{
+		Object message = e.getMessage();
+		if (!(message instanceof Event)
+				|| ((Event) message).getType() != Events.TIME_SYNC_RESPONSE)
+		{
+			super.messageReceived(ctx, e);
+			return;
+		}
+		long destination = System.currentTimeMillis();
+		@SuppressWarnings("unchecked")
+		MessageBuffer<ChannelBuffer> reply = (MessageBuffer<ChannelBuffer>) ((Event) message)
+				.getSource();
+		long originate = reply.readLong();
+		long receive = reply.readLong();
+		long transmit = reply.readLong();
+		ClockSync clockSync = session.getClockSync();
+		clockSync.addSample(originate, receive, transmit, destination);
+		clockSync.onReply(transmit, destination);
+	}
+
+	/**
+	 * Creates a {@link Events#TIME_SYNC_REQUEST} event which echoes the time
+	 * stamps of the last reply, so that the server can estimate the round
+	 * trip time too.
+	 * 
+	 * @param clockSync
+	 *            The clock sync of the session sending the request.
+	 * @return The event to be sent using the tcp message sender.
+	 */
+	public static Event createRequest(ClockSync clockSync)
+	{
+		NettyMessageBuffer request = new NettyMessageBuffer();
+		request.writeLong(System.currentTimeMillis());
+		request.writeLong(clockSync.getEchoTransmit());
+		request.writeLong(clockSync.getEchoReceive());
+		return Events.event(request, Events.TIME_SYNC_REQUEST);
+	}
+
+	public static String getName()
+	{
+		return NAME;
+	}
+}
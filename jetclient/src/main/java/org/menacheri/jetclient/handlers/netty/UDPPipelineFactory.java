@@ -14,12 +14,14 @@ public class UDPPipelineFactory implements ChannelPipelineFactory
 	 */
 	private static final ChannelPipeline pipeline;
 	
+	private static final BundleDecoder BUNDLE_DECODER;
 	private static final MessageBufferEventDecoder EVENT_DECODER;
 	private static final MessageBufferEventEncoder EVENT_ENCODER;
 	private static final UDPUpstreamHandler UDP_UPSTREAM_HANDLER;
 	
 	private static final UDPPipelineFactory INSTANCE;
 	static {
+		BUNDLE_DECODER = new BundleDecoder();
 		EVENT_DECODER = new MessageBufferEventDecoder();
 		EVENT_ENCODER = new MessageBufferEventEncoder();
 		UDP_UPSTREAM_HANDLER = new UDPUpstreamHandler();
@@ -30,6 +32,7 @@ public class UDPPipelineFactory implements ChannelPipelineFactory
 	static ChannelPipeline init()
 	{
 		ChannelPipeline pipeline = Channels.pipeline();
+		pipeline.addLast("bundleDecoder", BUNDLE_DECODER);
 		pipeline.addLast("eventDecoder", EVENT_DECODER);
 		pipeline.addLast("eventEncoder", EVENT_ENCODER);
 		pipeline.addLast("UDPUpstreamHandler",UDP_UPSTREAM_HANDLER);
@@ -0,0 +1,41 @@
+package org.menacheri.jetserver.app;
+
+import org.menacheri.jetserver.service.CheckpointService;
+
+/**
+ * Implemented by game rooms, or the state objects of game rooms, whose state
+ * should survive a restart of the server. The {@link CheckpointService}
+ * periodically takes a snapshot using {@link #checkpoint()} and during startup,
+ * before the servers accept connections, passes the last snapshot to
+ * {@link #restore(byte[])}.
+ * 
+ * @author Abraham Menacherry
+ * 
+ */
+public interface Checkpointable
+{
+	/**
+	 * Serializes the current state. This method is invoked on the lane of the
+	 * game room, so it can read the state without locks, but it should return
+	 * quickly. The returned array is a copy owned by the caller and will be
+	 * written to disk on another thread.
+	 * 
+	 * @return The serialized state.
+	 * @throws Exception
+	 *             If the state cannot be serialized, the checkpoint is
+	 *             skipped and the previous one is kept.
+	 */
+	byte[] checkpoint() throws Exception;
+
+	/**
+	 * Rebuilds the state from the bytes returned by an earlier invocation of
+	 * {@link #checkpoint()}.
+	 * 
+	 * @param state
+	 *            The serialized state.
+	 * @throws Exception
+	 *             If the state cannot be restored, the error is logged and
+	 *             the room starts from its initial state.
+	 */
+	void restore(byte[] state) throws Exception;
+}
@@ -1,5 +1,6 @@
 package org.menacheri.jetserver.app;
 
+import org.menacheri.jetserver.communication.ClockSync;
 import org.menacheri.jetserver.event.Event;
 import org.menacheri.jetserver.protocols.Protocol;
 
@@ -64,4 +65,13 @@ public interface PlayerSession extends Session
 	 * @param event The event to send to the {@link GameRoom}
 	 */
 	public void sendToGameRoom(Event event);
+	
+	/**
+	 * The estimate of the offset between the server clock and the clock of
+	 * the remote client, and of the round trip time to it. It is updated by
+	 * the time sync exchange initiated by the client.
+	 * 
+	 * @return The clock sync of this session.
+	 */
+	public ClockSync getClockSync();
 }
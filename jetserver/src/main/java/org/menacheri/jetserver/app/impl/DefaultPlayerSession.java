@@ -4,6 +4,7 @@ import org.jetlang.channels.MemoryChannel;
 import org.menacheri.jetserver.app.GameRoom;
 import org.menacheri.jetserver.app.Player;
 import org.menacheri.jetserver.app.PlayerSession;
+import org.menacheri.jetserver.communication.ClockSync;
 import org.menacheri.jetserver.concurrent.LaneStrategy.LaneStrategies;
 import org.menacheri.jetserver.event.Event;
 import org.menacheri.jetserver.event.EventDispatcher;
@@ -40,6 +41,11 @@ public class DefaultPlayerSession extends DefaultSession implements
 	 * protocol to be used with this session.
 	 */
 	protected Protocol protocol;
+	
+	/**
+	 * Offset and round trip time between the server and the remote client.
+	 */
+	protected final ClockSync clockSync = new ClockSync();
 
 	protected DefaultPlayerSession(PlayerSessionBuilder playerSessionBuilder)
 	{
@@ -138,6 +144,12 @@ public class DefaultPlayerSession extends DefaultSession implements
 		parentGameRoom.send(event);
 	}
 	
+	@Override
+	public ClockSync getClockSync()
+	{
+		return clockSync;
+	}
+	
 	@Override
 	public String toString()
 	{
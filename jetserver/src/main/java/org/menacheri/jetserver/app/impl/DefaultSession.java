@@ -32,9 +32,10 @@ public class DefaultSession implements Session
 	 */
 	protected final Object id;
 	/**
-	 * event dispatcher
+	 * event dispatcher, volatile since it can be replaced when the session is
+	 * handed off to another game room.
 	 */
-	protected EventDispatcher eventDispatcher;
+	protected volatile EventDispatcher eventDispatcher;
 
 	/**
 	 * session parameters
@@ -209,6 +210,19 @@ public class DefaultSession implements Session
 		return eventDispatcher;
 	}
 
+	/**
+	 * Replaces the dispatcher of this session, used when a session is moved to
+	 * a game room running on another lane. The old dispatcher is not closed by
+	 * this method.
+	 * 
+	 * @param eventDispatcher
+	 *            The new dispatcher for this session.
+	 */
+	protected void setEventDispatcher(EventDispatcher eventDispatcher)
+	{
+		this.eventDispatcher = eventDispatcher;
+	}
+
 	@Override
 	public void addHandler(EventHandler eventHandler)
 	{
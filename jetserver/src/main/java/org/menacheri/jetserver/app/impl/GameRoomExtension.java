@@ -0,0 +1,108 @@
+package org.menacheri.jetserver.app.impl;
+
+import org.menacheri.jetserver.app.PlayerSession;
+import org.menacheri.jetserver.app.impl.GameRoomSession.GameRoomSessionBuilder;
+import org.menacheri.jetserver.event.EventDispatcher;
+import org.menacheri.jetserver.event.NetworkEvent;
+import org.menacheri.jetserver.event.impl.NetworkEventListener;
+
+/**
+ * An optional feature of a {@link GameRoomSession}, for e.g. a bandwidth
+ * budget per session, which hooks into the life cycle of the room and of its
+ * sessions. Extensions are added to a room using
+ * {@link GameRoomSessionBuilder#extension(GameRoomExtension)} and are invoked
+ * in the order in which they were added. All the hooks do nothing by default.
+ * An instance belongs to a single room.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+public abstract class GameRoomExtension
+{
+	private GameRoomSession gameRoom;
+
+	/**
+	 * Invoked by the constructor of the room.
+	 */
+	void attach(GameRoomSession gameRoom)
+	{
+		if (null != this.gameRoom)
+		{
+			throw new IllegalStateException(getClass().getSimpleName()
+					+ " is already part of game room " + this.gameRoom);
+		}
+		this.gameRoom = gameRoom;
+		onAttach();
+	}
+
+	/**
+	 * Invoked by the constructor of the room once its dispatcher is created.
+	 * The room is not yet fully built, so this hook should not publish it to
+	 * other threads or services.
+	 */
+	protected void onAttach()
+	{
+
+	}
+
+	/**
+	 * @return The room to which this extension belongs.
+	 */
+	protected GameRoomSession getGameRoom()
+	{
+		return gameRoom;
+	}
+
+	/**
+	 * Invoked for each dispatcher whose handlers run the game logic of the
+	 * room, that is the dispatcher of the room, those of its sessions when
+	 * they connect and those of its parts, for e.g. a shard.
+	 *
+	 * @param dispatcher
+	 *            The dispatcher.
+	 */
+	protected void onDispatcher(EventDispatcher dispatcher)
+	{
+
+	}
+
+	/**
+	 * Invoked when a session connects or is handed off to the room.
+	 *
+	 * @param playerSession
+	 *            The session to which broadcasts are to be passed.
+	 * @return The listener for the session, or null to leave it to the next
+	 *         extension or the room.
+	 */
+	protected NetworkEventListener newNetworkEventListener(
+			PlayerSession playerSession)
+	{
+		return null;
+	}
+
+	/**
+	 * Invoked once the session is connected, or handed off, to the room.
+	 */
+	protected void afterSessionConnect(PlayerSession playerSession)
+	{
+
+	}
+
+	/**
+	 * Invoked for each broadcast, on the thread which sends it.
+	 *
+	 * @return false to skip the broadcast.
+	 */
+	protected boolean onBroadcast(NetworkEvent networkEvent)
+	{
+		return true;
+	}
+
+	/**
+	 * Invoked when the room is closed.
+	 */
+	protected void close()
+	{
+
+	}
+}
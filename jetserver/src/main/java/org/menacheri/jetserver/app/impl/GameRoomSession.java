@@ -1,23 +1,49 @@
 package org.menacheri.jetserver.app.impl;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.jboss.netty.channel.Channel;
+import org.jetlang.core.Disposable;
+
+import org.menacheri.jetserver.app.Checkpointable;
 import org.menacheri.jetserver.app.Game;
 import org.menacheri.jetserver.app.GameRoom;
 import org.menacheri.jetserver.app.Player;
 import org.menacheri.jetserver.app.PlayerSession;
 import org.menacheri.jetserver.app.Session;
+import org.menacheri.jetserver.app.state.JoinSnapshotCache;
+import org.menacheri.jetserver.app.state.RoomJournal;
+import org.menacheri.jetserver.app.state.StateHistory;
+import org.menacheri.jetserver.communication.EncodingCache;
+import org.menacheri.jetserver.communication.NettyTCPMessageSender;
+import org.menacheri.jetserver.communication.NettyUDPMessageSender;
+import org.menacheri.jetserver.communication.SequencedInputQueue;
+import org.menacheri.jetserver.concurrent.OverrunMonitor.OverrunListener;
+import org.menacheri.jetserver.concurrent.OverrunMonitor.OverrunPolicy;
 import org.menacheri.jetserver.concurrent.LaneStrategy;
 import org.menacheri.jetserver.concurrent.LaneStrategy.LaneStrategies;
 import org.menacheri.jetserver.event.Event;
+import org.menacheri.jetserver.event.EventDispatcher;
 import org.menacheri.jetserver.event.EventHandler;
+import org.menacheri.jetserver.event.Events;
 import org.menacheri.jetserver.event.NetworkEvent;
+import org.menacheri.jetserver.event.impl.DefaultNetworkEvent;
 import org.menacheri.jetserver.event.impl.EventDispatchers;
+import org.menacheri.jetserver.event.impl.ExecutorEventDispatcher;
+import org.menacheri.jetserver.event.impl.JetlangEventDispatcher;
 import org.menacheri.jetserver.event.impl.NetworkEventListener;
+import org.menacheri.jetserver.event.impl.PriorityNetworkEvent;
 import org.menacheri.jetserver.protocols.Protocol;
+import org.menacheri.jetserver.service.CheckpointService;
 import org.menacheri.jetserver.service.GameStateManagerService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,6 +77,49 @@ public abstract class GameRoomSession extends DefaultSession implements GameRoom
 	 */
 	protected Protocol protocol;
 	
+	/**
+	 * Decides the lane of the event dispatchers created for this room and for
+	 * the sessions handed off to it.
+	 */
+	protected final LaneStrategy<String, ExecutorService, GameRoom> laneStrategy;
+	
+	/**
+	 * Sessions of neighbouring game rooms which are temporarily receiving the
+	 * broadcasts of this room, for e.g. when a player is near the border of
+	 * two zones.
+	 */
+	protected final Set<PlayerSession> overlapSessions;
+	
+	/**
+	 * Used to order the locks of two game rooms during a handoff when their
+	 * identity hash codes collide.
+	 */
+	private static final Object HANDOFF_TIE_LOCK = new Object();
+	
+	/**
+	 * Optional features of this room, see {@link GameRoomExtension}.
+	 */
+	protected final List<GameRoomExtension> extensions;
+	
+	/**
+	 * Added to the drops counted by the connected sessions, so that only the
+	 * drops made while a session was in this room are counted. The count of a
+	 * session is subtracted when it joins, since its udp sender may have
+	 * dropped events in a room it was handed off from, and added back when it
+	 * leaves.
+	 */
+	protected final AtomicLong droppedEventsOffset = new AtomicLong();
+	
+	/**
+	 * Optional service which periodically checkpoints the state of this room
+	 * and restores it when the server is restarted.
+	 */
+	protected final CheckpointService checkpointService;
+	
+	private final Checkpointable checkpointable;
+	
+	private boolean initialized;
+	
 	protected GameRoomSession(GameRoomSessionBuilder gameRoomSessionBuilder)
 	{
 		super(gameRoomSessionBuilder);
@@ -58,11 +127,32 @@ public abstract class GameRoomSession extends DefaultSession implements GameRoom
 		this.parentGame = gameRoomSessionBuilder.parentGame;
 		this.gameRoomName = gameRoomSessionBuilder.gameRoomName;
 		this.protocol = gameRoomSessionBuilder.protocol;
+		this.laneStrategy = gameRoomSessionBuilder.laneStrategy;
+		this.overlapSessions = Collections
+				.newSetFromMap(new ConcurrentHashMap<PlayerSession, Boolean>());
 		if(null == gameRoomSessionBuilder.eventDispatcher)
 		{
 			this.eventDispatcher = EventDispatchers.newJetlangEventDispatcher(
-					this, gameRoomSessionBuilder.laneStrategy);
+					this, laneStrategy);
+		}
+		this.extensions = gameRoomSessionBuilder.newExtensions();
+		for (GameRoomExtension extension : extensions)
+		{
+			extension.attach(this);
+		}
+		extendDispatcher(this.eventDispatcher);
+		this.checkpointService = gameRoomSessionBuilder.checkpointService;
+		Checkpointable checkpointable = gameRoomSessionBuilder.checkpointable;
+		if (null == checkpointable && this instanceof Checkpointable)
+		{
+			checkpointable = (Checkpointable) this;
 		}
+		if (null != checkpointService && null == checkpointable)
+		{
+			throw new IllegalArgumentException("Game room " + gameRoomName
+					+ " has a checkpoint service but nothing to checkpoint");
+		}
+		this.checkpointable = checkpointable;
 	}
 	
 	public static class GameRoomSessionBuilder extends SessionBuilder
@@ -72,6 +162,16 @@ public abstract class GameRoomSession extends DefaultSession implements GameRoom
 		protected String gameRoomName;
 		protected Protocol protocol;
 		protected LaneStrategy<String, ExecutorService, GameRoom> laneStrategy;
+		protected RoomJournal journal;
+		protected JoinSnapshotCache joinSnapshotCache;
+		protected long sessionBandwidth;
+		protected long sendWindow = 50;
+		protected long tickBudget;
+		protected OverrunPolicy overrunPolicy;
+		protected OverrunListener overrunListener;
+		protected CheckpointService checkpointService;
+		protected Checkpointable checkpointable;
+		protected List<GameRoomExtension> extensions = new ArrayList<GameRoomExtension>();
 		
 		@Override
 		protected void validateAndSetValues()
@@ -92,9 +192,66 @@ public abstract class GameRoomSession extends DefaultSession implements GameRoom
 			{
 				laneStrategy = LaneStrategies.GROUP_BY_ROOM;
 			}
+			if (sessionBandwidth > 0)
+			{
+				requireJetlangDispatcher("Session bandwidth");
+			}
 			creationTime = System.currentTimeMillis();
 		}
 		
+		/**
+		 * Creates the extensions for the options set on this builder, so that
+		 * each room built by it gets its own, followed by the ones added using
+		 * {@link #extension(GameRoomExtension)}.
+		 */
+		protected List<GameRoomExtension> newExtensions()
+		{
+			List<GameRoomExtension> roomExtensions = new ArrayList<GameRoomExtension>();
+			if (tickBudget > 0)
+			{
+				roomExtensions.add(new TickBudgetExtension("GameRoom "
+						+ gameRoomName, tickBudget, overrunPolicy,
+						overrunListener));
+			}
+			if (sessionBandwidth > 0)
+			{
+				roomExtensions.add(new SessionBandwidthExtension(
+						sessionBandwidth, sendWindow));
+			}
+			if (null != joinSnapshotCache)
+			{
+				roomExtensions.add(new JoinSnapshotExtension(joinSnapshotCache));
+			}
+			if (null != journal)
+			{
+				roomExtensions.add(new JournalExtension(journal));
+			}
+			roomExtensions.addAll(extensions);
+			return roomExtensions;
+		}
+		
+		/**
+		 * Features which schedule tasks using
+		 * {@link GameRoomSession#scheduleOnLane(Runnable, long, long, TimeUnit)}
+		 * need the default dispatcher of the room or a
+		 * {@link JetlangEventDispatcher}.
+		 * 
+		 * @param feature
+		 *            Name of the feature, used in the error.
+		 * @throws IllegalArgumentException
+		 *             If some other dispatcher was set on this builder.
+		 */
+		protected void requireJetlangDispatcher(String feature)
+		{
+			if (null != eventDispatcher
+					&& !(eventDispatcher instanceof JetlangEventDispatcher))
+			{
+				throw new IllegalArgumentException(feature
+						+ " needs a JetlangEventDispatcher, not "
+						+ eventDispatcher);
+			}
+		}
+		
 		public GameRoomSessionBuilder sessions(Set<PlayerSession> sessions)
 		{
 			this.sessions = sessions;
@@ -119,12 +276,132 @@ public abstract class GameRoomSession extends DefaultSession implements GameRoom
 			return this;
 		}
 		
+		/**
+		 * Registers the room with the checkpoint service when it is created,
+		 * so that its state survives a restart of the server. The name of the
+		 * room identifies the checkpoint and should be stable across restarts.
+		 * 
+		 * @param checkpointService
+		 *            The service which takes and restores the checkpoints.
+		 * @param checkpointable
+		 *            Serializes and restores the state of the room. If null,
+		 *            the game room itself should implement
+		 *            {@link Checkpointable}.
+		 * @return Instance of this builder.
+		 */
+		public GameRoomSessionBuilder checkpointable(
+				CheckpointService checkpointService,
+				Checkpointable checkpointable)
+		{
+			this.checkpointService = checkpointService;
+			this.checkpointable = checkpointable;
+			return this;
+		}
+		
 		public GameRoomSessionBuilder laneStrategy(
 				LaneStrategy<String, ExecutorService, GameRoom> laneStrategy)
 		{
 			this.laneStrategy = laneStrategy;
 			return this;
 		}
+		
+		/**
+		 * Enables journaling of the events of the room, see
+		 * {@link JournalExtension}. The room closes the journal when it is
+		 * closed. A journal should be used by a single room.
+		 */
+		public GameRoomSessionBuilder journal(RoomJournal journal)
+		{
+			this.journal = journal;
+			return this;
+		}
+		
+		/**
+		 * Adds a feature to the room, see {@link GameRoomExtension}. The
+		 * instance can only be used by a single room.
+		 */
+		public GameRoomSessionBuilder extension(GameRoomExtension extension)
+		{
+			if (null == extension)
+			{
+				throw new IllegalArgumentException("Extension is null");
+			}
+			this.extensions.add(extension);
+			return this;
+		}
+		
+		/**
+		 * Sets the cache of the snapshot which the room sends to each player
+		 * session after it connects, see {@link JoinSnapshotExtension}.
+		 */
+		public GameRoomSessionBuilder joinSnapshotCache(
+				JoinSnapshotCache joinSnapshotCache)
+		{
+			this.joinSnapshotCache = joinSnapshotCache;
+			return this;
+		}
+		
+		/**
+		 * Caps the bytes per second which each player session receives from
+		 * {@link PriorityNetworkEvent}s. Pending updates are sent in the
+		 * order of their accumulated priority once every send window, see
+		 * {@link SessionBandwidthExtension}.
+		 * 
+		 * @param bytesPerSecond
+		 *            The budget of each session.
+		 * @param sendWindow
+		 *            The interval in milliseconds between two sends, 50 by
+		 *            default.
+		 */
+		public GameRoomSessionBuilder sessionBandwidth(long bytesPerSecond,
+				long sendWindow)
+		{
+			if (bytesPerSecond <= 0 || sendWindow <= 0)
+			{
+				throw new IllegalArgumentException(
+						"Bandwidth and send window should be positive");
+			}
+			this.sessionBandwidth = bytesPerSecond;
+			this.sendWindow = sendWindow;
+			return this;
+		}
+		
+		/**
+		 * Times each batch of events handled and each task scheduled on the
+		 * lane of the room against the budget, and applies the policy when it
+		 * is overrun repeatedly. Under {@link OverrunPolicy#DEGRADE} the room
+		 * skips every other FAST broadcast till it is back within budget. See
+		 * {@link TickBudgetExtension}.
+		 * 
+		 * @param budgetMillis
+		 *            The time a single tick or batch of events should take.
+		 * @param policy
+		 *            The action taken on repeated overruns.
+		 */
+		public GameRoomSessionBuilder tickBudget(long budgetMillis,
+				OverrunPolicy policy)
+		{
+			if (budgetMillis <= 0 || null == policy)
+			{
+				throw new IllegalArgumentException(
+						"Tick budget should be positive and policy not null");
+			}
+			this.tickBudget = budgetMillis;
+			this.overrunPolicy = policy;
+			return this;
+		}
+		
+		/**
+		 * Sets the listener notified under {@link OverrunPolicy#RELOCATE},
+		 * for e.g. to hand off the sessions of the room to a room on another
+		 * lane using {@link GameRoomSession#handoffSession(PlayerSession, GameRoomSession)}.
+		 */
+		public GameRoomSessionBuilder overrunListener(
+				OverrunListener overrunListener)
+		{
+			this.overrunListener = overrunListener;
+			return this;
+		}
 	}
 	
 	@Override
@@ -137,19 +414,40 @@ public abstract class GameRoomSession extends DefaultSession implements GameRoom
 	@Override
 	public abstract void onLogin(PlayerSession playerSession);
 	
+	/**
+	 * Completes the set up of the room once it is fully constructed, so that
+	 * no service sees a partly built sub class. It registers the room with
+	 * its checkpoint service, which restores the room right away if the
+	 * server has already restored the others. Should be called by the code
+	 * which creates the room, else it is called on the first connect. Calling
+	 * it again has no effect.
+	 */
+	public synchronized void initialize()
+	{
+		if (initialized)
+		{
+			return;
+		}
+		initialized = true;
+		if (null != checkpointService)
+		{
+			checkpointService.register(this, checkpointable);
+		}
+	}
+	
 	@Override
 	public synchronized boolean connectSession(PlayerSession playerSession)
 	{
 		if (!isShuttingDown)
 		{
+			initialize();
 			playerSession.setStatus(Session.Status.CONNECTING);
+			droppedEventsOffset.addAndGet(-getDroppedEventCount(playerSession));
 			sessions.add(playerSession);
 			playerSession.setGameRoom(this);
 			LOG.trace("Protocol to be applied is: {}",protocol.getClass().getName());
 			protocol.applyProtocol(playerSession,true);
-			createAndAddEventHandlers(playerSession);
-			playerSession.setStatus(Session.Status.CONNECTED);
-			afterSessionConnect(playerSession);
+			completeConnect(playerSession);
 			return true;
 			// TODO send event to all other sessions?
 		}
@@ -161,6 +459,22 @@ public abstract class GameRoomSession extends DefaultSession implements GameRoom
 		}
 	}
 
+	/**
+	 * The steps shared by a connect and a handoff, once the session has been
+	 * added to this room.
+	 */
+	private void completeConnect(PlayerSession playerSession)
+	{
+		createAndAddEventHandlers(playerSession);
+		extendDispatcher(playerSession.getEventDispatcher());
+		playerSession.setStatus(Session.Status.CONNECTED);
+		afterSessionConnect(playerSession);
+		for (GameRoomExtension extension : extensions)
+		{
+			extension.afterSessionConnect(playerSession);
+		}
+	}
+
 	@Override
 	public void afterSessionConnect(PlayerSession playerSession)
 	{
@@ -170,18 +484,246 @@ public abstract class GameRoomSession extends DefaultSession implements GameRoom
 	public synchronized boolean disconnectSession(PlayerSession playerSession)
 	{
 		final boolean removeHandlers = this.eventDispatcher.removeHandlersForSession(playerSession);
+		droppedEventsOffset.addAndGet(getDroppedEventCount(playerSession));
 		//playerSession.getEventDispatcher().clear(); // remove network handlers of the session.
 		return (removeHandlers && sessions.remove(playerSession));
 	}
 
+	/**
+	 * Moves a connected player session from this game room to the target game
+	 * room without re-applying the {@link Protocol} on the netty pipeline. The
+	 * channel, message senders and attributes of the session are retained. The
+	 * session gets a new event dispatcher on the lane of the target room and
+	 * {@link #onLogin(PlayerSession)} of the target room is invoked to add the
+	 * game handlers for the new zone. Both rooms are locked during the
+	 * transfer and reads on the tcp channel are suspended so that no incoming
+	 * event is lost in between. Events which were already queued on the old
+	 * dispatcher are processed by the old handlers before it is closed.
+	 * 
+	 * @param playerSession
+	 *            The session to be moved, it should be connected to this room.
+	 * @param targetRoom
+	 *            The room to which the session is handed off.
+	 * @return true if the session was moved, false if it does not belong to
+	 *         this room or either of the rooms is shutting down.
+	 */
+	public boolean handoffSession(PlayerSession playerSession,
+			GameRoomSession targetRoom)
+	{
+		if (this == targetRoom)
+		{
+			return false;
+		}
+		int thisHash = System.identityHashCode(this);
+		int targetHash = System.identityHashCode(targetRoom);
+		if (thisHash == targetHash)
+		{
+			synchronized (HANDOFF_TIE_LOCK)
+			{
+				return lockAndHandoff(this, targetRoom, playerSession,
+						targetRoom);
+			}
+		}
+		else if (thisHash < targetHash)
+		{
+			return lockAndHandoff(this, targetRoom, playerSession, targetRoom);
+		}
+		else
+		{
+			return lockAndHandoff(targetRoom, this, playerSession, targetRoom);
+		}
+	}
+	
+	private boolean lockAndHandoff(GameRoomSession first,
+			GameRoomSession second, PlayerSession playerSession,
+			GameRoomSession targetRoom)
+	{
+		synchronized (first)
+		{
+			synchronized (second)
+			{
+				return transferSession(playerSession, targetRoom);
+			}
+		}
+	}
+	
+	/**
+	 * Does the actual transfer of the session, called with the locks of both
+	 * the rooms held.
+	 */
+	protected boolean transferSession(PlayerSession playerSession,
+			GameRoomSession targetRoom)
+	{
+		if (isShuttingDown || targetRoom.isShuttingDown()
+				|| !sessions.contains(playerSession))
+		{
+			LOG.warn("Session {} cannot be handed off from {} to {}",
+					new Object[] { playerSession, this, targetRoom });
+			return false;
+		}
+		Channel channel = null;
+		if (playerSession.getTcpSender() instanceof NettyTCPMessageSender)
+		{
+			channel = ((NettyTCPMessageSender) playerSession.getTcpSender())
+					.getChannel();
+			channel.setReadable(false);
+		}
+		try
+		{
+			targetRoom.initialize();
+			disconnectSession(playerSession);
+			// The session might have been visible to the target room as it
+			// was near the border.
+			targetRoom.removeOverlapSession(playerSession);
+			EventDispatcher oldDispatcher = playerSession.getEventDispatcher();
+			if (playerSession instanceof DefaultSession)
+			{
+				((DefaultSession) playerSession).setEventDispatcher(targetRoom
+						.newSessionEventDispatcher(playerSession));
+				closeAfterPendingEvents(oldDispatcher);
+			}
+			else
+			{
+				oldDispatcher.clear();
+			}
+			playerSession.setStatus(Session.Status.CONNECTING);
+			playerSession.setGameRoom(targetRoom);
+			targetRoom.onLogin(playerSession);
+			targetRoom.droppedEventsOffset
+					.addAndGet(-getDroppedEventCount(playerSession));
+			targetRoom.sessions.add(playerSession);
+			targetRoom.completeConnect(playerSession);
+			LOG.trace("Session {} handed off from {} to {}", new Object[] {
+					playerSession, this, targetRoom });
+			return true;
+		}
+		finally
+		{
+			if (null != channel)
+			{
+				channel.setReadable(true);
+			}
+		}
+	}
+	
+	/**
+	 * Border overlap mode. The session, which is connected to a neighbouring
+	 * room, will also receive the broadcasts of this room until
+	 * {@link #removeOverlapSession(PlayerSession)} is called or the session is
+	 * handed off to this room. Events sent by the session still go to its own
+	 * room.
+	 * 
+	 * @param playerSession
+	 *            The session of a neighbouring room.
+	 * @return false if the session is already connected or overlapping with
+	 *         this room.
+	 */
+	public synchronized boolean addOverlapSession(PlayerSession playerSession)
+	{
+		if (isShuttingDown || sessions.contains(playerSession)
+				|| !overlapSessions.add(playerSession))
+		{
+			return false;
+		}
+		this.eventDispatcher.addHandler(new NetworkEventListener(playerSession));
+		return true;
+	}
+	
+	public synchronized boolean removeOverlapSession(PlayerSession playerSession)
+	{
+		if (overlapSessions.remove(playerSession))
+		{
+			return this.eventDispatcher.removeHandlersForSession(playerSession);
+		}
+		return false;
+	}
+	
+	/**
+	 * @return The sessions of neighbouring rooms which can currently see this
+	 *         room.
+	 */
+	public Set<PlayerSession> getOverlapSessions()
+	{
+		return overlapSessions;
+	}
+	
+	/**
+	 * Executes the task on the lane of this game room, serialized with the
+	 * event handlers of the room. Use this method to access state which is
+	 * confined to the room's lane, for e.g. a {@link StateHistory}, from other
+	 * threads.
+	 * 
+	 * @param task
+	 *            The task to be executed.
+	 */
+	public void executeOnLane(Runnable task)
+	{
+		if (eventDispatcher instanceof JetlangEventDispatcher)
+		{
+			((JetlangEventDispatcher) eventDispatcher).execute(task);
+		}
+		else
+		{
+			task.run();
+		}
+	}
+	
+	/**
+	 * Runs the task periodically on the lane of this game room. Used to drive
+	 * the tick of a game, for e.g. draining the {@link SequencedInputQueue} of
+	 * each session, simulating and sending the acks.
+	 * 
+	 * @return The disposable which can be used to stop the task.
+	 * @throws UnsupportedOperationException
+	 *             If the dispatcher of the room is not a
+	 *             {@link JetlangEventDispatcher}. The builder rejects such a
+	 *             dispatcher for the features of this class which schedule
+	 *             tasks, see
+	 *             {@link GameRoomSessionBuilder#requireJetlangDispatcher(String)}.
+	 */
+	public Disposable scheduleOnLane(Runnable task, long initialDelay,
+			long period, TimeUnit unit)
+	{
+		if (eventDispatcher instanceof JetlangEventDispatcher)
+		{
+			return ((JetlangEventDispatcher) eventDispatcher)
+					.scheduleAtFixedRate(task, initialDelay, period, unit);
+		}
+		LOG.error("Dispatcher {} of room {} cannot schedule tasks",
+				eventDispatcher, this);
+		throw new UnsupportedOperationException(
+				"Scheduling is supported only by a JetlangEventDispatcher");
+	}
+	
 	@Override
 	public void send(Event event) {
 		onEvent(event);
 	}
 	
+	/**
+	 * Broadcasts the event to the sessions of this room. The event gets an
+	 * {@link EncodingCache} so that each protocol encodes it once for all the
+	 * sessions, it should not be modified after this call. An extension of
+	 * the room may skip the event.
+	 */
 	@Override
 	public void sendBroadcast(NetworkEvent networkEvent)
 	{
+		for (GameRoomExtension extension : extensions)
+		{
+			if (!extension.onBroadcast(networkEvent))
+			{
+				return;
+			}
+		}
+		if (networkEvent instanceof DefaultNetworkEvent)
+		{
+			DefaultNetworkEvent event = (DefaultNetworkEvent) networkEvent;
+			if (null == event.getEncodingCache())
+			{
+				event.setEncodingCache(new EncodingCache());
+			}
+		}
 		onEvent(networkEvent);
 	}
 
@@ -189,10 +731,77 @@ public abstract class GameRoomSession extends DefaultSession implements GameRoom
 	public synchronized void close()
 	{
 		isShuttingDown = true;
-		for(PlayerSession session: sessions)
+		// Closing a session removes it from the set, so iterate over a copy.
+		for(PlayerSession session: new ArrayList<PlayerSession>(sessions))
 		{
 			session.close();
 		}
+		overlapSessions.clear();
+		for (GameRoomExtension extension : extensions)
+		{
+			extension.close();
+		}
+		if (initialized && null != checkpointService)
+		{
+			checkpointService.unregister(this);
+		}
+	}
+	
+	/**
+	 * Creates the event dispatcher of a session which is being handed off to
+	 * this room. Sub classes which place sessions on specific lanes should
+	 * override this method.
+	 * 
+	 * @param playerSession
+	 *            The incoming session.
+	 * @return The new dispatcher for the session.
+	 */
+	protected EventDispatcher newSessionEventDispatcher(
+			PlayerSession playerSession)
+	{
+		return EventDispatchers.newJetlangEventDispatcher(this, laneStrategy);
+	}
+	
+	/**
+	 * Passes the dispatcher to the extensions of this room. Used for the
+	 * dispatcher of the room and for those of its sessions, since the
+	 * handlers of both run the game logic of the room.
+	 * 
+	 * @param dispatcher
+	 *            The dispatcher of this room, of one of its sessions or of a
+	 *            part of the room, for e.g. a shard.
+	 */
+	protected void extendDispatcher(EventDispatcher dispatcher)
+	{
+		for (GameRoomExtension extension : extensions)
+		{
+			extension.onDispatcher(dispatcher);
+		}
+	}
+	
+	/**
+	 * Closes the dispatcher after the events already queued on its lane have
+	 * been processed.
+	 */
+	protected static void closeAfterPendingEvents(
+			final EventDispatcher dispatcher)
+	{
+		if (dispatcher instanceof JetlangEventDispatcher)
+		{
+			((JetlangEventDispatcher) dispatcher).getFiber().execute(
+					new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							dispatcher.close();
+						}
+					});
+		}
+		else
+		{
+			dispatcher.close();
+		}
 	}
 	
 	public PlayerSession getSessionInstance(Player player)
@@ -282,7 +891,7 @@ public abstract class GameRoomSession extends DefaultSession implements GameRoom
 	protected void createAndAddEventHandlers(PlayerSession playerSession)
 	{
 		// Create a network event listener for the player session.
-		EventHandler networkEventHandler = new NetworkEventListener(playerSession);
+		EventHandler networkEventHandler = newNetworkEventListener(playerSession);
 		// Add the handler to the game room's EventDispatcher so that it will
 		// pass game room network events to player session session.
 		this.eventDispatcher.addHandler(networkEventHandler);
@@ -290,4 +899,87 @@ public abstract class GameRoomSession extends DefaultSession implements GameRoom
 				+ "EventDispatcher of GameRoom {}, for session: {}", this,
 				playerSession);
 	}
+	
+	/**
+	 * Creates the listener which passes the broadcasts of this room to the
+	 * player session. An extension of the room, for e.g. the
+	 * {@link SessionBandwidthExtension}, may provide it instead.
+	 * 
+	 * @param playerSession
+	 *            The session receiving the broadcasts.
+	 * @return The listener to be added to the dispatcher of the room or of
+	 *         its shard.
+	 */
+	protected NetworkEventListener newNetworkEventListener(
+			PlayerSession playerSession)
+	{
+		for (GameRoomExtension extension : extensions)
+		{
+			NetworkEventListener listener = extension
+					.newNetworkEventListener(playerSession);
+			if (null != listener)
+			{
+				return listener;
+			}
+		}
+		return new NetworkEventListener(playerSession);
+	}
+	
+	/**
+	 * @param type
+	 *            The class of the extension.
+	 * @return The first extension of this room of the given type, null if it
+	 *         has none.
+	 */
+	public <T extends GameRoomExtension> T getExtension(Class<T> type)
+	{
+		for (GameRoomExtension extension : extensions)
+		{
+			if (type.isInstance(extension))
+			{
+				return type.cast(extension);
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @return The number of expired FAST network events discarded by the
+	 *         dispatcher of this room, the dispatchers of its sessions and
+	 *         their udp senders, instead of being sent late.
+	 */
+	public synchronized long getDroppedEventCount()
+	{
+		long dropped = droppedEventsOffset.get()
+				+ getDroppedEventCount(eventDispatcher);
+		for (PlayerSession playerSession : sessions)
+		{
+			dropped += getDroppedEventCount(playerSession);
+		}
+		return dropped;
+	}
+	
+	protected static long getDroppedEventCount(PlayerSession playerSession)
+	{
+		long dropped = getDroppedEventCount(playerSession.getEventDispatcher());
+		if (playerSession.getUdpSender() instanceof NettyUDPMessageSender)
+		{
+			dropped += ((NettyUDPMessageSender) playerSession.getUdpSender())
+					.getDroppedEventCount();
+		}
+		return dropped;
+	}
+	
+	protected static long getDroppedEventCount(EventDispatcher dispatcher)
+	{
+		if (dispatcher instanceof JetlangEventDispatcher)
+		{
+			return ((JetlangEventDispatcher) dispatcher).getDroppedEventCount();
+		}
+		if (dispatcher instanceof ExecutorEventDispatcher)
+		{
+			return ((ExecutorEventDispatcher) dispatcher).getDroppedEventCount();
+		}
+		return 0;
+	}
 }
@@ -0,0 +1,58 @@
+package org.menacheri.jetserver.app.impl;
+
+import org.menacheri.jetserver.app.PlayerSession;
+import org.menacheri.jetserver.app.state.JoinSnapshotCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends the snapshot held by a {@link JoinSnapshotCache} to each player
+ * session which connects, or is handed off, to the room. The snapshot is read
+ * on the lane of the room.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+public class JoinSnapshotExtension extends GameRoomExtension
+{
+	private static final Logger LOG = LoggerFactory
+			.getLogger(JoinSnapshotExtension.class);
+
+	private final JoinSnapshotCache joinSnapshotCache;
+
+	public JoinSnapshotExtension(JoinSnapshotCache joinSnapshotCache)
+	{
+		if (null == joinSnapshotCache)
+		{
+			throw new IllegalArgumentException("Join snapshot cache is null");
+		}
+		this.joinSnapshotCache = joinSnapshotCache;
+	}
+
+	@Override
+	protected void afterSessionConnect(final PlayerSession playerSession)
+	{
+		getGameRoom().executeOnLane(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					playerSession.onEvent(joinSnapshotCache
+							.createSnapshotEvent());
+				}
+				catch (Exception e)
+				{
+					LOG.error("Unable to send join snapshot to session {}: {}",
+							playerSession, e);
+				}
+			}
+		});
+	}
+
+	public JoinSnapshotCache getJoinSnapshotCache()
+	{
+		return joinSnapshotCache;
+	}
+}
@@ -0,0 +1,53 @@
+package org.menacheri.jetserver.app.impl;
+
+import org.menacheri.jetserver.app.PlayerSession;
+import org.menacheri.jetserver.app.state.RoomJournal;
+import org.menacheri.jetserver.event.Events;
+import org.menacheri.jetserver.event.impl.JournalEventHandler;
+
+/**
+ * Records the room level events and the incoming messages of all the player
+ * sessions of the room in a {@link RoomJournal}, which is closed along with
+ * the room.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+public class JournalExtension extends GameRoomExtension
+{
+	private final RoomJournal journal;
+
+	public JournalExtension(RoomJournal journal)
+	{
+		if (null == journal)
+		{
+			throw new IllegalArgumentException("Journal is null");
+		}
+		this.journal = journal;
+	}
+
+	@Override
+	protected void onAttach()
+	{
+		getGameRoom().getEventDispatcher().addHandler(
+				new JournalEventHandler(getGameRoom(), Events.ANY, journal));
+	}
+
+	@Override
+	protected void afterSessionConnect(PlayerSession playerSession)
+	{
+		playerSession.addHandler(new JournalEventHandler(playerSession,
+				Events.SESSION_MESSAGE, journal));
+	}
+
+	@Override
+	protected void close()
+	{
+		journal.close();
+	}
+
+	public RoomJournal getJournal()
+	{
+		return journal;
+	}
+}
@@ -0,0 +1,650 @@
+package org.menacheri.jetserver.app.impl;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jetlang.core.Disposable;
+import org.menacheri.jetserver.app.PlayerSession;
+import org.menacheri.jetserver.app.Session;
+import org.menacheri.jetserver.communication.MessageBuffer;
+import org.menacheri.jetserver.communication.NettyMessageBuffer;
+import org.menacheri.jetserver.event.Event;
+import org.menacheri.jetserver.event.Events;
+import org.menacheri.jetserver.event.SessionEventHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A game room for deterministic lockstep games, for e.g. RTS games, where the
+ * server does not simulate or snapshot the game state but only relays the
+ * inputs of all players. Clients send the input for a frame as a
+ * {@link Events#SESSION_MESSAGE} whose payload is <b>frame (int) - input
+ * bytes</b>. The room buffers the inputs and, once every player has sent the
+ * input of the current frame or the frame timeout has passed, broadcasts one
+ * bundle for the frame to all players. The bundle is a
+ * {@link Events#NETWORK_MESSAGE} with the payload <b>frame (int) - number of
+ * inputs (unsigned byte) - {slot (unsigned byte) - length (unsigned short) -
+ * input}</b>, where slot identifies the player. A room hence holds at most
+ * {@link #MAX_SLOTS} players and an input is at most
+ * {@link #MAX_INPUT_LENGTH} bytes. The bundle is encoded once and shared by all
+ * sessions. Players whose input is missing are left out of the bundle.
+ * <p>
+ * A player who misses a number of consecutive frames is treated as stalled
+ * and the room stops waiting for that player, so that one slow player does
+ * not hold up the others. The player rejoins as soon as an input for the
+ * current frame arrives. Inputs for frames which are already relayed are
+ * counted as late and dropped. {@link PlayerLag} keeps these statistics per
+ * player.
+ * <p>
+ * All frame state is confined to the lane of the room. Sessions connected to
+ * this room should not be given handlers which broadcast their incoming
+ * messages, the room relays them.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+public abstract class LockstepGameRoom extends GameRoomSession
+{
+	private static final Logger LOG = LoggerFactory
+			.getLogger(LockstepGameRoom.class);
+	/**
+	 * The number of inputs in a bundle is written as an unsigned byte.
+	 */
+	public static final int MAX_SLOTS = 255;
+	/**
+	 * The length of an input is written as an unsigned short.
+	 */
+	public static final int MAX_INPUT_LENGTH = 0xFFFF;
+
+	protected final long frameTimeout;
+	protected final long checkPeriod;
+	protected final int maxFramesAhead;
+	protected final int stallAfterMissedFrames;
+
+	/**
+	 * Inputs received for the current and future frames, by frame.
+	 */
+	private final Map<Integer, Map<PlayerSession, byte[]>> pendingFrames;
+	/**
+	 * Players in the order in which they joined.
+	 */
+	private final Map<PlayerSession, PlayerLag> players;
+	private final boolean[] usedSlots;
+	private int currentFrame;
+	private long frameStartTime;
+	private Disposable frameCheck;
+
+	protected LockstepGameRoom(LockstepGameRoomBuilder gameRoomSessionBuilder)
+	{
+		super(gameRoomSessionBuilder);
+		this.frameTimeout = gameRoomSessionBuilder.frameTimeout;
+		this.checkPeriod = gameRoomSessionBuilder.checkPeriod;
+		this.maxFramesAhead = gameRoomSessionBuilder.maxFramesAhead;
+		this.stallAfterMissedFrames = gameRoomSessionBuilder.stallAfterMissedFrames;
+		this.pendingFrames = new HashMap<Integer, Map<PlayerSession, byte[]>>();
+		this.players = new LinkedHashMap<PlayerSession, PlayerLag>();
+		this.usedSlots = new boolean[MAX_SLOTS];
+	}
+
+	public static class LockstepGameRoomBuilder extends GameRoomSessionBuilder
+	{
+		protected long frameTimeout;
+		protected long checkPeriod;
+		protected int maxFramesAhead;
+		protected int stallAfterMissedFrames;
+
+		@Override
+		protected void validateAndSetValues()
+		{
+			if (frameTimeout <= 0)
+			{
+				frameTimeout = 100;
+			}
+			if (checkPeriod <= 0)
+			{
+				checkPeriod = Math.max(1, frameTimeout / 10);
+			}
+			if (maxFramesAhead <= 0)
+			{
+				maxFramesAhead = 32;
+			}
+			if (stallAfterMissedFrames <= 0)
+			{
+				stallAfterMissedFrames = 3;
+			}
+			// The frame timeout is checked by a task scheduled on the lane.
+			requireJetlangDispatcher("Lockstep room");
+			super.validateAndSetValues();
+		}
+
+		/**
+		 * @param frameTimeout
+		 *            The maximum time in milliseconds for which a frame waits
+		 *            for missing inputs. Defaults to 100.
+		 * @return This builder
+		 */
+		public LockstepGameRoomBuilder frameTimeout(long frameTimeout)
+		{
+			this.frameTimeout = frameTimeout;
+			return this;
+		}
+
+		/**
+		 * @param checkPeriod
+		 *            The interval in milliseconds at which the frame timeout
+		 *            is checked. Defaults to a tenth of the frame timeout.
+		 * @return This builder
+		 */
+		public LockstepGameRoomBuilder checkPeriod(long checkPeriod)
+		{
+			this.checkPeriod = checkPeriod;
+			return this;
+		}
+
+		/**
+		 * @param maxFramesAhead
+		 *            Inputs for frames further than this ahead of the current
+		 *            frame are dropped. Defaults to 32.
+		 * @return This builder
+		 */
+		public LockstepGameRoomBuilder maxFramesAhead(int maxFramesAhead)
+		{
+			this.maxFramesAhead = maxFramesAhead;
+			return this;
+		}
+
+		/**
+		 * @param stallAfterMissedFrames
+		 *            The number of consecutive frames a player can miss
+		 *            before the room stops waiting for the player. Defaults to
+		 *            3.
+		 * @return This builder
+		 */
+		public LockstepGameRoomBuilder stallAfterMissedFrames(
+				int stallAfterMissedFrames)
+		{
+			this.stallAfterMissedFrames = stallAfterMissedFrames;
+			return this;
+		}
+	}
+
+	/**
+	 * Starts checking the frame timeout on the lane of the room.
+	 */
+	public synchronized void start()
+	{
+		if (null != frameCheck)
+		{
+			return;
+		}
+		executeOnLane(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				frameStartTime = System.currentTimeMillis();
+			}
+		});
+		frameCheck = scheduleOnLane(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				checkFrameTimeout();
+			}
+		}, checkPeriod, checkPeriod, TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized void stop()
+	{
+		if (null != frameCheck)
+		{
+			frameCheck.dispose();
+			frameCheck = null;
+		}
+	}
+
+	@Override
+	public synchronized void close()
+	{
+		stop();
+		super.close();
+	}
+
+	@Override
+	protected void createAndAddEventHandlers(final PlayerSession playerSession)
+	{
+		super.createAndAddEventHandlers(playerSession);
+		playerSession.addHandler(new LockstepInputHandler(playerSession));
+		executeOnLane(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				addPlayer(playerSession);
+			}
+		});
+	}
+
+	@Override
+	public synchronized boolean disconnectSession(
+			final PlayerSession playerSession)
+	{
+		executeOnLane(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				removePlayer(playerSession);
+			}
+		});
+		return super.disconnectSession(playerSession);
+	}
+
+	/**
+	 * Accepts the input of a player for a frame. Can be called from any
+	 * thread, the input is processed on the lane of the room.
+	 *
+	 * @param playerSession
+	 *            The player who sent the input.
+	 * @param frame
+	 *            The frame for which the input is meant.
+	 * @param input
+	 *            The opaque input of the player, at most
+	 *            {@link #MAX_INPUT_LENGTH} bytes.
+	 * @throws IllegalArgumentException
+	 *             If the input is too long to be bundled.
+	 */
+	public void submitInput(final PlayerSession playerSession,
+			final int frame, final byte[] input)
+	{
+		if (input.length > MAX_INPUT_LENGTH)
+		{
+			throw new IllegalArgumentException("Input of " + input.length
+					+ " bytes is longer than " + MAX_INPUT_LENGTH);
+		}
+		executeOnLane(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				onInput(playerSession, frame, input);
+			}
+		});
+	}
+
+	/**
+	 * Invoked on the lane after the bundle of a frame has been broadcast.
+	 * Sub classes can override this to run a server side simulation or to
+	 * record the frames. The default implementation does nothing.
+	 *
+	 * @param frame
+	 *            The frame which was completed.
+	 * @param inputs
+	 *            The inputs included in the bundle.
+	 */
+	protected void onFrameComplete(int frame, Map<PlayerSession, byte[]> inputs)
+	{
+
+	}
+
+	protected void onInput(PlayerSession playerSession, int frame,
+			byte[] input)
+	{
+		PlayerLag lag = players.get(playerSession);
+		if (null == lag)
+		{
+			LOG.trace("Input from session {} which is not a player",
+					playerSession);
+			return;
+		}
+		if (frame < currentFrame)
+		{
+			lag.lateInputs++;
+			return;
+		}
+		if (frame > currentFrame + maxFramesAhead)
+		{
+			lag.droppedInputs++;
+			return;
+		}
+		Map<PlayerSession, byte[]> inputs = pendingFrames.get(frame);
+		if (null == inputs)
+		{
+			inputs = new HashMap<PlayerSession, byte[]>();
+			pendingFrames.put(frame, inputs);
+		}
+		inputs.put(playerSession, input);
+		if (frame > lag.lastFrame)
+		{
+			lag.lastFrame = frame;
+		}
+		if (frame == currentFrame)
+		{
+			lag.recordDelay(System.currentTimeMillis() - frameStartTime);
+			lag.consecutiveMissed = 0;
+			completeReadyFrames();
+		}
+		else
+		{
+			// Input ahead of the frame, the player is not lagging.
+			lag.recordDelay(0);
+		}
+	}
+
+	protected void checkFrameTimeout()
+	{
+		if (!players.isEmpty()
+				&& System.currentTimeMillis() - frameStartTime >= frameTimeout)
+		{
+			completeFrame();
+			completeReadyFrames();
+		}
+	}
+
+	private void completeReadyFrames()
+	{
+		while (!players.isEmpty() && isCurrentFrameReady())
+		{
+			completeFrame();
+		}
+	}
+
+	private boolean isCurrentFrameReady()
+	{
+		Map<PlayerSession, byte[]> inputs = pendingFrames.get(currentFrame);
+		boolean waiting = false;
+		for (Map.Entry<PlayerSession, PlayerLag> entry : players.entrySet())
+		{
+			boolean received = (null != inputs && inputs
+					.containsKey(entry.getKey()));
+			if (!received)
+			{
+				if (!entry.getValue().isStalled())
+				{
+					return false;
+				}
+			}
+			else
+			{
+				waiting = true;
+			}
+		}
+		// If every player is stalled, wait for the timeout.
+		return waiting;
+	}
+
+	private void completeFrame()
+	{
+		int frame = currentFrame;
+		Map<PlayerSession, byte[]> inputs = pendingFrames.remove(frame);
+		if (null == inputs)
+		{
+			inputs = new HashMap<PlayerSession, byte[]>();
+		}
+		NettyMessageBuffer bundle = new NettyMessageBuffer();
+		bundle.writeInt(frame);
+		int count = 0;
+		for (PlayerSession playerSession : players.keySet())
+		{
+			if (inputs.containsKey(playerSession))
+			{
+				count++;
+			}
+		}
+		bundle.writeByte((byte) count);
+		for (Map.Entry<PlayerSession, PlayerLag> entry : players.entrySet())
+		{
+			PlayerLag lag = entry.getValue();
+			byte[] input = inputs.get(entry.getKey());
+			if (null == input)
+			{
+				lag.missedFrames++;
+				lag.consecutiveMissed++;
+				continue;
+			}
+			bundle.writeByte((byte) lag.slot);
+			bundle.writeShort(input.length);
+			bundle.writeBytes(input);
+		}
+		currentFrame++;
+		frameStartTime = System.currentTimeMillis();
+		sendBroadcast(Events.networkEvent(bundle));
+		onFrameComplete(frame, inputs);
+	}
+
+	private void addPlayer(PlayerSession playerSession)
+	{
+		if (players.containsKey(playerSession))
+		{
+			return;
+		}
+		int slot = -1;
+		for (int i = 0; i < usedSlots.length; i++)
+		{
+			if (!usedSlots[i])
+			{
+				slot = i;
+				break;
+			}
+		}
+		if (slot < 0)
+		{
+			LOG.error("No free lockstep slot for session {}", playerSession);
+			return;
+		}
+		usedSlots[slot] = true;
+		PlayerLag lag = new PlayerLag(slot);
+		// A new player starts from the current frame.
+		lag.lastFrame = currentFrame - 1;
+		players.put(playerSession, lag);
+	}
+
+	private void removePlayer(PlayerSession playerSession)
+	{
+		PlayerLag lag = players.remove(playerSession);
+		if (null != lag)
+		{
+			usedSlots[lag.slot] = false;
+			for (Map<PlayerSession, byte[]> inputs : pendingFrames.values())
+			{
+				inputs.remove(playerSession);
+			}
+			// The frame may have been waiting only for this player.
+			completeReadyFrames();
+		}
+	}
+
+	/**
+	 * @return The frame for which inputs are currently being collected. Should
+	 *         be read on the lane of the room.
+	 */
+	public int getCurrentFrame()
+	{
+		return currentFrame;
+	}
+
+	/**
+	 * @return The lag statistics of the player or null if the session is not
+	 *         a player of this room. Should be read on the lane of the room.
+	 */
+	public PlayerLag getPlayerLag(PlayerSession playerSession)
+	{
+		return players.get(playerSession);
+	}
+
+	public long getFrameTimeout()
+	{
+		return frameTimeout;
+	}
+
+	/**
+	 * Lag statistics and the bundle slot of a player.
+	 *
+	 * @author Abraham Menacherry
+	 *
+	 */
+	public class PlayerLag
+	{
+		private final int slot;
+		private int lastFrame;
+		private int lateInputs;
+		private int droppedInputs;
+		private int missedFrames;
+		private int consecutiveMissed;
+		private double averageDelay;
+		private boolean hasDelay;
+
+		PlayerLag(int slot)
+		{
+			this.slot = slot;
+		}
+
+		void recordDelay(long delay)
+		{
+			if (!hasDelay)
+			{
+				averageDelay = delay;
+				hasDelay = true;
+			}
+			else
+			{
+				averageDelay += (delay - averageDelay) / 8;
+			}
+		}
+
+		/**
+		 * @return The slot which identifies the player in frame bundles.
+		 */
+		public int getSlot()
+		{
+			return slot;
+		}
+
+		/**
+		 * @return The latest frame for which an input was received.
+		 */
+		public int getLastFrame()
+		{
+			return lastFrame;
+		}
+
+		/**
+		 * @return The number of frames the player is behind the room.
+		 */
+		public int getFramesBehind()
+		{
+			return Math.max(0, currentFrame - 1 - lastFrame);
+		}
+
+		/**
+		 * @return The number of inputs which arrived after their frame was
+		 *         relayed.
+		 */
+		public int getLateInputs()
+		{
+			return lateInputs;
+		}
+
+		/**
+		 * @return The number of inputs dropped for being too far ahead.
+		 */
+		public int getDroppedInputs()
+		{
+			return droppedInputs;
+		}
+
+		/**
+		 * @return The number of frames relayed without an input of this
+		 *         player.
+		 */
+		public int getMissedFrames()
+		{
+			return missedFrames;
+		}
+
+		/**
+		 * @return The moving average of the delay in milliseconds between the
+		 *         start of a frame and the arrival of the input of this
+		 *         player.
+		 */
+		public double getAverageDelay()
+		{
+			return averageDelay;
+		}
+
+		public boolean isStalled()
+		{
+			return consecutiveMissed >= stallAfterMissedFrames;
+		}
+	}
+
+	/**
+	 * Parses incoming lockstep inputs of a player session and passes them on
+	 * to the room.
+	 */
+	protected class LockstepInputHandler implements SessionEventHandler
+	{
+		private final PlayerSession playerSession;
+
+		public LockstepInputHandler(PlayerSession playerSession)
+		{
+			this.playerSession = playerSession;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public void onEvent(Event event)
+		{
+			if (!(event.getSource() instanceof MessageBuffer))
+			{
+				LOG.warn("Lockstep input of session {} is not a message buffer",
+						playerSession);
+				return;
+			}
+			// Read without moving the reader index, other handlers of the
+			// session may also read the buffer.
+			ChannelBuffer buffer = ((MessageBuffer<ChannelBuffer>) event
+					.getSource()).getNativeBuffer();
+			if (buffer.readableBytes() < 4)
+			{
+				LOG.warn("Lockstep input of session {} has no frame",
+						playerSession);
+				return;
+			}
+			if (buffer.readableBytes() - 4 > MAX_INPUT_LENGTH)
+			{
+				LOG.warn("Dropping lockstep input of {} bytes from session {}",
+						buffer.readableBytes() - 4, playerSession);
+				return;
+			}
+			int frame = buffer.getInt(buffer.readerIndex());
+			byte[] input = new byte[buffer.readableBytes() - 4];
+			buffer.getBytes(buffer.readerIndex() + 4, input);
+			submitInput(playerSession, frame, input);
+		}
+
+		@Override
+		public int getEventType()
+		{
+			return Events.SESSION_MESSAGE;
+		}
+
+		@Override
+		public Session getSession()
+		{
+			return playerSession;
+		}
+
+		@Override
+		public void setSession(Session session)
+		{
+			throw new UnsupportedOperationException(
+					"Session is a final field in this class. "
+							+ "It cannot be reset");
+		}
+	}
+}
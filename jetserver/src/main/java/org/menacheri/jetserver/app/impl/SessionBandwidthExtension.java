@@ -0,0 +1,142 @@
+package org.menacheri.jetserver.app.impl;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.jetlang.core.Disposable;
+import org.menacheri.jetserver.app.PlayerSession;
+import org.menacheri.jetserver.communication.BandwidthScheduler;
+import org.menacheri.jetserver.event.impl.NetworkEventListener;
+import org.menacheri.jetserver.event.impl.PriorityNetworkEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caps the bytes per second which each player session of the room receives
+ * from {@link PriorityNetworkEvent}s. The listener of each session gets a
+ * {@link BandwidthScheduler} and all the schedulers are flushed every send
+ * window on the lane of the room.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+public class SessionBandwidthExtension extends GameRoomExtension
+{
+	private static final Logger LOG = LoggerFactory
+			.getLogger(SessionBandwidthExtension.class);
+
+	private final long bytesPerSecond;
+	private final long sendWindow;
+	/**
+	 * The bandwidth scheduler of each player session receiving the broadcasts
+	 * of the room.
+	 */
+	private final Map<PlayerSession, BandwidthScheduler> schedulers;
+	private Disposable sendWindowTask;
+
+	/**
+	 * @param bytesPerSecond
+	 *            The budget of each session.
+	 * @param sendWindow
+	 *            The interval in milliseconds between two sends.
+	 */
+	public SessionBandwidthExtension(long bytesPerSecond, long sendWindow)
+	{
+		if (bytesPerSecond <= 0 || sendWindow <= 0)
+		{
+			throw new IllegalArgumentException(
+					"Bandwidth and send window should be positive");
+		}
+		this.bytesPerSecond = bytesPerSecond;
+		this.sendWindow = sendWindow;
+		this.schedulers = new ConcurrentHashMap<PlayerSession, BandwidthScheduler>();
+	}
+
+	@Override
+	protected NetworkEventListener newNetworkEventListener(
+			PlayerSession playerSession)
+	{
+		BandwidthScheduler scheduler = new BandwidthScheduler(playerSession,
+				bytesPerSecond, sendWindow);
+		schedulers.put(playerSession, scheduler);
+		startSendWindow();
+		return new NetworkEventListener(playerSession, scheduler);
+	}
+
+	private synchronized void startSendWindow()
+	{
+		if (null != sendWindowTask)
+		{
+			return;
+		}
+		sendWindowTask = getGameRoom().scheduleOnLane(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				flush();
+			}
+		}, sendWindow, sendWindow, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Sends the pending priority updates of every session within its budget.
+	 * Schedulers of sessions which left the room are discarded.
+	 */
+	protected void flush()
+	{
+		Iterator<Map.Entry<PlayerSession, BandwidthScheduler>> it = schedulers
+				.entrySet().iterator();
+		while (it.hasNext())
+		{
+			Map.Entry<PlayerSession, BandwidthScheduler> entry = it.next();
+			PlayerSession playerSession = entry.getKey();
+			if (playerSession.getGameRoom() != getGameRoom()
+					|| playerSession.isShuttingDown())
+			{
+				it.remove();
+				continue;
+			}
+			try
+			{
+				entry.getValue().flush();
+			}
+			catch (Exception e)
+			{
+				LOG.error("Unable to flush bandwidth scheduler of {}: {}",
+						playerSession, e);
+			}
+		}
+	}
+
+	@Override
+	protected synchronized void close()
+	{
+		if (null != sendWindowTask)
+		{
+			sendWindowTask.dispose();
+		}
+		schedulers.clear();
+	}
+
+	/**
+	 * @return The bandwidth scheduler of the session or null if it is not
+	 *         receiving the broadcasts of the room.
+	 */
+	public BandwidthScheduler getBandwidthScheduler(PlayerSession playerSession)
+	{
+		return schedulers.get(playerSession);
+	}
+
+	public long getBytesPerSecond()
+	{
+		return bytesPerSecond;
+	}
+
+	public long getSendWindow()
+	{
+		return sendWindow;
+	}
+}
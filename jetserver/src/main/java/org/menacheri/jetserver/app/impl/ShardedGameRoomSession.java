@@ -0,0 +1,378 @@
+package org.menacheri.jetserver.app.impl;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+
+import org.menacheri.jetserver.app.GameRoom;
+import org.menacheri.jetserver.app.Player;
+import org.menacheri.jetserver.app.PlayerSession;
+import org.menacheri.jetserver.app.impl.DefaultPlayerSession.PlayerSessionBuilder;
+import org.menacheri.jetserver.concurrent.Lane;
+import org.menacheri.jetserver.concurrent.LaneStrategy;
+import org.menacheri.jetserver.concurrent.LaneStrategy.LaneStrategies;
+import org.menacheri.jetserver.concurrent.Lanes;
+import org.menacheri.jetserver.event.Event;
+import org.menacheri.jetserver.event.EventDispatcher;
+import org.menacheri.jetserver.event.EventHandler;
+import org.menacheri.jetserver.event.Events;
+import org.menacheri.jetserver.event.impl.EventDispatchers;
+import org.menacheri.jetserver.event.impl.NetworkEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A game room whose player sessions are partitioned into a number of
+ * {@link Shard}s, each shard running on its own {@link Lane}. The event
+ * dispatcher of a player session is created on the lane of its shard, so the
+ * handlers added in {@link #onLogin(PlayerSession)} for players in different
+ * shards process their inputs in parallel. The {@link GameRoom} API is
+ * unchanged, game code only needs to be aware that handlers of two players may
+ * now run on different threads.
+ * <p>
+ * Room wide broadcasts done through {@link #sendBroadcast(org.menacheri.jetserver.event.NetworkEvent)}
+ * are first published on the room's own lane, which acts as the merge point
+ * and gives all broadcasts a single order, and are then fanned out once per
+ * shard. Each shard delivers them to its own sessions on its own lane. Events
+ * that every shard needs to react to can be sent on the cross shard bus using
+ * {@link #publishToShards(Event)} and received using
+ * {@link #addShardHandler(EventHandler)}.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+public abstract class ShardedGameRoomSession extends GameRoomSession
+{
+	private static final Logger LOG = LoggerFactory
+			.getLogger(ShardedGameRoomSession.class);
+
+	/**
+	 * The shards of this room, the array is never modified after construction.
+	 */
+	protected final Shard[] shards;
+
+	/**
+	 * Session attribute which holds the shard chosen for a session when its
+	 * dispatcher was created. The session joins the shard only on connect.
+	 */
+	private static final String SHARD = ShardedGameRoomSession.class
+			.getName() + ".shard";
+
+	/**
+	 * Holds the shard of each connected player session of this room.
+	 */
+	protected final ConcurrentMap<PlayerSession, Shard> sessionShards;
+
+	protected ShardedGameRoomSession(
+			ShardedGameRoomSessionBuilder gameRoomSessionBuilder)
+	{
+		super(gameRoomSessionBuilder);
+		this.sessionShards = new ConcurrentHashMap<PlayerSession, Shard>();
+		this.shards = new Shard[gameRoomSessionBuilder.numOfShards];
+		for (int i = 0; i < shards.length; i++)
+		{
+			Lane<String, ExecutorService> lane = gameRoomSessionBuilder.shardLaneStrategy
+					.chooseLane(this);
+			shards[i] = new Shard(i, lane);
+			extendDispatcher(shards[i].getEventDispatcher());
+		}
+		// All broadcasts are merged on the room's lane and then handed over
+		// to each shard.
+		this.eventDispatcher.addHandler(new ShardFanOutHandler());
+	}
+
+	public static class ShardedGameRoomSessionBuilder extends
+			GameRoomSessionBuilder
+	{
+		protected int numOfShards;
+		protected LaneStrategy<String, ExecutorService, GameRoom> shardLaneStrategy;
+
+		@Override
+		protected void validateAndSetValues()
+		{
+			if (numOfShards <= 0)
+			{
+				numOfShards = Lanes.LANES.getNumOfCores();
+			}
+			if (null == shardLaneStrategy)
+			{
+				shardLaneStrategy = LaneStrategies.ROUND_ROBIN;
+			}
+			super.validateAndSetValues();
+		}
+
+		/**
+		 * @param numOfShards
+		 *            The number of partitions of the player set. Defaults to
+		 *            the number of lanes of the server.
+		 * @return This builder
+		 */
+		public ShardedGameRoomSessionBuilder numOfShards(int numOfShards)
+		{
+			this.numOfShards = numOfShards;
+			return this;
+		}
+
+		/**
+		 * @param shardLaneStrategy
+		 *            The strategy used to select a lane for each shard.
+		 *            Defaults to {@link LaneStrategies#ROUND_ROBIN} so that
+		 *            shards are spread over different lanes.
+		 * @return This builder
+		 */
+		public ShardedGameRoomSessionBuilder shardLaneStrategy(
+				LaneStrategy<String, ExecutorService, GameRoom> shardLaneStrategy)
+		{
+			this.shardLaneStrategy = shardLaneStrategy;
+			return this;
+		}
+	}
+
+	/**
+	 * A partition of the player sessions of a sharded room. Each shard has its
+	 * own {@link EventDispatcher} on its own lane, which is used to deliver
+	 * broadcasts and cross shard events to the sessions of the shard.
+	 *
+	 * @author Abraham Menacherry
+	 *
+	 */
+	public static class Shard
+	{
+		private final int index;
+		private final Lane<String, ExecutorService> lane;
+		private final EventDispatcher eventDispatcher;
+		private final Set<PlayerSession> sessions;
+
+		protected Shard(int index, Lane<String, ExecutorService> lane)
+		{
+			this.index = index;
+			this.lane = lane;
+			this.eventDispatcher = EventDispatchers
+					.newJetlangEventDispatcher(lane);
+			this.sessions = Collections
+					.newSetFromMap(new ConcurrentHashMap<PlayerSession, Boolean>());
+		}
+
+		public int getIndex()
+		{
+			return index;
+		}
+
+		public Lane<String, ExecutorService> getLane()
+		{
+			return lane;
+		}
+
+		public EventDispatcher getEventDispatcher()
+		{
+			return eventDispatcher;
+		}
+
+		/**
+		 * @return The connected sessions of this shard, the set is thread
+		 *         safe but should not be modified by game code.
+		 */
+		public Set<PlayerSession> getSessions()
+		{
+			return sessions;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "Shard [index=" + index + ", lane=" + lane + ", sessions="
+					+ sessions.size() + "]";
+		}
+	}
+
+	/**
+	 * Creates the player session with an event dispatcher on the lane of the
+	 * least loaded shard. The session is counted in the shard only once it
+	 * connects, so a session which never connects leaves nothing behind.
+	 */
+	@Override
+	public PlayerSession getSessionInstance(Player player)
+	{
+		Shard shard = leastLoadedShard();
+		PlayerSessionBuilder builder = new PlayerSessionBuilder();
+		builder.parentGameRoom(this).player(player);
+		builder.eventDispatcher(EventDispatchers.newJetlangEventDispatcher(shard
+				.getLane()));
+		PlayerSession playerSession = builder.build();
+		playerSession.setAttribute(SHARD, shard);
+		return playerSession;
+	}
+
+	/**
+	 * Sessions handed off from another room are placed on the least loaded
+	 * shard.
+	 */
+	@Override
+	protected EventDispatcher newSessionEventDispatcher(
+			PlayerSession playerSession)
+	{
+		Shard shard = leastLoadedShard();
+		playerSession.setAttribute(SHARD, shard);
+		return EventDispatchers.newJetlangEventDispatcher(shard.getLane());
+	}
+
+	@Override
+	public synchronized boolean disconnectSession(PlayerSession playerSession)
+	{
+		Shard shard = sessionShards.remove(playerSession);
+		boolean removeHandlers = false;
+		if (null != shard)
+		{
+			shard.sessions.remove(playerSession);
+			removeHandlers = shard.eventDispatcher
+					.removeHandlersForSession(playerSession);
+		}
+		droppedEventsOffset.addAndGet(getDroppedEventCount(playerSession));
+		return (removeHandlers && sessions.remove(playerSession));
+	}
+
+	/**
+	 * Publishes the event on the cross shard bus. The event is delivered
+	 * directly to the dispatcher of every shard, without passing through the
+	 * room's lane, and will be received by the handlers added using
+	 * {@link #addShardHandler(EventHandler)}.
+	 *
+	 * @param event
+	 *            The event to be delivered to all shards.
+	 */
+	public void publishToShards(Event event)
+	{
+		for (Shard shard : shards)
+		{
+			shard.eventDispatcher.fireEvent(event);
+		}
+	}
+
+	/**
+	 * Adds the handler to the dispatcher of every shard. Note that the same
+	 * handler instance will be invoked from the lanes of all the shards.
+	 *
+	 * @param eventHandler
+	 *            The handler for cross shard events.
+	 */
+	public void addShardHandler(EventHandler eventHandler)
+	{
+		for (Shard shard : shards)
+		{
+			shard.eventDispatcher.addHandler(eventHandler);
+		}
+	}
+
+	public void removeShardHandler(EventHandler eventHandler)
+	{
+		for (Shard shard : shards)
+		{
+			shard.eventDispatcher.removeHandler(eventHandler);
+		}
+	}
+
+	/**
+	 * @param playerSession
+	 *            A session connected to this room.
+	 * @return The shard to which the session belongs or null if it is not
+	 *         connected to this room.
+	 */
+	public Shard getShard(PlayerSession playerSession)
+	{
+		return sessionShards.get(playerSession);
+	}
+
+	public Shard[] getShards()
+	{
+		return shards;
+	}
+
+	/**
+	 * Includes the expired events dropped by the dispatchers of the shards.
+	 */
+	@Override
+	public synchronized long getDroppedEventCount()
+	{
+		long dropped = super.getDroppedEventCount();
+		for (Shard shard : shards)
+		{
+			dropped += getDroppedEventCount(shard.eventDispatcher);
+		}
+		return dropped;
+	}
+
+	@Override
+	public synchronized void close()
+	{
+		super.close();
+		for (Shard shard : shards)
+		{
+			shard.eventDispatcher.close();
+		}
+	}
+
+	/**
+	 * Adds the {@link NetworkEventListener} of the session to the dispatcher
+	 * of its shard instead of the room's dispatcher.
+	 */
+	@Override
+	protected void createAndAddEventHandlers(PlayerSession playerSession)
+	{
+		Object attribute = playerSession.getAttribute(SHARD);
+		if (!(attribute instanceof Shard) || !isShardOfThisRoom((Shard) attribute))
+		{
+			LOG.error("Session {} was not created by sharded room {}",
+					playerSession, this);
+			throw new IllegalArgumentException("Session " + playerSession
+					+ " does not belong to any shard of this room");
+		}
+		Shard shard = (Shard) attribute;
+		sessionShards.put(playerSession, shard);
+		shard.sessions.add(playerSession);
+		shard.eventDispatcher.addHandler(newNetworkEventListener(playerSession));
+		LOG.trace("Added Network handler to shard {} of GameRoom {}, "
+				+ "for session: {}", new Object[] { shard.index, this,
+				playerSession });
+	}
+
+	private boolean isShardOfThisRoom(Shard shard)
+	{
+		return shard.index < shards.length && shards[shard.index] == shard;
+	}
+
+	protected Shard leastLoadedShard()
+	{
+		Shard leastLoaded = shards[0];
+		for (int i = 1; i < shards.length; i++)
+		{
+			if (shards[i].sessions.size() < leastLoaded.sessions.size())
+			{
+				leastLoaded = shards[i];
+			}
+		}
+		return leastLoaded;
+	}
+
+	/**
+	 * Runs on the room's lane and hands over each broadcast to all the shards.
+	 *
+	 * @author Abraham Menacherry
+	 *
+	 */
+	private class ShardFanOutHandler implements EventHandler
+	{
+		@Override
+		public void onEvent(Event event)
+		{
+			publishToShards(event);
+		}
+
+		@Override
+		public int getEventType()
+		{
+			return Events.NETWORK_MESSAGE;
+		}
+	}
+}
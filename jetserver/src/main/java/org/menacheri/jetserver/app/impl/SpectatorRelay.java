@@ -0,0 +1,318 @@
+package org.menacheri.jetserver.app.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.menacheri.jetserver.app.PlayerSession;
+import org.menacheri.jetserver.app.Session;
+import org.menacheri.jetserver.communication.MessageBuffer;
+import org.menacheri.jetserver.communication.MessageSender.Reliable;
+import org.menacheri.jetserver.communication.NettyMessageBuffer;
+import org.menacheri.jetserver.communication.NettyTCPMessageSender;
+import org.menacheri.jetserver.concurrent.ManagedExecutor;
+import org.menacheri.jetserver.concurrent.NamedThreadFactory;
+import org.menacheri.jetserver.event.Event;
+import org.menacheri.jetserver.event.EventHandler;
+import org.menacheri.jetserver.event.Events;
+import org.menacheri.jetserver.event.NetworkEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Relays the outbound stream of a game room to spectators without involving
+ * the lane of the room. The only work done on the room's lane is to add each
+ * broadcast to a queue. Relay threads, running at minimum priority, drain the
+ * queue every batch period, optionally holding back the broadcasts which are
+ * younger than the delay, encode the batch once and write it directly to the
+ * tcp sender of each spectator. A spectator whose channel is not writable,
+ * i.e. whose socket buffer is full, skips the batch instead of queuing it, so
+ * slow spectators can neither slow down the players nor exhaust the memory of
+ * the server.
+ * <p>
+ * A batch is sent as a single {@link Events#NETWORK_MESSAGE} whose payload is
+ * <b>count (int) - {length (int) - broadcast payload}</b>. Only broadcasts
+ * whose source is a {@link MessageBuffer}, {@link ChannelBuffer} or byte[] are
+ * relayed.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+public class SpectatorRelay
+{
+	private static final Logger LOG = LoggerFactory
+			.getLogger(SpectatorRelay.class);
+
+	private final long batchPeriod;
+	private final long delay;
+	private final int fanOutThreads;
+	private final Set<PlayerSession> spectators;
+	private final ConcurrentLinkedQueue<Broadcast> pending;
+	private final ScheduledExecutorService batchExecutor;
+	private final ExecutorService fanOutExecutor;
+	private final AtomicLong skippedWrites;
+	private final AtomicLong batches;
+	private final EventHandler roomHandler;
+	private GameRoomSession room;
+
+	/**
+	 * @param batchPeriod
+	 *            The interval in milliseconds at which batches are sent.
+	 * @param delay
+	 *            The number of milliseconds by which spectators trail the
+	 *            players, 0 for no delay.
+	 * @param fanOutThreads
+	 *            The number of threads which write the batches to the
+	 *            spectators.
+	 */
+	public SpectatorRelay(long batchPeriod, long delay, int fanOutThreads)
+	{
+		if (batchPeriod <= 0 || delay < 0 || fanOutThreads <= 0)
+		{
+			throw new IllegalArgumentException(
+					"Invalid batch period, delay or number of threads");
+		}
+		this.batchPeriod = batchPeriod;
+		this.delay = delay;
+		this.fanOutThreads = fanOutThreads;
+		this.spectators = new CopyOnWriteArraySet<PlayerSession>();
+		this.pending = new ConcurrentLinkedQueue<Broadcast>();
+		this.skippedWrites = new AtomicLong();
+		this.batches = new AtomicLong();
+		this.batchExecutor = ManagedExecutor
+				.newSingleThreadScheduledExecutor(new NamedThreadFactory(
+						"SpectatorBatch", true, Thread.MIN_PRIORITY));
+		this.fanOutExecutor = ManagedExecutor.newFixedThreadPool(fanOutThreads,
+				new NamedThreadFactory("SpectatorFanOut", true,
+						Thread.MIN_PRIORITY));
+		this.roomHandler = new EventHandler()
+		{
+			@Override
+			public void onEvent(Event event)
+			{
+				Object source = event.getSource();
+				if (source instanceof MessageBuffer)
+				{
+					source = ((MessageBuffer<?>) source).getNativeBuffer();
+				}
+				if (source instanceof ChannelBuffer)
+				{
+					// Only the indexes are copied on the lane.
+					source = ((ChannelBuffer) source).duplicate();
+				}
+				if (source instanceof ChannelBuffer || source instanceof byte[])
+				{
+					pending.add(new Broadcast(System.currentTimeMillis(),
+							source));
+				}
+			}
+
+			@Override
+			public int getEventType()
+			{
+				return Events.NETWORK_MESSAGE;
+			}
+		};
+	}
+
+	/**
+	 * Subscribes the relay to the broadcasts of the room and starts sending
+	 * batches. A relay serves a single room.
+	 */
+	public synchronized void attach(GameRoomSession gameRoom)
+	{
+		if (null != room)
+		{
+			throw new IllegalStateException("Relay is already attached to "
+					+ room);
+		}
+		this.room = gameRoom;
+		gameRoom.getEventDispatcher().addHandler(roomHandler);
+		batchExecutor.scheduleAtFixedRate(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					flush(System.currentTimeMillis());
+				}
+				catch (Exception e)
+				{
+					LOG.error("Error while relaying to spectators: {}", e);
+				}
+			}
+		}, batchPeriod, batchPeriod, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Unsubscribes from the room and stops the relay threads.
+	 */
+	public synchronized void close()
+	{
+		if (null != room)
+		{
+			room.getEventDispatcher().removeHandler(roomHandler);
+		}
+		batchExecutor.shutdown();
+		fanOutExecutor.shutdown();
+		spectators.clear();
+		pending.clear();
+	}
+
+	public boolean addSpectator(PlayerSession spectator)
+	{
+		return spectators.add(spectator);
+	}
+
+	public boolean removeSpectator(PlayerSession spectator)
+	{
+		return spectators.remove(spectator);
+	}
+
+	/**
+	 * Sends an event, for e.g. a caster's message, to the spectators along
+	 * with the next batch.
+	 */
+	public void publish(NetworkEvent event)
+	{
+		roomHandler.onEvent(event);
+	}
+
+	/**
+	 * Sends all the broadcasts older than the delay as one batch.
+	 *
+	 * @param now
+	 *            The current time in milliseconds.
+	 * @return The number of broadcasts in the batch.
+	 */
+	protected int flush(long now)
+	{
+		List<Object> batch = new ArrayList<Object>();
+		int size = 4;
+		Broadcast broadcast;
+		while (null != (broadcast = pending.peek())
+				&& broadcast.timestamp <= now - delay)
+		{
+			pending.poll();
+			batch.add(broadcast.payload);
+			size += 4 + length(broadcast.payload);
+		}
+		if (batch.isEmpty() || spectators.isEmpty())
+		{
+			return batch.size();
+		}
+		NettyMessageBuffer buffer = new NettyMessageBuffer(
+				ChannelBuffers.buffer(size));
+		buffer.writeInt(batch.size());
+		for (Object payload : batch)
+		{
+			buffer.writeInt(length(payload));
+			if (payload instanceof ChannelBuffer)
+			{
+				ChannelBuffer data = (ChannelBuffer) payload;
+				buffer.getNativeBuffer().writeBytes(data, data.readerIndex(),
+						data.readableBytes());
+			}
+			else
+			{
+				buffer.writeBytes((byte[]) payload);
+			}
+		}
+		fanOut(Events.networkEvent(buffer));
+		batches.incrementAndGet();
+		return batch.size();
+	}
+
+	protected void fanOut(final NetworkEvent event)
+	{
+		List<PlayerSession> all = new ArrayList<PlayerSession>(spectators);
+		int chunk = (all.size() + fanOutThreads - 1) / fanOutThreads;
+		for (int from = 0; from < all.size(); from += chunk)
+		{
+			final List<PlayerSession> part = all.subList(from,
+					Math.min(all.size(), from + chunk));
+			fanOutExecutor.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					for (PlayerSession spectator : part)
+					{
+						write(spectator, event);
+					}
+				}
+			});
+		}
+	}
+
+	protected void write(PlayerSession spectator, NetworkEvent event)
+	{
+		Reliable sender = spectator.getTcpSender();
+		if (null == sender || spectator.isShuttingDown()
+				|| spectator.getStatus() != Session.Status.CONNECTED)
+		{
+			return;
+		}
+		if (sender instanceof NettyTCPMessageSender
+				&& !((NettyTCPMessageSender) sender).getChannel().isWritable())
+		{
+			skippedWrites.incrementAndGet();
+			return;
+		}
+		sender.sendMessage(event);
+	}
+
+	private static int length(Object payload)
+	{
+		if (payload instanceof ChannelBuffer)
+		{
+			return ((ChannelBuffer) payload).readableBytes();
+		}
+		return ((byte[]) payload).length;
+	}
+
+	public Set<PlayerSession> getSpectators()
+	{
+		return spectators;
+	}
+
+	/**
+	 * @return The number of batches not written to a spectator because its
+	 *         channel was not writable.
+	 */
+	public long getSkippedWrites()
+	{
+		return skippedWrites.get();
+	}
+
+	public long getBatchCount()
+	{
+		return batches.get();
+	}
+
+	public long getDelay()
+	{
+		return delay;
+	}
+
+	private static class Broadcast
+	{
+		final long timestamp;
+		final Object payload;
+
+		Broadcast(long timestamp, Object payload)
+		{
+			this.timestamp = timestamp;
+			this.payload = payload;
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package org.menacheri.jetserver.app.impl;
+
+import org.menacheri.jetserver.app.PlayerSession;
+import org.menacheri.jetserver.event.Event;
+import org.menacheri.jetserver.event.NetworkEvent;
+import org.menacheri.jetserver.event.impl.DefaultSessionEventHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The room into which spectators of a game room log in. A spectator session
+ * goes through the normal login and protocol setup, but instead of a
+ * {@link org.menacheri.jetserver.event.impl.NetworkEventListener} on a game
+ * room lane it is registered with the {@link SpectatorRelay} of the watched
+ * room, which sends it batches of the room's broadcasts from its own threads.
+ * Incoming messages of spectators are ignored.
+ * 
+ * @author Abraham Menacherry
+ * 
+ */
+public class SpectatorRoom extends GameRoomSession
+{
+	private static final Logger LOG = LoggerFactory
+			.getLogger(SpectatorRoom.class);
+
+	private final SpectatorRelay relay;
+
+	/**
+	 * @param gameRoomSessionBuilder
+	 *            Used to build this room.
+	 * @param relay
+	 *            The relay, already attached to the watched room.
+	 */
+	public SpectatorRoom(GameRoomSessionBuilder gameRoomSessionBuilder,
+			SpectatorRelay relay)
+	{
+		super(gameRoomSessionBuilder);
+		this.relay = relay;
+	}
+
+	@Override
+	public void onLogin(PlayerSession playerSession)
+	{
+		playerSession.addHandler(new DefaultSessionEventHandler(playerSession)
+		{
+			@Override
+			protected void onDataIn(Event event)
+			{
+				LOG.trace("Ignoring message from spectator {}", getSession());
+			}
+		});
+	}
+
+	@Override
+	protected void createAndAddEventHandlers(PlayerSession playerSession)
+	{
+		relay.addSpectator(playerSession);
+	}
+
+	@Override
+	public synchronized boolean disconnectSession(PlayerSession playerSession)
+	{
+		relay.removeSpectator(playerSession);
+		return sessions.remove(playerSession);
+	}
+
+	/**
+	 * Sends the event to all spectators with the next batch of the relay.
+	 */
+	@Override
+	public void sendBroadcast(NetworkEvent networkEvent)
+	{
+		relay.publish(networkEvent);
+	}
+
+	@Override
+	public synchronized void close()
+	{
+		super.close();
+		relay.close();
+	}
+
+	public SpectatorRelay getRelay()
+	{
+		return relay;
+	}
+}
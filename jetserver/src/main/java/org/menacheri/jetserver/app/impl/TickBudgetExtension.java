@@ -0,0 +1,86 @@
+package org.menacheri.jetserver.app.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.menacheri.jetserver.communication.DeliveryGuaranty.DeliveryGuarantyOptions;
+import org.menacheri.jetserver.concurrent.OverrunMonitor;
+import org.menacheri.jetserver.concurrent.OverrunMonitor.OverrunListener;
+import org.menacheri.jetserver.concurrent.OverrunMonitor.OverrunPolicy;
+import org.menacheri.jetserver.event.EventDispatcher;
+import org.menacheri.jetserver.event.NetworkEvent;
+import org.menacheri.jetserver.event.impl.JetlangEventDispatcher;
+
+/**
+ * Times the turns taken on the lane by the dispatchers of the room and of its
+ * sessions with an {@link OverrunMonitor}, since the handlers of both run the
+ * game logic of the room. While the monitor has degraded the room, under
+ * {@link OverrunPolicy#DEGRADE}, every other FAST broadcast is skipped.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+public class TickBudgetExtension extends GameRoomExtension
+{
+	private final OverrunMonitor overrunMonitor;
+	private final AtomicLong degradedBroadcasts;
+	private final AtomicLong skippedBroadcasts;
+
+	/**
+	 * @param name
+	 *            Identifies the room in the logs of the monitor.
+	 * @param budgetMillis
+	 *            The time a single turn on the lane should take.
+	 * @param policy
+	 *            The action taken on repeated overruns.
+	 * @param listener
+	 *            Notified under {@link OverrunPolicy#RELOCATE}, may be null.
+	 */
+	public TickBudgetExtension(String name, long budgetMillis,
+			OverrunPolicy policy, OverrunListener listener)
+	{
+		this.overrunMonitor = new OverrunMonitor(name, budgetMillis,
+				TimeUnit.MILLISECONDS, policy);
+		this.overrunMonitor.setListener(listener);
+		this.degradedBroadcasts = new AtomicLong();
+		this.skippedBroadcasts = new AtomicLong();
+	}
+
+	@Override
+	protected void onDispatcher(EventDispatcher dispatcher)
+	{
+		if (dispatcher instanceof JetlangEventDispatcher)
+		{
+			((JetlangEventDispatcher) dispatcher)
+					.setOverrunMonitor(overrunMonitor);
+		}
+	}
+
+	@Override
+	protected boolean onBroadcast(NetworkEvent networkEvent)
+	{
+		if (overrunMonitor.isDegraded()
+				&& networkEvent.getDeliveryGuaranty().getGuaranty() == DeliveryGuarantyOptions.FAST
+						.getGuaranty()
+				&& (degradedBroadcasts.getAndIncrement() & 1) == 1)
+		{
+			skippedBroadcasts.incrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	public OverrunMonitor getOverrunMonitor()
+	{
+		return overrunMonitor;
+	}
+
+	/**
+	 * @return The number of FAST broadcasts skipped while the room was
+	 *         degraded.
+	 */
+	public long getSkippedBroadcastCount()
+	{
+		return skippedBroadcasts.get();
+	}
+}
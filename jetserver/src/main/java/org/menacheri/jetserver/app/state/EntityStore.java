@@ -0,0 +1,463 @@
+package org.menacheri.jetserver.app.state;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A primitive, column oriented store for the state of a large number of game
+ * entities. Each component of an entity, say x position or health, is a
+ * {@link Column} of ints, floats or longs and an entity is a row across all the
+ * columns. Rows are kept dense, i.e. the live entities always occupy indexes 0
+ * to {@link #size()} - 1, so that a tick can iterate a column linearly without
+ * any pointer chasing or boxing. Removal moves the last row into the hole
+ * (swap-remove), hence both add and remove are O(1) but the index of an entity
+ * can change. Entity ids handed out by {@link #create()} are stable and can be
+ * mapped to the current index using {@link #indexOf(int)}.
+ * <p>
+ * Columns are backed by nio buffers, either on heap or, if the store is created
+ * as direct, off heap. Snapshot and delta encoders can read the values through
+ * the column getters or bulk copy the underlying buffer of a column.
+ * <p>
+ * This class is not thread safe, it is meant to be confined to the lane of the
+ * game room which owns it.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+public class EntityStore
+{
+	private static final int NO_INDEX = -1;
+
+	private final boolean direct;
+	private final List<Column> columns;
+	private final Map<String, Column> columnsByName;
+
+	/**
+	 * Dense index to entity id.
+	 */
+	private int[] ids;
+	/**
+	 * Entity id to dense index, {@link #NO_INDEX} for unused ids.
+	 */
+	private int[] indexes;
+	private int[] freeIds;
+	private int freeCount;
+	private int nextId;
+	private int size;
+	private int capacity;
+
+	/**
+	 * Creates an on heap store.
+	 *
+	 * @param initialCapacity
+	 *            The number of entities for which space is allocated upfront.
+	 */
+	public EntityStore(int initialCapacity)
+	{
+		this(initialCapacity, false);
+	}
+
+	/**
+	 * @param initialCapacity
+	 *            The number of entities for which space is allocated upfront.
+	 * @param direct
+	 *            If true, the columns are allocated off heap using direct
+	 *            {@link ByteBuffer}s.
+	 */
+	public EntityStore(int initialCapacity, boolean direct)
+	{
+		if (initialCapacity <= 0)
+		{
+			throw new IllegalArgumentException(
+					"Initial capacity should be positive");
+		}
+		this.direct = direct;
+		this.capacity = initialCapacity;
+		this.columns = new ArrayList<Column>();
+		this.columnsByName = new HashMap<String, Column>();
+		this.ids = new int[initialCapacity];
+		this.indexes = new int[initialCapacity];
+		Arrays.fill(indexes, NO_INDEX);
+		this.freeIds = new int[initialCapacity];
+	}
+
+	public IntColumn addIntColumn(String name)
+	{
+		return addColumn(new IntColumn(name, capacity, direct));
+	}
+
+	public FloatColumn addFloatColumn(String name)
+	{
+		return addColumn(new FloatColumn(name, capacity, direct));
+	}
+
+	public LongColumn addLongColumn(String name)
+	{
+		return addColumn(new LongColumn(name, capacity, direct));
+	}
+
+	/**
+	 * Adds a new entity with all its values set to zero.
+	 *
+	 * @return The id of the entity.
+	 */
+	public int create()
+	{
+		if (size == capacity)
+		{
+			grow(capacity * 2);
+		}
+		int id;
+		if (freeCount > 0)
+		{
+			id = freeIds[--freeCount];
+		}
+		else
+		{
+			id = nextId++;
+			if (id == indexes.length)
+			{
+				int oldLength = indexes.length;
+				indexes = Arrays.copyOf(indexes, oldLength * 2);
+				Arrays.fill(indexes, oldLength, indexes.length, NO_INDEX);
+			}
+		}
+		int index = size++;
+		ids[index] = id;
+		indexes[id] = index;
+		for (int i = 0; i < columns.size(); i++)
+		{
+			columns.get(i).clear(index);
+		}
+		return id;
+	}
+
+	/**
+	 * Removes the entity by moving the last entity into its place.
+	 *
+	 * @param id
+	 *            The id of the entity.
+	 * @return false if no entity exists with this id.
+	 */
+	public boolean remove(int id)
+	{
+		int index = indexOf(id);
+		if (NO_INDEX == index)
+		{
+			return false;
+		}
+		int last = --size;
+		if (index != last)
+		{
+			for (int i = 0; i < columns.size(); i++)
+			{
+				columns.get(i).move(last, index);
+			}
+			int movedId = ids[last];
+			ids[index] = movedId;
+			indexes[movedId] = index;
+		}
+		indexes[id] = NO_INDEX;
+		if (freeCount == freeIds.length)
+		{
+			freeIds = Arrays.copyOf(freeIds, freeIds.length * 2);
+		}
+		freeIds[freeCount++] = id;
+		return true;
+	}
+
+	public boolean contains(int id)
+	{
+		return NO_INDEX != indexOf(id);
+	}
+
+	/**
+	 * @param id
+	 *            The id of the entity.
+	 * @return The current dense index of the entity or -1 if it does not
+	 *         exist.
+	 */
+	public int indexOf(int id)
+	{
+		if (id < 0 || id >= indexes.length)
+		{
+			return NO_INDEX;
+		}
+		return indexes[id];
+	}
+
+	/**
+	 * @param index
+	 *            A dense index between 0 and size - 1.
+	 * @return The id of the entity at the index.
+	 */
+	public int idAt(int index)
+	{
+		if (index < 0 || index >= size)
+		{
+			throw new IndexOutOfBoundsException("Index: " + index
+					+ ", size: " + size);
+		}
+		return ids[index];
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	public boolean isDirect()
+	{
+		return direct;
+	}
+
+	public Column getColumn(String name)
+	{
+		return columnsByName.get(name);
+	}
+
+	public List<Column> getColumns()
+	{
+		return columns;
+	}
+
+	public void clear()
+	{
+		size = 0;
+		freeCount = 0;
+		nextId = 0;
+		Arrays.fill(indexes, NO_INDEX);
+	}
+
+	private <T extends Column> T addColumn(T column)
+	{
+		if (columnsByName.containsKey(column.getName()))
+		{
+			throw new IllegalArgumentException("Column " + column.getName()
+					+ " already exists");
+		}
+		columns.add(column);
+		columnsByName.put(column.getName(), column);
+		return column;
+	}
+
+	private void grow(int newCapacity)
+	{
+		for (int i = 0; i < columns.size(); i++)
+		{
+			columns.get(i).resize(newCapacity, size);
+		}
+		ids = Arrays.copyOf(ids, newCapacity);
+		capacity = newCapacity;
+	}
+
+	private static ByteBuffer allocate(int bytes, boolean direct)
+	{
+		ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(bytes)
+				: ByteBuffer.allocate(bytes);
+		return buffer.order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * A single component of all the entities of the store, indexed by dense
+	 * index.
+	 *
+	 * @author Abraham Menacherry
+	 *
+	 */
+	public static abstract class Column
+	{
+		private final String name;
+
+		protected Column(String name)
+		{
+			this.name = name;
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		protected abstract void clear(int index);
+
+		protected abstract void move(int from, int to);
+
+		protected abstract void resize(int newCapacity, int size);
+	}
+
+	public static final class IntColumn extends Column
+	{
+		private IntBuffer values;
+		private final boolean direct;
+
+		IntColumn(String name, int capacity, boolean direct)
+		{
+			super(name);
+			this.direct = direct;
+			this.values = allocate(capacity * 4, direct).asIntBuffer();
+		}
+
+		public int get(int index)
+		{
+			return values.get(index);
+		}
+
+		public void set(int index, int value)
+		{
+			values.put(index, value);
+		}
+
+		/**
+		 * @return The underlying buffer, valid until the store grows. Only
+		 *         the first size values are meaningful.
+		 */
+		public IntBuffer buffer()
+		{
+			return values;
+		}
+
+		@Override
+		protected void clear(int index)
+		{
+			values.put(index, 0);
+		}
+
+		@Override
+		protected void move(int from, int to)
+		{
+			values.put(to, values.get(from));
+		}
+
+		@Override
+		protected void resize(int newCapacity, int size)
+		{
+			IntBuffer old = values.duplicate();
+			old.position(0).limit(size);
+			values = allocate(newCapacity * 4, direct).asIntBuffer();
+			values.put(old);
+			values.clear();
+		}
+	}
+
+	public static final class FloatColumn extends Column
+	{
+		private FloatBuffer values;
+		private final boolean direct;
+
+		FloatColumn(String name, int capacity, boolean direct)
+		{
+			super(name);
+			this.direct = direct;
+			this.values = allocate(capacity * 4, direct).asFloatBuffer();
+		}
+
+		public float get(int index)
+		{
+			return values.get(index);
+		}
+
+		public void set(int index, float value)
+		{
+			values.put(index, value);
+		}
+
+		/**
+		 * @return The underlying buffer, valid until the store grows. Only
+		 *         the first size values are meaningful.
+		 */
+		public FloatBuffer buffer()
+		{
+			return values;
+		}
+
+		@Override
+		protected void clear(int index)
+		{
+			values.put(index, 0f);
+		}
+
+		@Override
+		protected void move(int from, int to)
+		{
+			values.put(to, values.get(from));
+		}
+
+		@Override
+		protected void resize(int newCapacity, int size)
+		{
+			FloatBuffer old = values.duplicate();
+			old.position(0).limit(size);
+			values = allocate(newCapacity * 4, direct).asFloatBuffer();
+			values.put(old);
+			values.clear();
+		}
+	}
+
+	public static final class LongColumn extends Column
+	{
+		private LongBuffer values;
+		private final boolean direct;
+
+		LongColumn(String name, int capacity, boolean direct)
+		{
+			super(name);
+			this.direct = direct;
+			this.values = allocate(capacity * 8, direct).asLongBuffer();
+		}
+
+		public long get(int index)
+		{
+			return values.get(index);
+		}
+
+		public void set(int index, long value)
+		{
+			values.put(index, value);
+		}
+
+		/**
+		 * @return The underlying buffer, valid until the store grows. Only
+		 *         the first size values are meaningful.
+		 */
+		public LongBuffer buffer()
+		{
+			return values;
+		}
+
+		@Override
+		protected void clear(int index)
+		{
+			values.put(index, 0L);
+		}
+
+		@Override
+		protected void move(int from, int to)
+		{
+			values.put(to, values.get(from));
+		}
+
+		@Override
+		protected void resize(int newCapacity, int size)
+		{
+			LongBuffer old = values.duplicate();
+			old.position(0).limit(size);
+			values = allocate(newCapacity * 8, direct).asLongBuffer();
+			values.put(old);
+			values.clear();
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package org.menacheri.jetserver.app.state;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.menacheri.jetserver.communication.NettyMessageBuffer;
+import org.menacheri.jetserver.event.Events;
+import org.menacheri.jetserver.event.NetworkEvent;
+
+/**
+ * Caches the full state snapshot which a game room sends to players joining
+ * in the middle of a game. The snapshot is encoded once per state version into
+ * a read only {@link ChannelBuffer} and every joiner gets a
+ * {@link ChannelBuffer#duplicate()} of it, which shares the content but has
+ * its own indexes. During a join wave the snapshot is hence built and
+ * serialized once, instead of once per player.
+ * <p>
+ * The game signals state changes either by calling {@link #invalidate()} or by
+ * passing its own version, for e.g. the tick of a {@link StateHistory}, to
+ * {@link #get(long)}. Snapshots should be read on the lane of the room, since
+ * that is where the encoder reads the state.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+public class JoinSnapshotCache
+{
+	private final SnapshotEncoder encoder;
+	private long version;
+	private long cachedVersion = -1;
+	private ChannelBuffer cached;
+	private long encodeCount;
+	private long hitCount;
+
+	public JoinSnapshotCache(SnapshotEncoder encoder)
+	{
+		if (null == encoder)
+		{
+			throw new IllegalArgumentException("Snapshot encoder is required");
+		}
+		this.encoder = encoder;
+	}
+
+	/**
+	 * Marks the cached snapshot as stale. The next {@link #get()} encodes a
+	 * new one.
+	 */
+	public synchronized void invalidate()
+	{
+		version++;
+	}
+
+	/**
+	 * @return A duplicate of the snapshot for the current version.
+	 */
+	public synchronized ChannelBuffer get() throws Exception
+	{
+		return get(version);
+	}
+
+	/**
+	 * @param stateVersion
+	 *            The version of the room state, the snapshot is encoded again
+	 *            only if it differs from the version of the cached one.
+	 * @return A duplicate of the snapshot, which can be sent to one player.
+	 */
+	public synchronized ChannelBuffer get(long stateVersion) throws Exception
+	{
+		if (null == cached || stateVersion != cachedVersion)
+		{
+			ChannelBuffer encoded = encoder.encode();
+			cached = ChannelBuffers.unmodifiableBuffer(encoded);
+			cachedVersion = stateVersion;
+			encodeCount++;
+		}
+		else
+		{
+			hitCount++;
+		}
+		return cached.duplicate();
+	}
+
+	/**
+	 * @return A network event whose source is a message buffer wrapping a
+	 *         duplicate of the current snapshot.
+	 */
+	public NetworkEvent createSnapshotEvent() throws Exception
+	{
+		return Events.networkEvent(new NettyMessageBuffer(get()));
+	}
+
+	public synchronized long getVersion()
+	{
+		return version;
+	}
+
+	/**
+	 * @return The number of times the snapshot was encoded.
+	 */
+	public synchronized long getEncodeCount()
+	{
+		return encodeCount;
+	}
+
+	/**
+	 * @return The number of times the cached snapshot was reused.
+	 */
+	public synchronized long getHitCount()
+	{
+		return hitCount;
+	}
+
+	/**
+	 * Serializes the full state of a room for a joining player.
+	 *
+	 * @author Abraham Menacherry
+	 *
+	 */
+	public interface SnapshotEncoder
+	{
+		ChannelBuffer encode() throws Exception;
+	}
+}
@@ -0,0 +1,219 @@
+package org.menacheri.jetserver.app.state;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.menacheri.jetserver.app.Session;
+import org.menacheri.jetserver.communication.MessageBuffer;
+import org.menacheri.jetserver.convert.Transform;
+import org.menacheri.jetserver.event.Event;
+import org.menacheri.jetserver.util.AppendOnlyLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records the events of a game room in an {@link AppendOnlyLog}, so that the
+ * room can be recovered after a crash by restoring the last snapshot and
+ * replaying the events journaled after it. It is also useful as an audit
+ * trail. The type of the log record is the event type and its payload is
+ * <b>session id length (short) - session id as utf-8 bytes - event
+ * payload</b>. Room level events have an empty session id.
+ * <p>
+ * Payloads of type {@link MessageBuffer}, {@link ChannelBuffer}, byte[] and
+ * {@link String} are copied as is, without changing the reader index of the
+ * buffers. Any other source needs a payload encoder, else the record is
+ * written with an empty payload.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+public class RoomJournal
+{
+	private static final Logger LOG = LoggerFactory
+			.getLogger(RoomJournal.class);
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final byte[] EMPTY = new byte[0];
+
+	private final AppendOnlyLog log;
+	private final Transform<Object, byte[]> payloadEncoder;
+
+	public RoomJournal(File file) throws IOException
+	{
+		this(new AppendOnlyLog(file), null);
+	}
+
+	/**
+	 * @param log
+	 *            The log to which events are appended.
+	 * @param payloadEncoder
+	 *            Encodes event sources which are not buffers, byte arrays or
+	 *            strings. Can be null.
+	 */
+	public RoomJournal(AppendOnlyLog log,
+			Transform<Object, byte[]> payloadEncoder)
+	{
+		this.log = log;
+		this.payloadEncoder = payloadEncoder;
+	}
+
+	/**
+	 * Appends the event to the journal. Any failure is logged and swallowed
+	 * since the game should continue even if the journal is not writable.
+	 *
+	 * @param event
+	 *            The event to record.
+	 * @param session
+	 *            The player session from which the event came in, null for
+	 *            room level events.
+	 */
+	public void journal(Event event, Session session)
+	{
+		try
+		{
+			byte[] sessionId = (null == session || null == session.getId()) ? EMPTY
+					: session.getId().toString().getBytes(UTF_8);
+			byte[] payload = encodePayload(event.getSource());
+			byte[] record = new byte[2 + sessionId.length + payload.length];
+			record[0] = (byte) (sessionId.length >>> 8);
+			record[1] = (byte) sessionId.length;
+			System.arraycopy(sessionId, 0, record, 2, sessionId.length);
+			System.arraycopy(payload, 0, record, 2 + sessionId.length,
+					payload.length);
+			long timestamp = (event.getTimeStamp() > 0) ? event.getTimeStamp()
+					: System.currentTimeMillis();
+			log.append((byte) event.getType(), timestamp, record);
+		}
+		catch (Exception e)
+		{
+			LOG.error("Unable to journal event {}: {}", event, e);
+		}
+	}
+
+	/**
+	 * Blocks till all the journaled events are written to disk.
+	 */
+	public void flush() throws IOException
+	{
+		log.flush();
+	}
+
+	public void close()
+	{
+		log.close();
+	}
+
+	public AppendOnlyLog getLog()
+	{
+		return log;
+	}
+
+	@SuppressWarnings("unchecked")
+	protected byte[] encodePayload(Object source) throws Exception
+	{
+		if (null == source)
+		{
+			return EMPTY;
+		}
+		if (source instanceof byte[])
+		{
+			return (byte[]) source;
+		}
+		if (source instanceof MessageBuffer
+				&& ((MessageBuffer<?>) source).getNativeBuffer() instanceof ChannelBuffer)
+		{
+			return copy(((MessageBuffer<ChannelBuffer>) source)
+					.getNativeBuffer());
+		}
+		if (source instanceof ChannelBuffer)
+		{
+			return copy((ChannelBuffer) source);
+		}
+		if (source instanceof String)
+		{
+			return ((String) source).getBytes(UTF_8);
+		}
+		if (null != payloadEncoder)
+		{
+			return payloadEncoder.convert(source);
+		}
+		LOG.trace("No payload encoder for source {}", source.getClass());
+		return EMPTY;
+	}
+
+	private static byte[] copy(ChannelBuffer buffer)
+	{
+		byte[] bytes = new byte[buffer.readableBytes()];
+		buffer.getBytes(buffer.readerIndex(), bytes);
+		return bytes;
+	}
+
+	/**
+	 * Reads back all the complete records of a journal file in the order in
+	 * which they were written.
+	 *
+	 * @param file
+	 *            The journal file.
+	 * @param listener
+	 *            Receives each record.
+	 * @param fromTimestamp
+	 *            Records older than this, for e.g. the time of the snapshot
+	 *            being restored, are skipped.
+	 * @return The number of records passed to the listener.
+	 */
+	public static int replay(File file, ReplayListener listener,
+			long fromTimestamp) throws Exception
+	{
+		AppendOnlyLog.Reader reader = new AppendOnlyLog.Reader(file);
+		int count = 0;
+		try
+		{
+			while (reader.next())
+			{
+				if (reader.getTimestamp() < fromTimestamp)
+				{
+					continue;
+				}
+				byte[] record = reader.getPayload();
+				int idLength = ((record[0] & 0xff) << 8) | (record[1] & 0xff);
+				String sessionId = (idLength == 0) ? null : new String(record,
+						2, idLength, UTF_8);
+				byte[] payload = new byte[record.length - 2 - idLength];
+				System.arraycopy(record, 2 + idLength, payload, 0,
+						payload.length);
+				listener.onRecord(reader.getType(), reader.getTimestamp(),
+						sessionId, payload);
+				count++;
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		return count;
+	}
+
+	/**
+	 * Receives the records of a journal during {@link RoomJournal#replay}.
+	 *
+	 * @author Abraham Menacherry
+	 *
+	 */
+	public interface ReplayListener
+	{
+		/**
+		 * @param eventType
+		 *            The type of the journaled event.
+		 * @param timestamp
+		 *            The time stamp of the event.
+		 * @param sessionId
+		 *            The id of the player session which sent the event, null
+		 *            for room level events.
+		 * @param payload
+		 *            The payload of the event.
+		 */
+		void onRecord(int eventType, long timestamp, String sessionId,
+				byte[] payload) throws Exception;
+	}
+}
@@ -0,0 +1,263 @@
+package org.menacheri.jetserver.app.state;
+
+import org.menacheri.jetserver.app.impl.GameRoomSession;
+
+/**
+ * A ring buffer of recent entity states of a game room, indexed by tick. It is
+ * used for lag compensation, i.e. to evaluate an action like a hit scan shot
+ * against the world as the shooter saw it. The state of each tick is stored in
+ * a flat float array with a fixed number of fields (stride) per entity, so
+ * recording a tick is a single array copy and no objects are created after
+ * construction. Entities are identified by their index (slot) in the state
+ * array passed to {@link #record(long, long, float[], int)}.
+ * <p>
+ * This class is not thread safe. It should be confined to the lane of the
+ * room, i.e. recorded in the room's tick and rewound from the room's event
+ * handlers. Other threads should use
+ * {@link GameRoomSession#executeOnLane(Runnable)} so that a rewind never races
+ * with the simulation.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+public class StateHistory
+{
+	private final int capacity;
+	private final int maxEntities;
+	private final int stride;
+	private final long[] ticks;
+	private final long[] timestamps;
+	private final int[] entityCounts;
+	private final float[] states;
+
+	/**
+	 * Index of the slot which will be written next.
+	 */
+	private int head;
+	/**
+	 * Number of ticks currently stored.
+	 */
+	private int size;
+
+	/**
+	 * @param capacity
+	 *            The number of ticks to keep, for e.g. 1 second worth of ticks.
+	 * @param maxEntities
+	 *            The maximum number of entities in a tick.
+	 * @param stride
+	 *            The number of float fields per entity, for e.g. 3 for x, y,
+	 *            z.
+	 */
+	public StateHistory(int capacity, int maxEntities, int stride)
+	{
+		if (capacity < 2 || maxEntities <= 0 || stride <= 0)
+		{
+			throw new IllegalArgumentException(
+					"capacity should be at least 2, maxEntities and "
+							+ "stride should be positive");
+		}
+		this.capacity = capacity;
+		this.maxEntities = maxEntities;
+		this.stride = stride;
+		this.ticks = new long[capacity];
+		this.timestamps = new long[capacity];
+		this.entityCounts = new int[capacity];
+		this.states = new float[capacity * maxEntities * stride];
+	}
+
+	/**
+	 * Stores the state of the tick, overwriting the oldest one if the buffer is
+	 * full. Ticks should be recorded in increasing order of time.
+	 *
+	 * @param tick
+	 *            The tick number.
+	 * @param timestamp
+	 *            The time in milliseconds at which the tick was simulated.
+	 * @param entityStates
+	 *            The state of the entities, laid out entity by entity with
+	 *            stride fields each.
+	 * @param entityCount
+	 *            The number of entities to be copied from the state array.
+	 */
+	public void record(long tick, long timestamp, float[] entityStates,
+			int entityCount)
+	{
+		if (entityCount > maxEntities)
+		{
+			throw new IllegalArgumentException("Entity count " + entityCount
+					+ " is more than the maximum of " + maxEntities);
+		}
+		if (size > 0 && timestamp < timestamps[newest()])
+		{
+			throw new IllegalArgumentException(
+					"Ticks should be recorded in increasing order of time");
+		}
+		ticks[head] = tick;
+		timestamps[head] = timestamp;
+		entityCounts[head] = entityCount;
+		System.arraycopy(entityStates, 0, states, offset(head), entityCount
+				* stride);
+		head = (head + 1) % capacity;
+		if (size < capacity)
+		{
+			size++;
+		}
+	}
+
+	/**
+	 * Writes the state of the world at the given time into the destination
+	 * array, interpolating linearly between the two stored ticks surrounding
+	 * the timestamp. Times older than the oldest stored tick are clamped to it
+	 * and times newer than the latest tick return the latest tick.
+	 *
+	 * @param timestamp
+	 *            The time in milliseconds, on the server clock, to rewind to.
+	 * @param dest
+	 *            The array into which the states are written.
+	 * @return The number of entities written, 0 if nothing is recorded.
+	 */
+	public int rewind(long timestamp, float[] dest)
+	{
+		if (size == 0)
+		{
+			return 0;
+		}
+		int older = oldest();
+		if (timestamp <= timestamps[older])
+		{
+			return copy(older, dest);
+		}
+		for (int i = 1; i < size; i++)
+		{
+			int newer = (older + 1) % capacity;
+			if (timestamp <= timestamps[newer])
+			{
+				long span = timestamps[newer] - timestamps[older];
+				float alpha = (span == 0) ? 1f
+						: (float) (timestamp - timestamps[older]) / span;
+				return interpolate(older, newer, alpha, dest);
+			}
+			older = newer;
+		}
+		return copy(older, dest);
+	}
+
+	/**
+	 * Copies the state of the given tick if it is still stored.
+	 *
+	 * @param tick
+	 *            The tick number.
+	 * @param dest
+	 *            The array into which the states are written.
+	 * @return The number of entities written or -1 if the tick is not stored.
+	 */
+	public int rewindToTick(long tick, float[] dest)
+	{
+		int slot = oldest();
+		for (int i = 0; i < size; i++)
+		{
+			if (ticks[slot] == tick)
+			{
+				return copy(slot, dest);
+			}
+			slot = (slot + 1) % capacity;
+		}
+		return -1;
+	}
+
+	/**
+	 * Copies the latest recorded tick into the destination array. Used to put
+	 * the world back after a rewind.
+	 *
+	 * @param dest
+	 *            The array into which the states are written.
+	 * @return The number of entities written, 0 if nothing is recorded.
+	 */
+	public int restore(float[] dest)
+	{
+		if (size == 0)
+		{
+			return 0;
+		}
+		return copy(newest(), dest);
+	}
+
+	public void clear()
+	{
+		head = 0;
+		size = 0;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	public int getStride()
+	{
+		return stride;
+	}
+
+	public int getMaxEntities()
+	{
+		return maxEntities;
+	}
+
+	public long getOldestTimestamp()
+	{
+		return (size == 0) ? -1 : timestamps[oldest()];
+	}
+
+	public long getNewestTimestamp()
+	{
+		return (size == 0) ? -1 : timestamps[newest()];
+	}
+
+	public long getNewestTick()
+	{
+		return (size == 0) ? -1 : ticks[newest()];
+	}
+
+	private int copy(int slot, float[] dest)
+	{
+		int count = entityCounts[slot];
+		System.arraycopy(states, offset(slot), dest, 0, count * stride);
+		return count;
+	}
+
+	private int interpolate(int older, int newer, float alpha, float[] dest)
+	{
+		// Entities which appeared or disappeared in between cannot be
+		// interpolated, only the common slots are written.
+		int count = Math.min(entityCounts[older], entityCounts[newer]);
+		int from = offset(older);
+		int to = offset(newer);
+		int length = count * stride;
+		for (int i = 0; i < length; i++)
+		{
+			float start = states[from + i];
+			dest[i] = start + (states[to + i] - start) * alpha;
+		}
+		return count;
+	}
+
+	private int offset(int slot)
+	{
+		return slot * maxEntities * stride;
+	}
+
+	private int oldest()
+	{
+		return (head - size + capacity) % capacity;
+	}
+
+	private int newest()
+	{
+		return (head - 1 + capacity) % capacity;
+	}
+}
@@ -0,0 +1,295 @@
+package org.menacheri.jetserver.communication;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.menacheri.jetserver.app.Session;
+import org.menacheri.jetserver.event.impl.PriorityNetworkEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the updates sent to a session within a bytes per second budget while
+ * sending the most relevant state first. Updates are offered as
+ * {@link PriorityNetworkEvent}s and wait in the scheduler till the next send
+ * window. In each window the priority of every waiting update is added to its
+ * accumulated priority and the updates are sent in the order of their
+ * accumulated priority as long as they fit in the bytes available. An update
+ * which does not fit keeps its accumulated priority, so a low priority update
+ * starved by more relevant ones is eventually sent. A newer update with the
+ * same key replaces the waiting one and inherits its accumulated priority.
+ * <p>
+ * Unused budget carries over to the next window, up to one window worth of
+ * bytes, so that the scheduler can absorb small bursts. An update larger than
+ * that can never fit, it is sent when it is the most relevant one and the
+ * overdraft is paid back in the following windows. The methods are
+ * synchronized, updates are offered on the lane which broadcasts them and
+ * {@link #flush()} is normally invoked on the lane of the game room.
+ * <p>
+ * Updates whose size is not known, see {@link PriorityNetworkEvent#getSize()},
+ * are rejected and logged since counting them as free would silently lift
+ * the budget.
+ * <p>
+ * Updates without a key can never be replaced, so at most
+ * {@link #DEFAULT_MAX_UNKEYED} of them wait at a time. When the backlog is
+ * full the unkeyed update with the lowest priority, which could be the newly
+ * offered one, is dropped.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+public class BandwidthScheduler
+{
+	private static final Logger LOG = LoggerFactory
+			.getLogger(BandwidthScheduler.class);
+	private static final Comparator<Pending> BY_PRIORITY = new Comparator<Pending>()
+	{
+		@Override
+		public int compare(Pending o1, Pending o2)
+		{
+			return Float.compare(o2.accumulated, o1.accumulated);
+		}
+	};
+
+	public static final int DEFAULT_MAX_UNKEYED = 64;
+
+	private final Session session;
+	private final long bytesPerWindow;
+	private final int maxUnkeyed;
+	private final Map<Object, Pending> pending;
+	private final List<Pending> unkeyed;
+	private final List<Pending> ordered;
+	private long credit;
+	private long sentBytes;
+	private long sentUpdates;
+	private long replacedUpdates;
+	private long rejectedUpdates;
+	private long droppedUpdates;
+
+	/**
+	 * @param session
+	 *            The session to which updates are sent.
+	 * @param bytesPerSecond
+	 *            The budget of the session.
+	 * @param sendWindow
+	 *            The interval in milliseconds at which {@link #flush()} is
+	 *            invoked.
+	 */
+	public BandwidthScheduler(Session session, long bytesPerSecond,
+			long sendWindow)
+	{
+		this(session, bytesPerSecond, sendWindow, DEFAULT_MAX_UNKEYED);
+	}
+
+	/**
+	 * @param maxUnkeyed
+	 *            The number of updates without a key which can wait at a
+	 *            time.
+	 */
+	public BandwidthScheduler(Session session, long bytesPerSecond,
+			long sendWindow, int maxUnkeyed)
+	{
+		if (bytesPerSecond <= 0 || sendWindow <= 0 || maxUnkeyed <= 0)
+		{
+			throw new IllegalArgumentException(
+					"Budget, send window and max unkeyed should be positive");
+		}
+		this.session = session;
+		this.bytesPerWindow = Math.max(1, bytesPerSecond * sendWindow / 1000);
+		this.maxUnkeyed = maxUnkeyed;
+		this.pending = new HashMap<Object, Pending>();
+		this.unkeyed = new ArrayList<Pending>();
+		this.ordered = new ArrayList<Pending>();
+	}
+
+	/**
+	 * Queues the update till the next send window.
+	 */
+	public synchronized void offer(PriorityNetworkEvent event)
+	{
+		if (event.getSize() < 0)
+		{
+			if (rejectedUpdates++ == 0)
+			{
+				LOG.error("Rejecting update of unknown size for session {}, "
+						+ "pass the size of payloads which are not buffers",
+						session);
+			}
+			return;
+		}
+		if (null == event.getKey())
+		{
+			offerUnkeyed(event);
+			return;
+		}
+		Object key = event.getKey();
+		Pending existing = pending.get(key);
+		if (null != existing)
+		{
+			existing.event = event;
+			replacedUpdates++;
+		}
+		else
+		{
+			pending.put(key, new Pending(key, event));
+		}
+	}
+
+	private void offerUnkeyed(PriorityNetworkEvent event)
+	{
+		if (unkeyed.size() >= maxUnkeyed)
+		{
+			// Compare on the priority each would have in the next window.
+			Pending lowest = unkeyed.get(0);
+			for (int i = 1; i < unkeyed.size(); i++)
+			{
+				Pending update = unkeyed.get(i);
+				if (update.nextPriority() < lowest.nextPriority())
+				{
+					lowest = update;
+				}
+			}
+			if (droppedUpdates++ == 0)
+			{
+				LOG.warn("Too many unkeyed updates waiting for session {}, "
+						+ "dropping the least relevant", session);
+			}
+			if (event.getPriority() <= lowest.nextPriority())
+			{
+				return;
+			}
+			unkeyed.remove(lowest);
+			pending.remove(lowest.key);
+		}
+		// Unkeyed updates are unique, the entry itself serves as the key.
+		Pending update = new Pending(null, event);
+		unkeyed.add(update);
+		pending.put(update.key, update);
+	}
+
+	/**
+	 * Sends the updates with the highest accumulated priority which fit in
+	 * the budget of this window.
+	 *
+	 * @return The number of updates sent.
+	 */
+	public synchronized int flush()
+	{
+		credit = Math.min(credit + bytesPerWindow, 2 * bytesPerWindow);
+		if (pending.isEmpty())
+		{
+			return 0;
+		}
+		ordered.clear();
+		for (Pending update : pending.values())
+		{
+			update.accumulated += update.event.getPriority();
+			ordered.add(update);
+		}
+		Collections.sort(ordered, BY_PRIORITY);
+		int sent = 0;
+		boolean first = true;
+		for (Iterator<Pending> it = ordered.iterator(); it.hasNext() && credit > 0;)
+		{
+			Pending update = it.next();
+			int size = update.event.getSize();
+			boolean neverFits = first && size > 2 * bytesPerWindow;
+			first = false;
+			if (size > credit && !neverFits)
+			{
+				continue;
+			}
+			credit -= size;
+			pending.remove(update.key);
+			if (update.key == update)
+			{
+				unkeyed.remove(update);
+			}
+			session.onEvent(update.event);
+			sentBytes += size;
+			sent++;
+		}
+		sentUpdates += sent;
+		ordered.clear();
+		return sent;
+	}
+
+	/**
+	 * Discards all the waiting updates.
+	 */
+	public synchronized void clear()
+	{
+		pending.clear();
+		unkeyed.clear();
+	}
+
+	public Session getSession()
+	{
+		return session;
+	}
+
+	public synchronized int getPendingCount()
+	{
+		return pending.size();
+	}
+
+	public synchronized long getSentBytes()
+	{
+		return sentBytes;
+	}
+
+	public synchronized long getSentUpdates()
+	{
+		return sentUpdates;
+	}
+
+	/**
+	 * @return The number of updates superseded by a newer one with the same
+	 *         key before being sent.
+	 */
+	public synchronized long getReplacedUpdates()
+	{
+		return replacedUpdates;
+	}
+
+	/**
+	 * @return The number of updates rejected because their size is not
+	 *         known.
+	 */
+	public synchronized long getRejectedUpdates()
+	{
+		return rejectedUpdates;
+	}
+
+	/**
+	 * @return The number of updates without a key dropped because too many
+	 *         of them were waiting.
+	 */
+	public synchronized long getDroppedUpdates()
+	{
+		return droppedUpdates;
+	}
+
+	private static class Pending
+	{
+		final Object key;
+		PriorityNetworkEvent event;
+		float accumulated;
+
+		Pending(Object key, PriorityNetworkEvent event)
+		{
+			this.key = (null == key) ? this : key;
+			this.event = event;
+		}
+
+		float nextPriority()
+		{
+			return accumulated + event.getPriority();
+		}
+	}
+}
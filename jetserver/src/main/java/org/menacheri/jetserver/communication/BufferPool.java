@@ -0,0 +1,371 @@
+package org.menacheri.jetserver.communication;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool of fixed capacity buffers in power of two size classes, from
+ * {@link #MIN_CAPACITY} to {@link #MAX_CAPACITY} bytes, backed either by heap
+ * arrays or by direct byte buffers. A {@link PooledBuffer} is reference
+ * counted, its storage goes back to the pool when the count drops to zero.
+ * Since a {@link PooledBuffer} is also a {@link ChannelFutureListener}, adding
+ * it to the future of a write releases it once the write completes. Requests
+ * larger than the biggest size class are allocated unpooled.
+ * <p>
+ * In debug mode, enabled by the system property
+ * <code>jetserver.bufferpool.leakDetection</code> or
+ * {@link #setLeakDetection(boolean)}, the stack trace of every acquire is
+ * recorded and a buffer which is garbage collected without being released is
+ * logged along with that trace.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+public class BufferPool
+{
+	private static final Logger LOG = LoggerFactory.getLogger(BufferPool.class);
+
+	public static final int MIN_CAPACITY = 64;
+	public static final int MAX_CAPACITY = 64 * 1024;
+	private static final int MIN_SHIFT = 6;
+	private static final int NUM_OF_CLASSES = 11;
+
+	/**
+	 * A shared pool of heap buffers, keeping up to 128 buffers per size class.
+	 */
+	public static final BufferPool HEAP = new BufferPool(false, 128);
+
+	private final boolean direct;
+	private final int maxPerClass;
+	private final ConcurrentLinkedQueue<Object>[] free;
+	private final AtomicInteger[] freeCounts;
+	private final AtomicLong acquired = new AtomicLong();
+	private final AtomicLong reused = new AtomicLong();
+	private final AtomicLong outstanding = new AtomicLong();
+	private final AtomicLong leaks = new AtomicLong();
+
+	private volatile boolean leakDetection = Boolean
+			.getBoolean("jetserver.bufferpool.leakDetection");
+	private final ReferenceQueue<PooledBuffer> collected = new ReferenceQueue<PooledBuffer>();
+	private final Set<LeakTracker> trackers = Collections
+			.newSetFromMap(new ConcurrentHashMap<LeakTracker, Boolean>());
+
+	/**
+	 * @param direct
+	 *            true to back the buffers with direct byte buffers, which
+	 *            avoids a copy when writing to a socket.
+	 * @param maxPerClass
+	 *            The maximum number of free buffers kept for each size class,
+	 *            released buffers beyond this are left to the garbage
+	 *            collector.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public BufferPool(boolean direct, int maxPerClass)
+	{
+		if (maxPerClass < 0)
+		{
+			throw new IllegalArgumentException(
+					"Buffers per class should not be negative");
+		}
+		this.direct = direct;
+		this.maxPerClass = maxPerClass;
+		this.free = new ConcurrentLinkedQueue[NUM_OF_CLASSES];
+		this.freeCounts = new AtomicInteger[NUM_OF_CLASSES];
+		for (int i = 0; i < NUM_OF_CLASSES; i++)
+		{
+			free[i] = new ConcurrentLinkedQueue<Object>();
+			freeCounts[i] = new AtomicInteger();
+		}
+	}
+
+	/**
+	 * Gets a buffer with at least the requested capacity, its reader and
+	 * writer indexes are at 0. The caller owns the single reference to it.
+	 *
+	 * @param capacity
+	 *            The number of bytes required.
+	 * @return The pooled buffer, which should be released exactly once.
+	 */
+	public PooledBuffer acquire(int capacity)
+	{
+		if (capacity < 0)
+		{
+			throw new IllegalArgumentException("Capacity should not be negative");
+		}
+		acquired.incrementAndGet();
+		outstanding.incrementAndGet();
+		if (leakDetection)
+		{
+			reportLeaks();
+		}
+		int sizeClass = sizeClass(capacity);
+		Object storage = null;
+		if (sizeClass >= 0)
+		{
+			storage = free[sizeClass].poll();
+			if (null != storage)
+			{
+				freeCounts[sizeClass].decrementAndGet();
+				reused.incrementAndGet();
+			}
+			else
+			{
+				storage = allocate(MIN_CAPACITY << sizeClass);
+			}
+		}
+		else
+		{
+			storage = allocate(capacity);
+		}
+		return new PooledBuffer(this, sizeClass, storage);
+	}
+
+	private Object allocate(int capacity)
+	{
+		return direct ? ByteBuffer.allocateDirect(capacity)
+				: new byte[capacity];
+	}
+
+	static int sizeClass(int capacity)
+	{
+		if (capacity > MAX_CAPACITY)
+		{
+			return -1;
+		}
+		int sizeClass = 0;
+		while ((MIN_CAPACITY << sizeClass) < capacity)
+		{
+			sizeClass++;
+		}
+		return sizeClass;
+	}
+
+	private void recycle(PooledBuffer buffer)
+	{
+		outstanding.decrementAndGet();
+		if (null != buffer.tracker)
+		{
+			buffer.tracker.released = true;
+			trackers.remove(buffer.tracker);
+			buffer.tracker.clear();
+		}
+		int sizeClass = buffer.sizeClass;
+		if (sizeClass < 0)
+		{
+			return;
+		}
+		if (freeCounts[sizeClass].incrementAndGet() <= maxPerClass)
+		{
+			free[sizeClass].offer(buffer.storage);
+		}
+		else
+		{
+			freeCounts[sizeClass].decrementAndGet();
+		}
+	}
+
+	private void reportLeaks()
+	{
+		LeakTracker tracker;
+		while (null != (tracker = (LeakTracker) collected.poll()))
+		{
+			trackers.remove(tracker);
+			if (!tracker.released)
+			{
+				leaks.incrementAndGet();
+				outstanding.decrementAndGet();
+				LOG.error("A pooled buffer was garbage collected without "
+						+ "being released, it was acquired at:",
+						tracker.acquiredAt);
+			}
+		}
+	}
+
+	public boolean isDirect()
+	{
+		return direct;
+	}
+
+	public boolean isLeakDetection()
+	{
+		return leakDetection;
+	}
+
+	public void setLeakDetection(boolean leakDetection)
+	{
+		this.leakDetection = leakDetection;
+	}
+
+	/**
+	 * @return The number of buffers acquired so far.
+	 */
+	public long getAcquiredCount()
+	{
+		return acquired.get();
+	}
+
+	/**
+	 * @return The number of acquires served with a free buffer instead of a
+	 *         new allocation.
+	 */
+	public long getReusedCount()
+	{
+		return reused.get();
+	}
+
+	/**
+	 * @return The number of buffers acquired but not yet released.
+	 */
+	public long getOutstandingCount()
+	{
+		return outstanding.get();
+	}
+
+	/**
+	 * @return The number of leaked buffers found in debug mode.
+	 */
+	public long getLeakCount()
+	{
+		if (leakDetection)
+		{
+			reportLeaks();
+		}
+		return leaks.get();
+	}
+
+	/**
+	 * A reference counted buffer of a {@link BufferPool}.
+	 *
+	 * @author Abraham Menacherry
+	 *
+	 */
+	public static final class PooledBuffer implements ChannelFutureListener
+	{
+		private final BufferPool pool;
+		private final int sizeClass;
+		private final Object storage;
+		private final ChannelBuffer buffer;
+		private final AtomicInteger referenceCount = new AtomicInteger(1);
+		private final LeakTracker tracker;
+
+		private PooledBuffer(BufferPool pool, int sizeClass, Object storage)
+		{
+			this.pool = pool;
+			this.sizeClass = sizeClass;
+			this.storage = storage;
+			if (storage instanceof ByteBuffer)
+			{
+				ByteBuffer byteBuffer = ((ByteBuffer) storage).duplicate();
+				byteBuffer.clear();
+				this.buffer = ChannelBuffers.wrappedBuffer(byteBuffer);
+			}
+			else
+			{
+				this.buffer = ChannelBuffers.wrappedBuffer((byte[]) storage);
+			}
+			this.buffer.clear();
+			if (pool.leakDetection)
+			{
+				this.tracker = new LeakTracker(this, pool.collected);
+				pool.trackers.add(tracker);
+			}
+			else
+			{
+				this.tracker = null;
+			}
+		}
+
+		/**
+		 * @return The buffer to be written to, it should not be used after
+		 *         the last release.
+		 */
+		public ChannelBuffer getBuffer()
+		{
+			return buffer;
+		}
+
+		public int getReferenceCount()
+		{
+			return referenceCount.get();
+		}
+
+		/**
+		 * Adds a reference, for e.g. before handing the buffer to another
+		 * writer which releases it independently.
+		 */
+		public PooledBuffer retain()
+		{
+			for (;;)
+			{
+				int count = referenceCount.get();
+				if (count <= 0)
+				{
+					throw new IllegalStateException(
+							"Pooled buffer is already released");
+				}
+				if (referenceCount.compareAndSet(count, count + 1))
+				{
+					return this;
+				}
+			}
+		}
+
+		/**
+		 * Drops a reference, the buffer goes back to the pool when the last
+		 * one is dropped.
+		 *
+		 * @return true if this was the last reference.
+		 */
+		public boolean release()
+		{
+			int count = referenceCount.decrementAndGet();
+			if (count < 0)
+			{
+				referenceCount.incrementAndGet();
+				throw new IllegalStateException(
+						"Pooled buffer is already released");
+			}
+			if (0 == count)
+			{
+				pool.recycle(this);
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Releases the buffer once the write it was added to completes,
+		 * whether it succeeded or not.
+		 */
+		@Override
+		public void operationComplete(ChannelFuture future) throws Exception
+		{
+			release();
+		}
+	}
+
+	private static final class LeakTracker extends WeakReference<PooledBuffer>
+	{
+		private final Throwable acquiredAt = new Throwable("Acquired here");
+		private volatile boolean released;
+
+		LeakTracker(PooledBuffer referent, ReferenceQueue<PooledBuffer> queue)
+		{
+			super(referent, queue);
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package org.menacheri.jetserver.communication;
+
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.handler.queue.BufferedWriteHandler;
+
+/**
+ * A {@link BufferedWriteHandler} which holds back a write only while an
+ * {@link OutboundBundle} is open on the writing thread, and joins that bundle
+ * so the write is flushed when it ends. Any other write, for e.g. a reply
+ * written by a handler on the I/O thread, is flushed immediately along with
+ * the writes already held back, so it never waits for a later flush.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+public class BundledWriteHandler extends BufferedWriteHandler implements
+		OutboundBundle.Member
+{
+	public BundledWriteHandler()
+	{
+		// Merge the frames of a bundle into a single buffer.
+		super(true);
+	}
+
+	@Override
+	public void writeRequested(ChannelHandlerContext ctx, MessageEvent e)
+			throws Exception
+	{
+		super.writeRequested(ctx, e);
+		if (!OutboundBundle.add(this))
+		{
+			flush();
+		}
+	}
+
+	@Override
+	public void flushBundle()
+	{
+		flush();
+	}
+}
@@ -0,0 +1,152 @@
+package org.menacheri.jetserver.communication;
+
+import org.menacheri.jetserver.event.Events;
+
+/**
+ * Estimates the offset between the local clock and the clock of the remote
+ * peer, and the round trip time between them, from NTP style samples exchanged
+ * using {@link Events#TIME_SYNC_REQUEST} and {@link Events#TIME_SYNC_RESPONSE}.
+ * Each sample is made of four time stamps: originate, when the request left
+ * the peer which measures, receive and transmit, when the other peer received
+ * the request and sent the reply, and destination, when the reply came back.
+ * <p>
+ * The samples are filtered the way NTP does it. The offset and round trip
+ * time are taken from the sample with the lowest round trip time among the
+ * last few, since that sample suffered the least from queuing delays, which
+ * are also the main source of asymmetry between the two directions. All
+ * methods are thread safe.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+public class ClockSync
+{
+	private final long[] offsets;
+	private final long[] roundTripTimes;
+	private int count;
+	private int next;
+	private long lastRoundTripTime = -1;
+
+	/**
+	 * Creates an estimator which filters over the last 8 samples.
+	 */
+	public ClockSync()
+	{
+		this(8);
+	}
+
+	/**
+	 * @param window
+	 *            The number of recent samples from which the best one is
+	 *            picked.
+	 */
+	public ClockSync(int window)
+	{
+		if (window <= 0)
+		{
+			throw new IllegalArgumentException("Window should be positive");
+		}
+		this.offsets = new long[window];
+		this.roundTripTimes = new long[window];
+	}
+
+	/**
+	 * Adds a sample. All time stamps are in milliseconds.
+	 *
+	 * @param originate
+	 *            Local time at which the request was sent.
+	 * @param receive
+	 *            Remote time at which the request was received.
+	 * @param transmit
+	 *            Remote time at which the reply was sent.
+	 * @param destination
+	 *            Local time at which the reply was received.
+	 * @return The round trip time of this sample.
+	 */
+	public synchronized long addSample(long originate, long receive,
+			long transmit, long destination)
+	{
+		long roundTripTime = Math.max(0, (destination - originate)
+				- (transmit - receive));
+		long offset = ((receive - originate) + (transmit - destination)) / 2;
+		offsets[next] = offset;
+		roundTripTimes[next] = roundTripTime;
+		next = (next + 1) % offsets.length;
+		if (count < offsets.length)
+		{
+			count++;
+		}
+		lastRoundTripTime = roundTripTime;
+		return roundTripTime;
+	}
+
+	private int best()
+	{
+		int best = 0;
+		for (int i = 1; i < count; i++)
+		{
+			if (roundTripTimes[i] < roundTripTimes[best])
+			{
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return true once at least one sample was added.
+	 */
+	public synchronized boolean isSynchronized()
+	{
+		return count > 0;
+	}
+
+	/**
+	 * @return The number of milliseconds to add to the local time to get the
+	 *         remote time, 0 if there are no samples yet.
+	 */
+	public synchronized long getOffset()
+	{
+		return (0 == count) ? 0 : offsets[best()];
+	}
+
+	/**
+	 * @return The lowest round trip time in milliseconds among the recent
+	 *         samples, -1 if there are no samples yet.
+	 */
+	public synchronized long getRoundTripTime()
+	{
+		return (0 == count) ? -1 : roundTripTimes[best()];
+	}
+
+	/**
+	 * @return The round trip time of the latest sample, which unlike
+	 *         {@link #getRoundTripTime()} includes the current queuing delay.
+	 */
+	public synchronized long getLastRoundTripTime()
+	{
+		return lastRoundTripTime;
+	}
+
+	/**
+	 * Converts a local time stamp, for e.g. {@link System#currentTimeMillis()},
+	 * to the clock of the remote peer.
+	 */
+	public long toRemoteTime(long localTime)
+	{
+		return localTime + getOffset();
+	}
+
+	/**
+	 * Converts a time stamp of the remote peer to the local clock.
+	 */
+	public long toLocalTime(long remoteTime)
+	{
+		return remoteTime - getOffset();
+	}
+
+	public synchronized int getSampleCount()
+	{
+		return count;
+	}
+}
@@ -0,0 +1,84 @@
+package org.menacheri.jetserver.communication;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.menacheri.jetserver.app.GameRoom;
+import org.menacheri.jetserver.event.impl.DefaultNetworkEvent;
+
+/**
+ * Holds the encoded form of a broadcast event, so that an event sent by a
+ * {@link GameRoom} to all its sessions is encoded only once per encoder
+ * instead of once per channel. The encoders are shared among all the channels
+ * of a protocol, so the encoder instance is used as the key. The encoded
+ * buffer is stored read only and each channel gets its own duplicate, which
+ * has independent indexes but shares the content.
+ * <p>
+ * The cache is attached to a {@link DefaultNetworkEvent} when it is
+ * broadcast. The event and its source should not be modified after that, or
+ * sessions may receive a stale encoding.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+public class EncodingCache
+{
+	private final ConcurrentMap<Object, ChannelBuffer> encodings;
+
+	public EncodingCache()
+	{
+		this.encodings = new ConcurrentHashMap<Object, ChannelBuffer>(2, 0.75f,
+				2);
+	}
+
+	/**
+	 * @param msg
+	 *            The message being encoded.
+	 * @return The cache of the message or null if it is not a broadcast.
+	 */
+	public static EncodingCache of(Object msg)
+	{
+		if (msg instanceof DefaultNetworkEvent)
+		{
+			return ((DefaultNetworkEvent) msg).getEncodingCache();
+		}
+		return null;
+	}
+
+	/**
+	 * @param encoder
+	 *            The encoder which is looking up its output.
+	 * @return A duplicate of the cached buffer or null if this encoder has
+	 *         not encoded the event yet.
+	 */
+	public ChannelBuffer get(Object encoder)
+	{
+		ChannelBuffer encoded = encodings.get(encoder);
+		return (null == encoded) ? null : encoded.duplicate();
+	}
+
+	/**
+	 * Caches the output of the encoder. If another channel cached its output
+	 * concurrently, that one is kept.
+	 *
+	 * @param encoder
+	 *            The encoder which produced the buffer.
+	 * @param encoded
+	 *            The encoded event.
+	 * @return A duplicate of the cached buffer, to be written to the channel.
+	 */
+	public ChannelBuffer put(Object encoder, ChannelBuffer encoded)
+	{
+		ChannelBuffer readOnly = ChannelBuffers.unmodifiableBuffer(encoded);
+		ChannelBuffer existing = encodings.putIfAbsent(encoder, readOnly);
+		return (null == existing) ? readOnly.duplicate() : existing
+				.duplicate();
+	}
+
+	public int size()
+	{
+		return encodings.size();
+	}
+}
@@ -0,0 +1,329 @@
+package org.menacheri.jetserver.communication;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.menacheri.jetserver.app.Session;
+import org.menacheri.jetserver.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Estimates the quality of the link to a single client and derives from it
+ * the rate at which the client should receive updates. Two signals are used.
+ * The latency of the tcp writes, i.e. the time from
+ * {@link NettyTCPMessageSender#sendMessage(Object)} till the write future
+ * completes, which grows as soon as the socket buffer of a slow client fills
+ * up, and the round trip time reported by a heartbeat or time sync exchange
+ * using {@link #addRttSample(long)}. The number of writes not yet completed
+ * and the achieved throughput are tracked alongside.
+ * <p>
+ * When the link is congested the update divisor is doubled, up to a maximum,
+ * and when the link recovers it is halved again, at most once per adapt
+ * interval in either direction. A divisor of n means only every n-th droppable
+ * update, i.e. a {@link DeliveryGuaranty.DeliveryGuarantyOptions#FAST} network
+ * event, is sent to the client, see {@link #shouldSend()}. Games which want to
+ * lower the level of detail instead can read {@link #getUpdateDivisor()} while
+ * encoding the update for the session. All methods are thread safe.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+public class LinkQualityEstimator
+{
+	private static final Logger LOG = LoggerFactory
+			.getLogger(LinkQualityEstimator.class);
+
+	private final long badRtt;
+	private final long goodRtt;
+	private final int maxOutstandingWrites;
+	private final int maxDivisor;
+	private final long adaptInterval;
+
+	private final AtomicInteger outstandingWrites;
+	private final AtomicLong completedWrites;
+	private final AtomicLong sentUpdates;
+	private final AtomicLong skippedUpdates;
+	private final AtomicLong updateCounter;
+
+	private volatile int updateDivisor = 1;
+	private double smoothedRtt = -1;
+	private double smoothedWriteLatency;
+	private double throughput;
+	private long windowStart;
+	private long windowBytes;
+	private long lastAdapt;
+
+	/**
+	 * Creates an estimator which degrades the link above 250ms of round trip
+	 * or write latency or 64 outstanding writes, restores it below 100ms and 16
+	 * outstanding writes, with a maximum divisor of 8 and an adapt interval of
+	 * 1 second.
+	 */
+	public LinkQualityEstimator()
+	{
+		this(250, 100, 64, 8, 1000);
+	}
+
+	/**
+	 * @param badRtt
+	 *            Round trip or write latency in milliseconds above which the
+	 *            link is considered congested.
+	 * @param goodRtt
+	 *            Latency in milliseconds below which the link is considered
+	 *            healthy.
+	 * @param maxOutstandingWrites
+	 *            Number of writes pending in the channel above which the link
+	 *            is considered congested. A quarter of it is considered
+	 *            healthy.
+	 * @param maxDivisor
+	 *            The highest update divisor, i.e. the lowest rate is 1 /
+	 *            maxDivisor of the room's rate.
+	 * @param adaptInterval
+	 *            Minimum number of milliseconds between two changes of the
+	 *            divisor.
+	 */
+	public LinkQualityEstimator(long badRtt, long goodRtt,
+			int maxOutstandingWrites, int maxDivisor, long adaptInterval)
+	{
+		if (goodRtt > badRtt || maxOutstandingWrites <= 0 || maxDivisor <= 0)
+		{
+			throw new IllegalArgumentException(
+					"Invalid latency thresholds, outstanding writes or divisor");
+		}
+		this.badRtt = badRtt;
+		this.goodRtt = goodRtt;
+		this.maxOutstandingWrites = maxOutstandingWrites;
+		this.maxDivisor = maxDivisor;
+		this.adaptInterval = adaptInterval;
+		this.outstandingWrites = new AtomicInteger();
+		this.completedWrites = new AtomicLong();
+		this.sentUpdates = new AtomicLong();
+		this.skippedUpdates = new AtomicLong();
+		this.updateCounter = new AtomicLong();
+	}
+
+	/**
+	 * @return The estimator of the session's tcp sender, or null if the
+	 *         session does not have a {@link NettyTCPMessageSender}.
+	 */
+	public static LinkQualityEstimator of(Session session)
+	{
+		MessageSender sender = session.getTcpSender();
+		if (sender instanceof NettyTCPMessageSender)
+		{
+			return ((NettyTCPMessageSender) sender).getLinkQuality();
+		}
+		return null;
+	}
+
+	/**
+	 * Starts tracking a write. The future listener returned should be added to
+	 * the write's future.
+	 *
+	 * @param message
+	 *            The message written, used to estimate the number of bytes.
+	 */
+	public ChannelFutureListener onWrite(Object message)
+	{
+		outstandingWrites.incrementAndGet();
+		final long start = System.nanoTime();
+		final int bytes = estimateSize(message);
+		return new ChannelFutureListener()
+		{
+			@Override
+			public void operationComplete(ChannelFuture future)
+					throws Exception
+			{
+				onWriteComplete(start, bytes);
+			}
+		};
+	}
+
+	protected void onWriteComplete(long start, int bytes)
+	{
+		outstandingWrites.decrementAndGet();
+		completedWrites.incrementAndGet();
+		long now = System.nanoTime();
+		synchronized (this)
+		{
+			double latency = (now - start) / 1000000d;
+			smoothedWriteLatency += (latency - smoothedWriteLatency) / 8;
+			windowBytes += bytes;
+			if (0 == windowStart)
+			{
+				windowStart = now;
+			}
+			else if (now - windowStart >= 1000000000L)
+			{
+				double rate = windowBytes * 1000000000d / (now - windowStart);
+				throughput = (0 == throughput) ? rate : throughput
+						+ (rate - throughput) / 4;
+				windowStart = now;
+				windowBytes = 0;
+			}
+		}
+		adapt(System.currentTimeMillis());
+	}
+
+	/**
+	 * Adds a round trip time measured by a heartbeat or time sync exchange.
+	 *
+	 * @param rtt
+	 *            The round trip time in milliseconds.
+	 */
+	public void addRttSample(long rtt)
+	{
+		synchronized (this)
+		{
+			smoothedRtt = (smoothedRtt < 0) ? rtt : smoothedRtt
+					+ (rtt - smoothedRtt) / 8;
+		}
+		adapt(System.currentTimeMillis());
+	}
+
+	/**
+	 * Decides whether a droppable update should be sent to the client, given
+	 * the current divisor.
+	 *
+	 * @return true for every n-th call where n is the update divisor.
+	 */
+	public boolean shouldSend()
+	{
+		if (outstandingWrites.get() > maxOutstandingWrites)
+		{
+			// Nothing may complete on a stalled link, so adapt here too.
+			adapt(System.currentTimeMillis());
+		}
+		int divisor = updateDivisor;
+		if (divisor <= 1 || updateCounter.incrementAndGet() % divisor == 0)
+		{
+			sentUpdates.incrementAndGet();
+			return true;
+		}
+		skippedUpdates.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Re-evaluates the update divisor. Called on every sample and by
+	 * {@link #shouldSend()} when writes pile up, so that a link on which
+	 * nothing completes is still detected as congested.
+	 *
+	 * @param now
+	 *            Current time in milliseconds.
+	 * @return The update divisor.
+	 */
+	public synchronized int adapt(long now)
+	{
+		if (now - lastAdapt < adaptInterval)
+		{
+			return updateDivisor;
+		}
+		double latency = Math.max(smoothedRtt, smoothedWriteLatency);
+		int outstanding = outstandingWrites.get();
+		int divisor = updateDivisor;
+		if (latency > badRtt || outstanding > maxOutstandingWrites)
+		{
+			divisor = Math.min(maxDivisor, divisor * 2);
+		}
+		else if (latency < goodRtt && outstanding <= maxOutstandingWrites / 4)
+		{
+			divisor = Math.max(1, divisor / 2);
+		}
+		if (divisor != updateDivisor)
+		{
+			LOG.debug("Update divisor changed from {} to {} for link {}",
+					new Object[] { updateDivisor, divisor, this });
+			updateDivisor = divisor;
+			lastAdapt = now;
+		}
+		return divisor;
+	}
+
+	private static int estimateSize(Object message)
+	{
+		Object source = message;
+		if (message instanceof Event)
+		{
+			source = ((Event) message).getSource();
+		}
+		if (source instanceof MessageBuffer)
+		{
+			source = ((MessageBuffer<?>) source).getNativeBuffer();
+		}
+		if (source instanceof ChannelBuffer)
+		{
+			return ((ChannelBuffer) source).readableBytes();
+		}
+		if (source instanceof byte[])
+		{
+			return ((byte[]) source).length;
+		}
+		return 0;
+	}
+
+	public int getUpdateDivisor()
+	{
+		return updateDivisor;
+	}
+
+	/**
+	 * @return The smoothed round trip time in milliseconds or -1 if no sample
+	 *         was added yet.
+	 */
+	public synchronized double getSmoothedRtt()
+	{
+		return smoothedRtt;
+	}
+
+	/**
+	 * @return The smoothed time in milliseconds taken by a write to complete.
+	 */
+	public synchronized double getSmoothedWriteLatency()
+	{
+		return smoothedWriteLatency;
+	}
+
+	/**
+	 * @return The estimated throughput in bytes per second of the payloads
+	 *         written.
+	 */
+	public synchronized double getThroughput()
+	{
+		return throughput;
+	}
+
+	public int getOutstandingWrites()
+	{
+		return outstandingWrites.get();
+	}
+
+	public long getCompletedWrites()
+	{
+		return completedWrites.get();
+	}
+
+	public long getSentUpdates()
+	{
+		return sentUpdates.get();
+	}
+
+	public long getSkippedUpdates()
+	{
+		return skippedUpdates.get();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "LinkQualityEstimator [updateDivisor=" + updateDivisor
+				+ ", smoothedRtt=" + getSmoothedRtt() + ", writeLatency="
+				+ getSmoothedWriteLatency() + ", throughput=" + getThroughput()
+				+ ", outstandingWrites=" + outstandingWrites.get()
+				+ ", skippedUpdates=" + skippedUpdates.get() + "]";
+	}
+}
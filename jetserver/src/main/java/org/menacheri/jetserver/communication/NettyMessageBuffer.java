@@ -3,6 +3,7 @@ package org.menacheri.jetserver.communication;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.buffer.DynamicChannelBuffer;
+import org.menacheri.jetserver.communication.BufferPool.PooledBuffer;
 import org.menacheri.jetserver.convert.Transform;
 import org.menacheri.jetserver.util.NettyUtils;
 
@@ -14,7 +15,10 @@ import org.menacheri.jetserver.util.NettyUtils;
  * ChannelBuffer, instead it has a method {@link #getNativeBuffer()} which can
  * be used to retrieve the buffer and then call the appropriate method. For
  * writing to the buffer, this class uses {@link DynamicChannelBuffer}
- * implementation.
+ * implementation. A message buffer created using {@link #pooled(int)} writes
+ * to a fixed capacity buffer of a {@link BufferPool} instead, it should be
+ * released using {@link #release()} once all the events carrying it have
+ * been written.
  * 
  * @author Abraham Menacherry
  * 
@@ -22,10 +26,35 @@ import org.menacheri.jetserver.util.NettyUtils;
 public class NettyMessageBuffer implements MessageBuffer<ChannelBuffer>
 {
 	private final ChannelBuffer buffer;
+	private final PooledBuffer pooledBuffer;
 
 	public NettyMessageBuffer()
 	{
 		buffer = ChannelBuffers.dynamicBuffer();
+		pooledBuffer = null;
+	}
+
+	/**
+	 * Creates a message buffer which writes to the pooled buffer. The caller
+	 * hands over its reference to this message buffer.
+	 * 
+	 * @param pooledBuffer
+	 *            The buffer, with enough capacity for the whole message.
+	 */
+	public NettyMessageBuffer(PooledBuffer pooledBuffer)
+	{
+		this.buffer = pooledBuffer.getBuffer();
+		this.pooledBuffer = pooledBuffer;
+	}
+
+	/**
+	 * @param capacity
+	 *            The size of the largest message which will be written.
+	 * @return A message buffer backed by {@link BufferPool#HEAP}.
+	 */
+	public static NettyMessageBuffer pooled(int capacity)
+	{
+		return new NettyMessageBuffer(BufferPool.HEAP.acquire(capacity));
 	}
 
 	/**
@@ -37,6 +66,27 @@ public class NettyMessageBuffer implements MessageBuffer<ChannelBuffer>
 	public NettyMessageBuffer(ChannelBuffer buffer)
 	{
 		this.buffer = buffer;
+		this.pooledBuffer = null;
+	}
+
+	/**
+	 * @return The pooled buffer backing this message buffer or null if it is
+	 *         not pooled.
+	 */
+	public PooledBuffer getPooledBuffer()
+	{
+		return pooledBuffer;
+	}
+
+	/**
+	 * Returns the backing buffer to its pool. Does nothing if this message
+	 * buffer is not pooled.
+	 * 
+	 * @return true if the buffer went back to the pool.
+	 */
+	public boolean release()
+	{
+		return (null != pooledBuffer) && pooledBuffer.release();
 	}
 
 	@Override
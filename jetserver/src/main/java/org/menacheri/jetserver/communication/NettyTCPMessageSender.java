@@ -1,7 +1,9 @@
 package org.menacheri.jetserver.communication;
 
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelPipeline;
 import org.menacheri.jetserver.communication.DeliveryGuaranty.DeliveryGuarantyOptions;
 import org.menacheri.jetserver.communication.MessageSender.Reliable;
 import org.menacheri.jetserver.event.Events;
@@ -11,28 +13,108 @@ import org.slf4j.LoggerFactory;
 
 /**
  * A class that transmits messages reliably to remote machines/vm's. Internally
- * this class uses Netty tcp {@link Channel} to transmit the message.
+ * this class uses Netty tcp {@link Channel} to transmit the message. The
+ * completion of each write is tracked by a {@link LinkQualityEstimator}, which
+ * is used to lower the update rate of clients on poor links.
+ * <p>
+ * Messages written while an {@link OutboundBundle} is open on the current
+ * thread, for e.g. during a batch of events on a lane, are held back by a
+ * {@link BundledWriteHandler} at the head of the pipeline and flushed as a
+ * single consolidated buffer when the bundle ends. The frames within are
+ * unchanged, so clients need no support for it. Writes made outside a bundle,
+ * including those made directly on the channel, are not held back.
  * 
  * @author Abraham Menacherry
  * 
  */
-public class NettyTCPMessageSender implements Reliable
+public class NettyTCPMessageSender implements Reliable, OutboundBundle.Member
 {
+	/**
+	 * Name of the handler which holds back the bundled writes.
+	 */
+	public static final String WRITE_BUNDLER = "writeBundler";
+	
 	private final Channel channel;
+	private final LinkQualityEstimator linkQuality;
+	private volatile boolean bundleWrites = true;
 	private static final DeliveryGuaranty DELIVERY_GUARANTY = DeliveryGuarantyOptions.RELIABLE;
 	private static final Logger LOG = LoggerFactory
 			.getLogger(NettyTCPMessageSender.class);
 
 	public NettyTCPMessageSender(Channel channel)
+	{
+		this(channel, new LinkQualityEstimator());
+	}
+
+	/**
+	 * @param channel
+	 *            The tcp channel of the session.
+	 * @param linkQuality
+	 *            The estimator which tracks the writes, null to disable
+	 *            tracking.
+	 */
+	public NettyTCPMessageSender(Channel channel,
+			LinkQualityEstimator linkQuality)
 	{
 		super();
 		this.channel = channel;
+		this.linkQuality = linkQuality;
 	}
 
 	@Override
 	public Object sendMessage(Object message)
 	{
-		return channel.write(message);
+		if (bundleWrites)
+		{
+			getBundler();
+		}
+		ChannelFuture future;
+		if (null == linkQuality)
+		{
+			future = channel.write(message);
+		}
+		else
+		{
+			ChannelFutureListener listener = linkQuality.onWrite(message);
+			future = channel.write(message);
+			future.addListener(listener);
+		}
+		return future;
+	}
+
+	@Override
+	public void flushBundle()
+	{
+		BundledWriteHandler bundler = (BundledWriteHandler) channel
+				.getPipeline().get(WRITE_BUNDLER);
+		if (null != bundler)
+		{
+			bundler.flush();
+		}
+	}
+
+	/**
+	 * Returns the write bundler of the channel, adding it to the head of the
+	 * pipeline if required since a protocol may have cleared the pipeline.
+	 */
+	private BundledWriteHandler getBundler()
+	{
+		ChannelPipeline pipeline = channel.getPipeline();
+		BundledWriteHandler bundler = (BundledWriteHandler) pipeline
+				.get(WRITE_BUNDLER);
+		if (null == bundler && channel.isOpen())
+		{
+			synchronized (this)
+			{
+				bundler = (BundledWriteHandler) pipeline.get(WRITE_BUNDLER);
+				if (null == bundler)
+				{
+					bundler = new BundledWriteHandler();
+					pipeline.addFirst(WRITE_BUNDLER, bundler);
+				}
+			}
+		}
+		return bundler;
 	}
 
 	@Override
@@ -46,6 +128,26 @@ public class NettyTCPMessageSender implements Reliable
 		return channel;
 	}
 
+	public LinkQualityEstimator getLinkQuality()
+	{
+		return linkQuality;
+	}
+
+	public boolean isBundleWrites()
+	{
+		return bundleWrites;
+	}
+
+	/**
+	 * @param bundleWrites
+	 *            false to write each message to the channel immediately, true
+	 *            by default.
+	 */
+	public void setBundleWrites(boolean bundleWrites)
+	{
+		this.bundleWrites = bundleWrites;
+	}
+
 	/**
 	 * Writes an the {@link Events#DISCONNECT} to the client, flushes
 	 * all the pending writes and closes the channel.
@@ -60,6 +162,7 @@ public class NettyTCPMessageSender implements Reliable
 		if (channel.isConnected())
 		{
 			channel.write(event).addListener(ChannelFutureListener.CLOSE);
+			flushBundle();
 		}
 		else
 		{
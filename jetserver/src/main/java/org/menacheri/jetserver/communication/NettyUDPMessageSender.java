@@ -1,15 +1,20 @@
 package org.menacheri.jetserver.communication;
 
 import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jboss.netty.channel.socket.DatagramChannel;
 import org.menacheri.jetserver.app.Session;
 import org.menacheri.jetserver.communication.DeliveryGuaranty.DeliveryGuarantyOptions;
 import org.menacheri.jetserver.communication.MessageSender.Fast;
+import org.menacheri.jetserver.event.Event;
 import org.menacheri.jetserver.event.Events;
 import org.menacheri.jetserver.event.impl.DefaultNetworkEvent;
 import org.menacheri.jetserver.handlers.netty.UDPUpstreamHandler;
 import org.menacheri.jetserver.service.SessionRegistryService;
+import org.menacheri.jetserver.util.NettyUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,19 +23,33 @@ import org.slf4j.LoggerFactory;
  * instance of this class will be created by the {@link UDPUpstreamHandler} when
  * a {@link Events#CONNECT} event is received from client. The created instance
  * of this class is then sent as payload of a {@link DefaultNetworkEvent} to the
- * {@link Session}.
+ * {@link Session}. Events whose deadline has passed are discarded instead of
+ * being written, see {@link Events#isExpired(Object)}.
+ * <p>
+ * Events sent while an {@link OutboundBundle} is open on the current thread
+ * are held back and written at the end of the bundle as
+ * {@link Events#BUNDLE} datagrams, each carrying as many length prefixed
+ * events as fit in {@link #MAX_BUNDLE_SIZE} bytes.
  * 
  * 
  * @author Abraham Menacherry
  * 
  */
-public class NettyUDPMessageSender implements Fast
+public class NettyUDPMessageSender implements Fast, OutboundBundle.Member
 {
+	/**
+	 * The maximum payload of a bundle datagram, kept below the usual path MTU
+	 * so that bundles are not fragmented.
+	 */
+	public static final int MAX_BUNDLE_SIZE = 1400;
+	
 	private static final Logger LOG = LoggerFactory
 			.getLogger(NettyUDPMessageSender.class);
 	private final SocketAddress remoteAddress;
 	private final DatagramChannel channel;
 	private final SessionRegistryService<SocketAddress> sessionRegistryService;
+	private final AtomicLong droppedEvents = new AtomicLong();
+	private final List<Event> bundled = new ArrayList<Event>();
 
 	private static final DeliveryGuaranty DELIVERY_GUARANTY = DeliveryGuarantyOptions.FAST;
 
@@ -43,12 +62,88 @@ public class NettyUDPMessageSender implements Fast
 		this.sessionRegistryService = sessionRegistryService;
 	}
 
+	/**
+	 * @return The future of the write or null if the event was expired or
+	 *         held back for the bundle.
+	 */
 	@Override
 	public Object sendMessage(Object message)
 	{
+		if (Events.isExpired(message))
+		{
+			if (Events.markDropped(message))
+			{
+				droppedEvents.incrementAndGet();
+			}
+			LOG.trace("Discarding expired event {}", message);
+			return null;
+		}
+		if (message instanceof Event && OutboundBundle.isOpen())
+		{
+			synchronized (bundled)
+			{
+				bundled.add((Event) message);
+			}
+			OutboundBundle.add(this);
+			return null;
+		}
 		return channel.write(message, remoteAddress);
 	}
 
+	@Override
+	public void flushBundle()
+	{
+		List<Event> events;
+		synchronized (bundled)
+		{
+			if (bundled.isEmpty())
+			{
+				return;
+			}
+			events = new ArrayList<Event>(bundled);
+			bundled.clear();
+		}
+		List<Event> bundle = new ArrayList<Event>();
+		int size = 1;
+		for (Event event : events)
+		{
+			if (Events.isExpired(event))
+			{
+				if (Events.markDropped(event))
+				{
+					droppedEvents.incrementAndGet();
+				}
+				continue;
+			}
+			int eventSize = 3 + Math.max(0,
+					NettyUtils.readableBytes(event.getSource()));
+			if (size + eventSize > MAX_BUNDLE_SIZE && !bundle.isEmpty())
+			{
+				writeBundle(bundle);
+				bundle = new ArrayList<Event>();
+				size = 1;
+			}
+			bundle.add(event);
+			size += eventSize;
+		}
+		if (!bundle.isEmpty())
+		{
+			writeBundle(bundle);
+		}
+	}
+
+	private void writeBundle(List<Event> bundle)
+	{
+		if (1 == bundle.size())
+		{
+			channel.write(bundle.get(0), remoteAddress);
+		}
+		else
+		{
+			channel.write(Events.event(bundle, Events.BUNDLE), remoteAddress);
+		}
+	}
+
 	@Override
 	public DeliveryGuaranty getDeliveryGuaranty()
 	{
@@ -80,6 +175,16 @@ public class NettyUDPMessageSender implements Fast
 		return channel;
 	}
 
+	/**
+	 * @return The number of expired events which were not written. An event
+	 *         which was also dropped elsewhere, for e.g. by a dispatcher or
+	 *         the sender of another session, is counted only once.
+	 */
+	public long getDroppedEventCount()
+	{
+		return droppedEvents.get();
+	}
+
 	@Override
 	public String toString()
 	{
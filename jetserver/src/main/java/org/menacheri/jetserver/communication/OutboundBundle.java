@@ -0,0 +1,126 @@
+package org.menacheri.jetserver.communication;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.menacheri.jetserver.event.impl.JetlangEventDispatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the messages written by a thread during a unit of work, for e.g. a
+ * batch of events handled by a {@link JetlangEventDispatcher} or a tick of a
+ * game room, so that each sender flushes them to its channel once at the end
+ * instead of once per message. Bundles nest, only the outermost
+ * {@link #end()} flushes. A sender asks to be flushed using
+ * {@link #add(Member)} and writes directly when no bundle is open on the
+ * current thread.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+public final class OutboundBundle
+{
+	private static final Logger LOG = LoggerFactory
+			.getLogger(OutboundBundle.class);
+
+	private static final ThreadLocal<OutboundBundle> CURRENT = new ThreadLocal<OutboundBundle>()
+	{
+		@Override
+		protected OutboundBundle initialValue()
+		{
+			return new OutboundBundle();
+		}
+	};
+
+	/**
+	 * A sender which holds back its writes while a bundle is open.
+	 *
+	 * @author Abraham Menacherry
+	 *
+	 */
+	public interface Member
+	{
+		/**
+		 * Writes out the messages held back during the bundle.
+		 */
+		void flushBundle();
+	}
+
+	private final List<Member> members = new ArrayList<Member>();
+	private final Set<Member> added = Collections
+			.newSetFromMap(new IdentityHashMap<Member, Boolean>());
+	private int depth;
+
+	private OutboundBundle()
+	{
+	}
+
+	/**
+	 * Opens a bundle on the current thread, every call should be followed by
+	 * a call to {@link #end()} in a finally block.
+	 */
+	public static void begin()
+	{
+		CURRENT.get().depth++;
+	}
+
+	/**
+	 * Closes the bundle and flushes its members if it is the outermost one.
+	 */
+	public static void end()
+	{
+		OutboundBundle bundle = CURRENT.get();
+		if (bundle.depth <= 0 || --bundle.depth > 0)
+		{
+			return;
+		}
+		for (int i = 0; i < bundle.members.size(); i++)
+		{
+			Member member = bundle.members.get(i);
+			try
+			{
+				member.flushBundle();
+			}
+			catch (Exception e)
+			{
+				LOG.error("Unable to flush bundle of {}: {}", member, e);
+			}
+		}
+		bundle.members.clear();
+		bundle.added.clear();
+	}
+
+	/**
+	 * Adds the sender to the bundle open on the current thread.
+	 *
+	 * @param member
+	 *            The sender which has held back writes.
+	 * @return false if no bundle is open, the sender should then flush
+	 *         immediately.
+	 */
+	public static boolean add(Member member)
+	{
+		OutboundBundle bundle = CURRENT.get();
+		if (0 == bundle.depth)
+		{
+			return false;
+		}
+		if (bundle.added.add(member))
+		{
+			bundle.members.add(member);
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if a bundle is open on the current thread.
+	 */
+	public static boolean isOpen()
+	{
+		return CURRENT.get().depth > 0;
+	}
+}
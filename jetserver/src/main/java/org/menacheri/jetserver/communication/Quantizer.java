@@ -0,0 +1,256 @@
+package org.menacheri.jetserver.communication;
+
+/**
+ * Quantizes floating point game state to a fixed number of bits for a
+ * {@link BitPackedMessageBuffer}. A bounded float is clamped to its range and
+ * mapped onto an evenly spaced grid of 2<sup>bits</sup> values, the step
+ * between them being the precision lost. For e.g. positions within a 1000
+ * unit world at 16 bits per axis are accurate to about 1.5 cm and take 6
+ * bytes instead of the 12 of three floats.
+ * <p>
+ * Unit vectors are written with an octahedral mapping in two quantized
+ * coordinates. Rotations are written using the smallest three encoding of
+ * quaternions: the index of the largest component in 2 bits followed by the
+ * other three components, since the largest one can be computed back from
+ * them. With 9 bits per component a rotation fits in 29 bits. Vectors and
+ * quaternions are float arrays, quaternions ordered x, y, z, w.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+public final class Quantizer
+{
+	private static final float SMALLEST_THREE_BOUND = (float) (1 / Math
+			.sqrt(2));
+
+	private Quantizer()
+	{
+	}
+
+	/**
+	 * @return The number of bits needed to write values between min and max
+	 *         with at least the given precision.
+	 */
+	public static int bitsRequired(float min, float max, float precision)
+	{
+		if (!(max > min) || !(precision > 0))
+		{
+			throw new IllegalArgumentException(
+					"Max should be greater than min and precision positive");
+		}
+		double steps = Math.ceil((max - min) / precision);
+		int bits = 1;
+		while (bits < 31 && (1L << bits) - 1 < steps)
+		{
+			bits++;
+		}
+		return bits;
+	}
+
+	/**
+	 * @return The number of bits needed to write integers between min and max
+	 *         inclusive as an offset from min.
+	 */
+	public static int bitsRequired(int min, int max)
+	{
+		long range = (long) max - min;
+		if (range < 0)
+		{
+			throw new IllegalArgumentException(
+					"Max should not be less than min");
+		}
+		int bits = 0;
+		while ((1L << bits) - 1 < range)
+		{
+			bits++;
+		}
+		return bits;
+	}
+
+	public static int quantize(float value, float min, float max, int bits)
+	{
+		checkBits(bits);
+		int steps = (1 << bits) - 1;
+		if (!(value > min))
+		{
+			return 0;
+		}
+		if (value >= max)
+		{
+			return steps;
+		}
+		return Math.round((value - min) / (max - min) * steps);
+	}
+
+	public static float dequantize(int quantized, float min, float max,
+			int bits)
+	{
+		checkBits(bits);
+		int steps = (1 << bits) - 1;
+		return min + quantized * (max - min) / steps;
+	}
+
+	private static float signNotZero(float value)
+	{
+		return (value < 0) ? -1 : 1;
+	}
+
+	private static void checkBits(int bits)
+	{
+		if (bits < 1 || bits > 31)
+		{
+			throw new IllegalArgumentException("Bits " + bits
+					+ " is not between 1 and 31");
+		}
+	}
+
+	public static void writeFloat(BitPackedMessageBuffer buffer, float value,
+			float min, float max, int bits)
+	{
+		buffer.writeBits(quantize(value, min, max, bits), bits);
+	}
+
+	public static float readFloat(BitPackedMessageBuffer buffer, float min,
+			float max, int bits)
+	{
+		return dequantize(buffer.readBits(bits), min, max, bits);
+	}
+
+	/**
+	 * Writes each coordinate of the position, of any dimension, with the same
+	 * bounds.
+	 */
+	public static void writePosition(BitPackedMessageBuffer buffer,
+			float[] position, float min, float max, int bits)
+	{
+		for (float coordinate : position)
+		{
+			writeFloat(buffer, coordinate, min, max, bits);
+		}
+	}
+
+	/**
+	 * @param position
+	 *            Receives as many coordinates as its length.
+	 * @return The position passed in.
+	 */
+	public static float[] readPosition(BitPackedMessageBuffer buffer,
+			float[] position, float min, float max, int bits)
+	{
+		for (int i = 0; i < position.length; i++)
+		{
+			position[i] = readFloat(buffer, min, max, bits);
+		}
+		return position;
+	}
+
+	/**
+	 * Writes a normalized 3 dimensional vector in 2 * bits bits.
+	 */
+	public static void writeUnitVector(BitPackedMessageBuffer buffer,
+			float[] vector, int bits)
+	{
+		float x = vector[0];
+		float y = vector[1];
+		float z = vector[2];
+		float norm = Math.abs(x) + Math.abs(y) + Math.abs(z);
+		float u = 0;
+		float v = 0;
+		if (norm > 0)
+		{
+			u = x / norm;
+			v = y / norm;
+			if (z < 0)
+			{
+				float foldedU = (1 - Math.abs(v)) * signNotZero(u);
+				float foldedV = (1 - Math.abs(u)) * signNotZero(v);
+				u = foldedU;
+				v = foldedV;
+			}
+		}
+		writeFloat(buffer, u, -1, 1, bits);
+		writeFloat(buffer, v, -1, 1, bits);
+	}
+
+	/**
+	 * @param vector
+	 *            Receives the normalized x, y and z.
+	 * @return The vector passed in.
+	 */
+	public static float[] readUnitVector(BitPackedMessageBuffer buffer,
+			float[] vector, int bits)
+	{
+		float u = readFloat(buffer, -1, 1, bits);
+		float v = readFloat(buffer, -1, 1, bits);
+		float z = 1 - Math.abs(u) - Math.abs(v);
+		float x = u;
+		float y = v;
+		if (z < 0)
+		{
+			x = (1 - Math.abs(v)) * signNotZero(u);
+			y = (1 - Math.abs(u)) * signNotZero(v);
+		}
+		float length = (float) Math.sqrt(x * x + y * y + z * z);
+		vector[0] = x / length;
+		vector[1] = y / length;
+		vector[2] = z / length;
+		return vector;
+	}
+
+	/**
+	 * Writes a unit quaternion, ordered x, y, z, w, in 2 + 3 * bits bits.
+	 */
+	public static void writeQuaternion(BitPackedMessageBuffer buffer,
+			float[] quaternion, int bits)
+	{
+		int largest = 0;
+		for (int i = 1; i < 4; i++)
+		{
+			if (Math.abs(quaternion[i]) > Math.abs(quaternion[largest]))
+			{
+				largest = i;
+			}
+		}
+		// q and -q are the same rotation, flip so the dropped one is positive.
+		float sign = (quaternion[largest] < 0) ? -1 : 1;
+		buffer.writeBits(largest, 2);
+		for (int i = 0; i < 4; i++)
+		{
+			if (i != largest)
+			{
+				writeFloat(buffer, sign * quaternion[i],
+						-SMALLEST_THREE_BOUND, SMALLEST_THREE_BOUND, bits);
+			}
+		}
+	}
+
+	/**
+	 * @param quaternion
+	 *            Receives the normalized x, y, z and w.
+	 * @return The quaternion passed in.
+	 */
+	public static float[] readQuaternion(BitPackedMessageBuffer buffer,
+			float[] quaternion, int bits)
+	{
+		int largest = buffer.readBits(2);
+		float sum = 0;
+		for (int i = 0; i < 4; i++)
+		{
+			if (i != largest)
+			{
+				float component = readFloat(buffer, -SMALLEST_THREE_BOUND,
+						SMALLEST_THREE_BOUND, bits);
+				quaternion[i] = component;
+				sum += component * component;
+			}
+		}
+		quaternion[largest] = (float) Math.sqrt(Math.max(0, 1 - sum));
+		float length = (float) Math.sqrt(sum + quaternion[largest]
+				* quaternion[largest]);
+		for (int i = 0; i < 4; i++)
+		{
+			quaternion[i] /= length;
+		}
+		return quaternion;
+	}
+}
@@ -0,0 +1,237 @@
+package org.menacheri.jetserver.communication;
+
+import java.util.List;
+
+import org.menacheri.jetserver.app.PlayerSession;
+import org.menacheri.jetserver.event.Event;
+import org.menacheri.jetserver.event.Events;
+
+/**
+ * A per session queue of client inputs keyed by the sequence number assigned
+ * by the client. Inputs can be offered as soon as they arrive, in any order and
+ * any number of times, while the game room consumes them once per tick using
+ * {@link #drain(List)}. Re-sent inputs are discarded, out of order inputs are
+ * re-ordered and a missing input is waited for a configurable number of ticks
+ * before it is skipped, so that network jitter does not stall the session. After
+ * each tick, {@link #sendAck(PlayerSession)} tells the client which was the last
+ * input processed so that it can reconcile its predicted state.
+ * <p>
+ * Sequence numbers are compared using serial number arithmetic, so they can
+ * wrap around. The queue is not thread safe, {@link #offer(int, Object)} and
+ * {@link #drain(List)} should be called from the game room's lane, which is
+ * the case for handlers of a session in a room using the default lane
+ * strategy.
+ *
+ * @author Abraham Menacherry
+ *
+ * @param <T>
+ *            The type of input, for e.g. a {@link MessageBuffer}.
+ */
+public class SequencedInputQueue<T>
+{
+	private final int mask;
+	private final Object[] inputs;
+	private final int[] sequences;
+	private final boolean[] present;
+	private final int maxInputsPerTick;
+	private final int maxWaitTicks;
+
+	private int lastProcessed;
+	private int lastAcknowledged;
+	private int highestReceived;
+	private int waitedTicks;
+	private long duplicates;
+	private long skipped;
+
+	/**
+	 * Creates a queue with a window of 64 inputs, which processes at most 3
+	 * inputs per tick and waits for 2 ticks for a missing input.
+	 */
+	public SequencedInputQueue()
+	{
+		this(64, 3, 2);
+	}
+
+	/**
+	 * @param windowSize
+	 *            The maximum number of inputs ahead of the last processed one
+	 *            that can be buffered, rounded up to a power of 2.
+	 * @param maxInputsPerTick
+	 *            Maximum inputs returned by a single drain. Allows the queue
+	 *            to catch up gradually after a burst.
+	 * @param maxWaitTicks
+	 *            Number of ticks to wait for a missing input before skipping
+	 *            it.
+	 */
+	public SequencedInputQueue(int windowSize, int maxInputsPerTick,
+			int maxWaitTicks)
+	{
+		if (windowSize <= 0 || maxInputsPerTick <= 0 || maxWaitTicks < 0)
+		{
+			throw new IllegalArgumentException(
+					"Window size and inputs per tick should be positive");
+		}
+		int size = Integer.highestOneBit(windowSize);
+		if (size < windowSize)
+		{
+			size <<= 1;
+		}
+		this.mask = size - 1;
+		this.inputs = new Object[size];
+		this.sequences = new int[size];
+		this.present = new boolean[size];
+		this.maxInputsPerTick = maxInputsPerTick;
+		this.maxWaitTicks = maxWaitTicks;
+	}
+
+	/**
+	 * Adds the input to the queue.
+	 *
+	 * @param sequence
+	 *            The sequence number sent by the client. The first input of a
+	 *            session is expected to have sequence 1.
+	 * @param input
+	 *            The input.
+	 * @return false if the input was already processed or queued, or if it is
+	 *         too far ahead of the last processed input.
+	 */
+	public boolean offer(int sequence, T input)
+	{
+		int distance = sequence - lastProcessed;
+		if (distance <= 0)
+		{
+			duplicates++;
+			return false;
+		}
+		if (distance > inputs.length)
+		{
+			return false;
+		}
+		int slot = sequence & mask;
+		if (present[slot] && sequences[slot] == sequence)
+		{
+			duplicates++;
+			return false;
+		}
+		inputs[slot] = input;
+		sequences[slot] = sequence;
+		present[slot] = true;
+		if (sequence - highestReceived > 0)
+		{
+			highestReceived = sequence;
+		}
+		return true;
+	}
+
+	/**
+	 * Moves the inputs that are ready for this tick, in sequence order, to the
+	 * list passed in. Should be called once per tick.
+	 *
+	 * @param out
+	 *            The list to which the inputs are added.
+	 * @return The number of inputs added.
+	 */
+	@SuppressWarnings("unchecked")
+	public int drain(List<? super T> out)
+	{
+		int count = 0;
+		while (count < maxInputsPerTick && highestReceived - lastProcessed > 0)
+		{
+			int next = lastProcessed + 1;
+			int slot = next & mask;
+			if (present[slot] && sequences[slot] == next)
+			{
+				out.add((T) inputs[slot]);
+				inputs[slot] = null;
+				present[slot] = false;
+				lastProcessed = next;
+				waitedTicks = 0;
+				count++;
+			}
+			else if (waitedTicks >= maxWaitTicks)
+			{
+				// Give up on the missing input, the later ones are more
+				// relevant now.
+				lastProcessed = next;
+				waitedTicks = 0;
+				skipped++;
+			}
+			else
+			{
+				waitedTicks++;
+				break;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Creates an {@link Events#INPUT_ACK} event with the last processed
+	 * sequence number as payload.
+	 *
+	 * @return The ack event.
+	 */
+	public Event createAckEvent()
+	{
+		NettyMessageBuffer buffer = new NettyMessageBuffer();
+		buffer.writeInt(lastProcessed);
+		return Events.event(buffer, Events.INPUT_ACK);
+	}
+
+	/**
+	 * Sends an {@link Events#INPUT_ACK} to the client if new inputs were
+	 * processed since the last ack. It is sent over UDP if the session has it
+	 * enabled, since a lost ack is superseded by the next one.
+	 *
+	 * @param playerSession
+	 *            The session which sent the inputs.
+	 * @return true if an ack was sent.
+	 */
+	public boolean sendAck(PlayerSession playerSession)
+	{
+		if (lastProcessed == lastAcknowledged)
+		{
+			return false;
+		}
+		MessageSender sender = playerSession.getUdpSender();
+		if (!playerSession.isUDPEnabled() || null == sender)
+		{
+			sender = playerSession.getTcpSender();
+		}
+		if (null == sender || !playerSession.isWriteable())
+		{
+			return false;
+		}
+		sender.sendMessage(createAckEvent());
+		lastAcknowledged = lastProcessed;
+		return true;
+	}
+
+	public int getLastProcessedSequence()
+	{
+		return lastProcessed;
+	}
+
+	public int getHighestReceivedSequence()
+	{
+		return highestReceived;
+	}
+
+	/**
+	 * @return Number of inputs discarded since they were already received or
+	 *         processed.
+	 */
+	public long getDuplicateCount()
+	{
+		return duplicates;
+	}
+
+	/**
+	 * @return Number of sequence numbers skipped since the input did not
+	 *         arrive in time.
+	 */
+	public long getSkippedCount()
+	{
+		return skipped;
+	}
+}
@@ -4,6 +4,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+import org.jetlang.core.BatchExecutor;
 import org.jetlang.fibers.Fiber;
 import org.jetlang.fibers.PoolFiberFactory;
 import org.jetlang.fibers.ThreadFiber;
@@ -50,13 +51,40 @@ public class Fibers
 	 * @return The created fiber.
 	 */
 	public static Fiber pooledFiber(Lane<String,ExecutorService> lane)
+	{
+		return pooledFiber(lane, null);
+	}
+	
+	/**
+	 * Creates and starts a fiber whose queued tasks are run by the batch
+	 * executor passed in, for e.g. to time each turn of the fiber.
+	 * 
+	 * @return The created fiber.
+	 */
+	public static Fiber pooledFiber(BatchExecutor executor)
+	{
+		Fiber fiber = FACT.create(executor);
+		fiber.start();
+		return fiber;
+	}
+	
+	/**
+	 * Creates and starts a fiber on the lane, whose queued tasks are run by the
+	 * batch executor passed in. The default executor of jetlang is used if it
+	 * is null.
+	 * 
+	 * @return The created fiber.
+	 */
+	public static Fiber pooledFiber(Lane<String,ExecutorService> lane, BatchExecutor executor)
 	{
 		if(null == lanePoolFactoryMap.get(lane))
 		{
 			lanePoolFactoryMap.putIfAbsent(lane, new PoolFiberFactory(lane.getUnderlyingLane()));
 		}
 		
-		Fiber fiber = lanePoolFactoryMap.get(lane).create();
+		PoolFiberFactory factory = lanePoolFactoryMap.get(lane);
+		Fiber fiber = (null == executor) ? factory.create() : factory
+				.create(executor);
 		fiber.start();
 		return fiber;
 	}
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 
 public class ManagedExecutor
@@ -28,4 +29,18 @@ public class ManagedExecutor
 		EXECUTOR_SERVICES.add(exec);
 		return exec;
 	}
+	
+	public static ExecutorService newFixedThreadPool(int nThreads, ThreadFactory threadFactory)
+	{
+		final ExecutorService exec = Executors.newFixedThreadPool(nThreads, threadFactory);
+		EXECUTOR_SERVICES.add(exec);
+		return exec;
+	}
+	
+	public static ScheduledExecutorService newSingleThreadScheduledExecutor(ThreadFactory threadFactory)
+	{
+		final ScheduledExecutorService exec = Executors.newSingleThreadScheduledExecutor(threadFactory);
+		EXECUTOR_SERVICES.add(exec);
+		return exec;
+	}
 }
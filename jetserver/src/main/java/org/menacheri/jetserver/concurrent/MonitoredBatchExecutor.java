@@ -0,0 +1,57 @@
+package org.menacheri.jetserver.concurrent;
+
+import org.jetlang.core.BatchExecutor;
+import org.jetlang.core.EventReader;
+import org.jetlang.fibers.Fiber;
+
+/**
+ * Runs the tasks queued on a {@link Fiber} and, if an {@link OverrunMonitor}
+ * is set, records the time taken by each turn of the fiber on its lane as a
+ * single execution. A turn holds the batches of events passed to all the
+ * handlers of a dispatcher along with its executed and scheduled tasks, so a
+ * room whose handlers are each quick but together overrun the budget is
+ * noticed.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+public class MonitoredBatchExecutor implements BatchExecutor
+{
+	private volatile OverrunMonitor overrunMonitor;
+
+	@Override
+	public void execute(EventReader toExecute)
+	{
+		OverrunMonitor monitor = overrunMonitor;
+		long start = (null == monitor) ? 0 : System.nanoTime();
+		try
+		{
+			for (int i = 0; i < toExecute.size(); i++)
+			{
+				toExecute.get(i).run();
+			}
+		}
+		finally
+		{
+			if (null != monitor)
+			{
+				monitor.record(System.nanoTime() - start);
+			}
+		}
+	}
+
+	public OverrunMonitor getOverrunMonitor()
+	{
+		return overrunMonitor;
+	}
+
+	/**
+	 * @param overrunMonitor
+	 *            The monitor which times the turns starting after this call,
+	 *            null to stop timing them.
+	 */
+	public void setOverrunMonitor(OverrunMonitor overrunMonitor)
+	{
+		this.overrunMonitor = overrunMonitor;
+	}
+}
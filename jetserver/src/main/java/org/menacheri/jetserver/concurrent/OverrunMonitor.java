@@ -0,0 +1,290 @@
+package org.menacheri.jetserver.concurrent;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Times the work a game room does on its lane, i.e. each turn of the fibers
+ * of its dispatchers and those of its sessions, which runs its ticks and the
+ * batches of events passed to its handlers, against a budget. When a number of
+ * executions in a row overrun the budget the {@link OverrunPolicy} is applied,
+ * so that a slow room is noticed before every other room sharing the lane
+ * lags with it. The statistics can be exported using
+ * {@link #getStatistics()}.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+public class OverrunMonitor
+{
+	private static final Logger LOG = LoggerFactory
+			.getLogger(OverrunMonitor.class);
+
+	/**
+	 * What to do when the budget is overrun repeatedly.
+	 *
+	 * @author Abraham Menacherry
+	 *
+	 */
+	public enum OverrunPolicy
+	{
+		/**
+		 * Only log and count the overruns.
+		 */
+		LOG,
+		/**
+		 * Mark the room as degraded, so that it skips non essential work, for
+		 * e.g. sends only half of its FAST broadcasts, till it is back within
+		 * budget.
+		 */
+		DEGRADE,
+		/**
+		 * Notify the {@link OverrunListener}, for e.g. to move the sessions
+		 * of the room to a room on a less loaded lane.
+		 */
+		RELOCATE
+	}
+
+	/**
+	 * Receives the overruns which require action under the
+	 * {@link OverrunPolicy#RELOCATE} policy.
+	 *
+	 * @author Abraham Menacherry
+	 *
+	 */
+	public interface OverrunListener
+	{
+		void onOverrun(OverrunMonitor monitor);
+	}
+
+	private final String name;
+	private final long budget;
+	private final OverrunPolicy policy;
+	private final int overrunsToAct;
+	private final int executionsToRecover;
+	private volatile OverrunListener listener;
+
+	private long executions;
+	private long overruns;
+	private long totalNanos;
+	private long maxNanos;
+	private long lastNanos;
+	private int consecutiveOverruns;
+	private int consecutiveWithinBudget;
+	private long actions;
+	private volatile boolean degraded;
+
+	/**
+	 * Creates a monitor which acts after 3 overruns in a row and recovers
+	 * after 30 executions within budget.
+	 */
+	public OverrunMonitor(String name, long budget, TimeUnit unit,
+			OverrunPolicy policy)
+	{
+		this(name, budget, unit, policy, 3, 30);
+	}
+
+	/**
+	 * @param name
+	 *            Identifies the monitored room in the logs.
+	 * @param budget
+	 *            The maximum time a single execution should take.
+	 * @param unit
+	 *            The unit of the budget.
+	 * @param policy
+	 *            The action taken on repeated overruns.
+	 * @param overrunsToAct
+	 *            The number of overruns in a row after which the policy is
+	 *            applied.
+	 * @param executionsToRecover
+	 *            The number of executions in a row within budget after which a
+	 *            degraded room recovers.
+	 */
+	public OverrunMonitor(String name, long budget, TimeUnit unit,
+			OverrunPolicy policy, int overrunsToAct, int executionsToRecover)
+	{
+		if (budget <= 0 || null == policy || overrunsToAct <= 0
+				|| executionsToRecover <= 0)
+		{
+			throw new IllegalArgumentException(
+					"Invalid budget, policy or thresholds");
+		}
+		this.name = name;
+		this.budget = unit.toNanos(budget);
+		this.policy = policy;
+		this.overrunsToAct = overrunsToAct;
+		this.executionsToRecover = executionsToRecover;
+	}
+
+	/**
+	 * Wraps the task so that each of its runs is recorded.
+	 */
+	public Runnable monitor(final Runnable task)
+	{
+		return new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				long start = System.nanoTime();
+				try
+				{
+					task.run();
+				}
+				finally
+				{
+					record(System.nanoTime() - start);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Records the duration of an execution on the lane.
+	 *
+	 * @param nanos
+	 *            The time taken in nanoseconds.
+	 */
+	public void record(long nanos)
+	{
+		boolean notify = false;
+		synchronized (this)
+		{
+			executions++;
+			totalNanos += nanos;
+			lastNanos = nanos;
+			if (nanos > maxNanos)
+			{
+				maxNanos = nanos;
+			}
+			if (nanos <= budget)
+			{
+				consecutiveOverruns = 0;
+				if (degraded && ++consecutiveWithinBudget >= executionsToRecover)
+				{
+					degraded = false;
+					LOG.info("{} is back within its budget", name);
+				}
+				return;
+			}
+			overruns++;
+			consecutiveWithinBudget = 0;
+			if (++consecutiveOverruns == 1)
+			{
+				LOG.warn("{} took {}us, over its budget of {}us", new Object[] {
+						name, nanos / 1000, budget / 1000 });
+			}
+			if (consecutiveOverruns < overrunsToAct)
+			{
+				return;
+			}
+			consecutiveOverruns = 0;
+			actions++;
+			switch (policy)
+			{
+			case DEGRADE:
+				if (!degraded)
+				{
+					LOG.warn("{} overran its budget {} times in a row, "
+							+ "degrading", name, overrunsToAct);
+				}
+				degraded = true;
+				break;
+			case RELOCATE:
+				notify = true;
+				break;
+			default:
+				break;
+			}
+		}
+		if (notify)
+		{
+			OverrunListener overrunListener = listener;
+			if (null == overrunListener)
+			{
+				LOG.warn("{} needs to be relocated but has no overrun listener",
+						name);
+			}
+			else
+			{
+				overrunListener.onOverrun(this);
+			}
+		}
+	}
+
+	/**
+	 * @return true if non essential work should be skipped.
+	 */
+	public boolean isDegraded()
+	{
+		return degraded;
+	}
+
+	/**
+	 * @return The statistics of this monitor keyed by name, for export to a
+	 *         metrics system. Times are in microseconds.
+	 */
+	public synchronized Map<String, Long> getStatistics()
+	{
+		Map<String, Long> statistics = new LinkedHashMap<String, Long>();
+		statistics.put("executions", executions);
+		statistics.put("overruns", overruns);
+		statistics.put("actions", actions);
+		statistics.put("degraded", degraded ? 1L : 0L);
+		statistics.put("budgetMicros", budget / 1000);
+		statistics.put("lastMicros", lastNanos / 1000);
+		statistics.put("maxMicros", maxNanos / 1000);
+		statistics.put("meanMicros", (0 == executions) ? 0 : totalNanos
+				/ executions / 1000);
+		return statistics;
+	}
+
+	public synchronized long getExecutions()
+	{
+		return executions;
+	}
+
+	public synchronized long getOverruns()
+	{
+		return overruns;
+	}
+
+	/**
+	 * @return The number of times the policy was applied.
+	 */
+	public synchronized long getActions()
+	{
+		return actions;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public OverrunPolicy getPolicy()
+	{
+		return policy;
+	}
+
+	public OverrunListener getListener()
+	{
+		return listener;
+	}
+
+	public void setListener(OverrunListener listener)
+	{
+		this.listener = listener;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "OverrunMonitor [name=" + name + ", statistics="
+				+ getStatistics() + "]";
+	}
+}
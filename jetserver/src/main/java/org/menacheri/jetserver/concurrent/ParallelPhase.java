@@ -0,0 +1,238 @@
+package org.menacheri.jetserver.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Splits the heavy part of a game room tick, for e.g. updating tens of
+ * thousands of entities, into partitions which are computed in parallel on a
+ * pool of worker threads. The calling thread, normally the lane of the room,
+ * computes the first partition itself and then waits for the others. The
+ * results are then merged back on the calling thread in partition order, so
+ * the outcome is deterministic and independent of the order in which the
+ * workers finish. Handler code and all writes to shared room state hence stay
+ * single threaded, only {@link PartitionedTask#compute(int, int, int)} runs in
+ * parallel and it should only read shared state and write to its own range or
+ * to its partition local result.
+ * <p>
+ * The partitioning only depends on the size and the parallelism, so the same
+ * entity always falls in the same partition for a given configuration. The
+ * pool is bounded, a phase must not be run from inside the compute of another
+ * phase of the same instance.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+public class ParallelPhase
+{
+	private final ExecutorService executor;
+	private final int parallelism;
+	private final int minPartitionSize;
+
+	/**
+	 * Creates a phase with its own pool of parallelism - 1 daemon threads,
+	 * since the calling thread computes one partition.
+	 *
+	 * @param parallelism
+	 *            The maximum number of partitions.
+	 * @param minPartitionSize
+	 *            Ranges smaller than this are not split further, since the
+	 *            hand off to a worker would cost more than the work.
+	 */
+	public ParallelPhase(int parallelism, int minPartitionSize)
+	{
+		this(parallelism > 1 ? ManagedExecutor.newFixedThreadPool(
+				parallelism - 1, new NamedThreadFactory("ParallelPhase", true))
+				: null, parallelism, minPartitionSize);
+	}
+
+	public ParallelPhase(ExecutorService executor, int parallelism,
+			int minPartitionSize)
+	{
+		if (parallelism < 1 || minPartitionSize < 1)
+		{
+			throw new IllegalArgumentException(
+					"Parallelism and partition size should be positive");
+		}
+		this.executor = executor;
+		this.parallelism = parallelism;
+		this.minPartitionSize = minPartitionSize;
+	}
+
+	/**
+	 * Computes the task over the range 0 to size - 1 and merges the partition
+	 * results on the calling thread.
+	 *
+	 * @param size
+	 *            The number of items, for e.g. the size of an entity store.
+	 * @param task
+	 *            The task to run.
+	 * @return The number of partitions used.
+	 * @throws Exception
+	 *             The first exception thrown by a compute, in partition
+	 *             order. No result is merged in that case and it is thrown
+	 *             only after all the workers have finished, so none of them
+	 *             is still touching room state.
+	 */
+	public <R> int run(int size, final PartitionedTask<R> task)
+			throws Exception
+	{
+		final int partitions = partitions(size);
+		if (partitions <= 1)
+		{
+			task.merge(0, task.compute(0, size, 0));
+			return 1;
+		}
+		// Set on failure so that partitions not yet started are skipped.
+		final AtomicBoolean aborted = new AtomicBoolean(false);
+		List<Future<R>> futures = new ArrayList<Future<R>>(partitions - 1);
+		List<R> results = new ArrayList<R>(partitions);
+		try
+		{
+			for (int i = 1; i < partitions; i++)
+			{
+				final int partition = i;
+				final int from = start(size, partitions, i);
+				final int to = start(size, partitions, i + 1);
+				futures.add(executor.submit(new Callable<R>()
+				{
+					@Override
+					public R call() throws Exception
+					{
+						if (aborted.get())
+						{
+							return null;
+						}
+						return task.compute(from, to, partition);
+					}
+				}));
+			}
+			results.add(task.compute(0, start(size, partitions, 1), 0));
+			for (Future<R> future : futures)
+			{
+				try
+				{
+					results.add(future.get());
+				}
+				catch (ExecutionException e)
+				{
+					Throwable cause = e.getCause();
+					if (cause instanceof Exception)
+					{
+						throw (Exception) cause;
+					}
+					throw e;
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			aborted.set(true);
+			awaitAll(futures);
+			throw e;
+		}
+		for (int i = 0; i < partitions; i++)
+		{
+			task.merge(i, results.get(i));
+		}
+		return partitions;
+	}
+
+	/**
+	 * Waits for every future to complete, whatever its outcome. Futures are
+	 * not cancelled since that would not wait for a running compute.
+	 */
+	private static <R> void awaitAll(List<Future<R>> futures)
+	{
+		boolean interrupted = false;
+		for (Future<R> future : futures)
+		{
+			while (true)
+			{
+				try
+				{
+					future.get();
+					break;
+				}
+				catch (InterruptedException e)
+				{
+					interrupted = true;
+				}
+				catch (ExecutionException e)
+				{
+					break;
+				}
+			}
+		}
+		if (interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return The number of partitions a range of this size is split into.
+	 */
+	public int partitions(int size)
+	{
+		if (null == executor)
+		{
+			return 1;
+		}
+		return Math.max(1, Math.min(parallelism, size / minPartitionSize));
+	}
+
+	public void shutdown()
+	{
+		if (null != executor)
+		{
+			executor.shutdown();
+		}
+	}
+
+	public int getParallelism()
+	{
+		return parallelism;
+	}
+
+	private static int start(int size, int partitions, int partition)
+	{
+		return (int) ((long) size * partition / partitions);
+	}
+
+	/**
+	 * The parallel part of a tick.
+	 *
+	 * @author Abraham Menacherry
+	 *
+	 * @param <R>
+	 *            The type of the partition local result, for e.g. a list of
+	 *            collisions or events produced by the partition.
+	 */
+	public interface PartitionedTask<R>
+	{
+		/**
+		 * Computes a partition on a worker thread.
+		 *
+		 * @param from
+		 *            The first index of the partition, inclusive.
+		 * @param to
+		 *            The last index of the partition, exclusive.
+		 * @param partition
+		 *            The number of the partition starting at 0.
+		 * @return The partition local result.
+		 */
+		R compute(int from, int to, int partition) throws Exception;
+
+		/**
+		 * Commits the result of a partition on the calling thread. Invoked in
+		 * partition order after all partitions are computed.
+		 */
+		void merge(int partition, R result);
+	}
+}
@@ -34,6 +34,7 @@ public class AppContext implements ApplicationContextAware
 	public static final String GAME_ADMIN_SERVICE = "gameAdminService";
 	public static final String TASK_MANAGER_SERVICE = "taskManagerService";
 	public static final String SESSION_REGISTRY_SERVICE = "sessionRegistryService";
+	public static final String CHECKPOINT_SERVICE = "checkpointService";
 	
 	// Server default protocols
 	public static final String SIMPLE_BYTE_ARRAY_PROTOCOL = "simpleByteArrayProtocol";
@@ -0,0 +1,749 @@
+package org.menacheri.jetserver.convert.compact;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.netty.util.CharsetUtil;
+import org.menacheri.jetserver.communication.MessageBuffer;
+import org.menacheri.jetserver.convert.Transform;
+
+/**
+ * Generates reflection free codecs from a small schema language, as an
+ * alternative to hand written sequences of {@link MessageBuffer} reads and
+ * writes or to Gson and AMF3. A schema names the java package of the
+ * generated classes followed by its messages:
+ *
+ * <pre>
+ * package org.menacheri.zombie.domain;
+ *
+ * // Sent by a player to act on the game.
+ * message Command
+ * {
+ *     uint who;
+ *     uint operation;
+ *     optional string target;
+ *     optional Position at;
+ * }
+ *
+ * message Position
+ * {
+ *     int x;
+ *     int y;
+ * }
+ * </pre>
+ *
+ * For every message a plain bean and a codec named after it with the suffix
+ * <b>Codec</b> are generated. The codec has static <code>read</code> and
+ * <code>write</code> methods working on a {@link MessageBuffer} along with
+ * <code>DECODER</code> and <code>ENCODER</code> {@link Transform} instances.
+ * Fields are written in declaration order without tags, using
+ * {@link VarInts} for the integer types. A message with optional fields starts
+ * with a varint bit mask of the optional fields which are present, so an
+ * absent field takes no space. Optional fields of primitive types are boxed
+ * and absent when null.
+ * <p>
+ * The field types are <b>bool</b>, <b>byte</b>, <b>int</b> and <b>long</b>
+ * (zig-zag varints), <b>uint</b> and <b>ulong</b> (varints, for values which
+ * are never negative), <b>float</b>, <b>double</b>, <b>string</b>,
+ * <b>bytes</b> and the names of other messages of the schema. Compiling the
+ * same schema for {@link Target#CLIENT} generates the matching classes for
+ * jetclient. Usage:
+ * <b>SchemaCompiler schemaFile outputDirectory [server|client]</b>
+ *
+ * @author Abraham Menacherry
+ *
+ */
+public class SchemaCompiler
+{
+	/**
+	 * The most optional fields a message can have, one bit each in the
+	 * presence mask.
+	 */
+	public static final int MAX_OPTIONAL_FIELDS = 32;
+
+	/**
+	 * The module the generated code is compiled into.
+	 *
+	 * @author Abraham Menacherry
+	 *
+	 */
+	public enum Target
+	{
+		SERVER("org.menacheri.jetserver.communication",
+				"org.menacheri.jetserver.convert.Transform",
+				"org.menacheri.jetserver.convert.compact.VarInts"), CLIENT(
+				"org.menacheri.jetclient.communication",
+				"org.menacheri.convert.Transform",
+				"org.menacheri.convert.compact.VarInts");
+
+		final String communicationPackage;
+		final String transformClass;
+		final String varIntsClass;
+
+		private Target(String communicationPackage, String transformClass,
+				String varIntsClass)
+		{
+			this.communicationPackage = communicationPackage;
+			this.transformClass = transformClass;
+			this.varIntsClass = varIntsClass;
+		}
+	}
+
+	/**
+	 * The built in field types. The write format takes the value expression
+	 * and the read expression produces the value from <code>buffer</code>.
+	 *
+	 * @author Abraham Menacherry
+	 *
+	 */
+	public enum FieldType
+	{
+		BOOL("bool", "boolean", "Boolean",
+				"buffer.writeByte((byte) (%s ? 1 : 0));",
+				"0 != buffer.readByte()"), BYTE("byte", "byte", "Byte",
+				"buffer.writeByte(%s);", "(byte) buffer.readByte()"), INT(
+				"int", "int", "Integer",
+				"VarInts.writeSignedVarInt(buffer, %s);",
+				"VarInts.readSignedVarInt(buffer)"), UINT("uint", "int",
+				"Integer", "VarInts.writeVarInt(buffer, %s);",
+				"VarInts.readVarInt(buffer)"), LONG("long", "long", "Long",
+				"VarInts.writeSignedVarLong(buffer, %s);",
+				"VarInts.readSignedVarLong(buffer)"), ULONG("ulong", "long",
+				"Long", "VarInts.writeVarLong(buffer, %s);",
+				"VarInts.readVarLong(buffer)"), FLOAT("float", "float",
+				"Float", "buffer.writeFloat(%s);", "buffer.readFloat()"), DOUBLE(
+				"double", "double", "Double", "buffer.writeDouble(%s);",
+				"buffer.readDouble()"), STRING("string", "String", "String",
+				"VarInts.writeString(buffer, %s);",
+				"VarInts.readString(buffer)"), BYTES("bytes", "byte[]",
+				"byte[]", "VarInts.writeBytes(buffer, %s);",
+				"VarInts.readBytes(buffer)");
+
+		final String schemaName;
+		final String javaType;
+		final String boxedType;
+		final String writeFormat;
+		final String readExpression;
+
+		private FieldType(String schemaName, String javaType,
+				String boxedType, String writeFormat, String readExpression)
+		{
+			this.schemaName = schemaName;
+			this.javaType = javaType;
+			this.boxedType = boxedType;
+			this.writeFormat = writeFormat;
+			this.readExpression = readExpression;
+		}
+
+		static FieldType fromSchemaName(String name)
+		{
+			for (FieldType type : values())
+			{
+				if (type.schemaName.equals(name))
+				{
+					return type;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * A parsed schema.
+	 *
+	 * @author Abraham Menacherry
+	 *
+	 */
+	public static class Schema
+	{
+		private final String packageName;
+		private final Map<String, Message> messages = new LinkedHashMap<String, Message>();
+
+		public Schema(String packageName)
+		{
+			this.packageName = packageName;
+		}
+
+		public String getPackageName()
+		{
+			return packageName;
+		}
+
+		public Map<String, Message> getMessages()
+		{
+			return messages;
+		}
+	}
+
+	public static class Message
+	{
+		private final String name;
+		private final List<Field> fields = new ArrayList<Field>();
+
+		public Message(String name)
+		{
+			this.name = name;
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public List<Field> getFields()
+		{
+			return fields;
+		}
+
+		boolean hasOptionalFields()
+		{
+			for (Field field : fields)
+			{
+				if (field.optional)
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	public static class Field
+	{
+		private final String name;
+		private final String typeName;
+		private final boolean optional;
+
+		public Field(String name, String typeName, boolean optional)
+		{
+			this.name = name;
+			this.typeName = typeName;
+			this.optional = optional;
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public String getTypeName()
+		{
+			return typeName;
+		}
+
+		public boolean isOptional()
+		{
+			return optional;
+		}
+
+		/**
+		 * @return The built in type or null if the field is a message.
+		 */
+		FieldType getType()
+		{
+			return FieldType.fromSchemaName(typeName);
+		}
+
+		String javaType()
+		{
+			FieldType type = getType();
+			if (null == type)
+			{
+				return typeName;
+			}
+			return optional ? type.boxedType : type.javaType;
+		}
+
+		String accessorSuffix()
+		{
+			return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+		}
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 2)
+		{
+			System.err
+					.println("Usage: SchemaCompiler <schemaFile> <outputDirectory> [server|client]");
+			return;
+		}
+		Target target = (args.length > 2) ? Target.valueOf(args[2]
+				.toUpperCase()) : Target.SERVER;
+		for (File file : compile(new File(args[0]), new File(args[1]), target))
+		{
+			System.out.println("Generated " + file);
+		}
+	}
+
+	/**
+	 * Parses the schema file and writes the generated sources under the
+	 * output directory, in sub directories matching the package.
+	 *
+	 * @return The files written.
+	 */
+	public static List<File> compile(File schemaFile, File outputDirectory,
+			Target target) throws IOException
+	{
+		Schema schema = parse(read(schemaFile));
+		List<File> files = new ArrayList<File>();
+		for (Map.Entry<String, String> source : generate(schema, target)
+				.entrySet())
+		{
+			File file = new File(outputDirectory, source.getKey());
+			file.getParentFile().mkdirs();
+			Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+					CharsetUtil.UTF_8);
+			try
+			{
+				writer.write(source.getValue());
+			}
+			finally
+			{
+				writer.close();
+			}
+			files.add(file);
+		}
+		return files;
+	}
+
+	private static String read(File file) throws IOException
+	{
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), CharsetUtil.UTF_8));
+		try
+		{
+			StringBuilder text = new StringBuilder();
+			String line;
+			while (null != (line = reader.readLine()))
+			{
+				text.append(line).append('\n');
+			}
+			return text.toString();
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	/**
+	 * Parses and validates a schema.
+	 *
+	 * @throws IllegalArgumentException
+	 *             with the line number if the schema is invalid.
+	 */
+	public static Schema parse(String text)
+	{
+		Tokenizer tokens = new Tokenizer(text);
+		tokens.expect("package");
+		Schema schema = new Schema(tokens.name());
+		tokens.expect(";");
+		while (tokens.hasNext())
+		{
+			tokens.expect("message");
+			int line = tokens.line();
+			Message message = new Message(tokens.name());
+			if (null != FieldType.fromSchemaName(message.getName())
+					|| null != schema.messages.put(message.getName(), message))
+			{
+				throw tokens.error(line, "Duplicate message "
+						+ message.getName());
+			}
+			tokens.expect("{");
+			Set<String> names = new HashSet<String>();
+			int optionalFields = 0;
+			while (!tokens.accept("}"))
+			{
+				line = tokens.line();
+				boolean optional = tokens.accept("optional");
+				String typeName = tokens.name();
+				String name = tokens.name();
+				tokens.expect(";");
+				if (!names.add(name))
+				{
+					throw tokens.error(line, "Duplicate field " + name
+							+ " in message " + message.getName());
+				}
+				if (optional && ++optionalFields > MAX_OPTIONAL_FIELDS)
+				{
+					throw tokens.error(line, "More than "
+							+ MAX_OPTIONAL_FIELDS
+							+ " optional fields in message "
+							+ message.getName());
+				}
+				message.fields.add(new Field(name, typeName, optional));
+			}
+		}
+		for (Message message : schema.messages.values())
+		{
+			for (Field field : message.fields)
+			{
+				if (null == field.getType()
+						&& !schema.messages.containsKey(field.typeName))
+				{
+					throw new IllegalArgumentException("Unknown type "
+							+ field.typeName + " of field " + field.name
+							+ " in message " + message.getName());
+				}
+			}
+		}
+		return schema;
+	}
+
+	/**
+	 * @return The generated sources keyed by their path relative to the
+	 *         source root.
+	 */
+	public static Map<String, String> generate(Schema schema, Target target)
+	{
+		Map<String, String> sources = new LinkedHashMap<String, String>();
+		String directory = schema.packageName.replace('.', '/') + "/";
+		for (Message message : schema.messages.values())
+		{
+			sources.put(directory + message.name + ".java", generateBean(
+					schema, message));
+			sources.put(directory + message.name + "Codec.java",
+					generateCodec(schema, message, target));
+		}
+		return sources;
+	}
+
+	static String generateBean(Schema schema, Message message)
+	{
+		Source out = new Source();
+		out.line(0, "package " + schema.packageName + ";");
+		out.line(0, "");
+		out.line(0, "/**");
+		out.line(0, " * Generated by SchemaCompiler, do not edit.");
+		out.line(0, " */");
+		out.line(0, "public class " + message.name);
+		out.line(0, "{");
+		for (Field field : message.fields)
+		{
+			out.line(1, "private " + field.javaType() + " " + field.name + ";");
+		}
+		for (Field field : message.fields)
+		{
+			String type = field.javaType();
+			out.line(0, "");
+			out.line(1, "public " + type + " get" + field.accessorSuffix()
+					+ "()");
+			out.line(1, "{");
+			out.line(2, "return " + field.name + ";");
+			out.line(1, "}");
+			out.line(0, "");
+			out.line(1, "public void set" + field.accessorSuffix() + "("
+					+ type + " " + field.name + ")");
+			out.line(1, "{");
+			out.line(2, "this." + field.name + " = " + field.name + ";");
+			out.line(1, "}");
+		}
+		out.line(0, "}");
+		return out.toString();
+	}
+
+	static String generateCodec(Schema schema, Message message, Target target)
+	{
+		String name = message.name;
+		String codec = name + "Codec";
+		Source out = new Source();
+		out.line(0, "package " + schema.packageName + ";");
+		out.line(0, "");
+		out.line(0, "import org.jboss.netty.buffer.ChannelBuffer;");
+		out.line(0, "import " + target.communicationPackage
+				+ ".MessageBuffer;");
+		out.line(0, "import " + target.communicationPackage
+				+ ".NettyMessageBuffer;");
+		out.line(0, "import " + target.transformClass + ";");
+		out.line(0, "import " + target.varIntsClass + ";");
+		out.line(0, "");
+		out.line(0, "/**");
+		out.line(0, " * Generated by SchemaCompiler, do not edit.");
+		out.line(0, " */");
+		out.line(0, "public final class " + codec);
+		out.line(0, "{");
+		out.line(1, "public static final Transform<MessageBuffer<?>, " + name
+				+ "> DECODER = new Transform<MessageBuffer<?>, " + name
+				+ ">()");
+		out.line(1, "{");
+		out.line(2, "@Override");
+		out.line(2, "public " + name
+				+ " convert(MessageBuffer<?> buffer) throws Exception");
+		out.line(2, "{");
+		out.line(3, "return read(buffer);");
+		out.line(2, "}");
+		out.line(1, "};");
+		out.line(0, "");
+		out.line(1, "public static final Transform<" + name
+				+ ", MessageBuffer<ChannelBuffer>> ENCODER = new Transform<"
+				+ name + ", MessageBuffer<ChannelBuffer>>()");
+		out.line(1, "{");
+		out.line(2, "@Override");
+		out.line(2, "public MessageBuffer<ChannelBuffer> convert(" + name
+				+ " message) throws Exception");
+		out.line(2, "{");
+		out.line(3, "NettyMessageBuffer buffer = new NettyMessageBuffer();");
+		out.line(3, "write(message, buffer);");
+		out.line(3, "return buffer;");
+		out.line(2, "}");
+		out.line(1, "};");
+		out.line(0, "");
+		out.line(1, "private " + codec + "()");
+		out.line(1, "{");
+		out.line(1, "}");
+		out.line(0, "");
+
+		out.line(1, "public static void write(" + name
+				+ " message, MessageBuffer<?> buffer)");
+		out.line(1, "{");
+		if (message.hasOptionalFields())
+		{
+			out.line(2, "int present = 0;");
+			int bit = 0;
+			for (Field field : message.fields)
+			{
+				if (field.optional)
+				{
+					out.line(2, "if (null != message.get"
+							+ field.accessorSuffix() + "())");
+					out.line(2, "{");
+					out.line(3, "present |= " + mask(bit++) + ";");
+					out.line(2, "}");
+				}
+			}
+			out.line(2, "VarInts.writeVarInt(buffer, present);");
+		}
+		int bit = 0;
+		for (Field field : message.fields)
+		{
+			String value = "message.get" + field.accessorSuffix() + "()";
+			int indent = 2;
+			if (field.optional)
+			{
+				out.line(2, "if (0 != (present & " + mask(bit++) + "))");
+				out.line(2, "{");
+				indent = 3;
+			}
+			FieldType type = field.getType();
+			if (null == type)
+			{
+				out.line(indent, field.typeName + "Codec.write(" + value
+						+ ", buffer);");
+			}
+			else
+			{
+				out.line(indent, String.format(type.writeFormat, value));
+			}
+			if (field.optional)
+			{
+				out.line(2, "}");
+			}
+		}
+		out.line(1, "}");
+		out.line(0, "");
+
+		out.line(1, "public static " + name + " read(MessageBuffer<?> buffer)");
+		out.line(1, "{");
+		out.line(2, name + " message = new " + name + "();");
+		if (message.hasOptionalFields())
+		{
+			out.line(2, "int present = VarInts.readVarInt(buffer);");
+		}
+		bit = 0;
+		for (Field field : message.fields)
+		{
+			int indent = 2;
+			if (field.optional)
+			{
+				out.line(2, "if (0 != (present & " + mask(bit++) + "))");
+				out.line(2, "{");
+				indent = 3;
+			}
+			FieldType type = field.getType();
+			String value = (null == type) ? field.typeName
+					+ "Codec.read(buffer)" : type.readExpression;
+			out.line(indent, "message.set" + field.accessorSuffix() + "("
+					+ value + ");");
+			if (field.optional)
+			{
+				out.line(2, "}");
+			}
+		}
+		out.line(2, "return message;");
+		out.line(1, "}");
+		out.line(0, "}");
+		return out.toString();
+	}
+
+	private static String mask(int bit)
+	{
+		return "0x" + Integer.toHexString(1 << bit);
+	}
+
+	private static class Source
+	{
+		private final StringBuilder text = new StringBuilder();
+
+		void line(int indent, String line)
+		{
+			for (int i = 0; i < indent; i++)
+			{
+				text.append('\t');
+			}
+			text.append(line).append('\n');
+		}
+
+		@Override
+		public String toString()
+		{
+			return text.toString();
+		}
+	}
+
+	/**
+	 * Splits a schema into names and the symbols <b>{ } ;</b>, skipping white
+	 * space and comments.
+	 */
+	private static class Tokenizer
+	{
+		private final List<String> tokens = new ArrayList<String>();
+		private final List<Integer> lines = new ArrayList<Integer>();
+		private int position;
+
+		Tokenizer(String text)
+		{
+			int line = 1;
+			int i = 0;
+			while (i < text.length())
+			{
+				char c = text.charAt(i);
+				if ('\n' == c)
+				{
+					line++;
+					i++;
+				}
+				else if (Character.isWhitespace(c))
+				{
+					i++;
+				}
+				else if (text.startsWith("//", i))
+				{
+					while (i < text.length() && '\n' != text.charAt(i))
+					{
+						i++;
+					}
+				}
+				else if (text.startsWith("/*", i))
+				{
+					int end = text.indexOf("*/", i + 2);
+					if (end < 0)
+					{
+						throw error(line, "Unterminated comment");
+					}
+					for (; i < end + 2; i++)
+					{
+						if ('\n' == text.charAt(i))
+						{
+							line++;
+						}
+					}
+				}
+				else if ('{' == c || '}' == c || ';' == c)
+				{
+					add(String.valueOf(c), line);
+					i++;
+				}
+				else if (Character.isJavaIdentifierPart(c) || '.' == c)
+				{
+					int start = i;
+					while (i < text.length()
+							&& (Character.isJavaIdentifierPart(text.charAt(i)) || '.' == text
+									.charAt(i)))
+					{
+						i++;
+					}
+					add(text.substring(start, i), line);
+				}
+				else
+				{
+					throw error(line, "Unexpected character '" + c + "'");
+				}
+			}
+		}
+
+		private void add(String token, int line)
+		{
+			tokens.add(token);
+			lines.add(line);
+		}
+
+		boolean hasNext()
+		{
+			return position < tokens.size();
+		}
+
+		int line()
+		{
+			return hasNext() ? lines.get(position) : lines.isEmpty() ? 1
+					: lines.get(lines.size() - 1);
+		}
+
+		boolean accept(String token)
+		{
+			if (hasNext() && tokens.get(position).equals(token))
+			{
+				position++;
+				return true;
+			}
+			return false;
+		}
+
+		void expect(String token)
+		{
+			if (!accept(token))
+			{
+				throw error(line(), "Expected '" + token + "' but found "
+						+ next());
+			}
+		}
+
+		String name()
+		{
+			String token = next();
+			if (!Character.isJavaIdentifierStart(token.charAt(0)))
+			{
+				throw error(line(), "Expected a name but found " + token);
+			}
+			position++;
+			return token;
+		}
+
+		private String next()
+		{
+			if (!hasNext())
+			{
+				throw error(line(), "Unexpected end of schema");
+			}
+			return tokens.get(position);
+		}
+
+		IllegalArgumentException error(int line, String message)
+		{
+			return new IllegalArgumentException("Line " + line + ": "
+					+ message);
+		}
+	}
+}
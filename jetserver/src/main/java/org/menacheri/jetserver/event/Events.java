@@ -11,6 +11,7 @@ import org.menacheri.jetserver.event.impl.DefaultEvent;
 import org.menacheri.jetserver.event.impl.DefaultEventContext;
 import org.menacheri.jetserver.event.impl.DefaultNetworkEvent;
 import org.menacheri.jetserver.event.impl.DefaultSessionEventHandler;
+import org.menacheri.jetserver.event.impl.PriorityNetworkEvent;
 
 
 public class Events
@@ -72,6 +73,13 @@ public class Events
 	 */
 	public static final byte NETWORK_MESSAGE = 0x1d;
 	
+	/**
+	 * Sent from server to client with the sequence number of the last client
+	 * input processed by the game room. Used by clients to reconcile
+	 * predicted state.
+	 */
+	public static final byte INPUT_ACK = 0x1e;
+	
 	
 	public static final byte CHANGE_ATTRIBUTE = 0x20;
 	
@@ -85,6 +93,28 @@ public class Events
 	 */
 	public static final byte EXCEPTION = 0x24;
 	
+	/**
+	 * Sent from client to server to measure the clock offset and round trip
+	 * time. The payload is <b>client transmit time (long) - echoed server
+	 * transmit time (long) - client receive time of that reply (long)</b>, the
+	 * echoed values being 0 on the first request.
+	 */
+	public static final byte TIME_SYNC_REQUEST = 0x26;
+	
+	/**
+	 * Reply to {@link #TIME_SYNC_REQUEST}, sent by the server as soon as the
+	 * request is decoded. The payload is <b>client transmit time (long) -
+	 * server receive time (long) - server transmit time (long)</b>.
+	 */
+	public static final byte TIME_SYNC_RESPONSE = 0x27;
+	
+	/**
+	 * Several events sent to a client in one datagram. The payload is a
+	 * sequence of <b>length (unsigned short) - opcode - payload</b> frames, one
+	 * per event.
+	 */
+	public static final byte BUNDLE = 0x28;
+	
 	public static Event event(Object source, int eventType)
 	{
 		return event(source,eventType,(Session)null);
@@ -147,6 +177,94 @@ public class Events
 		return networkEvent;
 	}
 	
+	/**
+	 * Creates a network event which is discarded by the dispatchers and the
+	 * udp sender if it is not sent within the maximum age, for e.g. a position
+	 * update which is superseded by the next tick anyway.
+	 * 
+	 * @param source
+	 *            The payload of the event.
+	 * @param maxAge
+	 *            Milliseconds from now after which the event is stale.
+	 * @return An instance of {@link NetworkEvent} with FAST delivery.
+	 */
+	public static NetworkEvent fastNetworkEvent(Object source, long maxAge)
+	{
+		NetworkEvent networkEvent = networkEvent(source,
+				DeliveryGuarantyOptions.FAST);
+		networkEvent.setDeadline(networkEvent.getTimeStamp() + maxAge);
+		return networkEvent;
+	}
+	
+	/**
+	 * @return true if the event is a FAST network event whose deadline has
+	 *         passed.
+	 */
+	public static boolean isExpired(Object event)
+	{
+		if (!(event instanceof NetworkEvent))
+		{
+			return false;
+		}
+		NetworkEvent networkEvent = (NetworkEvent) event;
+		return (networkEvent.getDeadline() > 0
+				&& networkEvent.getDeliveryGuaranty().getGuaranty() == DeliveryGuarantyOptions.FAST
+						.getGuaranty() && System.currentTimeMillis() > networkEvent
+				.getDeadline());
+	}
+
+	/**
+	 * Marks an expired event as dropped, so that an event fanned out to many
+	 * handlers or sessions is counted as dropped only once.
+	 * 
+	 * @return true if the drop should be counted, i.e. the event was not
+	 *         already marked.
+	 */
+	public static boolean markDropped(Object event)
+	{
+		if (event instanceof DefaultNetworkEvent)
+		{
+			return ((DefaultNetworkEvent) event).markDropped();
+		}
+		return true;
+	}
+	
+	/**
+	 * Creates a network event which is scheduled within the bandwidth budget
+	 * of each session, if the game room has one.
+	 * 
+	 * @param source
+	 *            The payload of the event.
+	 * @param key
+	 *            Identifies the state being updated, for e.g. the entity id.
+	 *            A pending update with the same key is replaced by this one.
+	 * @param priority
+	 *            The relevance of the update, should be positive.
+	 * @return An instance of {@link PriorityNetworkEvent}
+	 */
+	public static PriorityNetworkEvent priorityNetworkEvent(Object source,
+			Object key, float priority)
+	{
+		Event event = event(source, Events.NETWORK_MESSAGE);
+		return new PriorityNetworkEvent(event, key, priority);
+	}
+	
+	/**
+	 * Same as {@link #priorityNetworkEvent(Object, Object, float)} for
+	 * payloads whose size cannot be read from the source, for e.g. objects
+	 * which are serialized to JSon or AMF3 by the protocol of the room.
+	 * 
+	 * @param size
+	 *            The approximate size in bytes of the payload on the wire.
+	 * @return An instance of {@link PriorityNetworkEvent}
+	 */
+	public static PriorityNetworkEvent priorityNetworkEvent(Object source,
+			Object key, float priority, int size)
+	{
+		Event event = event(source, Events.NETWORK_MESSAGE);
+		return new PriorityNetworkEvent(event, key, priority, size);
+	}
+	
 	public static Event connectEvent(Reliable tcpSender){
 		Event event = new DefaultConnectEvent(tcpSender);
 		event.setTimeStamp(System.currentTimeMillis());
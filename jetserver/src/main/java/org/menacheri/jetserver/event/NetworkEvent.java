@@ -17,4 +17,14 @@ public interface NetworkEvent extends Event
 	DeliveryGuaranty getDeliveryGuaranty();
 
 	void setDeliveryGuaranty(DeliveryGuaranty deliveryGuaranty);
+
+	/**
+	 * @return The time in milliseconds after which this event is stale and
+	 *         should be discarded instead of being sent, 0 if it never
+	 *         expires. Only honored for FAST events, reliable events are
+	 *         always delivered.
+	 */
+	long getDeadline();
+
+	void setDeadline(long deadline);
 }
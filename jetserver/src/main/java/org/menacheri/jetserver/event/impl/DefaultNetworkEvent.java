@@ -1,6 +1,7 @@
 package org.menacheri.jetserver.event.impl;
 
 import org.menacheri.jetserver.communication.DeliveryGuaranty;
+import org.menacheri.jetserver.communication.EncodingCache;
 import org.menacheri.jetserver.communication.DeliveryGuaranty.DeliveryGuarantyOptions;
 import org.menacheri.jetserver.event.Event;
 import org.menacheri.jetserver.event.Events;
@@ -16,6 +17,22 @@ import org.menacheri.jetserver.event.NetworkEvent;
 public class DefaultNetworkEvent extends DefaultEvent implements NetworkEvent
 {
 	private DeliveryGuaranty guaranty = DeliveryGuarantyOptions.RELIABLE;;
+	/**
+	 * Used only on the server, it is transient like the fields below so that
+	 * encoders which serialize the whole event, for e.g. to JSon, do not send
+	 * it to the client.
+	 */
+	private transient long deadline;
+	/**
+	 * Set when the event is broadcast, so that each encoder encodes it only
+	 * once for all the channels.
+	 */
+	private transient volatile EncodingCache encodingCache;
+	/**
+	 * Set by the first dispatcher which drops the event after its deadline, so
+	 * that it is counted once however many handlers it was fanned out to.
+	 */
+	private transient boolean dropped;
 	private static final long serialVersionUID = 6486454029499527617L;
 
 	/**
@@ -61,6 +78,10 @@ public class DefaultNetworkEvent extends DefaultEvent implements NetworkEvent
 		this.setSource(event.getSource());
 		this.setEventContext(event.getEventContext());
 		this.setTimeStamp(event.getTimeStamp());
+		if (event instanceof NetworkEvent)
+		{
+			this.deadline = ((NetworkEvent) event).getDeadline();
+		}
 		this.guaranty = DeliveryGuarantyOptions.RELIABLE;
 		super.setType(Events.NETWORK_MESSAGE);
 	}
@@ -77,6 +98,43 @@ public class DefaultNetworkEvent extends DefaultEvent implements NetworkEvent
 		this.guaranty = deliveryGuaranty;
 	}
 
+	@Override
+	public long getDeadline()
+	{
+		return deadline;
+	}
+
+	@Override
+	public void setDeadline(long deadline)
+	{
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Marks this event as dropped.
+	 * 
+	 * @return true if the event was not already marked.
+	 */
+	public synchronized boolean markDropped()
+	{
+		if (dropped)
+		{
+			return false;
+		}
+		dropped = true;
+		return true;
+	}
+
+	public EncodingCache getEncodingCache()
+	{
+		return encodingCache;
+	}
+
+	public void setEncodingCache(EncodingCache encodingCache)
+	{
+		this.encodingCache = encodingCache;
+	}
+
 	@Override
 	public void setType(int type)
 	{
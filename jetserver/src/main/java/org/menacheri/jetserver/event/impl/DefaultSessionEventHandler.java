@@ -4,6 +4,7 @@ import org.menacheri.jetserver.app.PlayerSession;
 import org.menacheri.jetserver.app.Session;
 import org.menacheri.jetserver.communication.DeliveryGuaranty;
 import static org.menacheri.jetserver.communication.DeliveryGuaranty.DeliveryGuarantyOptions.FAST;
+import org.menacheri.jetserver.communication.LinkQualityEstimator;
 import org.menacheri.jetserver.communication.MessageSender.Fast;
 import org.menacheri.jetserver.event.ConnectEvent;
 import org.menacheri.jetserver.event.Event;
@@ -156,6 +157,11 @@ public class DefaultSessionEventHandler implements SessionEventHandler
 		if (null != event.getTcpSender())
 		{
 			session.setTcpSender(event.getTcpSender());
+			LinkQualityEstimator linkQuality = LinkQualityEstimator.of(session);
+			if (null != linkQuality)
+			{
+				session.setAttribute(JetConfig.LINK_QUALITY, linkQuality);
+			}
 			// Now send the start event to session
 			session.onEvent(Events.event(null, Events.START));
 		}
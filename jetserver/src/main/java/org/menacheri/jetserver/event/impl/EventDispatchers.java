@@ -8,6 +8,7 @@ import org.menacheri.jetserver.app.GameRoom;
 import org.menacheri.jetserver.concurrent.Fibers;
 import org.menacheri.jetserver.concurrent.Lane;
 import org.menacheri.jetserver.concurrent.LaneStrategy;
+import org.menacheri.jetserver.concurrent.MonitoredBatchExecutor;
 import org.menacheri.jetserver.event.Event;
 import org.menacheri.jetserver.event.EventDispatcher;
 
@@ -18,21 +19,43 @@ public class EventDispatchers
 	{
 		Fiber fiber = null;
 		JetlangEventDispatcher dispatcher = null;
+		MonitoredBatchExecutor batchExecutor = new MonitoredBatchExecutor();
 		if (null == room)
 		{
-			fiber = Fibers.pooledFiber();
+			fiber = Fibers.pooledFiber(batchExecutor);
 			dispatcher = new JetlangEventDispatcher(new MemoryChannel<Event>(),
-					fiber, null);
+					fiber, null, batchExecutor);
 		}
 		else
 		{
 			Lane<String, ExecutorService> lane = strategy.chooseLane(room);
-			fiber = Fibers.pooledFiber(lane);
+			fiber = Fibers.pooledFiber(lane, batchExecutor);
 			dispatcher = new JetlangEventDispatcher(new MemoryChannel<Event>(),
-					fiber, lane);
+					fiber, lane, batchExecutor);
 		}
 		dispatcher.initialize();
 
 		return dispatcher;
 	}
+
+	/**
+	 * Creates a dispatcher whose fiber runs on the lane passed in, instead of
+	 * choosing one through a {@link LaneStrategy}. Useful when a single game
+	 * room spreads its work over more than one lane.
+	 * 
+	 * @param lane
+	 *            The lane on which the events of this dispatcher will be
+	 *            processed.
+	 * @return The initialized dispatcher.
+	 */
+	public static EventDispatcher newJetlangEventDispatcher(
+			Lane<String, ExecutorService> lane)
+	{
+		MonitoredBatchExecutor batchExecutor = new MonitoredBatchExecutor();
+		Fiber fiber = Fibers.pooledFiber(lane, batchExecutor);
+		JetlangEventDispatcher dispatcher = new JetlangEventDispatcher(
+				new MemoryChannel<Event>(), fiber, lane, batchExecutor);
+		dispatcher.initialize();
+		return dispatcher;
+	}
 }
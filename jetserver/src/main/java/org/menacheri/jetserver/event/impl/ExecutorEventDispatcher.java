@@ -8,6 +8,7 @@ import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.menacheri.jetserver.app.Session;
 import org.menacheri.jetserver.event.Events;
@@ -35,6 +36,7 @@ public class ExecutorEventDispatcher implements EventDispatcher
 	private Map<Integer, List<EventHandler>> handlersByEventType;
 	private List<EventHandler> genericHandlers;
 	private boolean isShuttingDown;
+	private final AtomicLong droppedEvents = new AtomicLong();
 
 	public ExecutorEventDispatcher()
 	{
@@ -183,6 +185,14 @@ public class ExecutorEventDispatcher implements EventDispatcher
 				@Override
 				public void run()
 				{
+					if (Events.isExpired(event))
+					{
+						if (Events.markDropped(event))
+						{
+							droppedEvents.incrementAndGet();
+						}
+						return;
+					}
 					for (EventHandler handler : genericHandlers)
 					{
 						handler.onEvent(event);
@@ -226,4 +236,12 @@ public class ExecutorEventDispatcher implements EventDispatcher
 
 	}
 
+	/**
+	 * @return The number of expired FAST network events which were discarded
+	 *         instead of being passed to the handlers.
+	 */
+	public long getDroppedEventCount()
+	{
+		return droppedEvents.get();
+	}
 }
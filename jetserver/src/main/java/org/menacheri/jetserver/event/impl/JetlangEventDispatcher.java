@@ -8,6 +8,7 @@ import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jetlang.channels.BatchSubscriber;
 import org.jetlang.channels.MemoryChannel;
@@ -16,7 +17,10 @@ import org.jetlang.core.Disposable;
 import org.jetlang.core.Filter;
 import org.jetlang.fibers.Fiber;
 import org.menacheri.jetserver.app.Session;
+import org.menacheri.jetserver.communication.OutboundBundle;
 import org.menacheri.jetserver.concurrent.Lane;
+import org.menacheri.jetserver.concurrent.MonitoredBatchExecutor;
+import org.menacheri.jetserver.concurrent.OverrunMonitor;
 import org.menacheri.jetserver.event.Event;
 import org.menacheri.jetserver.event.EventDispatcher;
 import org.menacheri.jetserver.event.EventHandler;
@@ -25,6 +29,15 @@ import org.menacheri.jetserver.event.SessionEventHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Dispatches events to its handlers on the fiber of a {@link Lane}. Each
+ * batch of events handled, and each task executed or scheduled on the fiber,
+ * runs within an {@link OutboundBundle} so that the messages written to a
+ * channel during the batch are flushed to it once.
+ * 
+ * @author Abraham Menacherry
+ * 
+ */
 public class JetlangEventDispatcher implements EventDispatcher
 {
 	private static final Logger LOG = LoggerFactory
@@ -37,6 +50,16 @@ public class JetlangEventDispatcher implements EventDispatcher
 	private final Fiber fiber;
 	private volatile boolean isCloseCalled = false;
 	private final Lane<String, ExecutorService> dispatcherLane;
+	/**
+	 * Number of expired FAST network events which were not passed to a
+	 * handler.
+	 */
+	private final AtomicLong droppedEvents = new AtomicLong();
+	/**
+	 * Runs the turns of the fiber, null if the fiber was not created with
+	 * one, in which case an {@link OverrunMonitor} cannot be set.
+	 */
+	private final MonitoredBatchExecutor batchExecutor;
 	
 	/**
 	 * This Map holds event handlers and their corresponding {@link Disposable}
@@ -46,10 +69,24 @@ public class JetlangEventDispatcher implements EventDispatcher
 	private Map<EventHandler, Disposable> disposableHandlerMap;
 
 	public JetlangEventDispatcher(MemoryChannel<Event> eventQueue, Fiber fiber, Lane<String, ExecutorService> lane)
+	{
+		this(eventQueue, fiber, lane, null);
+	}
+
+	/**
+	 * @param batchExecutor
+	 *            The batch executor with which the fiber was created, used to
+	 *            time each turn of the fiber once an {@link OverrunMonitor} is
+	 *            set.
+	 */
+	public JetlangEventDispatcher(MemoryChannel<Event> eventQueue,
+			Fiber fiber, Lane<String, ExecutorService> lane,
+			MonitoredBatchExecutor batchExecutor)
 	{
 		this.eventQueue = eventQueue;
 		this.fiber = fiber;
 		this.dispatcherLane = lane;
+		this.batchExecutor = batchExecutor;
 	}
 
 	public JetlangEventDispatcher(
@@ -63,6 +100,7 @@ public class JetlangEventDispatcher implements EventDispatcher
 		this.eventQueue = eventQueue;
 		this.fiber = fiber;
 		this.dispatcherLane = lane;
+		this.batchExecutor = null;
 	}
 
 	public void initialize()
@@ -86,6 +124,62 @@ public class JetlangEventDispatcher implements EventDispatcher
 		}
 	}
 
+	/**
+	 * Runs the task on the fiber of this dispatcher, so that it is serialized
+	 * with the event handlers. If the calling thread is already on the lane of
+	 * this dispatcher the task is run synchronously.
+	 * 
+	 * @param task
+	 *            The task to be executed.
+	 */
+	public void execute(Runnable task)
+	{
+		if (null != dispatcherLane && dispatcherLane.isOnSameLane(Thread.currentThread().getName()))
+		{
+			task.run();
+		}
+		else
+		{
+			fiber.execute(bundled(task));
+		}
+	}
+
+	/**
+	 * Schedules the task to run periodically on the fiber of this dispatcher,
+	 * for e.g. the tick of a game room.
+	 * 
+	 * @return The disposable which can be used to cancel the task.
+	 */
+	public Disposable scheduleAtFixedRate(Runnable task, long initialDelay,
+			long period, TimeUnit unit)
+	{
+		return fiber.scheduleAtFixedRate(bundled(task), initialDelay, period,
+				unit);
+	}
+
+	/**
+	 * Wraps the task so that its writes are flushed once it completes.
+	 */
+	protected static Runnable bundled(final Runnable task)
+	{
+		return new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				OutboundBundle.begin();
+				try
+				{
+					task.run();
+				}
+				finally
+				{
+					OutboundBundle.end();
+				}
+			}
+		};
+	}
+
 	@Override
 	public void addHandler(final EventHandler eventHandler)
 	{
@@ -159,9 +253,25 @@ public class JetlangEventDispatcher implements EventDispatcher
 			@Override
 			public void onMessage(List<Event> messages)
 			{
-				for (Event event : messages)
+				OutboundBundle.begin();
+				try
+				{
+					for (Event event : messages)
+					{
+						if (Events.isExpired(event))
+						{
+							if (Events.markDropped(event))
+							{
+								droppedEvents.incrementAndGet();
+							}
+							continue;
+						}
+						eventHandler.onEvent(event);
+					}
+				}
+				finally
 				{
-					eventHandler.onEvent(event);
+					OutboundBundle.end();
 				}
 			}
 		};
@@ -170,6 +280,14 @@ public class JetlangEventDispatcher implements EventDispatcher
 	
 	protected void dispatchEventOnSameLane(Event event)
 	{
+		if (Events.isExpired(event))
+		{
+			if (Events.markDropped(event))
+			{
+				droppedEvents.incrementAndGet();
+			}
+			return;
+		}
 		for (EventHandler handler : anyHandler)
 		{
 			handler.onEvent(event);
@@ -362,6 +480,41 @@ public class JetlangEventDispatcher implements EventDispatcher
 		return fiber;
 	}
 
+	/**
+	 * @return The number of times an expired FAST network event was discarded
+	 *         instead of being passed to a handler.
+	 */
+	public long getDroppedEventCount()
+	{
+		return droppedEvents.get();
+	}
+
+	public OverrunMonitor getOverrunMonitor()
+	{
+		return (null == batchExecutor) ? null : batchExecutor
+				.getOverrunMonitor();
+	}
+
+	/**
+	 * Sets the monitor which times each turn of the fiber of this dispatcher
+	 * on its lane, i.e. the batches of events passed to all its handlers
+	 * together with the tasks executed or scheduled on it. Events dispatched
+	 * and tasks run synchronously on the same lane are part of the turn in
+	 * which they were raised. Several dispatchers, for e.g. those of a game
+	 * room and its sessions, can share a monitor. The monitor is ignored if
+	 * the fiber was not created with a {@link MonitoredBatchExecutor}.
+	 */
+	public void setOverrunMonitor(OverrunMonitor overrunMonitor)
+	{
+		if (null == batchExecutor)
+		{
+			LOG.warn("The fiber of dispatcher {} has no MonitoredBatchExecutor, "
+					+ "it will not be timed", this);
+			return;
+		}
+		batchExecutor.setOverrunMonitor(overrunMonitor);
+	}
+
 	public Map<EventHandler, Disposable> getDisposableHandlerMap()
 	{
 		return disposableHandlerMap;
@@ -0,0 +1,72 @@
+package org.menacheri.jetserver.event.impl;
+
+import org.menacheri.jetserver.app.PlayerSession;
+import org.menacheri.jetserver.app.Session;
+import org.menacheri.jetserver.app.state.RoomJournal;
+import org.menacheri.jetserver.event.Event;
+import org.menacheri.jetserver.event.Events;
+import org.menacheri.jetserver.event.SessionEventHandler;
+
+/**
+ * Writes the events it receives to a {@link RoomJournal}. A game room adds one
+ * instance of type ANY to its own dispatcher to record room level events and
+ * one instance of type SESSION_MESSAGE to the dispatcher of each player session
+ * to record incoming messages. Outgoing {@link Events#NETWORK_MESSAGE}
+ * broadcasts are not journaled, they are the result of the inputs and would
+ * be produced again when the inputs are replayed. Since the handler runs on the
+ * lane of the dispatcher, the events are journaled in the order in which they
+ * are processed.
+ * 
+ * @author Abraham Menacherry
+ * 
+ */
+public class JournalEventHandler implements SessionEventHandler
+{
+	private final Session session;
+	private final int eventType;
+	private final RoomJournal journal;
+
+	public JournalEventHandler(Session session, int eventType,
+			RoomJournal journal)
+	{
+		this.session = session;
+		this.eventType = eventType;
+		this.journal = journal;
+	}
+
+	@Override
+	public void onEvent(Event event)
+	{
+		if (Events.NETWORK_MESSAGE == event.getType())
+		{
+			return;
+		}
+		journal.journal(event, (session instanceof PlayerSession) ? session
+				: null);
+	}
+
+	@Override
+	public int getEventType()
+	{
+		return eventType;
+	}
+
+	@Override
+	public Session getSession()
+	{
+		return session;
+	}
+
+	@Override
+	public void setSession(Session session)
+	{
+		throw new UnsupportedOperationException(
+				"Session is a final field in this class. "
+						+ "It cannot be reset");
+	}
+
+	public RoomJournal getJournal()
+	{
+		return journal;
+	}
+}
@@ -2,6 +2,9 @@ package org.menacheri.jetserver.event.impl;
 
 import org.menacheri.jetserver.app.GameRoom;
 import org.menacheri.jetserver.app.Session;
+import org.menacheri.jetserver.communication.BandwidthScheduler;
+import org.menacheri.jetserver.communication.DeliveryGuaranty.DeliveryGuarantyOptions;
+import org.menacheri.jetserver.communication.LinkQualityEstimator;
 import org.menacheri.jetserver.event.Events;
 import org.menacheri.jetserver.event.Event;
 import org.menacheri.jetserver.event.NetworkEvent;
@@ -12,7 +15,12 @@ import org.menacheri.jetserver.event.SessionEventHandler;
  * {@link NetworkEvent}s to the connected sessions. When the game room
  * publishes such events to its channel, this listener will pick it up and
  * transmit it to the session which in turn will transmit it to the remote
- * machine/vm.
+ * machine/vm. {@link DeliveryGuarantyOptions#FAST} events are droppable
+ * updates, they are thinned out according to the {@link LinkQualityEstimator}
+ * of the session so that clients on poor links get a lower update rate instead
+ * of an ever growing channel buffer. If the session has a
+ * {@link BandwidthScheduler}, {@link PriorityNetworkEvent}s are handed to it
+ * instead, to be sent within the bandwidth budget of the session.
  * 
  * @author Abraham Menacherry
  * 
@@ -22,15 +30,45 @@ public class NetworkEventListener implements SessionEventHandler
 
 	private static final int EVENT_TYPE = Events.NETWORK_MESSAGE;
 	private final Session session;
+	private final BandwidthScheduler bandwidthScheduler;
 
 	public NetworkEventListener(Session session)
+	{
+		this(session, null);
+	}
+
+	/**
+	 * @param session
+	 *            The session to which events are transmitted.
+	 * @param bandwidthScheduler
+	 *            The scheduler of the session's bandwidth budget, can be
+	 *            null.
+	 */
+	public NetworkEventListener(Session session,
+			BandwidthScheduler bandwidthScheduler)
 	{
 		this.session = session;
+		this.bandwidthScheduler = bandwidthScheduler;
 	}
 
 	@Override
 	public void onEvent(Event event)
 	{
+		if (null != bandwidthScheduler && event instanceof PriorityNetworkEvent)
+		{
+			bandwidthScheduler.offer((PriorityNetworkEvent) event);
+			return;
+		}
+		if (((NetworkEvent) event).getDeliveryGuaranty().getGuaranty() == DeliveryGuarantyOptions.FAST
+				.getGuaranty())
+		{
+			LinkQualityEstimator linkQuality = LinkQualityEstimator
+					.of(session);
+			if (null != linkQuality && !linkQuality.shouldSend())
+			{
+				return;
+			}
+		}
 		session.onEvent(event);
 	}
 
@@ -46,6 +84,11 @@ public class NetworkEventListener implements SessionEventHandler
 		return session;
 	}
 
+	public BandwidthScheduler getBandwidthScheduler()
+	{
+		return bandwidthScheduler;
+	}
+
 	@Override
 	public void setSession(Session session)
 	{
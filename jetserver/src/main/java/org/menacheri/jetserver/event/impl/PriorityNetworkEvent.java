@@ -0,0 +1,81 @@
+package org.menacheri.jetserver.event.impl;
+
+import org.menacheri.jetserver.communication.BandwidthScheduler;
+import org.menacheri.jetserver.event.Event;
+import org.menacheri.jetserver.util.NettyUtils;
+
+/**
+ * A network event carrying a state update which competes with other updates
+ * for the bandwidth budget of each session, see {@link BandwidthScheduler}.
+ * Updates with the same key, for e.g. the id of an entity, supersede each
+ * other, so only the latest state of an entity is ever waiting to be sent.
+ * The size of the update is counted against the budget. It is known for
+ * buffer and byte array payloads, other payloads, for e.g. objects serialized
+ * to JSon or AMF3 by the protocol, need their size to be passed in, else the
+ * scheduler rejects them.
+ * 
+ * @author Abraham Menacherry
+ * 
+ */
+public class PriorityNetworkEvent extends DefaultNetworkEvent
+{
+	private static final long serialVersionUID = -2749386412257419861L;
+	
+	// Used only by the scheduler, hence not serialized with the event.
+	private final transient Object key;
+	private final transient float priority;
+	private final transient int size;
+
+	/**
+	 * @param event
+	 *            The instance from which payload, create time etc will be
+	 *            copied.
+	 * @param key
+	 *            Identifies the state being updated. Null if the update does
+	 *            not supersede any other update.
+	 * @param priority
+	 *            The relevance of the update, it is added to the accumulated
+	 *            priority of the update in every send window in which it is
+	 *            not sent.
+	 */
+	public PriorityNetworkEvent(Event event, Object key, float priority)
+	{
+		this(event, key, priority, NettyUtils.readableBytes(event.getSource()));
+	}
+
+	/**
+	 * @param size
+	 *            The size in bytes of the payload on the wire, -1 if not
+	 *            known.
+	 */
+	public PriorityNetworkEvent(Event event, Object key, float priority,
+			int size)
+	{
+		super(event);
+		if (priority <= 0)
+		{
+			throw new IllegalArgumentException("Priority should be positive");
+		}
+		this.key = key;
+		this.priority = priority;
+		this.size = size;
+	}
+
+	public Object getKey()
+	{
+		return key;
+	}
+
+	public float getPriority()
+	{
+		return priority;
+	}
+
+	/**
+	 * @return The size in bytes of the payload on the wire, -1 if not known.
+	 */
+	public int getSize()
+	{
+		return size;
+	}
+}
@@ -0,0 +1,38 @@
+package org.menacheri.jetserver.handlers.netty;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import org.jboss.netty.handler.codec.oneone.OneToOneDecoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unwraps the {@link org.jboss.netty.buffer.ChannelBuffer} of an incoming
+ * {@link BinaryWebSocketFrame}, so that the frame can be decoded by the
+ * {@link MessageBufferEventDecoder} like a frame of the tcp protocol. Other
+ * frames are logged and dropped, close and ping frames never reach here as
+ * they are handled by the web socket protocol handler of the login pipeline.
+ * 
+ * @author Abraham Menacherry
+ * 
+ */
+@Sharable
+public class BinaryWebsocketDecoder extends OneToOneDecoder
+{
+	private static final Logger LOG = LoggerFactory
+			.getLogger(BinaryWebsocketDecoder.class);
+
+	@Override
+	protected Object decode(ChannelHandlerContext ctx, Channel channel,
+			Object msg) throws Exception
+	{
+		if (msg instanceof BinaryWebSocketFrame)
+		{
+			return ((BinaryWebSocketFrame) msg).getBinaryData();
+		}
+		LOG.error("Expected a binary web socket frame but received: {}", msg);
+		return null;
+	}
+}
@@ -0,0 +1,33 @@
+package org.menacheri.jetserver.handlers.netty;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
+
+/**
+ * Wraps the {@link ChannelBuffer} produced by the
+ * {@link MessageBufferEventEncoder} in a {@link BinaryWebSocketFrame}. The
+ * frame does its own length framing, so no length is prepended to the opcode
+ * and payload. Other messages, for e.g. frames written directly by the login
+ * handler, are passed on unchanged.
+ * 
+ * @author Abraham Menacherry
+ * 
+ */
+@Sharable
+public class BinaryWebsocketEncoder extends OneToOneEncoder
+{
+	@Override
+	protected Object encode(ChannelHandlerContext ctx, Channel channel,
+			Object msg) throws Exception
+	{
+		if (msg instanceof ChannelBuffer)
+		{
+			return new BinaryWebSocketFrame((ChannelBuffer) msg);
+		}
+		return msg;
+	}
+}
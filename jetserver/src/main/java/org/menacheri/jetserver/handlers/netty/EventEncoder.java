@@ -1,12 +1,13 @@
 package org.menacheri.jetserver.handlers.netty;
 
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ChannelHandler.Sharable;
 import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
+import org.menacheri.jetserver.communication.EncodingCache;
 import org.menacheri.jetserver.event.Event;
+import org.menacheri.jetserver.util.NettyUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,7 +17,8 @@ import org.slf4j.LoggerFactory;
  * {@link ChannelBuffer}. It will read the event type and put it as the
  * opcode(i.e first byte of the buffer), then it will read the event body and
  * put convert to ChannelBuffer if necessary and put it as the body of the
- * message.
+ * message. Broadcasts are encoded only once for all the channels using the
+ * {@link EncodingCache} of the event.
  * 
  * @author Abraham Menacherry
  * 
@@ -36,18 +38,21 @@ public class EventEncoder extends OneToOneEncoder
 			LOG.error("Received null message in EventEncoder");
 			return msg;
 		}
-		Event event = (Event) msg;
-		ChannelBuffer opcode = ChannelBuffers.buffer(1);
-		opcode.writeByte(event.getType());
-		ChannelBuffer buffer = null;
-		if(null != event.getSource())
+		EncodingCache cache = EncodingCache.of(msg);
+		if (null != cache)
 		{
-			ChannelBuffer data = (ChannelBuffer) event.getSource();
-			buffer = ChannelBuffers.wrappedBuffer(opcode, data);
+			ChannelBuffer cached = cache.get(this);
+			if (null != cached)
+			{
+				return cached;
+			}
 		}
-		else
+		Event event = (Event) msg;
+		ChannelBuffer buffer = NettyUtils.createBufferForOpcode(
+				event.getType(), (ChannelBuffer) event.getSource());
+		if (null != cache)
 		{
-			buffer = opcode;
+			return cache.put(this, buffer);
 		}
 		return buffer;
 	}
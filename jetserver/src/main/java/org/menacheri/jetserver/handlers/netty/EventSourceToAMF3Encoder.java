@@ -4,9 +4,18 @@ import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandler.Sharable;
 import org.jboss.netty.channel.ChannelHandlerContext;
+import org.menacheri.jetserver.communication.EncodingCache;
 import org.menacheri.jetserver.event.Events;
 import org.menacheri.jetserver.event.Event;
 
+/**
+ * Serializes the source of the event to AMF3. The AMF3 bytes of a broadcast
+ * are created only once for all the channels using the {@link EncodingCache}
+ * of the event.
+ * 
+ * @author Abraham Menacherry
+ * 
+ */
 @Sharable
 public class EventSourceToAMF3Encoder extends JavaObjectToAMF3Encoder
 {
@@ -15,7 +24,16 @@ public class EventSourceToAMF3Encoder extends JavaObjectToAMF3Encoder
 			Object msg) throws Exception
 	{
 		Event event = (Event)msg;
-		ChannelBuffer payload = (ChannelBuffer) super.encode(ctx, channel, event.getSource());
+		EncodingCache cache = EncodingCache.of(msg);
+		ChannelBuffer payload = (null == cache) ? null : cache.get(this);
+		if (null == payload)
+		{
+			payload = (ChannelBuffer) super.encode(ctx, channel, event.getSource());
+			if (null != cache && null != payload)
+			{
+				payload = cache.put(this, payload);
+			}
+		}
 		return Events.event(payload, event.getType());
 	}
 }
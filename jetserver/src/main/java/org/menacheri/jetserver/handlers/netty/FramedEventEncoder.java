@@ -0,0 +1,207 @@
+package org.menacheri.jetserver.handlers.netty;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.handler.codec.frame.LengthFieldPrepender;
+import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
+import org.menacheri.jetserver.communication.BufferPool;
+import org.menacheri.jetserver.communication.BufferPool.PooledBuffer;
+import org.menacheri.jetserver.communication.EncodingCache;
+import org.menacheri.jetserver.communication.MessageBuffer;
+import org.menacheri.jetserver.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Does the work of {@link MessageBufferEventEncoder} followed by a 2 byte
+ * {@link LengthFieldPrepender} in a single pass. The length, opcode and
+ * payload are written into one buffer of the exact size, instead of an opcode
+ * buffer, a length buffer and two composite buffers per message. Events
+ * without a payload, for e.g. {@link org.menacheri.jetserver.event.Events#START},
+ * are served from a table of pre-encoded read only frames. The wire format is
+ * unchanged so clients are not affected.
+ * <p>
+ * The source of the event can be a {@link MessageBuffer}, a
+ * {@link ChannelBuffer} or a byte array. Broadcasts are framed once using the
+ * {@link EncodingCache} of the event.
+ * <p>
+ * If a {@link BufferPool} is set, the frames of messages sent to a single
+ * channel are written into pooled buffers which are released when the write
+ * completes. Broadcast frames are shared by many writes and are not pooled.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+@Sharable
+public class FramedEventEncoder extends OneToOneEncoder
+{
+	private static final Logger LOG = LoggerFactory
+			.getLogger(FramedEventEncoder.class);
+
+	/**
+	 * The largest frame that fits the unsigned short length field.
+	 */
+	public static final int MAX_FRAME_LENGTH = 0xFFFF;
+
+	private static final ChannelBuffer[] EMPTY_FRAMES = new ChannelBuffer[256];
+	static
+	{
+		for (int opcode = 0; opcode < EMPTY_FRAMES.length; opcode++)
+		{
+			ChannelBuffer frame = ChannelBuffers.buffer(3);
+			frame.writeShort(1);
+			frame.writeByte(opcode);
+			EMPTY_FRAMES[opcode] = ChannelBuffers.unmodifiableBuffer(frame);
+		}
+	}
+
+	private BufferPool bufferPool;
+
+	@Override
+	public void handleDownstream(ChannelHandlerContext ctx, ChannelEvent evt)
+			throws Exception
+	{
+		BufferPool pool = bufferPool;
+		if (null == pool || !(evt instanceof MessageEvent))
+		{
+			super.handleDownstream(ctx, evt);
+			return;
+		}
+		MessageEvent e = (MessageEvent) evt;
+		Object msg = e.getMessage();
+		if (!(msg instanceof Event) || null == ((Event) msg).getSource()
+				|| null != EncodingCache.of(msg))
+		{
+			super.handleDownstream(ctx, evt);
+			return;
+		}
+		Event event = (Event) msg;
+		Object payload = payloadOf(event);
+		PooledBuffer frame = pool.acquire(frameLength(event, payload));
+		writeFrame(event, payload, frame.getBuffer());
+		e.getFuture().addListener(frame);
+		Channels.write(ctx, e.getFuture(), frame.getBuffer(),
+				e.getRemoteAddress());
+	}
+
+	@Override
+	protected Object encode(ChannelHandlerContext ctx, Channel channel,
+			Object msg) throws Exception
+	{
+		if (!(msg instanceof Event))
+		{
+			LOG.error("Expected an event but received: {}", msg);
+			return msg;
+		}
+		EncodingCache cache = EncodingCache.of(msg);
+		if (null != cache)
+		{
+			ChannelBuffer cached = cache.get(this);
+			if (null != cached)
+			{
+				return cached;
+			}
+		}
+		ChannelBuffer frame = frame((Event) msg);
+		if (null != cache)
+		{
+			return cache.put(this, frame);
+		}
+		return frame;
+	}
+
+	/**
+	 * Writes the length, opcode and payload of the event into a single
+	 * buffer.
+	 *
+	 * @param event
+	 *            The event to be framed.
+	 * @return The frame, read only if the event has no payload.
+	 */
+	public static ChannelBuffer frame(Event event)
+	{
+		Object payload = payloadOf(event);
+		if (null == payload)
+		{
+			return EMPTY_FRAMES[event.getType() & 0xFF].duplicate();
+		}
+		ChannelBuffer frame = ChannelBuffers.buffer(frameLength(event,
+				payload));
+		writeFrame(event, payload, frame);
+		return frame;
+	}
+
+	private static Object payloadOf(Event event)
+	{
+		Object source = event.getSource();
+		if (source instanceof MessageBuffer)
+		{
+			source = ((MessageBuffer<?>) source).getNativeBuffer();
+		}
+		return source;
+	}
+
+	private static int frameLength(Event event, Object payload)
+	{
+		int length;
+		if (payload instanceof ChannelBuffer)
+		{
+			length = ((ChannelBuffer) payload).readableBytes();
+		}
+		else if (payload instanceof byte[])
+		{
+			length = ((byte[]) payload).length;
+		}
+		else
+		{
+			throw new IllegalArgumentException("Unsupported payload "
+					+ payload.getClass().getName() + " in event " + event);
+		}
+		if (length + 1 > MAX_FRAME_LENGTH)
+		{
+			throw new IllegalArgumentException("Frame length of " + (length + 1)
+					+ " does not fit into an unsigned short");
+		}
+		return length + 3;
+	}
+
+	private static void writeFrame(Event event, Object payload,
+			ChannelBuffer frame)
+	{
+		if (payload instanceof ChannelBuffer)
+		{
+			ChannelBuffer buffer = (ChannelBuffer) payload;
+			int length = buffer.readableBytes();
+			frame.writeShort(length + 1);
+			frame.writeByte(event.getType());
+			frame.writeBytes(buffer, buffer.readerIndex(), length);
+		}
+		else
+		{
+			byte[] bytes = (byte[]) payload;
+			frame.writeShort(bytes.length + 1);
+			frame.writeByte(event.getType());
+			frame.writeBytes(bytes);
+		}
+	}
+
+	public BufferPool getBufferPool()
+	{
+		return bufferPool;
+	}
+
+	/**
+	 * @param bufferPool
+	 *            The pool of the frames, null to allocate each frame.
+	 */
+	public void setBufferPool(BufferPool bufferPool)
+	{
+		this.bufferPool = bufferPool;
+	}
+}
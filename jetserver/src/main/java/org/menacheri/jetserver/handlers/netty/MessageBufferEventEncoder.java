@@ -1,23 +1,79 @@
 package org.menacheri.jetserver.handlers.netty;
 
+import java.util.List;
+
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
+import org.menacheri.jetserver.communication.BufferPool;
+import org.menacheri.jetserver.communication.BufferPool.PooledBuffer;
+import org.menacheri.jetserver.communication.EncodingCache;
 import org.menacheri.jetserver.communication.MessageBuffer;
 import org.menacheri.jetserver.event.Event;
+import org.menacheri.jetserver.event.Events;
+import org.menacheri.jetserver.util.NettyUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
+/**
+ * Encodes an event to a {@link ChannelBuffer} with the event type as opcode
+ * followed by the contents of its {@link MessageBuffer}. Broadcasts are
+ * encoded once into a single buffer which is shared by all the channels
+ * using the {@link EncodingCache} of the event. A {@link Events#BUNDLE}
+ * event whose source is a list of events is encoded as the bundle opcode
+ * followed by each event framed with an unsigned short length. If a
+ * {@link BufferPool} is set, events sent to a single channel are encoded into
+ * pooled buffers which are released when the write completes.
+ * 
+ * @author Abraham Menacherry
+ * 
+ */
 @Sharable
 public class MessageBufferEventEncoder extends OneToOneEncoder
 {
 	private static final Logger LOG = LoggerFactory
 	.getLogger(MessageBufferEventEncoder.class);
 	
+	private BufferPool bufferPool;
+
+	@Override
+	public void handleDownstream(ChannelHandlerContext ctx, ChannelEvent evt)
+			throws Exception
+	{
+		BufferPool pool = bufferPool;
+		if (null == pool || !(evt instanceof MessageEvent))
+		{
+			super.handleDownstream(ctx, evt);
+			return;
+		}
+		MessageEvent e = (MessageEvent) evt;
+		Object msg = e.getMessage();
+		if (!(msg instanceof Event)
+				|| !(((Event) msg).getSource() instanceof MessageBuffer)
+				|| null != EncodingCache.of(msg))
+		{
+			super.handleDownstream(ctx, evt);
+			return;
+		}
+		Event event = (Event) msg;
+		@SuppressWarnings("unchecked")
+		ChannelBuffer data = ((MessageBuffer<ChannelBuffer>) event.getSource())
+				.getNativeBuffer();
+		PooledBuffer pooled = pool.acquire(1 + data.readableBytes());
+		ChannelBuffer buffer = pooled.getBuffer();
+		buffer.writeByte(event.getType());
+		buffer.writeBytes(data, data.readerIndex(), data.readableBytes());
+		e.getFuture().addListener(pooled);
+		Channels.write(ctx, e.getFuture(), buffer, e.getRemoteAddress());
+	}
+
 	@Override
 	protected Object encode(ChannelHandlerContext ctx, Channel channel,
 			Object msg) throws Exception
@@ -28,21 +84,74 @@ public class MessageBufferEventEncoder extends OneToOneEncoder
 			return msg;
 		}
 		Event event = (Event) msg;
-		ChannelBuffer opcode = ChannelBuffers.buffer(1);
-		opcode.writeByte(event.getType());
-		ChannelBuffer buffer = null;
+		if (Events.BUNDLE == event.getType()
+				&& event.getSource() instanceof List)
+		{
+			@SuppressWarnings("unchecked")
+			List<Event> events = (List<Event>) event.getSource();
+			return encodeBundle(events);
+		}
+		return encodeEvent(event);
+	}
+
+	protected ChannelBuffer encodeBundle(List<Event> events)
+	{
+		ChannelBuffer[] encoded = new ChannelBuffer[events.size()];
+		int size = 1;
+		for (int i = 0; i < encoded.length; i++)
+		{
+			encoded[i] = encodeEvent(events.get(i));
+			size += 2 + encoded[i].readableBytes();
+		}
+		ChannelBuffer bundle = ChannelBuffers.buffer(size);
+		bundle.writeByte(Events.BUNDLE);
+		for (ChannelBuffer frame : encoded)
+		{
+			bundle.writeShort(frame.readableBytes());
+			bundle.writeBytes(frame, frame.readerIndex(), frame.readableBytes());
+		}
+		return bundle;
+	}
+
+	protected ChannelBuffer encodeEvent(Event event)
+	{
+		EncodingCache cache = EncodingCache.of(event);
+		if (null != cache)
+		{
+			ChannelBuffer cached = cache.get(this);
+			if (null != cached)
+			{
+				return cached;
+			}
+		}
+		ChannelBuffer data = null;
 		if(null != event.getSource())
 		{
 			@SuppressWarnings("unchecked")
 			MessageBuffer<ChannelBuffer> msgBuffer = (MessageBuffer<ChannelBuffer>)event.getSource();
-			ChannelBuffer data = msgBuffer.getNativeBuffer();
-			buffer = ChannelBuffers.wrappedBuffer(opcode, data);
+			data = msgBuffer.getNativeBuffer();
 		}
-		else
+		ChannelBuffer buffer = NettyUtils.createBufferForOpcode(
+				event.getType(), data);
+		if (null != cache)
 		{
-			buffer = opcode;
+			return cache.put(this, buffer);
 		}
 		return buffer;
 	}
 
+	public BufferPool getBufferPool()
+	{
+		return bufferPool;
+	}
+
+	/**
+	 * @param bufferPool
+	 *            The pool of the encoded buffers, null to allocate each one.
+	 */
+	public void setBufferPool(BufferPool bufferPool)
+	{
+		this.bufferPool = bufferPool;
+	}
+
 }
@@ -0,0 +1,197 @@
+package org.menacheri.jetserver.handlers.netty;
+
+import java.util.zip.Deflater;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelState;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.ChannelUpstreamHandler;
+import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
+import org.menacheri.jetserver.protocols.AbstractNettyProtocol;
+
+/**
+ * Deflates the payload of outgoing frames which are at least
+ * {@link #getThreshold()} bytes long, so large messages like room lists or
+ * join snapshots go out compressed while small hot path messages are passed
+ * on untouched and cost nothing. It works on the opcode and payload buffer
+ * produced by the event encoder, before the length is prepended. A compressed
+ * frame has the {@link #COMPRESSED} bit set on its opcode followed by the
+ * uncompressed length as an int and the zlib data:
+ *
+ * <pre>
+ * [opcode | 0x80][uncompressed length, 4 bytes][deflated payload]
+ * </pre>
+ *
+ * Each payload is deflated on its own, so the frames can be inflated in any
+ * order. If a preset dictionary is set, the deflater is primed with it and
+ * the peer needs the same dictionary, which lets even mid sized payloads with
+ * the usual field names and strings compress well. Payloads which do not get
+ * smaller are sent as they are. An instance holds a native deflater and
+ * should be created per connection, see
+ * {@link AbstractNettyProtocol#createPayloadCompressor(org.menacheri.jetserver.app.PlayerSession)}.
+ * The deflater is released when the channel closes.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+public class PayloadCompressor extends OneToOneEncoder implements
+		ChannelUpstreamHandler
+{
+	public static final String NAME = "payloadCompressor";
+
+	/**
+	 * The bit set on the opcode of a compressed frame. Opcodes of jetserver
+	 * events are all below it.
+	 */
+	public static final int COMPRESSED = 0x80;
+
+	private final int threshold;
+	private final byte[] dictionary;
+	private final Deflater deflater;
+	private boolean closed;
+	private long compressedFrames;
+	private long savedBytes;
+
+	/**
+	 * @param threshold
+	 *            The smallest payload in bytes which is compressed.
+	 * @param dictionary
+	 *            The preset dictionary, or null for none.
+	 */
+	public PayloadCompressor(int threshold, byte[] dictionary)
+	{
+		this(threshold, dictionary, Deflater.BEST_SPEED);
+	}
+
+	/**
+	 * @param level
+	 *            The deflate level from {@link Deflater#BEST_SPEED} to
+	 *            {@link Deflater#BEST_COMPRESSION}.
+	 */
+	public PayloadCompressor(int threshold, byte[] dictionary, int level)
+	{
+		if (threshold < 1)
+		{
+			throw new IllegalArgumentException("Threshold should be positive");
+		}
+		this.threshold = threshold;
+		this.dictionary = dictionary;
+		this.deflater = new Deflater(level);
+	}
+
+	@Override
+	protected Object encode(ChannelHandlerContext ctx, Channel channel,
+			Object msg) throws Exception
+	{
+		if (!(msg instanceof ChannelBuffer))
+		{
+			return msg;
+		}
+		ChannelBuffer frame = (ChannelBuffer) msg;
+		int payloadLength = frame.readableBytes() - 1;
+		if (payloadLength < threshold)
+		{
+			return msg;
+		}
+		int opcode = frame.getUnsignedByte(frame.readerIndex());
+		if (0 != (opcode & COMPRESSED))
+		{
+			return msg;
+		}
+		byte[] payload = new byte[payloadLength];
+		frame.getBytes(frame.readerIndex() + 1, payload);
+		byte[] deflated = new byte[payloadLength];
+		int deflatedLength = deflate(payload, deflated);
+		if (deflatedLength < 0)
+		{
+			return msg;
+		}
+		ChannelBuffer compressed = ChannelBuffers.buffer(5 + deflatedLength);
+		compressed.writeByte(opcode | COMPRESSED);
+		compressed.writeInt(payloadLength);
+		compressed.writeBytes(deflated, 0, deflatedLength);
+		return compressed;
+	}
+
+	/**
+	 * @return The length of the deflated data or -1 if it would not be
+	 *         smaller than the payload along with its length field.
+	 */
+	private synchronized int deflate(byte[] payload, byte[] deflated)
+	{
+		if (closed)
+		{
+			return -1;
+		}
+		deflater.reset();
+		if (null != dictionary)
+		{
+			deflater.setDictionary(dictionary);
+		}
+		deflater.setInput(payload);
+		deflater.finish();
+		int limit = payload.length - 4;
+		int length = 0;
+		while (!deflater.finished())
+		{
+			if (length >= limit)
+			{
+				return -1;
+			}
+			length += deflater.deflate(deflated, length, limit - length);
+		}
+		compressedFrames++;
+		savedBytes += payload.length - length - 4;
+		return length;
+	}
+
+	@Override
+	public void handleUpstream(ChannelHandlerContext ctx, ChannelEvent e)
+			throws Exception
+	{
+		if (e instanceof ChannelStateEvent)
+		{
+			ChannelStateEvent event = (ChannelStateEvent) e;
+			if (ChannelState.OPEN == event.getState()
+					&& Boolean.FALSE.equals(event.getValue()))
+			{
+				close();
+			}
+		}
+		ctx.sendUpstream(e);
+	}
+
+	/**
+	 * Releases the deflater, frames written afterwards are not compressed.
+	 */
+	public synchronized void close()
+	{
+		if (!closed)
+		{
+			closed = true;
+			deflater.end();
+		}
+	}
+
+	public int getThreshold()
+	{
+		return threshold;
+	}
+
+	public synchronized long getCompressedFrameCount()
+	{
+		return compressedFrames;
+	}
+
+	/**
+	 * @return The number of bytes saved by compression so far.
+	 */
+	public synchronized long getSavedBytes()
+	{
+		return savedBytes;
+	}
+}
@@ -1,9 +1,13 @@
 package org.menacheri.jetserver.handlers.netty;
 
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
+import org.jboss.netty.util.CharsetUtil;
+import org.menacheri.jetserver.communication.EncodingCache;
 import org.menacheri.jetserver.event.Event;
 
 import com.google.gson.Gson;
@@ -11,7 +15,10 @@ import com.google.gson.Gson;
 /**
  * This encoder will convert an incoming object (mostly expected to be an
  * {@link Event} object) to a {@link TextWebSocketFrame} object. It uses
- * {@link Gson} to do the Object to JSon String encoding.
+ * {@link Gson} to do the Object to JSon String encoding. The JSon of a
+ * broadcast is generated only once, each channel gets a frame over a
+ * duplicate of the same UTF-8 buffer from the {@link EncodingCache} of the
+ * event.
  * 
  * @author Abraham Menacherry
  * 
@@ -25,8 +32,19 @@ public class TextWebsocketEncoder extends OneToOneEncoder
 	protected Object encode(ChannelHandlerContext ctx, Channel channel,
 			Object msg) throws Exception
 	{
-		String json = gson.toJson(msg);
-		return new TextWebSocketFrame(json);
+		EncodingCache cache = EncodingCache.of(msg);
+		if (null == cache)
+		{
+			String json = gson.toJson(msg);
+			return new TextWebSocketFrame(json);
+		}
+		ChannelBuffer text = cache.get(this);
+		if (null == text)
+		{
+			text = cache.put(this, ChannelBuffers.copiedBuffer(
+					gson.toJson(msg), CharsetUtil.UTF_8));
+		}
+		return new TextWebSocketFrame(text);
 	}
 
 	public Gson getGson()
@@ -0,0 +1,85 @@
+package org.menacheri.jetserver.handlers.netty;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.menacheri.jetserver.app.PlayerSession;
+import org.menacheri.jetserver.communication.ClockSync;
+import org.menacheri.jetserver.communication.LinkQualityEstimator;
+import org.menacheri.jetserver.communication.MessageBuffer;
+import org.menacheri.jetserver.communication.NettyMessageBuffer;
+import org.menacheri.jetserver.event.Event;
+import org.menacheri.jetserver.event.Events;
+
+/**
+ * Answers the {@link Events#TIME_SYNC_REQUEST}s of a session right in the
+ * netty pipeline, so that the time stamps are not skewed by the queue of the
+ * game room's lane. The reply carries the receive and transmit time of the
+ * server. The request echoes the time stamps of the previous reply, which
+ * makes the exchange symmetric: the server also gets an NTP style sample and
+ * updates the {@link ClockSync} of the session, and the
+ * {@link LinkQualityEstimator} of the session with the round trip time. The
+ * request is not passed upstream, all other messages are.
+ * 
+ * @author Abraham Menacherry
+ * 
+ */
+public class TimeSyncHandler extends SimpleChannelUpstreamHandler
+{
+	public static final String NAME = "timeSyncHandler";
+
+	private final PlayerSession playerSession;
+
+	public TimeSyncHandler(PlayerSession playerSession)
+	{
+		this.playerSession = playerSession;
+	}
+
+	@Override
+	public void messageReceived(ChannelHandlerContext ctx, MessageEvent e)
+			throws Exception
+	{
+		Object message = e.getMessage();
+		if (!(message instanceof Event)
+				|| ((Event) message).getType() != Events.TIME_SYNC_REQUEST)
+		{
+			super.messageReceived(ctx, e);
+			return;
+		}
+		long receive = System.currentTimeMillis();
+		@SuppressWarnings("unchecked")
+		MessageBuffer<ChannelBuffer> request = (MessageBuffer<ChannelBuffer>) ((Event) message)
+				.getSource();
+		long originate = request.readLong();
+		if (request.readableBytes() >= 16)
+		{
+			long echoedTransmit = request.readLong();
+			long echoedReceive = request.readLong();
+			if (0 != echoedTransmit)
+			{
+				// The previous reply went out at echoedTransmit, reached the
+				// client at echoedReceive and this request left the client at
+				// originate.
+				long roundTripTime = playerSession.getClockSync().addSample(
+						echoedTransmit, echoedReceive, originate, receive);
+				LinkQualityEstimator linkQuality = LinkQualityEstimator
+						.of(playerSession);
+				if (null != linkQuality)
+				{
+					linkQuality.addRttSample(roundTripTime);
+				}
+			}
+		}
+		NettyMessageBuffer reply = new NettyMessageBuffer();
+		reply.writeLong(originate);
+		reply.writeLong(receive);
+		reply.writeLong(System.currentTimeMillis());
+		e.getChannel().write(Events.event(reply, Events.TIME_SYNC_RESPONSE));
+	}
+
+	public PlayerSession getPlayerSession()
+	{
+		return playerSession;
+	}
+}
@@ -0,0 +1,59 @@
+package org.menacheri.jetserver.handlers.netty;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.menacheri.jetserver.app.PlayerSession;
+import org.menacheri.jetserver.util.TrafficRecorder;
+
+/**
+ * Passes each inbound frame of a session to a {@link TrafficRecorder} before
+ * sending it upstream unchanged. The protocol adds this handler right after the
+ * frame decoder, so that each record is exactly one frame.
+ * 
+ * @author Abraham Menacherry
+ * 
+ */
+public class TrafficRecordingHandler extends SimpleChannelUpstreamHandler
+{
+	public static final String NAME = "trafficRecorder";
+
+	private final TrafficRecorder recorder;
+	private final Object sessionId;
+
+	public TrafficRecordingHandler(TrafficRecorder recorder,
+			PlayerSession playerSession)
+	{
+		this.recorder = recorder;
+		this.sessionId = playerSession.getId();
+	}
+
+	@Override
+	public void messageReceived(ChannelHandlerContext ctx, MessageEvent e)
+			throws Exception
+	{
+		Object message = e.getMessage();
+		if (message instanceof ChannelBuffer)
+		{
+			recorder.record(TrafficRecorder.BINARY_FRAME, sessionId,
+					(ChannelBuffer) message);
+		}
+		else if (message instanceof TextWebSocketFrame)
+		{
+			recorder.record(TrafficRecorder.TEXT_FRAME, sessionId,
+					((TextWebSocketFrame) message).getBinaryData());
+		}
+		super.messageReceived(ctx, e);
+	}
+
+	@Override
+	public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e)
+			throws Exception
+	{
+		recorder.record(TrafficRecorder.DISCONNECT, sessionId, new byte[0]);
+		super.channelClosed(ctx, e);
+	}
+}
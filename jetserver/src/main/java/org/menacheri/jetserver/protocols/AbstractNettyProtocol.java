@@ -3,7 +3,10 @@ package org.menacheri.jetserver.protocols;
 import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.handler.codec.frame.LengthFieldBasedFrameDecoder;
 import org.menacheri.jetserver.app.PlayerSession;
+import org.menacheri.jetserver.handlers.netty.PayloadCompressor;
+import org.menacheri.jetserver.handlers.netty.TrafficRecordingHandler;
 import org.menacheri.jetserver.util.NettyUtils;
+import org.menacheri.jetserver.util.TrafficRecorder;
 
 /**
  * This abstract class defines common methods across all protocols. Individual
@@ -27,6 +30,24 @@ public abstract class AbstractNettyProtocol implements Protocol
 	public static final String IDLE_STATE_CHECK_HANDLER = "idleStateCheck";
 	public static final String IDLE_CHECK_HANDLER = "idleCheckHandler";
 	
+	/**
+	 * Optional recorder of the inbound frames of all sessions using this
+	 * protocol.
+	 */
+	private TrafficRecorder trafficRecorder;
+	
+	/**
+	 * The smallest payload in bytes which is compressed by the
+	 * {@link PayloadCompressor}, 0 disables compression.
+	 */
+	private int compressionThreshold;
+	
+	/**
+	 * Optional preset dictionary of the {@link PayloadCompressor}, the client
+	 * needs the same one to inflate the payloads.
+	 */
+	private byte[] compressionDictionary;
+	
 	public AbstractNettyProtocol(String protocolName)
 	{
 		super();
@@ -56,4 +77,90 @@ public abstract class AbstractNettyProtocol implements Protocol
 		}
 		applyProtocol(playerSession);
 	}
+	
+	/**
+	 * Adds a {@link TrafficRecordingHandler} to the end of the pipeline if a
+	 * traffic recorder is set. Protocols invoke this right after adding the
+	 * frame decoder.
+	 * 
+	 * @param pipeline
+	 *            The pipeline of the session.
+	 * @param playerSession
+	 *            The session whose frames are recorded.
+	 */
+	protected void addTrafficRecordingHandler(ChannelPipeline pipeline,
+			PlayerSession playerSession)
+	{
+		if (null != trafficRecorder)
+		{
+			pipeline.addLast(TrafficRecordingHandler.NAME,
+					new TrafficRecordingHandler(trafficRecorder, playerSession));
+		}
+	}
+
+	/**
+	 * Adds a {@link PayloadCompressor} to the end of the pipeline if a
+	 * compression threshold is set. Protocols invoke this in between the
+	 * length field prepender and the event encoder.
+	 * 
+	 * @param pipeline
+	 *            The pipeline of the session.
+	 * @param playerSession
+	 *            The session whose payloads are compressed.
+	 */
+	protected void addPayloadCompressor(ChannelPipeline pipeline,
+			PlayerSession playerSession)
+	{
+		if (isCompressionEnabled())
+		{
+			pipeline.addLast(PayloadCompressor.NAME,
+					createPayloadCompressor(playerSession));
+		}
+	}
+
+	/**
+	 * Creates the compressor of a connection. Override to use a different
+	 * dictionary per session.
+	 */
+	public PayloadCompressor createPayloadCompressor(
+			PlayerSession playerSession)
+	{
+		return new PayloadCompressor(compressionThreshold,
+				compressionDictionary);
+	}
+
+	public boolean isCompressionEnabled()
+	{
+		return compressionThreshold > 0;
+	}
+
+	public int getCompressionThreshold()
+	{
+		return compressionThreshold;
+	}
+
+	public void setCompressionThreshold(int compressionThreshold)
+	{
+		this.compressionThreshold = compressionThreshold;
+	}
+
+	public byte[] getCompressionDictionary()
+	{
+		return compressionDictionary;
+	}
+
+	public void setCompressionDictionary(byte[] compressionDictionary)
+	{
+		this.compressionDictionary = compressionDictionary;
+	}
+
+	public TrafficRecorder getTrafficRecorder()
+	{
+		return trafficRecorder;
+	}
+
+	public void setTrafficRecorder(TrafficRecorder trafficRecorder)
+	{
+		this.trafficRecorder = trafficRecorder;
+	}
 }
@@ -76,6 +76,7 @@ public class AMF3Protocol extends AbstractNettyProtocol
 		// Upstream handlers or encoders (i.e towards server) are added to
 		// pipeline now.
 		pipeline.addLast("lengthDecoder", createLengthBasedFrameDecoder());
+		addTrafficRecordingHandler(pipeline, playerSession);
 		pipeline.addLast("eventDecoder",eventDecoder);
 		pipeline.addLast("amf3ToEventSourceDecoder", amf3ToEventSourceDecoder);
 		pipeline.addLast("eventHandler", new DefaultToServerHandler(
@@ -84,6 +85,7 @@ public class AMF3Protocol extends AbstractNettyProtocol
 		// Downstream handlers (i.e towards client) are added to pipeline now.
 		// NOTE the last encoder in the pipeline is the first encoder to be called.
 		pipeline.addLast("lengthFieldPrepender", lengthFieldPrepender);
+		addPayloadCompressor(pipeline, playerSession);
 		pipeline.addLast("eventEncoder",eventEncoder);
 		pipeline.addLast("eventSourceToAMF3Encoder", eventSourceToAMF3Encoder);
 	}
@@ -0,0 +1,123 @@
+package org.menacheri.jetserver.protocols.impl;
+
+import org.jboss.netty.channel.ChannelPipeline;
+import org.menacheri.jetserver.app.PlayerSession;
+import org.menacheri.jetserver.communication.MessageBuffer;
+import org.menacheri.jetserver.handlers.netty.BinaryWebsocketDecoder;
+import org.menacheri.jetserver.handlers.netty.BinaryWebsocketEncoder;
+import org.menacheri.jetserver.handlers.netty.DefaultToServerHandler;
+import org.menacheri.jetserver.handlers.netty.LoginProtocol;
+import org.menacheri.jetserver.handlers.netty.MessageBufferEventDecoder;
+import org.menacheri.jetserver.handlers.netty.MessageBufferEventEncoder;
+import org.menacheri.jetserver.protocols.AbstractNettyProtocol;
+import org.menacheri.jetserver.util.NettyUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This protocol can be used for websocket clients which send and receive
+ * binary frames instead of JSon text. Each frame carries the same opcode
+ * followed by {@link MessageBuffer} payload as a frame of the
+ * {@link MessageBufferProtocol}, except that the web socket frame takes the
+ * place of the length header. This lets a browser game room share its
+ * handlers and message layouts with the tcp clients. Login still happens
+ * using JSon text, so a room can switch to this protocol without any change
+ * to the login flow.
+ * 
+ * @author Abraham Menacherry
+ * 
+ */
+public class BinaryWebSocketProtocol extends AbstractNettyProtocol
+{
+	private static final Logger LOG = LoggerFactory
+			.getLogger(BinaryWebSocketProtocol.class);
+
+	private BinaryWebsocketDecoder binaryWebsocketDecoder;
+	private BinaryWebsocketEncoder binaryWebsocketEncoder;
+	private MessageBufferEventDecoder messageBufferEventDecoder;
+	private MessageBufferEventEncoder messageBufferEventEncoder;
+
+	public BinaryWebSocketProtocol()
+	{
+		super("BINARY_WEB_SOCKET_PROTOCOL");
+	}
+
+	/**
+	 * Specifically overriden so that the pipeline is not cleared, the web
+	 * socket handlers added during login are still needed.
+	 */
+	@Override
+	public void applyProtocol(PlayerSession playerSession,
+			boolean clearExistingProtocolHandlers)
+	{
+		applyProtocol(playerSession);
+	}
+
+	@Override
+	public void applyProtocol(PlayerSession playerSession)
+	{
+		LOG.trace("Going to apply {} on session: {}", getProtocolName(),
+				playerSession);
+
+		ChannelPipeline pipeline = NettyUtils
+				.getPipeLineOfConnection(playerSession);
+		addTrafficRecordingHandler(pipeline, playerSession);
+		pipeline.addLast("binaryWebsocketDecoder", binaryWebsocketDecoder);
+		pipeline.addLast("messageBufferEventDecoder", messageBufferEventDecoder);
+		pipeline.addLast("eventHandler", new DefaultToServerHandler(
+				playerSession));
+
+		pipeline.addLast("binaryWebsocketEncoder", binaryWebsocketEncoder);
+		pipeline.addLast("messageBufferEventEncoder", messageBufferEventEncoder);
+		// Since the pipeline was not cleared for this protocol do some cleanup
+		// manually.
+		pipeline.remove(LoginProtocol.LOGIN_HANDLER_NAME);
+		pipeline.remove(AbstractNettyProtocol.IDLE_CHECK_HANDLER);
+		pipeline.remove(AbstractNettyProtocol.IDLE_STATE_CHECK_HANDLER);
+	}
+
+	public BinaryWebsocketDecoder getBinaryWebsocketDecoder()
+	{
+		return binaryWebsocketDecoder;
+	}
+
+	public void setBinaryWebsocketDecoder(
+			BinaryWebsocketDecoder binaryWebsocketDecoder)
+	{
+		this.binaryWebsocketDecoder = binaryWebsocketDecoder;
+	}
+
+	public BinaryWebsocketEncoder getBinaryWebsocketEncoder()
+	{
+		return binaryWebsocketEncoder;
+	}
+
+	public void setBinaryWebsocketEncoder(
+			BinaryWebsocketEncoder binaryWebsocketEncoder)
+	{
+		this.binaryWebsocketEncoder = binaryWebsocketEncoder;
+	}
+
+	public MessageBufferEventDecoder getMessageBufferEventDecoder()
+	{
+		return messageBufferEventDecoder;
+	}
+
+	public void setMessageBufferEventDecoder(
+			MessageBufferEventDecoder messageBufferEventDecoder)
+	{
+		this.messageBufferEventDecoder = messageBufferEventDecoder;
+	}
+
+	public MessageBufferEventEncoder getMessageBufferEventEncoder()
+	{
+		return messageBufferEventEncoder;
+	}
+
+	public void setMessageBufferEventEncoder(
+			MessageBufferEventEncoder messageBufferEventEncoder)
+	{
+		this.messageBufferEventEncoder = messageBufferEventEncoder;
+	}
+
+}
@@ -50,6 +50,7 @@ public class ChannelBufferProtocol extends AbstractNettyProtocol
 		// Upstream handlers or encoders (i.e towards server) are added to
 		// pipeline now.
 		pipeline.addLast("lengthDecoder", createLengthBasedFrameDecoder());
+		addTrafficRecordingHandler(pipeline, playerSession);
 		pipeline.addLast("eventDecoder",eventDecoder);
 		pipeline.addLast("eventHandler", new DefaultToServerHandler(
 				playerSession));
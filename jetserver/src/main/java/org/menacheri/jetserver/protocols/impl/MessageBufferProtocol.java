@@ -4,8 +4,10 @@ import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.handler.codec.frame.LengthFieldPrepender;
 import org.menacheri.jetserver.app.PlayerSession;
 import org.menacheri.jetserver.handlers.netty.DefaultToServerHandler;
+import org.menacheri.jetserver.handlers.netty.FramedEventEncoder;
 import org.menacheri.jetserver.handlers.netty.MessageBufferEventDecoder;
 import org.menacheri.jetserver.handlers.netty.MessageBufferEventEncoder;
+import org.menacheri.jetserver.handlers.netty.TimeSyncHandler;
 import org.menacheri.jetserver.protocols.AbstractNettyProtocol;
 import org.menacheri.jetserver.util.NettyUtils;
 import org.slf4j.Logger;
@@ -22,6 +24,11 @@ public class MessageBufferProtocol extends AbstractNettyProtocol
 	private LengthFieldPrepender lengthFieldPrepender;
 	private MessageBufferEventDecoder messageBufferEventDecoder;
 	private MessageBufferEventEncoder messageBufferEventEncoder;
+	/**
+	 * Optional encoder which replaces the length field prepender and the
+	 * message buffer event encoder with a single pass.
+	 */
+	private FramedEventEncoder framedEventEncoder;
 	
 	public MessageBufferProtocol()
 	{
@@ -39,15 +46,28 @@ public class MessageBufferProtocol extends AbstractNettyProtocol
 		// Upstream handlers or encoders (i.e towards server) are added to
 		// pipeline now.
 		pipeline.addLast("lengthDecoder", createLengthBasedFrameDecoder());
+		addTrafficRecordingHandler(pipeline, playerSession);
 		pipeline.addLast("messageBufferEventDecoder",messageBufferEventDecoder);
+		pipeline.addLast(TimeSyncHandler.NAME, new TimeSyncHandler(
+				playerSession));
 		pipeline.addLast("eventHandler", new DefaultToServerHandler(
 				playerSession));
 
 		// Downstream handlers - Filter for data which flows from server to
 		// client. Note that the last handler added is actually the first
 		// handler for outgoing data.
-		pipeline.addLast("lengthFieldPrepender", lengthFieldPrepender);
-		pipeline.addLast("messageBufferEventEncoder",messageBufferEventEncoder);
+		// The compressor needs the opcode and payload before the length is
+		// prepended, so the single pass encoder is not used along with it.
+		if (null != framedEventEncoder && !isCompressionEnabled())
+		{
+			pipeline.addLast("framedEventEncoder", framedEventEncoder);
+		}
+		else
+		{
+			pipeline.addLast("lengthFieldPrepender", lengthFieldPrepender);
+			addPayloadCompressor(pipeline, playerSession);
+			pipeline.addLast("messageBufferEventEncoder",messageBufferEventEncoder);
+		}
 
 	}
 
@@ -83,4 +103,14 @@ public class MessageBufferProtocol extends AbstractNettyProtocol
 		this.messageBufferEventEncoder = messageBufferEventEncoder;
 	}
 
+	public FramedEventEncoder getFramedEventEncoder()
+	{
+		return framedEventEncoder;
+	}
+
+	public void setFramedEventEncoder(FramedEventEncoder framedEventEncoder)
+	{
+		this.framedEventEncoder = framedEventEncoder;
+	}
+
 }
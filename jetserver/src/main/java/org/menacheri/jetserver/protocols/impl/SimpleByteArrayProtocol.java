@@ -58,6 +58,7 @@ public class SimpleByteArrayProtocol extends AbstractNettyProtocol
 		// Upstream handlers or encoders (i.e towards server) are added to
 		// pipeline now.
 		pipeline.addLast("lengthDecoder", createLengthBasedFrameDecoder());
+		addTrafficRecordingHandler(pipeline, playerSession);
 		pipeline.addLast("byteArrayDecoder", byteArrayDecoder);
 
 		// Downstream handlers - Filter for data which flows from server to
@@ -65,6 +65,7 @@ public class WebSocketProtocol extends AbstractNettyProtocol
 
 		ChannelPipeline pipeline = NettyUtils
 				.getPipeLineOfConnection(playerSession);
+		addTrafficRecordingHandler(pipeline, playerSession);
 		pipeline.addLast("textWebsocketDecoder", textWebsocketDecoder);
 		pipeline.addLast("eventHandler", new DefaultToServerHandler(
 				playerSession));
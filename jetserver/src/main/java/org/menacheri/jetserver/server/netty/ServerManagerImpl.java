@@ -5,6 +5,7 @@ import java.util.Set;
 
 import org.menacheri.jetserver.context.AppContext;
 import org.menacheri.jetserver.server.ServerManager;
+import org.menacheri.jetserver.service.CheckpointService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -12,6 +13,7 @@ import org.slf4j.LoggerFactory;
 public class ServerManagerImpl implements ServerManager
 {
 	private Set<AbstractNettyServer> servers;
+	private CheckpointService checkpointService;
 	private static final Logger LOG = LoggerFactory.getLogger(ServerManagerImpl.class);
 	
 	public ServerManagerImpl()
@@ -22,7 +24,7 @@ public class ServerManagerImpl implements ServerManager
 	@Override
 	public void startServers(int tcpPort, int flashPort, int udpPort) throws Exception
 	{
-		
+		restoreCheckpoints();
 		if(tcpPort > 0)
 		{
 			AbstractNettyServer tcpServer = (AbstractNettyServer)AppContext.getBean(AppContext.TCP_SERVER);
@@ -43,12 +45,13 @@ public class ServerManagerImpl implements ServerManager
 			udpServer.startServer(udpPort);
 			servers.add(udpServer);
 		}
-		
+		startCheckpoints();
 	}
 
 	@Override
 	public void startServers() throws Exception 
 	{
+		restoreCheckpoints();
 		AbstractNettyServer tcpServer = (AbstractNettyServer)AppContext.getBean(AppContext.TCP_SERVER);
 		tcpServer.startServer();
 		servers.add(tcpServer);
@@ -58,6 +61,7 @@ public class ServerManagerImpl implements ServerManager
 		AbstractNettyServer udpServer = (AbstractNettyServer)AppContext.getBean(AppContext.UDP_SERVER);
 		udpServer.startServer();
 		servers.add(udpServer);
+		startCheckpoints();
 	}
 	
 	@Override
@@ -74,6 +78,40 @@ public class ServerManagerImpl implements ServerManager
 				throw e;
 			}
 		}
+		if (null != checkpointService)
+		{
+			checkpointService.close();
+		}
+	}
+
+	/**
+	 * Game rooms are restored before any port is opened, so that no player
+	 * can connect to a room which is still in its initial state.
+	 */
+	protected void restoreCheckpoints()
+	{
+		if (null != checkpointService)
+		{
+			checkpointService.restoreAll();
+		}
+	}
+
+	protected void startCheckpoints()
+	{
+		if (null != checkpointService)
+		{
+			checkpointService.start();
+		}
+	}
+
+	public CheckpointService getCheckpointService()
+	{
+		return checkpointService;
+	}
+
+	public void setCheckpointService(CheckpointService checkpointService)
+	{
+		this.checkpointService = checkpointService;
 	}
 
 }
@@ -0,0 +1,55 @@
+package org.menacheri.jetserver.service;
+
+import org.menacheri.jetserver.app.Checkpointable;
+import org.menacheri.jetserver.app.GameRoom;
+import org.menacheri.jetserver.server.ServerManager;
+
+/**
+ * Periodically persists the state of registered game rooms so that it can be
+ * restored after a restart of the server. The {@link ServerManager} invokes
+ * {@link #restoreAll()} before the servers start accepting connections.
+ * 
+ * @author Abraham Menacherry
+ * 
+ */
+public interface CheckpointService
+{
+	/**
+	 * Registers the room for periodic checkpoints. The checkpoint file is
+	 * identified by the name of the game room, so the name should be stable
+	 * across restarts.
+	 * A room registered after {@link #restoreAll()} has run is restored
+	 * immediately.
+	 * 
+	 * @param gameRoom
+	 *            The room whose state is checkpointed.
+	 * @param checkpointable
+	 *            Serializes and restores the state of the room.
+	 */
+	public void register(GameRoom gameRoom, Checkpointable checkpointable);
+
+	public void unregister(GameRoom gameRoom);
+
+	/**
+	 * Restores all the registered rooms from their last complete checkpoint.
+	 * 
+	 * @return The number of rooms restored.
+	 */
+	public int restoreAll();
+
+	/**
+	 * Takes a checkpoint of all the registered rooms asynchronously. Nothing
+	 * is written until the service is started.
+	 */
+	public void checkpointAll();
+
+	/**
+	 * Starts the periodic checkpoints.
+	 */
+	public void start();
+
+	/**
+	 * Stops the periodic checkpoints and releases the checkpoint files.
+	 */
+	public void close();
+}
@@ -0,0 +1,510 @@
+package org.menacheri.jetserver.service.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+import org.menacheri.jetserver.app.Checkpointable;
+import org.menacheri.jetserver.app.GameRoom;
+import org.menacheri.jetserver.app.impl.GameRoomSession;
+import org.menacheri.jetserver.concurrent.NamedThreadFactory;
+import org.menacheri.jetserver.service.CheckpointService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the checkpoints of each game room to its own memory mapped file. The
+ * snapshot is taken on the lane of the room, which only has to serialize the
+ * state to a byte array. Writing to the mapped file and forcing it to disk
+ * happens on a separate checkpoint thread, so the lane is never blocked on
+ * disk.
+ * <p>
+ * Each file has a header page followed by two slots of equal size. A new
+ * checkpoint is always written to the inactive slot and made active only after
+ * it is forced to disk, so a crash during a write leaves the previous
+ * checkpoint intact. Writes are incremental, only the pages which differ from
+ * the checkpoint previously written to the same slot are touched, hence the
+ * cost of the force is proportional to the amount of state that changed.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+public class MappedFileCheckpointService implements CheckpointService
+{
+	private static final Logger LOG = LoggerFactory
+			.getLogger(MappedFileCheckpointService.class);
+
+	private static final int MAGIC = 0x4a43484b;
+	private static final int FORMAT_VERSION = 1;
+	private static final int PAGE_SIZE = 4096;
+	private static final int HEADER_SIZE = PAGE_SIZE;
+	private static final int ACTIVE_SLOT_OFFSET = 8;
+	private static final int SLOT_HEADER_OFFSET = 16;
+	/**
+	 * sequence (long), length (int), crc (long)
+	 */
+	private static final int SLOT_HEADER_SIZE = 20;
+	private static final int NO_SLOT = -1;
+
+	private final ConcurrentMap<String, RoomCheckpoint> checkpoints;
+	private String directory = "checkpoints";
+	private int maxCheckpointSize = 1024 * 1024;
+	private long checkpointPeriod = 5000;
+	private ScheduledExecutorService checkpointExecutor;
+	/**
+	 * Set once {@link #restoreAll()} has run, rooms registered after it are
+	 * restored as they register.
+	 */
+	private volatile boolean restored;
+
+	public MappedFileCheckpointService()
+	{
+		checkpoints = new ConcurrentHashMap<String, RoomCheckpoint>();
+	}
+
+	@Override
+	public void register(GameRoom gameRoom, Checkpointable checkpointable)
+	{
+		String name = gameRoom.getGameRoomName();
+		if (null == name)
+		{
+			throw new IllegalArgumentException(
+					"Game room needs a name to be checkpointed");
+		}
+		RoomCheckpoint checkpoint = new RoomCheckpoint(gameRoom,
+				checkpointable, new File(directory, fileName(name)));
+		RoomCheckpoint old = checkpoints.put(name, checkpoint);
+		if (null != old)
+		{
+			old.close();
+		}
+		if (restored)
+		{
+			restore(checkpoint);
+		}
+	}
+
+	@Override
+	public void unregister(GameRoom gameRoom)
+	{
+		RoomCheckpoint checkpoint = checkpoints.remove(gameRoom
+				.getGameRoomName());
+		if (null != checkpoint)
+		{
+			checkpoint.close();
+		}
+	}
+
+	@Override
+	public int restoreAll()
+	{
+		restored = true;
+		int count = 0;
+		for (RoomCheckpoint checkpoint : checkpoints.values())
+		{
+			if (restore(checkpoint))
+			{
+				count++;
+			}
+		}
+		LOG.info("Restored {} of {} game rooms from checkpoints", count,
+				checkpoints.size());
+		return count;
+	}
+
+	private boolean restore(RoomCheckpoint checkpoint)
+	{
+		try
+		{
+			return checkpoint.restore();
+		}
+		catch (Exception e)
+		{
+			LOG.error("Unable to restore game room {} from {}: {}",
+					new Object[] { checkpoint.gameRoom.getGameRoomName(),
+							checkpoint.file, e });
+			return false;
+		}
+	}
+
+	@Override
+	public void checkpointAll()
+	{
+		for (RoomCheckpoint checkpoint : checkpoints.values())
+		{
+			checkpoint.checkpoint();
+		}
+	}
+
+	@Override
+	public synchronized void start()
+	{
+		if (null != checkpointExecutor)
+		{
+			return;
+		}
+		checkpointExecutor = Executors
+				.newSingleThreadScheduledExecutor(new NamedThreadFactory(
+						"Checkpoint", true));
+		checkpointExecutor.scheduleWithFixedDelay(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				checkpointAll();
+			}
+		}, checkpointPeriod, checkpointPeriod, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public synchronized void close()
+	{
+		if (null != checkpointExecutor)
+		{
+			checkpointExecutor.shutdown();
+			try
+			{
+				checkpointExecutor.awaitTermination(checkpointPeriod,
+						TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			checkpointExecutor = null;
+		}
+		for (RoomCheckpoint checkpoint : checkpoints.values())
+		{
+			checkpoint.close();
+		}
+	}
+
+	/**
+	 * @return The sequence number of the last checkpoint written for the room,
+	 *         0 if none was written by this instance.
+	 */
+	public long getCheckpointSequence(GameRoom gameRoom)
+	{
+		RoomCheckpoint checkpoint = checkpoints.get(gameRoom
+				.getGameRoomName());
+		return (null == checkpoint) ? 0 : checkpoint.sequence;
+	}
+
+	protected String fileName(String gameRoomName)
+	{
+		return gameRoomName.replaceAll("[^A-Za-z0-9_.-]", "_") + ".ckpt";
+	}
+
+	/**
+	 * @return false if the service is not started, in which case the write is
+	 *         dropped rather than done on the lane of the room.
+	 */
+	private synchronized boolean submitWrite(Runnable write)
+	{
+		if (null == checkpointExecutor)
+		{
+			return false;
+		}
+		checkpointExecutor.execute(write);
+		return true;
+	}
+
+	private int slotSize()
+	{
+		return ((maxCheckpointSize + PAGE_SIZE - 1) / PAGE_SIZE) * PAGE_SIZE;
+	}
+
+	/**
+	 * Holds the mapped file and write state of a single game room.
+	 */
+	private class RoomCheckpoint
+	{
+		private final GameRoom gameRoom;
+		private final Checkpointable checkpointable;
+		private final File file;
+		private final AtomicBoolean inProgress;
+		/**
+		 * The bytes last written to each slot, used to find changed pages.
+		 */
+		private final byte[][] slotContents;
+		private RandomAccessFile randomAccessFile;
+		private MappedByteBuffer mapped;
+		private int activeSlot = NO_SLOT;
+		private volatile long sequence;
+
+		RoomCheckpoint(GameRoom gameRoom, Checkpointable checkpointable,
+				File file)
+		{
+			this.gameRoom = gameRoom;
+			this.checkpointable = checkpointable;
+			this.file = file;
+			this.inProgress = new AtomicBoolean(false);
+			this.slotContents = new byte[2][];
+		}
+
+		/**
+		 * Takes the snapshot on the lane of the room and hands it over to the
+		 * checkpoint thread. Skipped if the previous checkpoint of this room
+		 * is not yet complete.
+		 */
+		void checkpoint()
+		{
+			if (!inProgress.compareAndSet(false, true))
+			{
+				LOG.debug("Previous checkpoint of {} still in progress",
+						gameRoom.getGameRoomName());
+				return;
+			}
+			Runnable snapshot = new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					final byte[] state;
+					try
+					{
+						state = checkpointable.checkpoint();
+					}
+					catch (Exception e)
+					{
+						inProgress.set(false);
+						LOG.error("Unable to take snapshot of {}: {}",
+								gameRoom.getGameRoomName(), e);
+						return;
+					}
+					boolean submitted = false;
+					try
+					{
+						submitted = submitWrite(new Runnable()
+						{
+							@Override
+							public void run()
+							{
+								try
+								{
+									write(state);
+								}
+								catch (IOException e)
+								{
+									LOG.error("Unable to write checkpoint {}: {}",
+											file, e);
+								}
+								finally
+								{
+									inProgress.set(false);
+								}
+							}
+						});
+					}
+					catch (RejectedExecutionException e)
+					{
+						// Service closed, handled below.
+					}
+					if (!submitted)
+					{
+						inProgress.set(false);
+						LOG.warn("Checkpoint service is not running, "
+								+ "skipped checkpoint of {}",
+								gameRoom.getGameRoomName());
+					}
+				}
+			};
+			if (gameRoom instanceof GameRoomSession)
+			{
+				((GameRoomSession) gameRoom).executeOnLane(snapshot);
+			}
+			else
+			{
+				snapshot.run();
+			}
+		}
+
+		synchronized void write(byte[] state) throws IOException
+		{
+			int slotSize = slotSize();
+			if (state.length > slotSize)
+			{
+				LOG.error("Checkpoint of {} is {} bytes, more than max {}",
+						new Object[] { gameRoom.getGameRoomName(),
+								state.length, slotSize });
+				return;
+			}
+			map();
+			int slot = (activeSlot == 0) ? 1 : 0;
+			int base = HEADER_SIZE + slot * slotSize;
+			byte[] previous = slotContents[slot];
+			ByteBuffer buffer = mapped.duplicate();
+			for (int offset = 0; offset < state.length; offset += PAGE_SIZE)
+			{
+				int length = Math.min(PAGE_SIZE, state.length - offset);
+				if (!isSamePage(previous, state, offset, length))
+				{
+					buffer.position(base + offset);
+					buffer.put(state, offset, length);
+				}
+			}
+			mapped.force();
+
+			CRC32 crc = new CRC32();
+			crc.update(state, 0, state.length);
+			long nextSequence = sequence + 1;
+			int slotHeader = SLOT_HEADER_OFFSET + slot * SLOT_HEADER_SIZE;
+			mapped.putLong(slotHeader, nextSequence);
+			mapped.putInt(slotHeader + 8, state.length);
+			mapped.putLong(slotHeader + 12, crc.getValue());
+			mapped.putInt(ACTIVE_SLOT_OFFSET, slot);
+			mapped.force();
+
+			slotContents[slot] = state;
+			activeSlot = slot;
+			sequence = nextSequence;
+		}
+
+		synchronized boolean restore() throws Exception
+		{
+			if (!file.exists())
+			{
+				return false;
+			}
+			map();
+			if (activeSlot == NO_SLOT)
+			{
+				return false;
+			}
+			int slotHeader = SLOT_HEADER_OFFSET + activeSlot
+					* SLOT_HEADER_SIZE;
+			long storedSequence = mapped.getLong(slotHeader);
+			int length = mapped.getInt(slotHeader + 8);
+			long storedCrc = mapped.getLong(slotHeader + 12);
+			if (length < 0 || length > slotSize())
+			{
+				LOG.error("Corrupt checkpoint header in {}", file);
+				return false;
+			}
+			byte[] state = new byte[length];
+			ByteBuffer buffer = mapped.duplicate();
+			buffer.position(HEADER_SIZE + activeSlot * slotSize());
+			buffer.get(state);
+			CRC32 crc = new CRC32();
+			crc.update(state, 0, length);
+			if (crc.getValue() != storedCrc)
+			{
+				LOG.error("Checksum mismatch in checkpoint {}", file);
+				return false;
+			}
+			checkpointable.restore(state);
+			slotContents[activeSlot] = state;
+			sequence = storedSequence;
+			return true;
+		}
+
+		/**
+		 * Maps the file, creating it if necessary, and reads the active slot
+		 * from the header.
+		 */
+		private void map() throws IOException
+		{
+			if (null != mapped)
+			{
+				return;
+			}
+			File parent = file.getAbsoluteFile().getParentFile();
+			if (null != parent && !parent.exists() && !parent.mkdirs())
+			{
+				throw new IOException("Unable to create directory " + parent);
+			}
+			randomAccessFile = new RandomAccessFile(file, "rw");
+			long size = HEADER_SIZE + 2L * slotSize();
+			boolean isNew = randomAccessFile.length() < HEADER_SIZE;
+			mapped = randomAccessFile.getChannel().map(
+					FileChannel.MapMode.READ_WRITE, 0, size);
+			if (isNew || mapped.getInt(0) != MAGIC)
+			{
+				mapped.putInt(0, MAGIC);
+				mapped.putInt(4, FORMAT_VERSION);
+				mapped.putInt(ACTIVE_SLOT_OFFSET, NO_SLOT);
+				mapped.force();
+			}
+			activeSlot = mapped.getInt(ACTIVE_SLOT_OFFSET);
+		}
+
+		synchronized void close()
+		{
+			if (null != randomAccessFile)
+			{
+				try
+				{
+					randomAccessFile.close();
+				}
+				catch (IOException e)
+				{
+					LOG.warn("Unable to close checkpoint file {}: {}", file, e);
+				}
+				randomAccessFile = null;
+				mapped = null;
+			}
+		}
+
+		private boolean isSamePage(byte[] previous, byte[] state, int offset,
+				int length)
+		{
+			if (null == previous || previous.length < offset + length)
+			{
+				return false;
+			}
+			for (int i = offset; i < offset + length; i++)
+			{
+				if (previous[i] != state[i])
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	public String getDirectory()
+	{
+		return directory;
+	}
+
+	public void setDirectory(String directory)
+	{
+		this.directory = directory;
+	}
+
+	public int getMaxCheckpointSize()
+	{
+		return maxCheckpointSize;
+	}
+
+	public void setMaxCheckpointSize(int maxCheckpointSize)
+	{
+		this.maxCheckpointSize = maxCheckpointSize;
+	}
+
+	public long getCheckpointPeriod()
+	{
+		return checkpointPeriod;
+	}
+
+	/**
+	 * @param checkpointPeriod
+	 *            The delay in milliseconds between two checkpoints.
+	 */
+	public void setCheckpointPeriod(long checkpointPeriod)
+	{
+		this.checkpointPeriod = checkpointPeriod;
+	}
+}
@@ -0,0 +1,418 @@
+package org.menacheri.jetserver.util;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A binary log file to which records are only ever appended. Each record is
+ * written as <b>length (int) - type (byte) - timestamp (long) - payload</b>,
+ * where the length covers the type, timestamp and payload.
+ * <p>
+ * Appending only copies the record into an in memory buffer, the file is
+ * written by a background writer thread. The log is double buffered, while
+ * the writer thread writes one buffer to the {@link FileChannel} and
+ * optionally forces it to disk, the appending threads fill the other one. All
+ * the records accumulated during a write are hence committed together by the
+ * next write (group commit), which keeps the cost on the appending thread to
+ * a copy and an uncontended lock. Only if the appending threads fill a buffer
+ * faster than the disk can absorb it will they wait for the writer.
+ *
+ * @author Abraham Menacherry
+ *
+ */
+public class AppendOnlyLog
+{
+	private static final Logger LOG = LoggerFactory
+			.getLogger(AppendOnlyLog.class);
+
+	/**
+	 * type (byte) + timestamp (long)
+	 */
+	public static final int RECORD_HEADER_SIZE = 9;
+	public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+	private final File file;
+	private final FileChannel channel;
+	private final boolean force;
+	private final ReentrantLock lock;
+	private final Condition dataAvailable;
+	private final Condition writeComplete;
+	private final Thread writer;
+	private ByteBuffer activeBuffer;
+	private ByteBuffer writeBuffer;
+	/**
+	 * Total bytes appended and written, used by {@link #flush()} to wait for
+	 * the appended records to reach the file.
+	 */
+	private long appendedBytes;
+	private long writtenBytes;
+	private boolean closed;
+	private IOException writeFailure;
+
+	/**
+	 * Creates a log with the default buffer size which forces each group
+	 * commit to disk.
+	 */
+	public AppendOnlyLog(File file) throws IOException
+	{
+		this(file, DEFAULT_BUFFER_SIZE, true);
+	}
+
+	/**
+	 * @param file
+	 *            The log file, new records are appended if it already exists.
+	 * @param bufferSize
+	 *            The size of each of the two buffers, this is also the maximum
+	 *            size of a single record.
+	 * @param force
+	 *            If true each group commit is forced to the storage device
+	 *            before the next one starts.
+	 */
+	public AppendOnlyLog(File file, int bufferSize, boolean force)
+			throws IOException
+	{
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (null != parent && !parent.exists() && !parent.mkdirs())
+		{
+			throw new IOException("Unable to create directory " + parent);
+		}
+		this.file = file;
+		this.force = force;
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		this.channel = randomAccessFile.getChannel();
+		this.channel.position(channel.size());
+		this.activeBuffer = ByteBuffer.allocate(bufferSize);
+		this.writeBuffer = ByteBuffer.allocate(bufferSize);
+		this.lock = new ReentrantLock();
+		this.dataAvailable = lock.newCondition();
+		this.writeComplete = lock.newCondition();
+		this.writer = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				writeLoop();
+			}
+		}, "AppendOnlyLog-" + file.getName());
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Appends a record. The record is not yet on disk when this method
+	 * returns, use {@link #flush()} to wait for it.
+	 *
+	 * @param type
+	 *            The application specific type of the record.
+	 * @param timestamp
+	 *            The time at which the record was created.
+	 * @param payload
+	 *            The payload of the record.
+	 * @param offset
+	 *            The start of the payload in the array.
+	 * @param length
+	 *            The number of payload bytes.
+	 * @throws IOException
+	 *             If the log is closed or a previous write failed.
+	 */
+	public void append(byte type, long timestamp, byte[] payload, int offset,
+			int length) throws IOException
+	{
+		int recordSize = 4 + RECORD_HEADER_SIZE + length;
+		if (recordSize > activeBuffer.capacity())
+		{
+			throw new IllegalArgumentException("Record of " + recordSize
+					+ " bytes is larger than the buffer size "
+					+ activeBuffer.capacity());
+		}
+		lock.lock();
+		try
+		{
+			while (!closed && null == writeFailure
+					&& activeBuffer.remaining() < recordSize)
+			{
+				// Back pressure, wait for the writer to swap the buffers.
+				dataAvailable.signal();
+				writeComplete.awaitUninterruptibly();
+			}
+			checkState();
+			boolean wasEmpty = activeBuffer.position() == 0;
+			activeBuffer.putInt(RECORD_HEADER_SIZE + length);
+			activeBuffer.put(type);
+			activeBuffer.putLong(timestamp);
+			activeBuffer.put(payload, offset, length);
+			appendedBytes += recordSize;
+			if (wasEmpty)
+			{
+				dataAvailable.signal();
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	public void append(byte type, long timestamp, byte[] payload)
+			throws IOException
+	{
+		append(type, timestamp, payload, 0, payload.length);
+	}
+
+	/**
+	 * Blocks till all the records appended before this call have been written
+	 * to the file.
+	 */
+	public void flush() throws IOException
+	{
+		lock.lock();
+		try
+		{
+			long target = appendedBytes;
+			while (writtenBytes < target && null == writeFailure && !closed)
+			{
+				dataAvailable.signal();
+				writeComplete.awaitUninterruptibly();
+			}
+			if (null != writeFailure)
+			{
+				throw writeFailure;
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Writes the pending records, stops the writer thread and closes the file.
+	 */
+	public void close()
+	{
+		lock.lock();
+		try
+		{
+			if (closed)
+			{
+				return;
+			}
+			closed = true;
+			dataAvailable.signal();
+			writeComplete.signalAll();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		try
+		{
+			writer.join(TimeUnit.SECONDS.toMillis(10));
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		try
+		{
+			channel.close();
+		}
+		catch (IOException e)
+		{
+			LOG.warn("Unable to close log file {}: {}", file, e);
+		}
+	}
+
+	public File getFile()
+	{
+		return file;
+	}
+
+	public boolean isClosed()
+	{
+		lock.lock();
+		try
+		{
+			return closed;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	private void checkState() throws IOException
+	{
+		if (null != writeFailure)
+		{
+			throw writeFailure;
+		}
+		if (closed)
+		{
+			throw new IOException("Log " + file + " is closed");
+		}
+	}
+
+	private void writeLoop()
+	{
+		while (true)
+		{
+			ByteBuffer toWrite;
+			boolean last;
+			lock.lock();
+			try
+			{
+				while (!closed && activeBuffer.position() == 0)
+				{
+					dataAvailable.awaitUninterruptibly();
+				}
+				last = closed;
+				toWrite = activeBuffer;
+				activeBuffer = writeBuffer;
+				writeBuffer = toWrite;
+			}
+			finally
+			{
+				lock.unlock();
+			}
+
+			toWrite.flip();
+			int bytes = toWrite.remaining();
+			IOException failure = null;
+			try
+			{
+				while (toWrite.hasRemaining())
+				{
+					channel.write(toWrite);
+				}
+				if (force && bytes > 0)
+				{
+					channel.force(false);
+				}
+			}
+			catch (IOException e)
+			{
+				LOG.error("Unable to write to log {}: {}", file, e);
+				failure = e;
+			}
+			toWrite.clear();
+
+			lock.lock();
+			try
+			{
+				writtenBytes += bytes;
+				if (null != failure)
+				{
+					writeFailure = failure;
+				}
+				writeComplete.signalAll();
+				if (null != failure || (last && activeBuffer.position() == 0))
+				{
+					return;
+				}
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Reads the records of a log file sequentially. A truncated record at the
+	 * end of the file, for e.g. due to a crash during a write, is treated as
+	 * the end of the log.
+	 *
+	 * @author Abraham Menacherry
+	 *
+	 */
+	public static class Reader
+	{
+		private final FileChannel channel;
+		private final ByteBuffer lengthBuffer;
+		private final ByteBuffer headerBuffer;
+		private byte type;
+		private long timestamp;
+		private byte[] payload;
+
+		public Reader(File file) throws IOException
+		{
+			this.channel = new FileInputStream(file).getChannel();
+			this.lengthBuffer = ByteBuffer.allocate(4);
+			this.headerBuffer = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+		}
+
+		/**
+		 * Moves to the next record.
+		 *
+		 * @return false if there are no more complete records.
+		 */
+		public boolean next() throws IOException
+		{
+			try
+			{
+				lengthBuffer.clear();
+				readFully(lengthBuffer);
+				int length = lengthBuffer.getInt(0);
+				if (length < RECORD_HEADER_SIZE
+						|| length > channel.size() - channel.position())
+				{
+					return false;
+				}
+				headerBuffer.clear();
+				readFully(headerBuffer);
+				type = headerBuffer.get(0);
+				timestamp = headerBuffer.getLong(1);
+				payload = new byte[length - RECORD_HEADER_SIZE];
+				readFully(ByteBuffer.wrap(payload));
+				return true;
+			}
+			catch (EOFException e)
+			{
+				return false;
+			}
+		}
+
+		public byte getType()
+		{
+			return type;
+		}
+
+		public long getTimestamp()
+		{
+			return timestamp;
+		}
+
+		public byte[] getPayload()
+		{
+			return payload;
+		}
+
+		public void close() throws IOException
+		{
+			channel.close();
+		}
+
+		private void readFully(ByteBuffer buffer) throws IOException
+		{
+			while (buffer.hasRemaining())
+			{
+				if (channel.read(buffer) < 0)
+				{
+					throw new EOFException();
+				}
+			}
+		}
+	}
+}
@@ -5,6 +5,11 @@ public class JetConfig
 	public static final String NODE_NAME = "JetNode";
 	public static final String RECONNECT_KEY = "RECONNECT_KEY";
 	public static final String RECONNECT_REGISTRY = "RECONNECT_REGISTRY";
+	/**
+	 * Session attribute holding the link quality estimator of the session, so
+	 * that its update rate can be read along with the other session metrics.
+	 */
+	public static final String LINK_QUALITY = "LINK_QUALITY";
 	/**
 	 * By default wait for 5 minutes for remote client to reconnect, before
 	 * closing session.
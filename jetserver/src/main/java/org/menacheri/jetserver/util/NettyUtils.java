@@ -13,6 +13,7 @@ import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.util.CharsetUtil;
 import org.menacheri.jetserver.app.PlayerSession;
+import org.menacheri.jetserver.communication.MessageBuffer;
 import org.menacheri.jetserver.communication.NettyTCPMessageSender;
 import org.menacheri.jetserver.convert.Transform;
 import org.slf4j.Logger;
@@ -28,6 +29,20 @@ public class NettyUtils
 {
 	private static final Logger LOG = LoggerFactory.getLogger(NettyUtils.class);
 	
+	/**
+	 * Pre-encoded read only buffers for every opcode.
+	 */
+	private static final ChannelBuffer[] OPCODES = new ChannelBuffer[256];
+	static
+	{
+		for (int opcode = 0; opcode < OPCODES.length; opcode++)
+		{
+			ChannelBuffer buffer = ChannelBuffers.buffer(1);
+			buffer.writeByte(opcode);
+			OPCODES[opcode] = ChannelBuffers.unmodifiableBuffer(buffer);
+		}
+	}
+	
 	public static final String NETTY_CHANNEL = "NETTY_CHANNEL";
 	
 	public static ChannelPipeline getPipeLineOfConnection(
@@ -74,10 +89,70 @@ public class NettyUtils
 		}
 	}
 	
+	/**
+	 * Estimates the size on the wire of the payload of an event, excluding
+	 * the opcode and framing.
+	 * 
+	 * @param source
+	 *            A {@link MessageBuffer}, {@link ChannelBuffer} or byte array.
+	 * @return The number of readable bytes, 0 for a null source or -1 if the
+	 *         size is not known, for e.g. for objects which are serialized by
+	 *         the protocol.
+	 */
+	public static int readableBytes(Object source)
+	{
+		if (null == source)
+		{
+			return 0;
+		}
+		if (source instanceof MessageBuffer)
+		{
+			source = ((MessageBuffer<?>) source).getNativeBuffer();
+		}
+		if (source instanceof ChannelBuffer)
+		{
+			return ((ChannelBuffer) source).readableBytes();
+		}
+		if (source instanceof byte[])
+		{
+			return ((byte[]) source).length;
+		}
+		return -1;
+	}
+	
+	/**
+	 * @param opcode
+	 *            The event type.
+	 * @return A read only buffer holding just the opcode. It is a duplicate of
+	 *         a pre-encoded constant so no bytes are allocated.
+	 */
 	public static ChannelBuffer createBufferForOpcode(int opcode)
 	{
-		ChannelBuffer buffer = ChannelBuffers.buffer(1);
+		return OPCODES[opcode & 0xFF].duplicate();
+	}
+	
+	/**
+	 * Writes the opcode followed by the readable bytes of the payload into a
+	 * single buffer of the exact size.
+	 * 
+	 * @param opcode
+	 *            The event type.
+	 * @param payload
+	 *            The body of the message, can be null.
+	 * @return The new buffer, or a read only opcode buffer if there is no
+	 *         payload.
+	 */
+	public static ChannelBuffer createBufferForOpcode(int opcode,
+			ChannelBuffer payload)
+	{
+		if (null == payload)
+		{
+			return createBufferForOpcode(opcode);
+		}
+		int length = payload.readableBytes();
+		ChannelBuffer buffer = ChannelBuffers.buffer(length + 1);
 		buffer.writeByte(opcode);
+		buffer.writeBytes(payload, payload.readerIndex(), length);
 		return buffer;
 	}
 
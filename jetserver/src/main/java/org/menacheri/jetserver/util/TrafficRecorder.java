@@ -0,0 +1,111 @@
+package org.menacheri.jetserver.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records the inbound frames of all sessions into an {@link AppendOnlyLog}
+ * so that the traffic can later be fed back to a server using
+ * {@link TrafficReplayer}. The timestamp of each record is in nanoseconds
+ * since the epoch, derived from {@link System#nanoTime()} so that the
+ * intervals between frames are accurate. The payload of a record is
+ * <b>session id length (short) - session id as utf-8 bytes - frame</b>.
+ * <p>
+ * The log is not forced to disk, a recording is a diagnostic aid and losing
+ * the tail of it during a crash is acceptable.
+ * 
+ * @author Abraham Menacherry
+ * 
+ */
+public class TrafficRecorder
+{
+	private static final Logger LOG = LoggerFactory
+			.getLogger(TrafficRecorder.class);
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * A binary frame, without the length header added by the transport.
+	 */
+	public static final byte BINARY_FRAME = 0x01;
+	/**
+	 * The text of a web socket frame.
+	 */
+	public static final byte TEXT_FRAME = 0x02;
+	/**
+	 * The session was disconnected, this record has no frame.
+	 */
+	public static final byte DISCONNECT = 0x03;
+
+	private final AppendOnlyLog log;
+	private final long baseNanos;
+	private final long startNanos;
+
+	public TrafficRecorder(File file) throws IOException
+	{
+		this(new AppendOnlyLog(file, AppendOnlyLog.DEFAULT_BUFFER_SIZE, false));
+	}
+
+	public TrafficRecorder(AppendOnlyLog log)
+	{
+		this.log = log;
+		this.baseNanos = TimeUnit.MILLISECONDS.toNanos(System
+				.currentTimeMillis());
+		this.startNanos = System.nanoTime();
+	}
+
+	/**
+	 * Records the readable bytes of the buffer without changing its reader
+	 * index. Failures are logged and swallowed so that recording never
+	 * affects the session.
+	 */
+	public void record(byte kind, Object sessionId, ChannelBuffer frame)
+	{
+		byte[] bytes = new byte[(null == frame) ? 0 : frame.readableBytes()];
+		if (bytes.length > 0)
+		{
+			frame.getBytes(frame.readerIndex(), bytes);
+		}
+		record(kind, sessionId, bytes);
+	}
+
+	public void record(byte kind, Object sessionId, byte[] frame)
+	{
+		try
+		{
+			byte[] id = String.valueOf(sessionId).getBytes(UTF_8);
+			byte[] record = new byte[2 + id.length + frame.length];
+			record[0] = (byte) (id.length >>> 8);
+			record[1] = (byte) id.length;
+			System.arraycopy(id, 0, record, 2, id.length);
+			System.arraycopy(frame, 0, record, 2 + id.length, frame.length);
+			log.append(kind, baseNanos + (System.nanoTime() - startNanos),
+					record);
+		}
+		catch (Exception e)
+		{
+			LOG.error("Unable to record frame of session {}: {}", sessionId,
+					e);
+		}
+	}
+
+	public void flush() throws IOException
+	{
+		log.flush();
+	}
+
+	public void close()
+	{
+		log.close();
+	}
+
+	public File getFile()
+	{
+		return log.getFile();
+	}
+}
@@ -0,0 +1,498 @@
+package org.menacheri.jetserver.util;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.menacheri.jetserver.app.GameRoom;
+import org.menacheri.jetserver.app.PlayerSession;
+import org.menacheri.jetserver.communication.NettyMessageBuffer;
+import org.menacheri.jetserver.event.Event;
+import org.menacheri.jetserver.event.Events;
+import org.menacheri.jetserver.event.impl.DefaultEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+
+/**
+ * Feeds a file written by {@link TrafficRecorder} back to a server, either
+ * through real sockets using {@link SocketReplayTarget} or directly into the
+ * sessions of a game room using {@link SessionReplayTarget}. The intervals
+ * between the recorded frames are preserved, divided by the speed factor, so
+ * a speed of 1 reproduces the original load and a speed of 10 replays it ten
+ * times faster. A speed of zero or less sends the frames as fast as possible.
+ * 
+ * @author Abraham Menacherry
+ * 
+ */
+public class TrafficReplayer
+{
+	private static final Logger LOG = LoggerFactory
+			.getLogger(TrafficReplayer.class);
+
+	private final File file;
+	private final double speed;
+
+	public TrafficReplayer(File file, double speed)
+	{
+		this.file = file;
+		this.speed = speed;
+	}
+
+	/**
+	 * Replays the whole file to the target and closes the target once done.
+	 * 
+	 * @return The number of records replayed.
+	 */
+	public int replay(ReplayTarget target) throws Exception
+	{
+		AppendOnlyLog.Reader reader = new AppendOnlyLog.Reader(file);
+		int count = 0;
+		try
+		{
+			long firstTimestamp = 0;
+			long startNanos = 0;
+			while (reader.next())
+			{
+				if (count == 0)
+				{
+					firstTimestamp = reader.getTimestamp();
+					startNanos = System.nanoTime();
+				}
+				else if (speed > 0)
+				{
+					long due = startNanos
+							+ (long) ((reader.getTimestamp() - firstTimestamp) / speed);
+					long wait;
+					while ((wait = due - System.nanoTime()) > 0)
+					{
+						LockSupport.parkNanos(wait);
+					}
+				}
+				byte[] record = reader.getPayload();
+				int idLength = ((record[0] & 0xff) << 8) | (record[1] & 0xff);
+				String sessionId = new String(record, 2, idLength,
+						TrafficRecorder.UTF_8);
+				byte[] frame = new byte[record.length - 2 - idLength];
+				System.arraycopy(record, 2 + idLength, frame, 0, frame.length);
+				if (reader.getType() == TrafficRecorder.DISCONNECT)
+				{
+					target.disconnect(sessionId);
+				}
+				else
+				{
+					target.send(sessionId, reader.getType(), frame);
+				}
+				count++;
+			}
+		}
+		finally
+		{
+			reader.close();
+			target.close();
+		}
+		return count;
+	}
+
+	public File getFile()
+	{
+		return file;
+	}
+
+	public double getSpeed()
+	{
+		return speed;
+	}
+
+	/**
+	 * Replays a recording against a running server. Usage:
+	 * <b>TrafficReplayer file host port [speed [username password
+	 * roomRefKey]]</b>. The recording does not contain the login frames, so
+	 * the credentials and the reference key of the game room are needed to
+	 * log each recorded session in before its frames are replayed.
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		if (args.length != 3 && args.length != 4 && args.length != 7)
+		{
+			System.err
+					.println("Usage: TrafficReplayer <file> <host> <port> [speed [username password roomRefKey]]");
+			return;
+		}
+		double speed = (args.length > 3) ? Double.parseDouble(args[3]) : 1;
+		TrafficReplayer replayer = new TrafficReplayer(new File(args[0]),
+				speed);
+		SocketReplayTarget target;
+		if (args.length == 7)
+		{
+			target = new SocketReplayTarget(args[1],
+					Integer.parseInt(args[2]), args[4], args[5], args[6]);
+		}
+		else
+		{
+			target = new SocketReplayTarget(args[1], Integer.parseInt(args[2]));
+		}
+		long start = System.nanoTime();
+		int count = replayer.replay(target);
+		LOG.info("Replayed {} records in {} ms", count, TimeUnit.NANOSECONDS
+				.toMillis(System.nanoTime() - start));
+	}
+
+	/**
+	 * Receives the frames of a recording.
+	 * 
+	 * @author Abraham Menacherry
+	 * 
+	 */
+	public interface ReplayTarget
+	{
+		/**
+		 * @param sessionId
+		 *            The id of the session in the recording.
+		 * @param kind
+		 *            {@link TrafficRecorder#BINARY_FRAME} or
+		 *            {@link TrafficRecorder#TEXT_FRAME}.
+		 * @param frame
+		 *            The recorded frame.
+		 */
+		void send(String sessionId, byte kind, byte[] frame) throws Exception;
+
+		void disconnect(String sessionId) throws Exception;
+
+		void close();
+	}
+
+	/**
+	 * Opens one tcp connection per recorded session and writes the binary
+	 * frames to it with the 2 byte length header expected by the length based
+	 * frame decoder of the server. Since recording starts only after the
+	 * protocol is applied, the login frames are not part of the recording.
+	 * When created with credentials and the reference key of a game room,
+	 * each connection is logged in to that room and the recorded frames are
+	 * sent only after the server sends {@link Events#START}. Override
+	 * {@link #createLoginFrame(String)} to use different credentials per
+	 * session. Text frames need a web socket handshake and are skipped.
+	 * 
+	 * @author Abraham Menacherry
+	 * 
+	 */
+	public static class SocketReplayTarget implements ReplayTarget
+	{
+		private final String host;
+		private final int port;
+		private final String username;
+		private final String password;
+		private final String roomRefKey;
+		private final Map<String, Socket> sockets;
+		private int loginTimeout = 10000;
+		private int skipped;
+
+		/**
+		 * Creates a target which does not log in the connections.
+		 */
+		public SocketReplayTarget(String host, int port)
+		{
+			this(host, port, null, null, null);
+		}
+
+		/**
+		 * @param username
+		 *            Used along with the password to log in each connection.
+		 * @param password
+		 * @param roomRefKey
+		 *            The reference key of the game room to join.
+		 */
+		public SocketReplayTarget(String host, int port, String username,
+				String password, String roomRefKey)
+		{
+			this.host = host;
+			this.port = port;
+			this.username = username;
+			this.password = password;
+			this.roomRefKey = roomRefKey;
+			this.sockets = new HashMap<String, Socket>();
+		}
+
+		@Override
+		public void send(String sessionId, byte kind, byte[] frame)
+				throws Exception
+		{
+			if (kind != TrafficRecorder.BINARY_FRAME)
+			{
+				if (skipped++ == 0)
+				{
+					LOG.warn("Skipping text frames, they cannot be replayed over a plain socket");
+				}
+				return;
+			}
+			Socket socket = sockets.get(sessionId);
+			if (null == socket)
+			{
+				socket = connect(sessionId);
+				sockets.put(sessionId, socket);
+			}
+			writeFrame(socket.getOutputStream(), frame);
+		}
+
+		@Override
+		public void disconnect(String sessionId) throws Exception
+		{
+			Socket socket = sockets.remove(sessionId);
+			if (null != socket)
+			{
+				socket.close();
+			}
+		}
+
+		@Override
+		public void close()
+		{
+			for (Socket socket : sockets.values())
+			{
+				try
+				{
+					socket.close();
+				}
+				catch (IOException e)
+				{
+					LOG.trace("Error closing socket {}", e);
+				}
+			}
+			sockets.clear();
+		}
+
+		/**
+		 * @param sessionId
+		 *            The id of the session in the recording.
+		 * @return The frame, without the length header, which logs in the
+		 *         connection or null if no login is required.
+		 */
+		protected byte[] createLoginFrame(String sessionId)
+		{
+			if (null == username)
+			{
+				return null;
+			}
+			ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+			buffer.writeByte(Events.LOG_IN);
+			buffer.writeByte(Events.PROTCOL_VERSION);
+			buffer.writeBytes(NettyUtils.writeStrings(username, password,
+					roomRefKey));
+			byte[] frame = new byte[buffer.readableBytes()];
+			buffer.readBytes(frame);
+			return frame;
+		}
+
+		/**
+		 * Reads the frames sent by the server during login until the game
+		 * room sends {@link Events#START}.
+		 * 
+		 * @throws IOException
+		 *             If the login or the join of the game room fails.
+		 */
+		protected void awaitStart(Socket socket, String sessionId)
+				throws IOException
+		{
+			socket.setSoTimeout(loginTimeout);
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			while (true)
+			{
+				byte[] frame = new byte[in.readUnsignedShort()];
+				in.readFully(frame);
+				if (frame.length == 0)
+				{
+					continue;
+				}
+				if (frame[0] == Events.START)
+				{
+					break;
+				}
+				if (frame[0] == Events.LOG_IN_FAILURE
+						|| frame[0] == Events.GAME_ROOM_JOIN_FAILURE)
+				{
+					socket.close();
+					throw new IOException("Login of recorded session "
+							+ sessionId + " failed with event " + frame[0]);
+				}
+			}
+			socket.setSoTimeout(0);
+		}
+
+		protected Socket connect(String sessionId) throws IOException
+		{
+			final Socket socket = new Socket(host, port);
+			socket.setTcpNoDelay(true);
+			byte[] login = createLoginFrame(sessionId);
+			if (null != login)
+			{
+				writeFrame(socket.getOutputStream(), login);
+				awaitStart(socket, sessionId);
+			}
+			// Discard whatever the server sends, else it would block on a
+			// full socket buffer.
+			Thread drain = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					byte[] discard = new byte[4096];
+					try
+					{
+						InputStream in = socket.getInputStream();
+						while (in.read(discard) >= 0)
+						{
+						}
+					}
+					catch (IOException e)
+					{
+						// socket closed.
+					}
+				}
+			}, "ReplayDrain-" + sessionId);
+			drain.setDaemon(true);
+			drain.start();
+			return socket;
+		}
+
+		private static void writeFrame(OutputStream out, byte[] frame)
+				throws IOException
+		{
+			byte[] bytes = new byte[2 + frame.length];
+			bytes[0] = (byte) (frame.length >>> 8);
+			bytes[1] = (byte) frame.length;
+			System.arraycopy(frame, 0, bytes, 2, frame.length);
+			out.write(bytes);
+			out.flush();
+		}
+
+		public int getSkipped()
+		{
+			return skipped;
+		}
+
+		public int getLoginTimeout()
+		{
+			return loginTimeout;
+		}
+
+		/**
+		 * @param loginTimeout
+		 *            Milliseconds to wait for the game room to start the
+		 *            session.
+		 */
+		public void setLoginTimeout(int loginTimeout)
+		{
+			this.loginTimeout = loginTimeout;
+		}
+	}
+
+	/**
+	 * Decodes the recorded frames into events and sends them directly to
+	 * player sessions of a game room, bypassing the network. This is useful to
+	 * profile the game logic of a room in isolation. A new session is created
+	 * for each recorded session id using {@link #createSession(String)}, the
+	 * room should hence use a protocol which does not need a channel, or the
+	 * method should be overridden.
+	 * 
+	 * @author Abraham Menacherry
+	 * 
+	 */
+	public static class SessionReplayTarget implements ReplayTarget
+	{
+		private final GameRoom gameRoom;
+		private final Map<String, PlayerSession> sessions;
+		private final Gson gson;
+
+		public SessionReplayTarget(GameRoom gameRoom)
+		{
+			this.gameRoom = gameRoom;
+			this.sessions = new HashMap<String, PlayerSession>();
+			this.gson = new Gson();
+		}
+
+		@Override
+		public void send(String sessionId, byte kind, byte[] frame)
+				throws Exception
+		{
+			PlayerSession playerSession = sessions.get(sessionId);
+			if (null == playerSession)
+			{
+				playerSession = createSession(sessionId);
+				sessions.put(sessionId, playerSession);
+			}
+			Event event = decode(kind, frame);
+			if (null != event)
+			{
+				playerSession.onEvent(event);
+			}
+		}
+
+		@Override
+		public void disconnect(String sessionId) throws Exception
+		{
+			PlayerSession playerSession = sessions.remove(sessionId);
+			if (null != playerSession)
+			{
+				playerSession.onEvent(Events.event(null, Events.DISCONNECT));
+			}
+		}
+
+		@Override
+		public void close()
+		{
+			sessions.clear();
+		}
+
+		protected PlayerSession createSession(String sessionId)
+		{
+			PlayerSession playerSession = gameRoom.createPlayerSession(null);
+			gameRoom.onLogin(playerSession);
+			gameRoom.connectSession(playerSession);
+			return playerSession;
+		}
+
+		/**
+		 * Decodes a frame the same way as the message buffer and text web
+		 * socket decoders of the server.
+		 */
+		protected Event decode(byte kind, byte[] frame)
+		{
+			Event event;
+			if (kind == TrafficRecorder.TEXT_FRAME)
+			{
+				event = gson.fromJson(new String(frame, TrafficRecorder.UTF_8),
+						DefaultEvent.class);
+			}
+			else
+			{
+				if (frame.length == 0)
+				{
+					return null;
+				}
+				ChannelBuffer buffer = ChannelBuffers.wrappedBuffer(frame);
+				event = Events.event(new NettyMessageBuffer(buffer),
+						buffer.readByte());
+			}
+			if (event.getType() == Events.NETWORK_MESSAGE)
+			{
+				event.setType(Events.SESSION_MESSAGE);
+			}
+			return event;
+		}
+
+		public Map<String, PlayerSession> getSessions()
+		{
+			return sessions;
+		}
+	}
+}
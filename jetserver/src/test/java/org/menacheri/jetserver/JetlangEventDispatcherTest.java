@@ -19,10 +19,13 @@ import org.menacheri.jetserver.app.PlayerSession;
 import org.menacheri.jetserver.app.Session;
 import org.menacheri.jetserver.app.impl.GameRoomSession.GameRoomSessionBuilder;
 import org.menacheri.jetserver.app.impl.SimpleGame;
+import org.menacheri.jetserver.concurrent.OverrunMonitor;
+import org.menacheri.jetserver.concurrent.OverrunMonitor.OverrunPolicy;
 import org.menacheri.jetserver.event.Event;
 import org.menacheri.jetserver.event.EventDispatcher;
 import org.menacheri.jetserver.event.EventHandler;
 import org.menacheri.jetserver.event.Events;
+import org.menacheri.jetserver.event.NetworkEvent;
 import org.menacheri.jetserver.event.impl.EventDispatchers;
 import org.menacheri.jetserver.event.impl.JetlangEventDispatcher;
 import org.menacheri.jetserver.protocols.Protocol;
@@ -223,6 +226,129 @@ public class JetlangEventDispatcherTest {
 		assertTrue(counter.get() == 3);
 	}
 
+	@Test
+	public void expiredFastEventsAreDropped() throws InterruptedException {
+		JetlangEventDispatcher dispatcher = (JetlangEventDispatcher) EventDispatchers
+				.newJetlangEventDispatcher(null, null);
+		final CountDownLatch latch = new CountDownLatch(2);
+		final AtomicLong received = new AtomicLong();
+		dispatcher.addHandler(new EventHandler() {
+
+			@Override
+			public void onEvent(Event event) {
+				received.incrementAndGet();
+				latch.countDown();
+			}
+
+			@Override
+			public int getEventType() {
+				return Events.NETWORK_MESSAGE;
+			}
+		});
+
+		NetworkEvent expired = Events.fastNetworkEvent(null, 1000);
+		expired.setDeadline(System.currentTimeMillis() - 1);
+		dispatcher.fireEvent(expired);
+		// Deadlines are ignored for reliable events.
+		NetworkEvent reliable = Events.networkEvent(null);
+		reliable.setDeadline(System.currentTimeMillis() - 1);
+		dispatcher.fireEvent(reliable);
+		dispatcher.fireEvent(Events.fastNetworkEvent(null, 60000));
+
+		assertTrue(latch.await(1, TimeUnit.SECONDS));
+		assertFalse(Events.isExpired(reliable));
+		assertEquals(2, received.get());
+		assertEquals(1, dispatcher.getDroppedEventCount());
+	}
+
+	@Test
+	public void expiredEventIsCountedOnceForAllHandlers()
+			throws InterruptedException {
+		JetlangEventDispatcher dispatcher = (JetlangEventDispatcher) EventDispatchers
+				.newJetlangEventDispatcher(null, null);
+		final CountDownLatch latch = new CountDownLatch(3);
+		for (int i = 0; i < 3; i++) {
+			dispatcher.addHandler(new EventHandler() {
+
+				@Override
+				public void onEvent(Event event) {
+					latch.countDown();
+				}
+
+				@Override
+				public int getEventType() {
+					return Events.NETWORK_MESSAGE;
+				}
+			});
+		}
+
+		NetworkEvent expired = Events.fastNetworkEvent(null, 1000);
+		expired.setDeadline(System.currentTimeMillis() - 1);
+		dispatcher.fireEvent(expired);
+		dispatcher.fireEvent(Events.fastNetworkEvent(null, 60000));
+
+		// The fresh event reaching every handler means the expired one was
+		// seen by all of them.
+		assertTrue(latch.await(1, TimeUnit.SECONDS));
+		assertEquals(1, dispatcher.getDroppedEventCount());
+	}
+
+	@Test
+	public void handlersWithinBudgetOverrunItTogether()
+			throws InterruptedException {
+		final JetlangEventDispatcher dispatcher = (JetlangEventDispatcher) EventDispatchers
+				.newJetlangEventDispatcher(null, null);
+		final CountDownLatch handled = new CountDownLatch(10);
+		for (int i = 0; i < 10; i++) {
+			dispatcher.addHandler(new EventHandler() {
+
+				@Override
+				public void onEvent(Event event) {
+					try {
+						Thread.sleep(5);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					handled.countDown();
+				}
+
+				@Override
+				public int getEventType() {
+					return Events.SESSION_MESSAGE;
+				}
+			});
+		}
+		// Keep the fiber busy so that the batches of all the handlers are
+		// queued for the same turn.
+		final CountDownLatch busy = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		dispatcher.execute(new Runnable() {
+			@Override
+			public void run() {
+				busy.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		assertTrue(busy.await(1, TimeUnit.SECONDS));
+		OverrunMonitor monitor = new OverrunMonitor("room", 20,
+				TimeUnit.MILLISECONDS, OverrunPolicy.LOG, 1, 1);
+		dispatcher.setOverrunMonitor(monitor);
+		dispatcher.fireEvent(Events.event(null, Events.SESSION_MESSAGE));
+		release.countDown();
+
+		assertTrue(handled.await(1, TimeUnit.SECONDS));
+		// The turn is recorded after the last handler returns.
+		for (int i = 0; i < 100 && monitor.getExecutions() == 0; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(1, monitor.getExecutions());
+		assertEquals(1, monitor.getOverruns());
+	}
+
 	private void assertNoListeners(JetlangEventDispatcher dispatcher) {
 		Map<Integer, List<EventHandler>> listeners = dispatcher
 				.getListenersByEventType();
@@ -0,0 +1,132 @@
+package org.menacheri.jetserver.app.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.menacheri.jetserver.app.PlayerSession;
+import org.menacheri.jetserver.app.impl.GameRoomSession.GameRoomSessionBuilder;
+import org.menacheri.jetserver.event.EventDispatcher;
+import org.menacheri.jetserver.event.Events;
+import org.menacheri.jetserver.event.NetworkEvent;
+import org.menacheri.jetserver.event.impl.ExecutorEventDispatcher;
+import org.menacheri.jetserver.protocols.impl.DummyProtocol;
+import org.menacheri.jetserver.util.TestGameRoom;
+
+public class GameRoomExtensionTest
+{
+	@Test
+	public void extensionIsCalledThroughTheLifeOfTheRoom()
+	{
+		RecordingExtension extension = new RecordingExtension();
+		GameRoomSession gameRoom = createRoom(newBuilder()
+				.extension(extension));
+		assertEquals(1, extension.dispatchers.size());
+
+		PlayerSession playerSession = gameRoom.createPlayerSession(null);
+		gameRoom.onLogin(playerSession);
+		assertTrue(gameRoom.connectSession(playerSession));
+		assertEquals(2, extension.dispatchers.size());
+		assertEquals(1, extension.connected.size());
+
+		gameRoom.sendBroadcast(Events.networkEvent("skipped"));
+		assertEquals(1, extension.broadcasts);
+		gameRoom.close();
+		assertTrue(extension.closed);
+		assertEquals(extension, gameRoom.getExtension(RecordingExtension.class));
+	}
+
+	@Test
+	public void optionsOfBuilderGiveEachRoomItsOwnExtension()
+	{
+		GameRoomSessionBuilder builder = newBuilder();
+		builder.sessionBandwidth(1000, 50);
+		GameRoomSession first = createRoom(builder);
+		GameRoomSession second = createRoom(builder);
+		SessionBandwidthExtension bandwidth = first
+				.getExtension(SessionBandwidthExtension.class);
+		assertNotNull(bandwidth);
+		assertNotSame(bandwidth,
+				second.getExtension(SessionBandwidthExtension.class));
+		assertNull(first.getExtension(TickBudgetExtension.class));
+
+		PlayerSession playerSession = first.createPlayerSession(null);
+		first.onLogin(playerSession);
+		first.connectSession(playerSession);
+		assertNotNull(bandwidth.getBandwidthScheduler(playerSession));
+		first.close();
+		second.close();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void extensionBelongsToASingleRoom()
+	{
+		GameRoomSessionBuilder builder = newBuilder().extension(
+				new RecordingExtension());
+		createRoom(builder);
+		createRoom(builder);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void sessionBandwidthNeedsADispatcherWhichCanSchedule()
+	{
+		GameRoomSessionBuilder builder = newBuilder();
+		builder.sessionBandwidth(1000, 50).eventDispatcher(
+				new ExecutorEventDispatcher());
+		createRoom(builder);
+	}
+
+	private GameRoomSessionBuilder newBuilder()
+	{
+		GameRoomSessionBuilder builder = new GameRoomSessionBuilder();
+		builder.gameRoomName("Extended_Room").protocol(new DummyProtocol());
+		return builder;
+	}
+
+	private GameRoomSession createRoom(GameRoomSessionBuilder builder)
+	{
+		return new TestGameRoom(builder, new AtomicLong(),
+				new CountDownLatch(1));
+	}
+
+	private static class RecordingExtension extends GameRoomExtension
+	{
+		final List<EventDispatcher> dispatchers = new ArrayList<EventDispatcher>();
+		final List<PlayerSession> connected = new ArrayList<PlayerSession>();
+		int broadcasts;
+		boolean closed;
+
+		@Override
+		protected void onDispatcher(EventDispatcher dispatcher)
+		{
+			dispatchers.add(dispatcher);
+		}
+
+		@Override
+		protected void afterSessionConnect(PlayerSession playerSession)
+		{
+			connected.add(playerSession);
+		}
+
+		@Override
+		protected boolean onBroadcast(NetworkEvent networkEvent)
+		{
+			broadcasts++;
+			return false;
+		}
+
+		@Override
+		protected void close()
+		{
+			closed = true;
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package org.menacheri.jetserver.app.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.menacheri.jetserver.app.GameRoom;
+import org.menacheri.jetserver.app.PlayerSession;
+import org.menacheri.jetserver.app.impl.GameRoomSession.GameRoomSessionBuilder;
+import org.menacheri.jetserver.communication.NettyUDPMessageSender;
+import org.menacheri.jetserver.concurrent.Lane;
+import org.menacheri.jetserver.concurrent.LaneStrategy;
+import org.menacheri.jetserver.concurrent.LaneStrategy.LaneStrategies;
+import org.menacheri.jetserver.event.EventDispatcher;
+import org.menacheri.jetserver.event.Events;
+import org.menacheri.jetserver.event.NetworkEvent;
+import org.menacheri.jetserver.protocols.impl.DummyProtocol;
+import org.menacheri.jetserver.util.SessionHandlerLatchCounter;
+import org.menacheri.jetserver.util.TestGameRoom;
+
+public class GameRoomHandoffTest
+{
+	private AtomicLong counter;
+	private CountDownLatch latch;
+	private GameRoomSession zoneA;
+	private GameRoomSession zoneB;
+	private PlayerSession playerSession;
+
+	@Before
+	public void setUp()
+	{
+		counter = new AtomicLong(0);
+		latch = new CountDownLatch(1);
+		zoneA = createZone("Zone_A");
+		zoneB = createZone("Zone_B");
+		playerSession = zoneA.createPlayerSession(null);
+		zoneA.onLogin(playerSession);
+		zoneA.connectSession(playerSession);
+	}
+
+	@Test
+	public void handoffMovesSessionToTargetRoom() throws InterruptedException
+	{
+		EventDispatcher oldDispatcher = playerSession.getEventDispatcher();
+		assertTrue(zoneA.handoffSession(playerSession, zoneB));
+		assertFalse(zoneA.getSessions().contains(playerSession));
+		assertTrue(zoneB.getSessions().contains(playerSession));
+		assertSame(zoneB, playerSession.getGameRoom());
+		assertTrue(oldDispatcher != playerSession.getEventDispatcher());
+
+		zoneB.sendBroadcast(Events.networkEvent("zone b"));
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(1, counter.get());
+	}
+
+	@Test
+	public void droppedEventsAreCountedByTheRoomWhichDroppedThem()
+	{
+		NettyUDPMessageSender udpSender = new NettyUDPMessageSender(null,
+				null, null);
+		playerSession.setUdpSender(udpSender);
+		NetworkEvent expired = Events.fastNetworkEvent(null, 1000);
+		expired.setDeadline(System.currentTimeMillis() - 1);
+		udpSender.sendMessage(expired);
+		// For e.g. the same broadcast sent to another session.
+		udpSender.sendMessage(expired);
+		assertEquals(1, zoneA.getDroppedEventCount());
+
+		assertTrue(zoneA.handoffSession(playerSession, zoneB));
+		assertEquals(1, zoneA.getDroppedEventCount());
+		assertEquals(0, zoneB.getDroppedEventCount());
+		NetworkEvent expiredInB = Events.fastNetworkEvent(null, 1000);
+		expiredInB.setDeadline(System.currentTimeMillis() - 1);
+		udpSender.sendMessage(expiredInB);
+		assertEquals(1, zoneB.getDroppedEventCount());
+		assertEquals(1, zoneA.getDroppedEventCount());
+	}
+
+	@Test
+	public void handoffOfUnknownSessionFails()
+	{
+		assertFalse(zoneB.handoffSession(playerSession, zoneA));
+		assertTrue(zoneA.getSessions().contains(playerSession));
+	}
+
+	@Test
+	public void overlapSessionReceivesBroadcastsOfBothRooms()
+			throws InterruptedException
+	{
+		latch = new CountDownLatch(1);
+		playerSession.addHandler(new SessionHandlerLatchCounter(playerSession,
+				counter, latch));
+		assertTrue(zoneB.addOverlapSession(playerSession));
+		assertFalse(zoneB.getSessions().contains(playerSession));
+		zoneB.sendBroadcast(Events.networkEvent("zone b"));
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+		assertTrue(zoneA.handoffSession(playerSession, zoneB));
+		assertFalse(zoneB.getOverlapSessions().contains(playerSession));
+	}
+
+	@Test
+	public void handoffUsesLaneStrategyOfTargetRoom()
+	{
+		final AtomicInteger chosen = new AtomicInteger(0);
+		LaneStrategy<String, ExecutorService, GameRoom> strategy = new LaneStrategy<String, ExecutorService, GameRoom>()
+		{
+			@Override
+			public Lane<String, ExecutorService> chooseLane(GameRoom group)
+			{
+				chosen.incrementAndGet();
+				return LaneStrategies.GROUP_BY_ROOM.chooseLane(group);
+			}
+		};
+		GameRoomSessionBuilder builder = new GameRoomSessionBuilder();
+		builder.gameRoomName("Zone_C").protocol(new DummyProtocol())
+				.laneStrategy(strategy);
+		GameRoomSession zoneC = new TestGameRoom(builder, counter, latch);
+		int roomLanes = chosen.get();
+
+		assertTrue(zoneA.handoffSession(playerSession, zoneC));
+		assertEquals(roomLanes + 1, chosen.get());
+	}
+
+	private GameRoomSession createZone(String name)
+	{
+		GameRoomSessionBuilder builder = new GameRoomSessionBuilder();
+		builder.gameRoomName(name).protocol(new DummyProtocol());
+		return new TestGameRoom(builder, counter, latch);
+	}
+}
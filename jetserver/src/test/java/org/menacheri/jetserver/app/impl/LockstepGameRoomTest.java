@@ -0,0 +1,182 @@
+package org.menacheri.jetserver.app.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.menacheri.jetserver.app.PlayerSession;
+import org.menacheri.jetserver.app.impl.LockstepGameRoom.LockstepGameRoomBuilder;
+import org.menacheri.jetserver.app.impl.LockstepGameRoom.PlayerLag;
+import org.menacheri.jetserver.communication.MessageBuffer;
+import org.menacheri.jetserver.event.Event;
+import org.menacheri.jetserver.event.Events;
+import org.menacheri.jetserver.event.impl.DefaultSessionEventHandler;
+import org.menacheri.jetserver.event.impl.ExecutorEventDispatcher;
+import org.menacheri.jetserver.protocols.impl.DummyProtocol;
+
+public class LockstepGameRoomTest
+{
+	private TestLockstepRoom room;
+	private PlayerSession first;
+	private PlayerSession second;
+
+	@Before
+	public void setUp()
+	{
+		LockstepGameRoomBuilder builder = new LockstepGameRoomBuilder();
+		builder.frameTimeout(50).gameRoomName("Lockstep_Room")
+				.protocol(new DummyProtocol());
+		room = new TestLockstepRoom(builder);
+		first = connect();
+		second = connect();
+	}
+
+	@After
+	public void tearDown()
+	{
+		room.close();
+	}
+
+	@Test
+	public void bundleIsSentOnceAllInputsArrive() throws Exception
+	{
+		room.submitInput(first, 0, new byte[] { 1 });
+		room.submitInput(second, 1, new byte[] { 4 });
+		assertNull(room.bundles.poll(100, TimeUnit.MILLISECONDS));
+		room.submitInput(second, 0, new byte[] { 2, 3 });
+
+		ChannelBuffer bundle = nextBundle();
+		assertEquals(0, bundle.readInt());
+		assertEquals(2, bundle.readByte());
+		assertEquals(0, bundle.readByte());
+		assertEquals(1, bundle.readShort());
+		assertEquals(1, bundle.readByte());
+		assertEquals(1, bundle.readByte());
+		assertEquals(2, bundle.readShort());
+		assertEquals(2, bundle.readByte());
+		assertEquals(3, bundle.readByte());
+		// Each session receives the same bundle.
+		nextBundle();
+		assertNull(room.bundles.poll(100, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void frameIsRelayedAfterTimeout() throws Exception
+	{
+		room.start();
+		room.submitInput(first, 0, new byte[] { 1 });
+		ChannelBuffer bundle = nextBundle();
+		assertEquals(0, bundle.readInt());
+		assertEquals(1, bundle.readByte());
+		assertEquals(0, bundle.readByte());
+
+		// The input of the second player for frame 0 is now late.
+		room.submitInput(second, 0, new byte[] { 2 });
+		final PlayerLag[] lag = new PlayerLag[1];
+		final CountDownLatch latch = new CountDownLatch(1);
+		room.executeOnLane(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				lag[0] = room.getPlayerLag(second);
+				latch.countDown();
+			}
+		});
+		assertEquals(true, latch.await(5, TimeUnit.SECONDS));
+		assertEquals(1, lag[0].getMissedFrames());
+		assertEquals(1, lag[0].getLateInputs());
+		assertEquals(1, lag[0].getSlot());
+	}
+
+	@Test
+	public void fullRoomBundlesAllSlots() throws Exception
+	{
+		List<PlayerSession> sessions = new ArrayList<PlayerSession>();
+		sessions.add(first);
+		sessions.add(second);
+		// One more session than there are slots.
+		for (int i = 2; i <= LockstepGameRoom.MAX_SLOTS; i++)
+		{
+			sessions.add(connect());
+		}
+		for (PlayerSession playerSession : sessions)
+		{
+			room.submitInput(playerSession, 0, new byte[] { 1 });
+		}
+		ChannelBuffer bundle = nextBundle();
+		assertEquals(0, bundle.readInt());
+		assertEquals(LockstepGameRoom.MAX_SLOTS, bundle.readUnsignedByte());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void inputLongerThanLengthFieldIsRejected()
+	{
+		room.submitInput(first, 0,
+				new byte[LockstepGameRoom.MAX_INPUT_LENGTH + 1]);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void dispatcherWhichCannotScheduleIsRejected()
+	{
+		LockstepGameRoomBuilder builder = new LockstepGameRoomBuilder();
+		builder.gameRoomName("Executor_Room").protocol(new DummyProtocol())
+				.eventDispatcher(new ExecutorEventDispatcher());
+		new TestLockstepRoom(builder);
+	}
+
+	private PlayerSession connect()
+	{
+		PlayerSession playerSession = room.createPlayerSession(null);
+		room.onLogin(playerSession);
+		room.connectSession(playerSession);
+		return playerSession;
+	}
+
+	private ChannelBuffer nextBundle() throws InterruptedException
+	{
+		ChannelBuffer bundle = room.bundles.poll(5, TimeUnit.SECONDS);
+		assertNotNull(bundle);
+		return bundle;
+	}
+
+	private static class TestLockstepRoom extends LockstepGameRoom
+	{
+		final BlockingQueue<ChannelBuffer> bundles = new LinkedBlockingQueue<ChannelBuffer>();
+
+		TestLockstepRoom(LockstepGameRoomBuilder builder)
+		{
+			super(builder);
+		}
+
+		@Override
+		public void onLogin(PlayerSession playerSession)
+		{
+			playerSession.addHandler(new DefaultSessionEventHandler(
+					playerSession)
+			{
+				@SuppressWarnings("unchecked")
+				@Override
+				public void onEvent(Event event)
+				{
+					if (event.getType() == Events.NETWORK_MESSAGE)
+					{
+						bundles.add(((MessageBuffer<ChannelBuffer>) event
+								.getSource()).getNativeBuffer().duplicate());
+					}
+				}
+			});
+		}
+	}
+}
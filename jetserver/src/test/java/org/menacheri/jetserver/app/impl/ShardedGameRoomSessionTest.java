@@ -0,0 +1,182 @@
+package org.menacheri.jetserver.app.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.menacheri.jetserver.app.PlayerSession;
+import org.menacheri.jetserver.app.impl.ShardedGameRoomSession.Shard;
+import org.menacheri.jetserver.app.impl.ShardedGameRoomSession.ShardedGameRoomSessionBuilder;
+import org.menacheri.jetserver.concurrent.OverrunMonitor;
+import org.menacheri.jetserver.concurrent.OverrunMonitor.OverrunPolicy;
+import org.menacheri.jetserver.event.Event;
+import org.menacheri.jetserver.event.EventHandler;
+import org.menacheri.jetserver.event.Events;
+import org.menacheri.jetserver.event.impl.JetlangEventDispatcher;
+import org.menacheri.jetserver.protocols.impl.DummyProtocol;
+import org.menacheri.jetserver.util.SessionHandlerLatchCounter;
+
+public class ShardedGameRoomSessionTest
+{
+	private static final int NUM_OF_SHARDS = 3;
+	private static final int NUM_OF_SESSIONS = 9;
+
+	private AtomicLong counter;
+	private CountDownLatch latch;
+	private ShardedGameRoomSession gameRoom;
+	private List<PlayerSession> sessions;
+
+	@Before
+	public void setUp()
+	{
+		counter = new AtomicLong(0);
+		latch = new CountDownLatch(NUM_OF_SESSIONS);
+		ShardedGameRoomSessionBuilder builder = new ShardedGameRoomSessionBuilder();
+		builder.numOfShards(NUM_OF_SHARDS).gameRoomName("Sharded_ROOM")
+				.protocol(new DummyProtocol());
+		gameRoom = new ShardedGameRoomSession(builder)
+		{
+			@Override
+			public void onLogin(PlayerSession playerSession)
+			{
+				playerSession.addHandler(new SessionHandlerLatchCounter(
+						playerSession, counter, latch));
+			}
+		};
+		sessions = new ArrayList<PlayerSession>();
+		for (int i = 0; i < NUM_OF_SESSIONS; i++)
+		{
+			PlayerSession playerSession = gameRoom.createPlayerSession(null);
+			gameRoom.onLogin(playerSession);
+			gameRoom.connectSession(playerSession);
+			sessions.add(playerSession);
+		}
+	}
+
+	@Test
+	public void sessionsAreSpreadAcrossShards()
+	{
+		for (Shard shard : gameRoom.getShards())
+		{
+			assertEquals(NUM_OF_SESSIONS / NUM_OF_SHARDS, shard.getSessions()
+					.size());
+		}
+		for (PlayerSession session : sessions)
+		{
+			assertNotNull(gameRoom.getShard(session));
+		}
+		assertEquals(NUM_OF_SESSIONS, gameRoom.getSessions().size());
+	}
+
+	@Test
+	public void broadcastReachesAllShards() throws InterruptedException
+	{
+		gameRoom.sendBroadcast(Events.networkEvent("hello"));
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(NUM_OF_SESSIONS, counter.get());
+	}
+
+	@Test
+	public void crossShardBusReachesEveryShard() throws InterruptedException
+	{
+		final CountDownLatch busLatch = new CountDownLatch(NUM_OF_SHARDS);
+		gameRoom.addShardHandler(new EventHandler()
+		{
+			@Override
+			public void onEvent(Event event)
+			{
+				busLatch.countDown();
+			}
+
+			@Override
+			public int getEventType()
+			{
+				return Events.SESSION_MESSAGE;
+			}
+		});
+		gameRoom.publishToShards(Events.event(null, Events.SESSION_MESSAGE));
+		assertTrue(busLatch.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void disconnectRemovesSessionFromShard()
+	{
+		PlayerSession playerSession = sessions.get(0);
+		Shard shard = gameRoom.getShard(playerSession);
+		assertTrue(gameRoom.disconnectSession(playerSession));
+		assertEquals(NUM_OF_SESSIONS / NUM_OF_SHARDS - 1, shard.getSessions()
+				.size());
+		assertEquals(NUM_OF_SESSIONS - 1, gameRoom.getSessions().size());
+	}
+
+	@Test
+	public void sessionJoinsShardOnlyOnConnect()
+	{
+		PlayerSession playerSession = gameRoom.createPlayerSession(null);
+		assertNull(gameRoom.getShard(playerSession));
+		for (Shard shard : gameRoom.getShards())
+		{
+			assertEquals(NUM_OF_SESSIONS / NUM_OF_SHARDS, shard.getSessions()
+					.size());
+		}
+		gameRoom.onLogin(playerSession);
+		assertTrue(gameRoom.connectSession(playerSession));
+		assertNotNull(gameRoom.getShard(playerSession));
+		assertTrue(gameRoom.getShard(playerSession).getSessions()
+				.contains(playerSession));
+	}
+
+	@Test
+	public void disconnectedSessionFreesItsPlaceInShard()
+	{
+		PlayerSession playerSession = sessions.get(0);
+		Shard shard = gameRoom.getShard(playerSession);
+		assertTrue(gameRoom.disconnectSession(playerSession));
+		assertNull(gameRoom.getShard(playerSession));
+		PlayerSession newSession = gameRoom.createPlayerSession(null);
+		gameRoom.onLogin(newSession);
+		assertTrue(gameRoom.connectSession(newSession));
+		assertSame(shard, gameRoom.getShard(newSession));
+	}
+
+	@Test
+	public void shardAndSessionDispatchersAreMonitored()
+	{
+		ShardedGameRoomSessionBuilder builder = new ShardedGameRoomSessionBuilder();
+		builder.numOfShards(NUM_OF_SHARDS).tickBudget(20, OverrunPolicy.LOG)
+				.gameRoomName("Monitored_ROOM").protocol(new DummyProtocol());
+		ShardedGameRoomSession monitoredRoom = new ShardedGameRoomSession(
+				builder)
+		{
+			@Override
+			public void onLogin(PlayerSession playerSession)
+			{
+			}
+		};
+		OverrunMonitor monitor = monitoredRoom.getExtension(
+				TickBudgetExtension.class).getOverrunMonitor();
+		assertNotNull(monitor);
+		assertSame(monitor, ((JetlangEventDispatcher) monitoredRoom
+				.getEventDispatcher()).getOverrunMonitor());
+		for (Shard shard : monitoredRoom.getShards())
+		{
+			assertSame(monitor, ((JetlangEventDispatcher) shard
+					.getEventDispatcher()).getOverrunMonitor());
+		}
+		PlayerSession playerSession = monitoredRoom.createPlayerSession(null);
+		monitoredRoom.connectSession(playerSession);
+		assertSame(monitor, ((JetlangEventDispatcher) playerSession
+				.getEventDispatcher()).getOverrunMonitor());
+		monitoredRoom.close();
+	}
+}
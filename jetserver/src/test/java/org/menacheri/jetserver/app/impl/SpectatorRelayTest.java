@@ -0,0 +1,141 @@
+package org.menacheri.jetserver.app.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.junit.After;
+import org.junit.Test;
+import org.menacheri.jetserver.app.PlayerSession;
+import org.menacheri.jetserver.app.impl.GameRoomSession.GameRoomSessionBuilder;
+import org.menacheri.jetserver.communication.DeliveryGuaranty;
+import org.menacheri.jetserver.communication.DeliveryGuaranty.DeliveryGuarantyOptions;
+import org.menacheri.jetserver.communication.MessageBuffer;
+import org.menacheri.jetserver.communication.MessageSender.Reliable;
+import org.menacheri.jetserver.communication.NettyMessageBuffer;
+import org.menacheri.jetserver.event.Event;
+import org.menacheri.jetserver.event.Events;
+import org.menacheri.jetserver.protocols.impl.DummyProtocol;
+import org.menacheri.jetserver.util.TestGameRoom;
+
+public class SpectatorRelayTest
+{
+	private GameRoomSession playerRoom;
+	private SpectatorRoom spectatorRoom;
+
+	@After
+	public void tearDown()
+	{
+		spectatorRoom.close();
+		playerRoom.close();
+	}
+
+	@Test
+	public void broadcastsAreBatchedToSpectators() throws Exception
+	{
+		setUp(0);
+		CapturingSender sender = addSpectator();
+		PlayerSession secondSpectator = spectatorRoom.createPlayerSession(null);
+		CapturingSender secondSender = new CapturingSender();
+		secondSpectator.setTcpSender(secondSender);
+		spectatorRoom.onLogin(secondSpectator);
+		spectatorRoom.connectSession(secondSpectator);
+
+		playerRoom.sendBroadcast(Events.networkEvent(new NettyMessageBuffer()
+				.writeInt(7)));
+		playerRoom.sendBroadcast(Events.networkEvent(new NettyMessageBuffer()
+				.writeInt(8)));
+		int received = 0;
+		while (received < 2)
+		{
+			ChannelBuffer batch = nextBatch(sender);
+			int count = batch.readInt();
+			for (int i = 0; i < count; i++)
+			{
+				assertEquals(4, batch.readInt());
+				assertEquals(7 + received++, batch.readInt());
+			}
+		}
+		assertNotNull(secondSender.events.poll(5, TimeUnit.SECONDS));
+		assertEquals(2, spectatorRoom.getRelay().getSpectators().size());
+	}
+
+	@Test
+	public void spectatorsTrailByDelay() throws Exception
+	{
+		setUp(300);
+		CapturingSender sender = addSpectator();
+		long start = System.currentTimeMillis();
+		playerRoom.sendBroadcast(Events.networkEvent(new NettyMessageBuffer()
+				.writeInt(1)));
+		assertNull(sender.events.poll(150, TimeUnit.MILLISECONDS));
+		nextBatch(sender);
+		assertTrue(System.currentTimeMillis() - start >= 300);
+	}
+
+	private void setUp(long delay)
+	{
+		GameRoomSessionBuilder builder = new GameRoomSessionBuilder();
+		builder.gameRoomName("Players").protocol(new DummyProtocol());
+		playerRoom = new TestGameRoom(builder, new AtomicLong(),
+				new CountDownLatch(1));
+		SpectatorRelay relay = new SpectatorRelay(20, delay, 2);
+		relay.attach(playerRoom);
+		GameRoomSessionBuilder spectatorBuilder = new GameRoomSessionBuilder();
+		spectatorBuilder.gameRoomName("Spectators").protocol(
+				new DummyProtocol());
+		spectatorRoom = new SpectatorRoom(spectatorBuilder, relay);
+	}
+
+	private CapturingSender addSpectator()
+	{
+		PlayerSession spectator = spectatorRoom.createPlayerSession(null);
+		CapturingSender sender = new CapturingSender();
+		spectator.setTcpSender(sender);
+		spectatorRoom.onLogin(spectator);
+		spectatorRoom.connectSession(spectator);
+		return sender;
+	}
+
+	@SuppressWarnings("unchecked")
+	private ChannelBuffer nextBatch(CapturingSender sender)
+			throws InterruptedException
+	{
+		Event event = sender.events.poll(5, TimeUnit.SECONDS);
+		assertNotNull(event);
+		assertEquals(Events.NETWORK_MESSAGE, event.getType());
+		return ((MessageBuffer<ChannelBuffer>) event.getSource())
+				.getNativeBuffer().duplicate();
+	}
+
+	private static class CapturingSender implements Reliable
+	{
+		final BlockingQueue<Event> events = new LinkedBlockingQueue<Event>();
+
+		@Override
+		public Object sendMessage(Object message)
+		{
+			events.add((Event) message);
+			return null;
+		}
+
+		@Override
+		public DeliveryGuaranty getDeliveryGuaranty()
+		{
+			return DeliveryGuarantyOptions.RELIABLE;
+		}
+
+		@Override
+		public void close()
+		{
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package org.menacheri.jetserver.app.state;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.menacheri.jetserver.app.state.EntityStore.FloatColumn;
+import org.menacheri.jetserver.app.state.EntityStore.IntColumn;
+import org.menacheri.jetserver.app.state.EntityStore.LongColumn;
+
+public class EntityStoreTest
+{
+	private static final float DELTA = 0.0001f;
+
+	@Test
+	public void heapStoreSwapRemoves()
+	{
+		verifySwapRemove(new EntityStore(2, false));
+	}
+
+	@Test
+	public void directStoreSwapRemoves()
+	{
+		verifySwapRemove(new EntityStore(2, true));
+	}
+
+	@Test
+	public void idsAreReused()
+	{
+		EntityStore store = new EntityStore(4);
+		int first = store.create();
+		store.create();
+		assertTrue(store.remove(first));
+		assertFalse(store.remove(first));
+		assertEquals(first, store.create());
+		assertEquals(2, store.size());
+	}
+
+	private void verifySwapRemove(EntityStore store)
+	{
+		IntColumn health = store.addIntColumn("health");
+		FloatColumn x = store.addFloatColumn("x");
+		LongColumn lastHit = store.addLongColumn("lastHit");
+		// Creating more entities than the initial capacity forces a resize.
+		int[] ids = new int[5];
+		for (int i = 0; i < ids.length; i++)
+		{
+			ids[i] = store.create();
+			int index = store.indexOf(ids[i]);
+			health.set(index, i * 10);
+			x.set(index, i * 1.5f);
+			lastHit.set(index, i * 100L);
+		}
+		assertEquals(5, store.size());
+		assertEquals(40, health.get(store.indexOf(ids[4])));
+
+		assertTrue(store.remove(ids[1]));
+		assertEquals(4, store.size());
+		assertFalse(store.contains(ids[1]));
+		// The last entity moved into the hole.
+		int movedIndex = store.indexOf(ids[4]);
+		assertEquals(1, movedIndex);
+		assertEquals(ids[4], store.idAt(movedIndex));
+		assertEquals(40, health.get(movedIndex));
+		assertEquals(6f, x.get(movedIndex), DELTA);
+		assertEquals(400L, lastHit.get(movedIndex));
+		assertEquals(20, health.get(store.indexOf(ids[2])));
+	}
+}
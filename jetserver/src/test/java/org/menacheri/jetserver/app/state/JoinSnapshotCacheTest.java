@@ -0,0 +1,102 @@
+package org.menacheri.jetserver.app.state;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ReadOnlyBufferException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Before;
+import org.junit.Test;
+import org.menacheri.jetserver.app.PlayerSession;
+import org.menacheri.jetserver.app.impl.GameRoomSession;
+import org.menacheri.jetserver.app.impl.GameRoomSession.GameRoomSessionBuilder;
+import org.menacheri.jetserver.app.state.JoinSnapshotCache.SnapshotEncoder;
+import org.menacheri.jetserver.protocols.impl.DummyProtocol;
+import org.menacheri.jetserver.util.TestGameRoom;
+
+public class JoinSnapshotCacheTest
+{
+	private int state;
+	private JoinSnapshotCache cache;
+
+	@Before
+	public void setUp()
+	{
+		state = 1;
+		cache = new JoinSnapshotCache(new SnapshotEncoder()
+		{
+			@Override
+			public ChannelBuffer encode()
+			{
+				ChannelBuffer buffer = ChannelBuffers.buffer(4);
+				buffer.writeInt(state);
+				return buffer;
+			}
+		});
+	}
+
+	@Test
+	public void snapshotIsEncodedOncePerVersion() throws Exception
+	{
+		ChannelBuffer first = cache.get();
+		ChannelBuffer second = cache.get();
+		assertEquals(1, first.readInt());
+		// Duplicates have independent indexes.
+		assertEquals(4, second.readableBytes());
+		assertEquals(1, second.readInt());
+		assertEquals(1, cache.getEncodeCount());
+		assertEquals(1, cache.getHitCount());
+
+		state = 2;
+		assertEquals(1, cache.get().readInt());
+		cache.invalidate();
+		assertEquals(2, cache.get().readInt());
+		assertEquals(2, cache.getEncodeCount());
+
+		state = 3;
+		assertEquals(3, cache.get(42).readInt());
+		assertEquals(3, cache.get(42).readInt());
+		assertEquals(3, cache.getEncodeCount());
+	}
+
+	@Test
+	public void snapshotIsReadOnly() throws Exception
+	{
+		try
+		{
+			cache.get().setInt(0, 5);
+			fail("Shared snapshot should not be writable");
+		}
+		catch (ReadOnlyBufferException e)
+		{
+			// expected
+		}
+		assertEquals(1, cache.get().readInt());
+	}
+
+	@Test
+	public void joiningSessionsShareSnapshot() throws Exception
+	{
+		CountDownLatch latch = new CountDownLatch(2);
+		GameRoomSessionBuilder builder = new GameRoomSessionBuilder();
+		builder.gameRoomName("Snapshot_Room").protocol(new DummyProtocol())
+				.joinSnapshotCache(cache);
+		GameRoomSession gameRoom = new TestGameRoom(builder, new AtomicLong(),
+				latch);
+		for (int i = 0; i < 2; i++)
+		{
+			PlayerSession playerSession = gameRoom.createPlayerSession(null);
+			gameRoom.onLogin(playerSession);
+			gameRoom.connectSession(playerSession);
+		}
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(1, cache.getEncodeCount());
+		gameRoom.close();
+	}
+}
@@ -0,0 +1,163 @@
+package org.menacheri.jetserver.app.state;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.menacheri.jetserver.app.PlayerSession;
+import org.menacheri.jetserver.app.impl.GameRoomSession;
+import org.menacheri.jetserver.app.impl.GameRoomSession.GameRoomSessionBuilder;
+import org.menacheri.jetserver.app.impl.JournalExtension;
+import org.menacheri.jetserver.event.Events;
+import org.menacheri.jetserver.protocols.impl.DummyProtocol;
+import org.menacheri.jetserver.util.AppendOnlyLog;
+import org.menacheri.jetserver.util.TestGameRoom;
+
+public class RoomJournalTest
+{
+	private File file;
+
+	@Before
+	public void setUp()
+	{
+		file = new File(System.getProperty("java.io.tmpdir"), "journal-test-"
+				+ System.nanoTime() + ".log");
+	}
+
+	@After
+	public void tearDown()
+	{
+		file.delete();
+	}
+
+	@Test
+	public void recordsAreReplayedInOrder() throws Exception
+	{
+		RoomJournal journal = new RoomJournal(new AppendOnlyLog(file, 64,
+				false), null);
+		for (int i = 0; i < 20; i++)
+		{
+			journal.journal(Events.event("event" + i, Events.NETWORK_MESSAGE),
+					null);
+		}
+		journal.close();
+
+		List<Record> records = replay(0);
+		assertEquals(20, records.size());
+		for (int i = 0; i < 20; i++)
+		{
+			assertEquals("event" + i, records.get(i).payload);
+			assertEquals(Events.NETWORK_MESSAGE, records.get(i).type);
+			assertNull(records.get(i).sessionId);
+		}
+	}
+
+	@Test
+	public void truncatedRecordIsIgnored() throws Exception
+	{
+		RoomJournal journal = new RoomJournal(file);
+		journal.journal(Events.event("complete", Events.NETWORK_MESSAGE), null);
+		journal.journal(Events.event("truncated", Events.NETWORK_MESSAGE),
+				null);
+		journal.close();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(raf.length() - 3);
+		raf.close();
+
+		List<Record> records = replay(0);
+		assertEquals(1, records.size());
+		assertEquals("complete", records.get(0).payload);
+	}
+
+	@Test
+	public void gameRoomJournalsInboundEventsOnly() throws Exception
+	{
+		CountDownLatch latch = new CountDownLatch(1);
+		GameRoomSessionBuilder builder = new GameRoomSessionBuilder();
+		builder.gameRoomName("Journal_Room").protocol(new DummyProtocol())
+				.journal(new RoomJournal(file));
+		GameRoomSession gameRoom = new TestGameRoom(builder, new AtomicLong(),
+				latch);
+		PlayerSession playerSession = gameRoom.createPlayerSession(null);
+		gameRoom.onLogin(playerSession);
+		gameRoom.connectSession(playerSession);
+
+		playerSession.onEvent(Events.dataInEvent("hello"));
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		// Queued on the room after the broadcast of "hello".
+		gameRoom.onEvent(Events.event("hello", Events.CHANGE_ATTRIBUTE));
+
+		List<Record> records = null;
+		for (int i = 0; i < 100; i++)
+		{
+			gameRoom.getExtension(JournalExtension.class).getJournal().flush();
+			records = replay(0);
+			if (records.size() >= 2)
+			{
+				break;
+			}
+			Thread.sleep(10);
+		}
+		assertEquals(2, records.size());
+		int sessionMessages = 0;
+		for (Record record : records)
+		{
+			assertEquals("hello", record.payload);
+			if (record.type == Events.SESSION_MESSAGE)
+			{
+				sessionMessages++;
+				assertEquals(playerSession.getId().toString(),
+						record.sessionId);
+			}
+			else
+			{
+				// The broadcast is not journaled, only the room event.
+				assertEquals(Events.CHANGE_ATTRIBUTE, record.type);
+				assertNull(record.sessionId);
+			}
+		}
+		assertEquals(1, sessionMessages);
+		gameRoom.close();
+	}
+
+	private List<Record> replay(long fromTimestamp) throws Exception
+	{
+		final List<Record> records = new ArrayList<Record>();
+		RoomJournal.replay(file, new RoomJournal.ReplayListener()
+		{
+			@Override
+			public void onRecord(int eventType, long timestamp,
+					String sessionId, byte[] payload)
+			{
+				records.add(new Record(eventType, sessionId, new String(
+						payload)));
+			}
+		}, fromTimestamp);
+		return records;
+	}
+
+	private static class Record
+	{
+		final int type;
+		final String sessionId;
+		final String payload;
+
+		Record(int type, String sessionId, String payload)
+		{
+			this.type = type;
+			this.sessionId = sessionId;
+			this.payload = payload;
+		}
+	}
+}
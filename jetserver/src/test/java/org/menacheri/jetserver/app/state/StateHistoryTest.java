@@ -0,0 +1,62 @@
+package org.menacheri.jetserver.app.state;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class StateHistoryTest
+{
+	private static final float DELTA = 0.0001f;
+	private StateHistory history;
+
+	@Before
+	public void setUp()
+	{
+		history = new StateHistory(4, 2, 2);
+		// tick n at time n*100, entity 0 at (n, 0), entity 1 at (0, 10n)
+		for (int tick = 0; tick < 6; tick++)
+		{
+			history.record(tick, tick * 100, new float[] { tick, 0, 0,
+					tick * 10 }, 2);
+		}
+	}
+
+	@Test
+	public void oldTicksAreOverwritten()
+	{
+		assertEquals(4, history.size());
+		assertEquals(200, history.getOldestTimestamp());
+		assertEquals(500, history.getNewestTimestamp());
+		assertEquals(-1, history.rewindToTick(1, new float[4]));
+	}
+
+	@Test
+	public void rewindInterpolatesBetweenTicks()
+	{
+		float[] dest = new float[4];
+		assertEquals(2, history.rewind(350, dest));
+		assertEquals(3.5f, dest[0], DELTA);
+		assertEquals(35f, dest[3], DELTA);
+	}
+
+	@Test
+	public void rewindClampsToStoredRange()
+	{
+		float[] dest = new float[4];
+		history.rewind(0, dest);
+		assertEquals(2f, dest[0], DELTA);
+		history.rewind(10000, dest);
+		assertEquals(5f, dest[0], DELTA);
+	}
+
+	@Test
+	public void restoreReturnsLatestTick()
+	{
+		float[] dest = new float[4];
+		history.rewind(250, dest);
+		assertEquals(2, history.restore(dest));
+		assertEquals(5f, dest[0], DELTA);
+		assertEquals(50f, dest[3], DELTA);
+	}
+}
@@ -0,0 +1,136 @@
+package org.menacheri.jetserver.communication;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.menacheri.jetserver.app.impl.DefaultSession;
+import org.menacheri.jetserver.app.impl.DefaultSession.SessionBuilder;
+import org.menacheri.jetserver.event.Event;
+import org.menacheri.jetserver.event.Events;
+import org.menacheri.jetserver.event.impl.PriorityNetworkEvent;
+
+public class BandwidthSchedulerTest
+{
+	private List<Event> sent;
+	private BandwidthScheduler scheduler;
+
+	@Before
+	public void setUp()
+	{
+		sent = new ArrayList<Event>();
+		DefaultSession session = new DefaultSession(new SessionBuilder())
+		{
+			@Override
+			public void onEvent(Event event)
+			{
+				sent.add(event);
+			}
+		};
+		// 100 bytes per 100ms window.
+		scheduler = new BandwidthScheduler(session, 1000, 100);
+	}
+
+	@Test
+	public void sendsHighestPriorityWithinBudget()
+	{
+		scheduler.offer(Events.priorityNetworkEvent(new byte[60], "low", 1));
+		scheduler.offer(Events.priorityNetworkEvent(new byte[60], "high", 5));
+		scheduler.offer(Events.priorityNetworkEvent(new byte[30], "small", 2));
+		assertEquals(2, scheduler.flush());
+		assertEquals("high", key(0));
+		assertEquals("small", key(1));
+		assertEquals(1, scheduler.getPendingCount());
+		assertEquals(90, scheduler.getSentBytes());
+	}
+
+	@Test
+	public void starvedUpdatesAccumulatePriority()
+	{
+		scheduler.offer(Events.priorityNetworkEvent(new byte[80], "low", 1));
+		for (int window = 0; window < 3; window++)
+		{
+			scheduler.offer(Events.priorityNetworkEvent(new byte[80], "high",
+					2.5f));
+			scheduler.flush();
+		}
+		// low has accumulated 3 by the third window versus 2.5 for the
+		// newly offered high.
+		assertEquals("high", key(0));
+		assertEquals("high", key(1));
+		assertEquals("low", key(2));
+	}
+
+	@Test
+	public void objectPayloadsNeedASize()
+	{
+		// For e.g. the source of a JSon room.
+		scheduler.offer(Events.priorityNetworkEvent("unsized", "a", 1));
+		assertEquals(0, scheduler.getPendingCount());
+		assertEquals(1, scheduler.getRejectedUpdates());
+
+		scheduler.offer(Events.priorityNetworkEvent("first", "b", 2, 60));
+		scheduler.offer(Events.priorityNetworkEvent("second", "c", 1, 60));
+		assertEquals(1, scheduler.flush());
+		assertEquals("b", key(0));
+		assertEquals(60, scheduler.getSentBytes());
+	}
+
+	@Test
+	public void newerUpdateReplacesPendingOne()
+	{
+		byte[] latest = new byte[10];
+		scheduler.offer(Events.priorityNetworkEvent(new byte[10], "entity", 1));
+		scheduler.offer(Events.priorityNetworkEvent(latest, "entity", 1));
+		assertEquals(1, scheduler.getPendingCount());
+		assertEquals(1, scheduler.getReplacedUpdates());
+		scheduler.flush();
+		assertEquals(1, sent.size());
+		assertEquals(latest, sent.get(0).getSource());
+	}
+
+	@Test
+	public void oversizedUpdateIsSentOnOverdraft()
+	{
+		scheduler.offer(Events.priorityNetworkEvent(new byte[500], "big", 1));
+		assertEquals(1, scheduler.flush());
+		scheduler.offer(Events.priorityNetworkEvent(new byte[10], "next", 1));
+		// The overdraft of 400 bytes takes four windows to pay back.
+		for (int window = 0; window < 4; window++)
+		{
+			assertEquals(0, scheduler.flush());
+		}
+		assertEquals(1, scheduler.flush());
+	}
+
+	@Test
+	public void unkeyedBacklogDropsLowestPriority()
+	{
+		scheduler = new BandwidthScheduler(scheduler.getSession(), 1000, 100,
+				2);
+		scheduler.offer(Events.priorityNetworkEvent(new byte[10], null, 1));
+		scheduler.offer(Events.priorityNetworkEvent(new byte[10], null, 3));
+		// Replaces the first one.
+		scheduler.offer(Events.priorityNetworkEvent(new byte[10], null, 2));
+		// Lower than all waiting, hence dropped itself.
+		scheduler.offer(Events.priorityNetworkEvent(new byte[10], null, 0.5f));
+		// Keyed updates do not count against the cap.
+		scheduler.offer(Events.priorityNetworkEvent(new byte[10], "keyed", 1));
+		assertEquals(3, scheduler.getPendingCount());
+		assertEquals(2, scheduler.getDroppedUpdates());
+		assertEquals(3, scheduler.flush());
+		assertEquals(3f, ((PriorityNetworkEvent) sent.get(0)).getPriority(),
+				0f);
+		assertEquals(2f, ((PriorityNetworkEvent) sent.get(1)).getPriority(),
+				0f);
+		assertEquals("keyed", key(2));
+	}
+
+	private Object key(int index)
+	{
+		return ((PriorityNetworkEvent) sent.get(index)).getKey();
+	}
+}
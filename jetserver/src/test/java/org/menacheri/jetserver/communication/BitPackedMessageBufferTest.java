@@ -0,0 +1,74 @@
+package org.menacheri.jetserver.communication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.junit.Test;
+
+public class BitPackedMessageBufferTest
+{
+	@Test
+	public void bitsArePackedWithoutPadding()
+	{
+		BitPackedMessageBuffer buffer = new BitPackedMessageBuffer();
+		buffer.writeBits(5, 3);
+		buffer.writeBoolean(true);
+		buffer.writeBits(-3, 7);
+		buffer.writeBits(0xABCDEF12, 32);
+		buffer.writeInt(-1);
+		// 3 + 1 + 7 + 32 + 32 bits round up to 10 bytes.
+		ChannelBuffer packed = buffer.getNativeBuffer();
+		assertEquals(10, packed.readableBytes());
+
+		BitPackedMessageBuffer reader = new BitPackedMessageBuffer(packed);
+		assertEquals(5, reader.readBits(3));
+		assertTrue(reader.readBoolean());
+		assertEquals(-3, reader.readSignedBits(7));
+		assertEquals(0xABCDEF12, reader.readBits(32));
+		assertEquals(-1, reader.readInt());
+		assertEquals(5, reader.readableBits());
+		assertEquals(0, reader.readBits(5));
+		assertFalse(reader.isReadable());
+	}
+
+	@Test
+	public void byteValuesRoundTripAtAnyBitOffset()
+	{
+		BitPackedMessageBuffer buffer = new BitPackedMessageBuffer();
+		buffer.writeBits(1, 1);
+		buffer.writeByte((byte) -7);
+		buffer.writeShort(-300);
+		buffer.writeMedium(-70000);
+		buffer.writeLong(Long.MIN_VALUE + 11);
+		buffer.writeFloat(1.5f);
+		buffer.writeDouble(-2.25);
+		buffer.writeString("bits");
+		buffer.writeBytes(new byte[] { 1, 2, 3 });
+
+		BitPackedMessageBuffer reader = new BitPackedMessageBuffer(
+				buffer.getNativeBuffer());
+		assertEquals(1, reader.readBits(1));
+		assertEquals(-7, reader.readByte());
+		assertEquals(-300, reader.readShort());
+		assertEquals(-70000, reader.readMedium());
+		assertEquals(Long.MIN_VALUE + 11, reader.readLong());
+		assertEquals(1.5f, reader.readFloat(), 0);
+		assertEquals(-2.25, reader.readDouble(), 0);
+		assertEquals("bits", reader.readString());
+		assertEquals(3, reader.readBytes(3)[2]);
+		assertEquals(0, reader.readableBytes());
+	}
+
+	@Test
+	public void alignedStringsMatchNettyMessageBuffer()
+	{
+		BitPackedMessageBuffer buffer = new BitPackedMessageBuffer();
+		buffer.writeStrings("user", "pass");
+		NettyMessageBuffer reader = new NettyMessageBuffer(
+				buffer.getNativeBuffer());
+		assertEquals("user", reader.readString());
+		assertEquals("pass", reader.readString());
+	}
+}
@@ -0,0 +1,123 @@
+package org.menacheri.jetserver.communication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.junit.Test;
+import org.menacheri.jetserver.communication.BufferPool.PooledBuffer;
+
+public class BufferPoolTest
+{
+	@Test
+	public void capacityIsRoundedUpToSizeClass()
+	{
+		assertEquals(0, BufferPool.sizeClass(0));
+		assertEquals(0, BufferPool.sizeClass(64));
+		assertEquals(1, BufferPool.sizeClass(65));
+		assertEquals(10, BufferPool.sizeClass(BufferPool.MAX_CAPACITY));
+		assertEquals(-1, BufferPool.sizeClass(BufferPool.MAX_CAPACITY + 1));
+		BufferPool pool = new BufferPool(false, 4);
+		PooledBuffer buffer = pool.acquire(100);
+		assertEquals(128, buffer.getBuffer().capacity());
+		assertEquals(0, buffer.getBuffer().writerIndex());
+		buffer.release();
+	}
+
+	@Test
+	public void releasedBufferIsReused()
+	{
+		BufferPool pool = new BufferPool(true, 4);
+		PooledBuffer first = pool.acquire(10);
+		assertTrue(first.getBuffer().isDirect());
+		first.getBuffer().writeInt(42);
+		assertEquals(1, pool.getOutstandingCount());
+		assertTrue(first.release());
+		assertEquals(0, pool.getOutstandingCount());
+
+		PooledBuffer second = pool.acquire(20);
+		assertEquals(1, pool.getReusedCount());
+		assertEquals(0, second.getBuffer().readableBytes());
+		second.release();
+
+		PooledBuffer large = pool.acquire(BufferPool.MAX_CAPACITY + 1);
+		large.release();
+		pool.acquire(BufferPool.MAX_CAPACITY + 1).release();
+		assertEquals(1, pool.getReusedCount());
+		assertEquals(4, pool.getAcquiredCount());
+	}
+
+	@Test
+	public void lastReleaseReturnsBuffer()
+	{
+		BufferPool pool = new BufferPool(false, 4);
+		PooledBuffer buffer = pool.acquire(10);
+		assertSame(buffer, buffer.retain());
+		assertEquals(2, buffer.getReferenceCount());
+		assertFalse(buffer.release());
+		assertEquals(1, pool.getOutstandingCount());
+		assertTrue(buffer.release());
+		assertEquals(0, pool.getOutstandingCount());
+		try
+		{
+			buffer.release();
+			fail("Released buffer should not be released again");
+		}
+		catch (IllegalStateException e)
+		{
+			assertEquals(0, buffer.getReferenceCount());
+		}
+		try
+		{
+			buffer.retain();
+			fail("Released buffer should not be retained");
+		}
+		catch (IllegalStateException e)
+		{
+			// expected
+		}
+	}
+
+	@Test
+	public void writeCompletionReleasesBuffer() throws Exception
+	{
+		BufferPool pool = new BufferPool(false, 4);
+		PooledBuffer buffer = pool.acquire(10);
+		buffer.operationComplete(null);
+		assertEquals(0, buffer.getReferenceCount());
+		assertEquals(0, pool.getOutstandingCount());
+	}
+
+	@Test
+	public void unreleasedBufferIsReportedAsLeak() throws Exception
+	{
+		BufferPool pool = new BufferPool(false, 4);
+		pool.setLeakDetection(true);
+		pool.acquire(10).release();
+		pool.acquire(10);
+		for (int i = 0; i < 20 && 0 == pool.getLeakCount(); i++)
+		{
+			System.gc();
+			Thread.sleep(50);
+		}
+		assertEquals(1, pool.getLeakCount());
+		assertEquals(0, pool.getOutstandingCount());
+	}
+
+	@Test
+	public void pooledMessageBufferIsReleasedByCaller()
+	{
+		long outstanding = BufferPool.HEAP.getOutstandingCount();
+		NettyMessageBuffer messageBuffer = NettyMessageBuffer.pooled(16);
+		messageBuffer.writeInt(7);
+		ChannelBuffer nativeBuffer = messageBuffer.getNativeBuffer();
+		assertEquals(4, nativeBuffer.readableBytes());
+		assertEquals(outstanding + 1, BufferPool.HEAP.getOutstandingCount());
+		assertTrue(messageBuffer.release());
+		assertEquals(outstanding, BufferPool.HEAP.getOutstandingCount());
+		assertFalse(new NettyMessageBuffer().release());
+	}
+}
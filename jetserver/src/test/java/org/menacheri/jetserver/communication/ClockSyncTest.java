@@ -0,0 +1,102 @@
+package org.menacheri.jetserver.communication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.junit.Test;
+import org.menacheri.jetserver.app.GameRoom;
+import org.menacheri.jetserver.app.PlayerSession;
+import org.menacheri.jetserver.app.impl.GameRoomSession.GameRoomSessionBuilder;
+import org.menacheri.jetserver.event.Event;
+import org.menacheri.jetserver.event.Events;
+import org.menacheri.jetserver.handlers.netty.TimeSyncHandler;
+import org.menacheri.jetserver.protocols.impl.DummyProtocol;
+import org.menacheri.jetserver.util.TestGameRoom;
+
+public class ClockSyncTest
+{
+	@Test
+	public void offsetAndRoundTripFromSample()
+	{
+		ClockSync clockSync = new ClockSync();
+		assertFalse(clockSync.isSynchronized());
+		// Remote clock is 1000ms ahead, 20ms each way, 5ms processing.
+		assertEquals(40, clockSync.addSample(0, 1020, 1025, 45));
+		assertEquals(1000, clockSync.getOffset());
+		assertEquals(40, clockSync.getRoundTripTime());
+		assertEquals(1500, clockSync.toRemoteTime(500));
+		assertEquals(500, clockSync.toLocalTime(1500));
+	}
+
+	@Test
+	public void sampleWithLowestRoundTripWins()
+	{
+		ClockSync clockSync = new ClockSync(4);
+		clockSync.addSample(0, 1020, 1020, 40);
+		// Queued for 200ms on the way back, the offset looks 100ms smaller.
+		clockSync.addSample(100, 1120, 1120, 340);
+		assertEquals(1000, clockSync.getOffset());
+		assertEquals(40, clockSync.getRoundTripTime());
+		assertEquals(240, clockSync.getLastRoundTripTime());
+		// Older samples fall out of the window.
+		for (int i = 0; i < 4; i++)
+		{
+			clockSync.addSample(1000, 2030, 2030, 1060);
+		}
+		assertEquals(60, clockSync.getRoundTripTime());
+		assertEquals(1000, clockSync.getOffset());
+		assertEquals(4, clockSync.getSampleCount());
+	}
+
+	@Test
+	public void handlerRepliesAndSamplesEchoedRequest()
+	{
+		GameRoomSessionBuilder builder = new GameRoomSessionBuilder();
+		builder.gameRoomName("TimeSync").protocol(new DummyProtocol());
+		GameRoom gameRoom = new TestGameRoom(builder, new AtomicLong(),
+				new CountDownLatch(1));
+		PlayerSession playerSession = gameRoom.createPlayerSession(null);
+		DecoderEmbedder<Event> embedder = new DecoderEmbedder<Event>(
+				new TimeSyncHandler(playerSession));
+
+		long now = System.currentTimeMillis();
+		embedder.offer(request(now, 0, 0));
+		Event reply = embedder.poll();
+		assertEquals(Events.TIME_SYNC_RESPONSE, reply.getType());
+		NettyMessageBuffer buffer = (NettyMessageBuffer) reply.getSource();
+		assertEquals(now, buffer.readLong());
+		long receive = buffer.readLong();
+		long transmit = buffer.readLong();
+		assertTrue(transmit >= receive);
+		assertFalse(playerSession.getClockSync().isSynchronized());
+
+		// Client clock is 5s behind, it received the reply 10ms after it was
+		// sent and replied another 10ms later. The request arrives at once,
+		// so the asymmetry shows up as half of the 10ms.
+		embedder.offer(request(transmit - 5000 + 20, transmit, transmit - 5000
+				+ 10));
+		assertEquals(Events.TIME_SYNC_RESPONSE, embedder.poll().getType());
+		assertTrue(playerSession.getClockSync().isSynchronized());
+		long offset = playerSession.getClockSync().getOffset();
+		assertTrue("Offset was " + offset, offset <= -4975 && offset >= -4995);
+
+		Event message = Events.event(null, Events.SESSION_MESSAGE);
+		embedder.offer(message);
+		assertEquals(message, embedder.poll());
+	}
+
+	private static Event request(long transmit, long echoTransmit,
+			long echoReceive)
+	{
+		NettyMessageBuffer buffer = new NettyMessageBuffer();
+		buffer.writeLong(transmit);
+		buffer.writeLong(echoTransmit);
+		buffer.writeLong(echoReceive);
+		return Events.event(buffer, Events.TIME_SYNC_REQUEST);
+	}
+}
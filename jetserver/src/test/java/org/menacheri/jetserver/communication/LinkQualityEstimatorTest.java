@@ -0,0 +1,74 @@
+package org.menacheri.jetserver.communication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.junit.Test;
+import org.menacheri.jetserver.event.Events;
+
+public class LinkQualityEstimatorTest
+{
+	@Test
+	public void highRttLowersUpdateRate()
+	{
+		LinkQualityEstimator estimator = new LinkQualityEstimator(200, 50, 16,
+				4, 0);
+		assertEquals(1, estimator.getUpdateDivisor());
+		estimator.addRttSample(400);
+		assertEquals(2, estimator.getUpdateDivisor());
+		estimator.addRttSample(400);
+		estimator.addRttSample(400);
+		assertEquals(4, estimator.getUpdateDivisor());
+
+		int sent = 0;
+		for (int i = 0; i < 8; i++)
+		{
+			if (estimator.shouldSend())
+			{
+				sent++;
+			}
+		}
+		assertEquals(2, sent);
+		assertEquals(6, estimator.getSkippedUpdates());
+
+		for (int i = 0; i < 40; i++)
+		{
+			estimator.addRttSample(10);
+		}
+		assertEquals(1, estimator.getUpdateDivisor());
+		assertTrue(estimator.shouldSend());
+	}
+
+	@Test
+	public void pendingWritesLowerUpdateRate() throws Exception
+	{
+		LinkQualityEstimator estimator = new LinkQualityEstimator(200, 50, 4,
+				8, 0);
+		List<ChannelFutureListener> pending = new ArrayList<ChannelFutureListener>();
+		for (int i = 0; i < 5; i++)
+		{
+			pending.add(estimator.onWrite(Events.networkEvent(new byte[10])));
+		}
+		assertEquals(5, estimator.getOutstandingWrites());
+		// Writes are not completing, so each update degrades the link further.
+		assertFalse(estimator.shouldSend());
+		assertEquals(2, estimator.getUpdateDivisor());
+		assertFalse(estimator.shouldSend());
+		assertFalse(estimator.shouldSend());
+		assertEquals(8, estimator.getUpdateDivisor());
+
+		for (ChannelFutureListener listener : pending)
+		{
+			listener.operationComplete(null);
+		}
+		assertEquals(0, estimator.getOutstandingWrites());
+		assertEquals(5, estimator.getCompletedWrites());
+		assertEquals(2, estimator.getUpdateDivisor());
+		assertEquals(1, estimator.adapt(System.currentTimeMillis()));
+	}
+}
@@ -0,0 +1,117 @@
+package org.menacheri.jetserver.communication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.SimpleChannelDownstreamHandler;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.junit.Test;
+
+public class OutboundBundleTest
+{
+	@Test
+	public void membersAreFlushedOnceByOutermostBundle()
+	{
+		CountingMember first = new CountingMember();
+		CountingMember second = new CountingMember();
+		OutboundBundle.begin();
+		try
+		{
+			assertTrue(OutboundBundle.add(first));
+			OutboundBundle.begin();
+			try
+			{
+				assertTrue(OutboundBundle.add(first));
+				assertTrue(OutboundBundle.add(second));
+			}
+			finally
+			{
+				OutboundBundle.end();
+			}
+			assertEquals(0, first.flushes.get());
+			assertEquals(0, second.flushes.get());
+		}
+		finally
+		{
+			OutboundBundle.end();
+		}
+		assertEquals(1, first.flushes.get());
+		assertEquals(1, second.flushes.get());
+		assertFalse(OutboundBundle.isOpen());
+	}
+
+	@Test
+	public void addWithoutBundleIsRefused()
+	{
+		CountingMember member = new CountingMember();
+		assertFalse(OutboundBundle.add(member));
+		// An unbalanced end is ignored.
+		OutboundBundle.end();
+		assertFalse(OutboundBundle.isOpen());
+		assertEquals(0, member.flushes.get());
+	}
+
+	@Test
+	public void failingMemberDoesNotStopOthers()
+	{
+		CountingMember member = new CountingMember();
+		OutboundBundle.begin();
+		OutboundBundle.add(new OutboundBundle.Member()
+		{
+			@Override
+			public void flushBundle()
+			{
+				throw new IllegalStateException("Channel closed");
+			}
+		});
+		OutboundBundle.add(member);
+		OutboundBundle.end();
+		assertEquals(1, member.flushes.get());
+	}
+
+	@Test
+	public void bundlerHoldsBackOnlyWritesMadeInABundle()
+	{
+		EncoderEmbedder<Object> embedder = new EncoderEmbedder<Object>(
+				new SimpleChannelDownstreamHandler());
+		Channel channel = embedder.getPipeline().getChannel();
+		NettyTCPMessageSender sender = new NettyTCPMessageSender(channel, null);
+		// Installs the bundler.
+		sender.sendMessage("first");
+		assertEquals("first", embedder.poll());
+
+		// For e.g. a time sync reply written by a handler on the I/O thread.
+		channel.write("direct");
+		assertEquals("direct", embedder.poll());
+
+		OutboundBundle.begin();
+		try
+		{
+			sender.sendMessage("bundled");
+			channel.write("bundled direct");
+			assertNull(embedder.poll());
+		}
+		finally
+		{
+			OutboundBundle.end();
+		}
+		assertEquals("bundled", embedder.poll());
+		assertEquals("bundled direct", embedder.poll());
+	}
+
+	private static class CountingMember implements OutboundBundle.Member
+	{
+		final AtomicInteger flushes = new AtomicInteger();
+
+		@Override
+		public void flushBundle()
+		{
+			flushes.incrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package org.menacheri.jetserver.communication;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class QuantizerTest
+{
+	@Test
+	public void boundedFloatsAreAccurateToOneStep()
+	{
+		assertEquals(16, Quantizer.bitsRequired(0, 1000, 0.02f));
+		assertEquals(8, Quantizer.bitsRequired(0, 255));
+		assertEquals(0, Quantizer.quantize(-5, 0, 10, 8));
+		assertEquals(255, Quantizer.quantize(50, 0, 10, 8));
+		float step = 1000f / 65535;
+		for (float value = 0; value <= 1000; value += 33.3f)
+		{
+			int quantized = Quantizer.quantize(value, 0, 1000, 16);
+			assertEquals(value, Quantizer.dequantize(quantized, 0, 1000, 16),
+					step);
+		}
+	}
+
+	@Test
+	public void positionUpdateFitsInSixBytes()
+	{
+		BitPackedMessageBuffer buffer = new BitPackedMessageBuffer();
+		float[] position = { 12.5f, -400.25f, 999.9f };
+		Quantizer.writePosition(buffer, position, -1000, 1000, 16);
+		assertEquals(6, buffer.getNativeBuffer().readableBytes());
+		float[] read = Quantizer.readPosition(buffer, new float[3], -1000,
+				1000, 16);
+		for (int i = 0; i < 3; i++)
+		{
+			assertEquals(position[i], read[i], 2000f / 65535);
+		}
+	}
+
+	@Test
+	public void unitVectorsRoundTrip()
+	{
+		float[][] vectors = { { 0, 0, 1 }, { 0, 0, -1 }, { 1, 0, 0 },
+				{ 0.48f, -0.6f, -0.64f }, { -0.6f, 0.64f, 0.48f } };
+		for (float[] vector : vectors)
+		{
+			BitPackedMessageBuffer buffer = new BitPackedMessageBuffer();
+			Quantizer.writeUnitVector(buffer, vector, 12);
+			float[] read = Quantizer.readUnitVector(buffer, new float[3], 12);
+			for (int i = 0; i < 3; i++)
+			{
+				assertEquals(vector[i], read[i], 0.002);
+			}
+		}
+	}
+
+	@Test
+	public void quaternionsUseSmallestThree()
+	{
+		float[][] rotations = { { 0, 0, 0, 1 }, { 0, 0, 0, -1 },
+				{ 0.5f, -0.5f, 0.5f, 0.5f }, { 0.1f, 0.7f, -0.1f, -0.7f } };
+		for (float[] rotation : rotations)
+		{
+			BitPackedMessageBuffer buffer = new BitPackedMessageBuffer();
+			Quantizer.writeQuaternion(buffer, rotation, 9);
+			assertEquals(4, buffer.getNativeBuffer().readableBytes());
+			float[] read = Quantizer.readQuaternion(buffer, new float[4], 9);
+			// q and -q are the same rotation.
+			float dot = 0;
+			for (int i = 0; i < 4; i++)
+			{
+				dot += rotation[i] * read[i];
+			}
+			float length = 0;
+			for (float component : rotation)
+			{
+				length += component * component;
+			}
+			assertEquals(1, Math.abs(dot) / Math.sqrt(length), 0.005);
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package org.menacheri.jetserver.communication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SequencedInputQueueTest
+{
+	private SequencedInputQueue<String> queue;
+	private List<String> out;
+
+	@Before
+	public void setUp()
+	{
+		queue = new SequencedInputQueue<String>(8, 2, 1);
+		out = new ArrayList<String>();
+	}
+
+	@Test
+	public void inputsAreReorderedAndDeduplicated()
+	{
+		assertTrue(queue.offer(2, "b"));
+		assertTrue(queue.offer(1, "a"));
+		assertFalse(queue.offer(2, "b"));
+		assertEquals(2, queue.drain(out));
+		assertEquals("a", out.get(0));
+		assertEquals("b", out.get(1));
+		assertEquals(2, queue.getLastProcessedSequence());
+		assertFalse(queue.offer(1, "a"));
+		assertEquals(2, queue.getDuplicateCount());
+	}
+
+	@Test
+	public void burstIsSpreadOverTicks()
+	{
+		for (int i = 1; i <= 5; i++)
+		{
+			queue.offer(i, "" + i);
+		}
+		assertEquals(2, queue.drain(out));
+		assertEquals(2, queue.drain(out));
+		assertEquals(1, queue.drain(out));
+		assertEquals(5, queue.getLastProcessedSequence());
+	}
+
+	@Test
+	public void missingInputIsSkippedAfterWaiting()
+	{
+		queue.offer(1, "a");
+		queue.offer(3, "c");
+		// input 2 is missing, the queue waits for one tick.
+		assertEquals(1, queue.drain(out));
+		assertEquals(1, queue.getLastProcessedSequence());
+		assertEquals(1, queue.drain(out));
+		assertEquals("c", out.get(1));
+		assertEquals(1, queue.getSkippedCount());
+	}
+
+	@Test
+	public void inputTooFarAheadIsRejected()
+	{
+		assertFalse(queue.offer(100, "z"));
+		assertEquals(0, queue.drain(out));
+	}
+}
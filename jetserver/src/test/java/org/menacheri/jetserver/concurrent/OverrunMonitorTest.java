@@ -0,0 +1,100 @@
+package org.menacheri.jetserver.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.menacheri.jetserver.concurrent.OverrunMonitor.OverrunListener;
+import org.menacheri.jetserver.concurrent.OverrunMonitor.OverrunPolicy;
+
+public class OverrunMonitorTest
+{
+	private static final long BUDGET = TimeUnit.MILLISECONDS.toNanos(10);
+
+	@Test
+	public void logPolicyOnlyCounts()
+	{
+		OverrunMonitor monitor = new OverrunMonitor("room", 10,
+				TimeUnit.MILLISECONDS, OverrunPolicy.LOG, 2, 2);
+		monitor.record(BUDGET / 2);
+		monitor.record(BUDGET * 2);
+		monitor.record(BUDGET * 3);
+		assertEquals(3, monitor.getExecutions());
+		assertEquals(2, monitor.getOverruns());
+		assertEquals(1, monitor.getActions());
+		assertFalse(monitor.isDegraded());
+		Map<String, Long> statistics = monitor.getStatistics();
+		assertEquals(Long.valueOf(30000), statistics.get("maxMicros"));
+		assertEquals(Long.valueOf(30000), statistics.get("lastMicros"));
+		assertEquals(Long.valueOf(10000), statistics.get("budgetMicros"));
+	}
+
+	@Test
+	public void degradesAfterConsecutiveOverrunsAndRecovers()
+	{
+		OverrunMonitor monitor = new OverrunMonitor("room", 10,
+				TimeUnit.MILLISECONDS, OverrunPolicy.DEGRADE, 3, 2);
+		monitor.record(BUDGET * 2);
+		monitor.record(BUDGET * 2);
+		// A run within budget breaks the streak.
+		monitor.record(BUDGET);
+		monitor.record(BUDGET * 2);
+		monitor.record(BUDGET * 2);
+		assertFalse(monitor.isDegraded());
+		monitor.record(BUDGET * 2);
+		assertTrue(monitor.isDegraded());
+		monitor.record(BUDGET / 2);
+		assertTrue(monitor.isDegraded());
+		monitor.record(BUDGET / 2);
+		assertFalse(monitor.isDegraded());
+	}
+
+	@Test
+	public void relocateNotifiesListenerOncePerStreak()
+	{
+		final AtomicInteger notifications = new AtomicInteger();
+		OverrunMonitor monitor = new OverrunMonitor("room", 10,
+				TimeUnit.MILLISECONDS, OverrunPolicy.RELOCATE, 2, 1);
+		monitor.setListener(new OverrunListener()
+		{
+			@Override
+			public void onOverrun(OverrunMonitor monitor)
+			{
+				notifications.incrementAndGet();
+			}
+		});
+		for (int i = 0; i < 5; i++)
+		{
+			monitor.record(BUDGET * 2);
+		}
+		assertEquals(2, notifications.get());
+		assertEquals(2, monitor.getActions());
+		assertFalse(monitor.isDegraded());
+	}
+
+	@Test
+	public void monitoredTaskIsRecorded()
+	{
+		final AtomicInteger runs = new AtomicInteger();
+		OverrunMonitor monitor = new OverrunMonitor("room", 1,
+				TimeUnit.SECONDS, OverrunPolicy.LOG);
+		Runnable task = monitor.monitor(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				runs.incrementAndGet();
+			}
+		});
+		task.run();
+		task.run();
+		assertEquals(2, runs.get());
+		assertEquals(2, monitor.getExecutions());
+		assertEquals(0, monitor.getOverruns());
+	}
+}
@@ -0,0 +1,166 @@
+package org.menacheri.jetserver.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.menacheri.jetserver.concurrent.ParallelPhase.PartitionedTask;
+
+public class ParallelPhaseTest
+{
+	private ParallelPhase phase;
+
+	@Before
+	public void setUp()
+	{
+		phase = new ParallelPhase(4, 100);
+	}
+
+	@After
+	public void tearDown()
+	{
+		phase.shutdown();
+	}
+
+	@Test
+	public void partitionsAreMergedInOrder() throws Exception
+	{
+		final float[] positions = new float[10000];
+		final List<Integer> mergeOrder = new ArrayList<Integer>();
+		final long[] total = new long[1];
+		final Thread caller = Thread.currentThread();
+		int partitions = phase.run(positions.length,
+				new PartitionedTask<Long>()
+				{
+					@Override
+					public Long compute(int from, int to, int partition)
+					{
+						long sum = 0;
+						for (int i = from; i < to; i++)
+						{
+							positions[i] += i;
+							sum += i;
+						}
+						return sum;
+					}
+
+					@Override
+					public void merge(int partition, Long result)
+					{
+						assertEquals(caller, Thread.currentThread());
+						mergeOrder.add(partition);
+						total[0] += result;
+					}
+				});
+		assertEquals(4, partitions);
+		assertEquals(4, mergeOrder.size());
+		for (int i = 0; i < partitions; i++)
+		{
+			assertEquals(i, mergeOrder.get(i).intValue());
+		}
+		assertEquals(10000L * 9999 / 2, total[0]);
+		for (int i = 0; i < positions.length; i++)
+		{
+			assertEquals(i, positions[i], 0.0f);
+		}
+	}
+
+	@Test
+	public void smallRangeRunsInline() throws Exception
+	{
+		assertEquals(1, phase.run(150, new CountingTask()));
+		assertEquals(2, phase.partitions(200));
+	}
+
+	@Test
+	public void computeExceptionIsRethrown() throws Exception
+	{
+		CountingTask task = new CountingTask()
+		{
+			@Override
+			public Integer compute(int from, int to, int partition)
+					throws Exception
+			{
+				if (partition == 2)
+				{
+					throw new IllegalStateException("partition 2");
+				}
+				return super.compute(from, to, partition);
+			}
+		};
+		try
+		{
+			phase.run(1000, task);
+			fail("Exception should be rethrown");
+		}
+		catch (IllegalStateException e)
+		{
+			assertEquals("partition 2", e.getMessage());
+		}
+		assertEquals(0, task.merged);
+	}
+
+	@Test
+	public void exceptionIsThrownOnlyAfterAllWorkersFinish() throws Exception
+	{
+		final CountDownLatch slowStarted = new CountDownLatch(1);
+		final AtomicBoolean slowFinished = new AtomicBoolean(false);
+		CountingTask task = new CountingTask()
+		{
+			@Override
+			public Integer compute(int from, int to, int partition)
+					throws Exception
+			{
+				if (partition == 1)
+				{
+					slowStarted.await(5, TimeUnit.SECONDS);
+					throw new IllegalStateException("partition 1");
+				}
+				if (partition == 3)
+				{
+					slowStarted.countDown();
+					Thread.sleep(200);
+					slowFinished.set(true);
+				}
+				return super.compute(from, to, partition);
+			}
+		};
+		try
+		{
+			phase.run(1000, task);
+			fail("Exception should be rethrown");
+		}
+		catch (IllegalStateException e)
+		{
+			assertEquals("partition 1", e.getMessage());
+		}
+		assertTrue(slowFinished.get());
+	}
+
+	private static class CountingTask implements PartitionedTask<Integer>
+	{
+		int merged;
+
+		@Override
+		public Integer compute(int from, int to, int partition)
+				throws Exception
+		{
+			return to - from;
+		}
+
+		@Override
+		public void merge(int partition, Integer result)
+		{
+			merged++;
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package org.menacheri.jetserver.convert.compact;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.Test;
+import org.menacheri.jetserver.communication.MessageBuffer;
+import org.menacheri.jetserver.communication.NettyMessageBuffer;
+import org.menacheri.jetserver.convert.Transform;
+import org.menacheri.jetserver.convert.compact.SchemaCompiler.Schema;
+import org.menacheri.jetserver.convert.compact.SchemaCompiler.Target;
+
+public class SchemaCompilerTest
+{
+	private static final String SCHEMA = "package test.compact;\n"
+			+ "/* Sent by a player. */\n" + "message Command\n" + "{\n"
+			+ "\tuint who;\n" + "\tint operation; // may be negative\n"
+			+ "\toptional string target;\n" + "\toptional Position at;\n"
+			+ "}\n" + "message Position\n" + "{\n" + "\tint x;\n"
+			+ "\tint y;\n" + "}\n";
+
+	@Test
+	public void schemaIsParsed()
+	{
+		Schema schema = SchemaCompiler.parse(SCHEMA);
+		assertEquals("test.compact", schema.getPackageName());
+		assertEquals(2, schema.getMessages().size());
+		assertEquals(4, schema.getMessages().get("Command").getFields().size());
+		assertTrue(schema.getMessages().get("Command").getFields().get(2)
+				.isOptional());
+		assertEquals(4, SchemaCompiler.generate(schema, Target.CLIENT).size());
+		assertTrue(SchemaCompiler.generate(schema, Target.CLIENT)
+				.get("test/compact/CommandCodec.java")
+				.contains("import org.menacheri.jetclient.communication.MessageBuffer;"));
+	}
+
+	@Test
+	public void invalidSchemaIsRejected()
+	{
+		assertRejected("package a;\nmessage A\n{\n\tint x;\n\tint x;\n}",
+				"Line 5");
+		assertRejected("package a;\nmessage A\n{\n\tPoint x;\n}", "Point");
+		assertRejected("package a;\nmessage A\n{\n\tint x\n}", "Line 5");
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void generatedCodecRoundTrips() throws Exception
+	{
+		JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+		if (null == javac)
+		{
+			// Running on a jre, nothing to compile the sources with.
+			return;
+		}
+		File directory = File.createTempFile("schema", "");
+		directory.delete();
+		File schemaFile = new File(directory, "game.schema");
+		directory.mkdirs();
+		FileWriter writer = new FileWriter(schemaFile);
+		writer.write(SCHEMA);
+		writer.close();
+		List<File> files = SchemaCompiler.compile(schemaFile, directory,
+				Target.SERVER);
+		String[] args = new String[files.size() + 2];
+		args[0] = "-cp";
+		args[1] = System.getProperty("java.class.path");
+		for (int i = 0; i < files.size(); i++)
+		{
+			args[i + 2] = files.get(i).getPath();
+		}
+		assertEquals(0, javac.run(null, null, null, args));
+		ClassLoader loader = new URLClassLoader(new URL[] { directory
+				.toURI().toURL() }, getClass().getClassLoader());
+		Class<?> command = loader.loadClass("test.compact.Command");
+		Class<?> position = loader.loadClass("test.compact.Position");
+		Class<?> codec = loader.loadClass("test.compact.CommandCodec");
+
+		Object message = command.newInstance();
+		command.getMethod("setWho", int.class).invoke(message, 3);
+		command.getMethod("setOperation", int.class).invoke(message, -2);
+		Object at = position.newInstance();
+		position.getMethod("setX", int.class).invoke(at, 100);
+		position.getMethod("setY", int.class).invoke(at, -100);
+		command.getMethod("setAt", position).invoke(message, at);
+
+		Transform encoder = (Transform) codec.getField("ENCODER").get(null);
+		Transform decoder = (Transform) codec.getField("DECODER").get(null);
+		MessageBuffer<?> buffer = (MessageBuffer<?>) encoder.convert(message);
+		// presence mask, who, operation, x and y, the target is absent.
+		assertEquals(1 + 1 + 1 + 2 + 2, buffer.readableBytes());
+
+		Object decoded = decoder.convert(buffer);
+		assertEquals(3, command.getMethod("getWho").invoke(decoded));
+		assertEquals(-2, command.getMethod("getOperation").invoke(decoded));
+		assertNull(command.getMethod("getTarget").invoke(decoded));
+		Object decodedAt = command.getMethod("getAt").invoke(decoded);
+		assertEquals(-100, position.getMethod("getY").invoke(decodedAt));
+
+		command.getMethod("setTarget", String.class).invoke(message, "brains");
+		NettyMessageBuffer written = new NettyMessageBuffer();
+		Method write = codec.getMethod("write", command, MessageBuffer.class);
+		write.invoke(null, message, written);
+		Object withTarget = codec.getMethod("read", MessageBuffer.class)
+				.invoke(null, written);
+		assertEquals("brains", command.getMethod("getTarget").invoke(
+				withTarget));
+	}
+
+	private static void assertRejected(String schema, String expected)
+	{
+		try
+		{
+			SchemaCompiler.parse(schema);
+			fail("Schema should be rejected: " + schema);
+		}
+		catch (IllegalArgumentException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().contains(expected));
+		}
+	}
+}
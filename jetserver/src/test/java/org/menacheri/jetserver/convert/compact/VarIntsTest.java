@@ -0,0 +1,55 @@
+package org.menacheri.jetserver.convert.compact;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.menacheri.jetserver.communication.NettyMessageBuffer;
+
+public class VarIntsTest
+{
+	@Test
+	public void smallValuesTakeOneByte()
+	{
+		NettyMessageBuffer buffer = new NettyMessageBuffer();
+		VarInts.writeVarInt(buffer, 127);
+		VarInts.writeSignedVarInt(buffer, -64);
+		assertEquals(2, buffer.readableBytes());
+		VarInts.writeVarInt(buffer, 128);
+		assertEquals(4, buffer.readableBytes());
+		assertEquals(127, VarInts.readVarInt(buffer));
+		assertEquals(-64, VarInts.readSignedVarInt(buffer));
+		assertEquals(128, VarInts.readVarInt(buffer));
+		assertEquals(5, VarInts.sizeOfVarInt(-1));
+	}
+
+	@Test
+	public void extremesRoundTrip()
+	{
+		int[] ints = { 0, 1, -1, Integer.MAX_VALUE, Integer.MIN_VALUE };
+		long[] longs = { 0, -1, Long.MAX_VALUE, Long.MIN_VALUE };
+		NettyMessageBuffer buffer = new NettyMessageBuffer();
+		for (int value : ints)
+		{
+			VarInts.writeVarInt(buffer, value);
+			VarInts.writeSignedVarInt(buffer, value);
+		}
+		for (long value : longs)
+		{
+			VarInts.writeVarLong(buffer, value);
+			VarInts.writeSignedVarLong(buffer, value);
+		}
+		VarInts.writeString(buffer, "h\u00e9llo");
+		for (int value : ints)
+		{
+			assertEquals(value, VarInts.readVarInt(buffer));
+			assertEquals(value, VarInts.readSignedVarInt(buffer));
+		}
+		for (long value : longs)
+		{
+			assertEquals(value, VarInts.readVarLong(buffer));
+			assertEquals(value, VarInts.readSignedVarLong(buffer));
+		}
+		assertEquals("h\u00e9llo", VarInts.readString(buffer));
+		assertEquals(0, buffer.readableBytes());
+	}
+}
@@ -0,0 +1,86 @@
+package org.menacheri.jetserver.protocols.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.jboss.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import org.jboss.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.junit.Before;
+import org.junit.Test;
+import org.menacheri.jetserver.communication.NettyMessageBuffer;
+import org.menacheri.jetserver.event.Event;
+import org.menacheri.jetserver.event.Events;
+import org.menacheri.jetserver.handlers.netty.BinaryWebsocketDecoder;
+import org.menacheri.jetserver.handlers.netty.BinaryWebsocketEncoder;
+import org.menacheri.jetserver.handlers.netty.MessageBufferEventDecoder;
+import org.menacheri.jetserver.handlers.netty.MessageBufferEventEncoder;
+
+public class BinaryWebSocketProtocolTest
+{
+	private BinaryWebSocketProtocol binaryWebSocketProtocol;
+
+	@Before
+	public void setUp()
+	{
+		binaryWebSocketProtocol = new BinaryWebSocketProtocol();
+		binaryWebSocketProtocol.setBinaryWebsocketDecoder(new BinaryWebsocketDecoder());
+		binaryWebSocketProtocol.setBinaryWebsocketEncoder(new BinaryWebsocketEncoder());
+		binaryWebSocketProtocol.setMessageBufferEventDecoder(new MessageBufferEventDecoder());
+		binaryWebSocketProtocol.setMessageBufferEventEncoder(new MessageBufferEventEncoder());
+	}
+
+	@Test
+	public void eventsTravelAsOpcodeAndPayloadInBinaryFrames()
+	{
+		EncoderEmbedder<BinaryWebSocketFrame> encoder = new EncoderEmbedder<BinaryWebSocketFrame>(
+				binaryWebSocketProtocol.getBinaryWebsocketEncoder(),
+				binaryWebSocketProtocol.getMessageBufferEventEncoder());
+		DecoderEmbedder<Event> decoder = new DecoderEmbedder<Event>(
+				binaryWebSocketProtocol.getBinaryWebsocketDecoder(),
+				binaryWebSocketProtocol.getMessageBufferEventDecoder());
+		NettyMessageBuffer payload = new NettyMessageBuffer();
+		payload.writeInt(42).writeString("zombie");
+		encoder.offer(Events.event(payload, Events.SESSION_MESSAGE));
+		BinaryWebSocketFrame frame = encoder.poll();
+
+		ChannelBuffer data = frame.getBinaryData();
+		// No length header, the web socket frame does the framing.
+		assertEquals(1 + 4 + 2 + 6, data.readableBytes());
+		assertEquals(Events.SESSION_MESSAGE, data.getByte(data.readerIndex()));
+
+		decoder.offer(frame);
+		Event decoded = decoder.poll();
+		assertEquals(Events.SESSION_MESSAGE, decoded.getType());
+		NettyMessageBuffer decodedPayload = (NettyMessageBuffer) decoded.getSource();
+		assertEquals(42, decodedPayload.readInt());
+		assertEquals("zombie", decodedPayload.readString());
+	}
+
+	@Test
+	public void networkMessagesFromBrowserBecomeSessionMessages()
+	{
+		DecoderEmbedder<Event> decoder = new DecoderEmbedder<Event>(
+				binaryWebSocketProtocol.getBinaryWebsocketDecoder(),
+				binaryWebSocketProtocol.getMessageBufferEventDecoder());
+		NettyMessageBuffer frame = new NettyMessageBuffer();
+		frame.writeByte(Events.NETWORK_MESSAGE).writeInt(7);
+		decoder.offer(new BinaryWebSocketFrame(frame.getNativeBuffer()));
+		Event decoded = decoder.poll();
+		assertEquals(Events.SESSION_MESSAGE, decoded.getType());
+		assertEquals(7, ((NettyMessageBuffer) decoded.getSource()).readInt());
+	}
+
+	@Test
+	public void textFramesAreDropped()
+	{
+		DecoderEmbedder<Event> decoder = new DecoderEmbedder<Event>(
+				binaryWebSocketProtocol.getBinaryWebsocketDecoder(),
+				binaryWebSocketProtocol.getMessageBufferEventDecoder());
+		assertFalse(decoder.offer(new TextWebSocketFrame("{}")));
+		assertNull(decoder.poll());
+	}
+}
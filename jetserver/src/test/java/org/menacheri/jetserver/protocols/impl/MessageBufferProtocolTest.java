@@ -2,19 +2,30 @@ package org.menacheri.jetserver.protocols.impl;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.zip.Inflater;
 
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
 import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
 import org.jboss.netty.handler.codec.frame.LengthFieldBasedFrameDecoder;
 import org.jboss.netty.handler.codec.frame.LengthFieldPrepender;
 import org.junit.Before;
 import org.junit.Test;
+import org.menacheri.jetserver.communication.BufferPool;
+import org.menacheri.jetserver.communication.EncodingCache;
 import org.menacheri.jetserver.communication.NettyMessageBuffer;
 import org.menacheri.jetserver.event.Events;
 import org.menacheri.jetserver.event.Event;
+import org.menacheri.jetserver.event.impl.DefaultNetworkEvent;
+import org.menacheri.jetserver.handlers.netty.FramedEventEncoder;
 import org.menacheri.jetserver.handlers.netty.MessageBufferEventDecoder;
 import org.menacheri.jetserver.handlers.netty.MessageBufferEventEncoder;
+import org.menacheri.jetserver.handlers.netty.PayloadCompressor;
 import org.menacheri.jetserver.protocols.impl.MessageBufferProtocol;
 
 public class MessageBufferProtocolTest {
@@ -57,4 +68,161 @@ public class MessageBufferProtocolTest {
 		assertEquals("pass",decodedPayload.readString());
 		assertEquals("TestRoom1",decodedPayload.readString());
 	}
+	
+	@Test
+	public void broadcastIsEncodedOnceForAllChannels()
+	{
+		EncoderEmbedder<ChannelBuffer> first = new EncoderEmbedder<ChannelBuffer>(
+				messageBufferProtocol.getLengthFieldPrepender(),
+				messageBufferProtocol.getMessageBufferEventEncoder());
+		EncoderEmbedder<ChannelBuffer> second = new EncoderEmbedder<ChannelBuffer>(
+				messageBufferProtocol.getLengthFieldPrepender(),
+				messageBufferProtocol.getMessageBufferEventEncoder());
+		NettyMessageBuffer payload = new NettyMessageBuffer();
+		payload.writeStrings("state");
+		DefaultNetworkEvent event = (DefaultNetworkEvent) Events
+				.networkEvent(payload);
+		EncodingCache cache = new EncodingCache();
+		event.setEncodingCache(cache);
+		first.offer(event);
+		second.offer(event);
+		assertEquals(1, cache.size());
+		ChannelBuffer firstEncoded = first.poll();
+		ChannelBuffer secondEncoded = second.poll();
+		assertNotSame(firstEncoded, secondEncoded);
+		assertEquals(firstEncoded, secondEncoded);
+		
+		DecoderEmbedder<Event> decoder = new DecoderEmbedder<Event>(
+				frameDecoder,
+				messageBufferProtocol.getMessageBufferEventDecoder());
+		decoder.offer(secondEncoded);
+		Event decoded = decoder.poll();
+		assertEquals(Events.SESSION_MESSAGE, decoded.getType());
+		assertEquals("state", ((NettyMessageBuffer) decoded.getSource())
+				.readString());
+	}
+	
+	@Test
+	public void bundleFramesEachEventWithItsLength()
+	{
+		EncoderEmbedder<ChannelBuffer> encoder = new EncoderEmbedder<ChannelBuffer>(
+				messageBufferProtocol.getMessageBufferEventEncoder());
+		NettyMessageBuffer payload = new NettyMessageBuffer();
+		payload.writeInt(7);
+		Event bundle = Events.event(Arrays.asList(
+				Events.networkEvent(payload), Events.event(null, Events.START)),
+				Events.BUNDLE);
+		encoder.offer(bundle);
+		ChannelBuffer encoded = encoder.poll();
+		assertEquals(Events.BUNDLE, encoded.readByte());
+		assertEquals(5, encoded.readUnsignedShort());
+		assertEquals(Events.NETWORK_MESSAGE, encoded.readByte());
+		assertEquals(7, encoded.readInt());
+		assertEquals(1, encoded.readUnsignedShort());
+		assertEquals(Events.START, encoded.readByte());
+		assertFalse(encoded.readable());
+	}
+	
+	@Test
+	public void framedEncoderMatchesPrependerAndEncoder()
+	{
+		EncoderEmbedder<ChannelBuffer> twoPass = new EncoderEmbedder<ChannelBuffer>(
+				messageBufferProtocol.getLengthFieldPrepender(),
+				messageBufferProtocol.getMessageBufferEventEncoder());
+		EncoderEmbedder<ChannelBuffer> onePass = new EncoderEmbedder<ChannelBuffer>(
+				new FramedEventEncoder());
+		NettyMessageBuffer payload = new NettyMessageBuffer();
+		payload.writeStrings("user", "pass");
+		Event event = Events.event(payload, Events.LOG_IN);
+		Event start = Events.event(null, Events.START);
+		twoPass.offer(event);
+		twoPass.offer(start);
+		onePass.offer(event);
+		onePass.offer(start);
+		ChannelBuffer framed = onePass.poll();
+		assertEquals(twoPass.poll(), framed);
+		assertEquals(twoPass.poll(), onePass.poll());
+		
+		DecoderEmbedder<Event> decoder = new DecoderEmbedder<Event>(
+				frameDecoder,
+				messageBufferProtocol.getMessageBufferEventDecoder());
+		decoder.offer(framed);
+		Event decoded = decoder.poll();
+		assertEquals(Events.LOG_IN, decoded.getType());
+		assertEquals("user", ((NettyMessageBuffer) decoded.getSource())
+				.readString());
+	}
+
+	@Test
+	public void pooledEncodersMatchUnpooledEncoders()
+	{
+		BufferPool pool = new BufferPool(false, 4);
+		FramedEventEncoder framedEncoder = new FramedEventEncoder();
+		framedEncoder.setBufferPool(pool);
+		MessageBufferEventEncoder eventEncoder = new MessageBufferEventEncoder();
+		eventEncoder.setBufferPool(pool);
+		EncoderEmbedder<ChannelBuffer> pooled = new EncoderEmbedder<ChannelBuffer>(
+				framedEncoder);
+		EncoderEmbedder<ChannelBuffer> pooledEvents = new EncoderEmbedder<ChannelBuffer>(
+				eventEncoder);
+		NettyMessageBuffer payload = new NettyMessageBuffer();
+		payload.writeStrings("user", "pass");
+		Event event = Events.event(payload, Events.LOG_IN);
+		EncoderEmbedder<ChannelBuffer> unpooledEvents = new EncoderEmbedder<ChannelBuffer>(
+				new MessageBufferEventEncoder());
+		pooled.offer(event);
+		assertEquals(FramedEventEncoder.frame(event), pooled.poll());
+		// The embedder completes the write, so the frame is back in the pool.
+		assertEquals(0, pool.getOutstandingCount());
+		pooledEvents.offer(event);
+		unpooledEvents.offer(event);
+		assertEquals(unpooledEvents.poll(), pooledEvents.poll());
+		assertEquals(1, pool.getReusedCount());
+		assertEquals(0, pool.getOutstandingCount());
+	}
+
+	@Test
+	public void largePayloadsAreCompressedWithDictionary() throws Exception
+	{
+		byte[] dictionary = "roomNameplayerCountmaxPlayers".getBytes("UTF-8");
+		PayloadCompressor compressor = new PayloadCompressor(64, dictionary);
+		EncoderEmbedder<ChannelBuffer> encoder = new EncoderEmbedder<ChannelBuffer>(
+				compressor, messageBufferProtocol.getMessageBufferEventEncoder());
+		NettyMessageBuffer small = new NettyMessageBuffer();
+		small.writeStrings("roomName", "lobby");
+		NettyMessageBuffer large = new NettyMessageBuffer();
+		for (int i = 0; i < 20; i++)
+		{
+			large.writeStrings("roomName", "room" + i, "playerCount");
+			large.writeInt(i);
+		}
+		encoder.offer(Events.event(small, Events.ROOM_LIST));
+		encoder.offer(Events.event(large, Events.ROOM_LIST));
+
+		ChannelBuffer uncompressed = encoder.poll();
+		assertEquals(Events.ROOM_LIST, uncompressed.getByte(0));
+		assertEquals(1 + small.readableBytes(), uncompressed.readableBytes());
+
+		ChannelBuffer compressed = encoder.poll();
+		assertEquals(Events.ROOM_LIST | PayloadCompressor.COMPRESSED,
+				compressed.readUnsignedByte());
+		int length = compressed.readInt();
+		assertEquals(large.readableBytes(), length);
+		assertEquals(1, compressor.getCompressedFrameCount());
+		assertEquals(length - 4 - compressed.readableBytes(),
+				compressor.getSavedBytes());
+
+		byte[] deflated = new byte[compressed.readableBytes()];
+		compressed.readBytes(deflated);
+		Inflater inflater = new Inflater();
+		inflater.setInput(deflated);
+		byte[] payload = new byte[length];
+		assertEquals(0, inflater.inflate(payload));
+		assertTrue(inflater.needsDictionary());
+		inflater.setDictionary(dictionary);
+		assertEquals(length, inflater.inflate(payload));
+		inflater.end();
+		assertEquals(large.getNativeBuffer(),
+				ChannelBuffers.wrappedBuffer(payload));
+	}
 }
@@ -0,0 +1,206 @@
+package org.menacheri.jetserver.service.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.menacheri.jetserver.app.Checkpointable;
+import org.menacheri.jetserver.app.GameRoom;
+import org.menacheri.jetserver.app.impl.GameRoomSession.GameRoomSessionBuilder;
+import org.menacheri.jetserver.protocols.impl.DummyProtocol;
+import org.menacheri.jetserver.util.TestGameRoom;
+
+public class MappedFileCheckpointServiceTest
+{
+	private File directory;
+	private GameRoom gameRoom;
+	private MappedFileCheckpointService service;
+
+	@Before
+	public void setUp()
+	{
+		directory = new File(System.getProperty("java.io.tmpdir"),
+				"checkpoint-test-" + System.nanoTime());
+		GameRoomSessionBuilder builder = new GameRoomSessionBuilder();
+		builder.gameRoomName("Checkpoint_Room").protocol(new DummyProtocol());
+		gameRoom = new TestGameRoom(builder, new AtomicLong(),
+				new CountDownLatch(1));
+		service = createService();
+	}
+
+	@After
+	public void tearDown()
+	{
+		service.close();
+		File[] files = directory.listFiles();
+		if (null != files)
+		{
+			for (File file : files)
+			{
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void lastCheckpointIsRestored() throws Exception
+	{
+		// Larger than a page, so that only some pages change.
+		byte[] state = new byte[10000];
+		ByteState room = new ByteState(state);
+		service.register(gameRoom, room);
+		for (int i = 1; i <= 3; i++)
+		{
+			state[9000] = (byte) i;
+			service.checkpointAll();
+			waitForSequence(i);
+		}
+
+		service.close();
+		service = createService();
+		ByteState restored = new ByteState(null);
+		service.register(gameRoom, restored);
+		assertEquals(1, service.restoreAll());
+		assertArrayEquals(state, restored.state);
+		assertEquals(3, service.getCheckpointSequence(gameRoom));
+	}
+
+	@Test
+	public void nothingIsRestoredWithoutCheckpoint()
+	{
+		ByteState restored = new ByteState(null);
+		service.register(gameRoom, restored);
+		assertEquals(0, service.restoreAll());
+		assertNull(restored.state);
+	}
+
+	@Test
+	public void roomsBuiltWithCheckpointableAreRestoredAfterRestart()
+			throws Exception
+	{
+		ByteState state = new ByteState(new byte[] { 1, 2, 3 });
+		gameRoom = createCheckpointedRoom(state);
+		service.checkpointAll();
+		waitForSequence(1);
+
+		// Restart: a new service and the room created again by the builder.
+		gameRoom.close();
+		service.close();
+		service = createService();
+		ByteState restored = new ByteState(null);
+		gameRoom = createCheckpointedRoom(restored);
+		assertEquals(1, service.restoreAll());
+		assertArrayEquals(new byte[] { 1, 2, 3 }, restored.state);
+	}
+
+	@Test
+	public void roomRegisteredAfterRestoreAllIsRestored() throws Exception
+	{
+		ByteState state = new ByteState(new byte[] { 4, 5, 6 });
+		gameRoom = createCheckpointedRoom(state);
+		service.checkpointAll();
+		waitForSequence(1);
+
+		gameRoom.close();
+		service.close();
+		service = createService();
+		assertEquals(0, service.restoreAll());
+		ByteState restored = new ByteState(null);
+		gameRoom = createCheckpointedRoom(restored);
+		assertArrayEquals(new byte[] { 4, 5, 6 }, restored.state);
+	}
+
+	@Test
+	public void nothingIsWrittenUntilStarted() throws Exception
+	{
+		service.close();
+		MappedFileCheckpointService stopped = new MappedFileCheckpointService();
+		stopped.setDirectory(directory.getPath());
+		stopped.register(gameRoom, new ByteState(new byte[] { 1 }));
+		stopped.checkpointAll();
+		assertEquals(0, stopped.getCheckpointSequence(gameRoom));
+		stopped.close();
+	}
+
+	@Test
+	public void roomIsRegisteredOnlyWhenInitialized()
+			throws Exception
+	{
+		GameRoomSessionBuilder builder = new GameRoomSessionBuilder();
+		builder.gameRoomName("Checkpoint_Room").protocol(new DummyProtocol())
+				.checkpointable(service, new ByteState(new byte[] { 1 }));
+		TestGameRoom room = new TestGameRoom(builder, new AtomicLong(),
+				new CountDownLatch(1));
+		service.checkpointAll();
+		assertEquals(0, service.getCheckpointSequence(room));
+		room.initialize();
+		room.initialize();
+		gameRoom = room;
+		service.checkpointAll();
+		waitForSequence(1);
+	}
+
+	private GameRoom createCheckpointedRoom(Checkpointable checkpointable)
+	{
+		GameRoomSessionBuilder builder = new GameRoomSessionBuilder();
+		builder.gameRoomName("Checkpoint_Room").protocol(new DummyProtocol())
+				.checkpointable(service, checkpointable);
+		TestGameRoom room = new TestGameRoom(builder, new AtomicLong(),
+				new CountDownLatch(1));
+		room.initialize();
+		return room;
+	}
+
+	private MappedFileCheckpointService createService()
+	{
+		MappedFileCheckpointService checkpointService = new MappedFileCheckpointService();
+		checkpointService.setDirectory(directory.getPath());
+		checkpointService.setMaxCheckpointSize(16 * 1024);
+		checkpointService.start();
+		return checkpointService;
+	}
+
+	private void waitForSequence(long sequence) throws InterruptedException
+	{
+		for (int i = 0; i < 500; i++)
+		{
+			if (service.getCheckpointSequence(gameRoom) >= sequence)
+			{
+				return;
+			}
+			Thread.sleep(10);
+		}
+		assertEquals(sequence, service.getCheckpointSequence(gameRoom));
+	}
+
+	private static class ByteState implements Checkpointable
+	{
+		volatile byte[] state;
+
+		ByteState(byte[] state)
+		{
+			this.state = state;
+		}
+
+		@Override
+		public byte[] checkpoint() throws Exception
+		{
+			return Arrays.copyOf(state, state.length);
+		}
+
+		@Override
+		public void restore(byte[] state) throws Exception
+		{
+			this.state = state;
+		}
+	}
+}
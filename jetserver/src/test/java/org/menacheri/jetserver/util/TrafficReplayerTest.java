@@ -0,0 +1,184 @@
+package org.menacheri.jetserver.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.menacheri.jetserver.app.impl.GameRoomSession;
+import org.menacheri.jetserver.app.impl.GameRoomSession.GameRoomSessionBuilder;
+import org.menacheri.jetserver.event.Events;
+import org.menacheri.jetserver.protocols.impl.DummyProtocol;
+import org.menacheri.jetserver.util.TrafficReplayer.ReplayTarget;
+import org.menacheri.jetserver.util.TrafficReplayer.SessionReplayTarget;
+import org.menacheri.jetserver.util.TrafficReplayer.SocketReplayTarget;
+
+public class TrafficReplayerTest
+{
+	private File file;
+	private TrafficRecorder recorder;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		file = new File(System.getProperty("java.io.tmpdir"), "traffic-test-"
+				+ System.nanoTime() + ".log");
+		recorder = new TrafficRecorder(file);
+	}
+
+	@After
+	public void tearDown()
+	{
+		recorder.close();
+		file.delete();
+	}
+
+	@Test
+	public void framesAreReplayedWithRecordedSpacing() throws Exception
+	{
+		recorder.record(TrafficRecorder.BINARY_FRAME, "1",
+				ChannelBuffers.wrappedBuffer(new byte[] { 1, 2 }));
+		Thread.sleep(100);
+		recorder.record(TrafficRecorder.TEXT_FRAME, "2", "text".getBytes());
+		recorder.record(TrafficRecorder.DISCONNECT, "1", new byte[0]);
+		recorder.flush();
+
+		CapturingTarget target = new CapturingTarget();
+		long start = System.nanoTime();
+		assertEquals(3, new TrafficReplayer(file, 2).replay(target));
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+				- start);
+		// 100ms recorded at twice the speed.
+		assertTrue("Replay took " + elapsed, elapsed >= 45);
+		assertEquals("1:1", target.calls.get(0));
+		assertEquals("2:2", target.calls.get(1));
+		assertEquals("disconnect 1", target.calls.get(2));
+		assertArrayEquals(new byte[] { 1, 2 }, target.firstFrame);
+		assertTrue(target.closed);
+	}
+
+	@Test
+	public void framesAreReplayedIntoSessions() throws Exception
+	{
+		CountDownLatch latch = new CountDownLatch(2);
+		GameRoomSessionBuilder builder = new GameRoomSessionBuilder();
+		builder.gameRoomName("Replay_Room").protocol(new DummyProtocol());
+		GameRoomSession gameRoom = new TestGameRoom(builder, new AtomicLong(),
+				latch);
+		recorder.record(TrafficRecorder.BINARY_FRAME, "1",
+				new byte[] { Events.NETWORK_MESSAGE, 7 });
+		recorder.record(TrafficRecorder.BINARY_FRAME, "1",
+				new byte[] { Events.NETWORK_MESSAGE, 8 });
+		recorder.flush();
+
+		SessionReplayTarget target = new SessionReplayTarget(gameRoom);
+		assertEquals(2, new TrafficReplayer(file, 0).replay(target));
+		assertEquals(1, gameRoom.getSessions().size());
+		// Each replayed message is broadcast back to the session by the room.
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		gameRoom.close();
+	}
+
+	@Test
+	public void socketTargetLogsInBeforeReplayingFrames() throws Exception
+	{
+		recorder.record(TrafficRecorder.BINARY_FRAME, "1",
+				new byte[] { Events.NETWORK_MESSAGE, 7 });
+		recorder.flush();
+		final ServerSocket server = new ServerSocket(0);
+		final List<byte[]> received = new ArrayList<byte[]>();
+		Thread fakeServer = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					Socket socket = server.accept();
+					DataInputStream in = new DataInputStream(socket
+							.getInputStream());
+					DataOutputStream out = new DataOutputStream(socket
+							.getOutputStream());
+					received.add(readFrame(in));
+					out.writeShort(1);
+					out.writeByte(Events.START);
+					out.flush();
+					received.add(readFrame(in));
+					socket.close();
+				}
+				catch (Exception e)
+				{
+					e.printStackTrace();
+				}
+			}
+		});
+		fakeServer.start();
+
+		SocketReplayTarget target = new SocketReplayTarget("localhost",
+				server.getLocalPort(), "user", "pass", "Room_REF_KEY");
+		assertEquals(1, new TrafficReplayer(file, 0).replay(target));
+		fakeServer.join(5000);
+		server.close();
+
+		assertEquals(2, received.size());
+		ChannelBuffer login = ChannelBuffers.wrappedBuffer(received.get(0));
+		assertEquals(Events.LOG_IN, login.readByte());
+		assertEquals(Events.PROTCOL_VERSION, login.readByte());
+		assertEquals("user", NettyUtils.readString(login));
+		assertEquals("pass", NettyUtils.readString(login));
+		assertEquals("Room_REF_KEY", NettyUtils.readString(login));
+		assertArrayEquals(new byte[] { Events.NETWORK_MESSAGE, 7 },
+				received.get(1));
+	}
+
+	private static byte[] readFrame(DataInputStream in) throws Exception
+	{
+		byte[] frame = new byte[in.readUnsignedShort()];
+		in.readFully(frame);
+		return frame;
+	}
+
+	private static class CapturingTarget implements ReplayTarget
+	{
+		final List<String> calls = new ArrayList<String>();
+		byte[] firstFrame;
+		boolean closed;
+
+		@Override
+		public void send(String sessionId, byte kind, byte[] frame)
+		{
+			if (null == firstFrame)
+			{
+				firstFrame = frame;
+			}
+			calls.add(sessionId + ":" + kind);
+		}
+
+		@Override
+		public void disconnect(String sessionId)
+		{
+			calls.add("disconnect " + sessionId);
+		}
+
+		@Override
+		public void close()
+		{
+			closed = true;
+		}
+	}
+}